@@ -0,0 +1,167 @@
+package com.example.geofenceapp;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Foreground location updates whose interval and priority follow a
+ * {@link LocationSamplingScheduler}. Each fix is measured against the nearest
+ * fence boundary, from the catalog in {@link FenceRegistry} and the custom
+ * geofence in the settings, and the location request is replaced only when
+ * the schedule changes. The schedule is rebuilt when the detection latency
+ * SLA in the {@link SettingsSnapshot} changes. While running, every fix is
+ * also evaluated by the {@link LocationStream}.
+ */
+public class AdaptiveLocationTracker {
+    private static final String TAG = "AdaptiveLocationTracker";
+
+    public interface Listener {
+        /**
+         * Called on the main thread for every fix
+         *
+         * @param location The fix
+         */
+        void onLocation(Location location);
+    }
+
+    private final Context context;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final SettingsRepository settings;
+    private final FenceRegistry registry;
+    private final LocationStream stream;
+    private final Listener listener;
+    private LocationSamplingScheduler scheduler;
+    private long settingsVersion;
+    private boolean running;
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult locationResult) {
+            Location location = locationResult.getLastLocation();
+            if (location != null) {
+                onLocation(location);
+            }
+        }
+    };
+
+    /**
+     * @param context  Application context
+     * @param listener Receives every fix, may be null
+     */
+    public AdaptiveLocationTracker(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(this.context);
+        this.settings = SettingsRepository.getInstance(this.context);
+        this.registry = FenceRegistry.getDefault();
+        SettingsSnapshot snapshot = settings.getSnapshot();
+        this.scheduler = new LocationSamplingScheduler(snapshot.getDetectionLatencySlaMillis());
+        this.settingsVersion = snapshot.getVersion();
+        this.stream = LocationStream.getInstance(this.context);
+        this.listener = listener;
+    }
+
+    /**
+     * Start receiving updates; does nothing without the fine location permission
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Location permission missing, not starting location updates");
+            return;
+        }
+        running = true;
+        updateScheduler(settings.getSnapshot());
+        scheduler.reset();
+        stream.start();
+        requestUpdates();
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        stream.stop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void onLocation(Location location) {
+        if (!running) {
+            return;
+        }
+        stream.offer(location);
+        SettingsSnapshot snapshot = settings.getSnapshot();
+        boolean changed = updateScheduler(snapshot);
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        double distance = boundaryDistance(snapshot, latitude, longitude);
+        changed |= scheduler.onFix(location.getElapsedRealtimeNanos() / 1000000L, latitude, longitude,
+                location.hasAccuracy() ? location.getAccuracy() : 0,
+                location.hasSpeed() ? location.getSpeed() : -1f,
+                distance);
+        if (changed) {
+            Log.d(TAG, "Boundary " + Math.round(distance) + " m away, sampling every "
+                    + scheduler.getIntervalMillis() / 1000 + " s at priority " + scheduler.getPriority());
+            requestUpdates();
+        }
+        if (listener != null) {
+            listener.onLocation(location);
+        }
+    }
+
+    // A changed SLA starts a fresh schedule; the next fix sets its interval
+    private boolean updateScheduler(SettingsSnapshot snapshot) {
+        if (snapshot.getVersion() == settingsVersion) {
+            return false;
+        }
+        settingsVersion = snapshot.getVersion();
+        if (snapshot.getDetectionLatencySlaMillis() == scheduler.getLatencySlaMillis()) {
+            return false;
+        }
+        Log.d(TAG, "Detection latency SLA changed to " + snapshot.getDetectionLatencySlaMillis() / 1000 + " s");
+        scheduler = new LocationSamplingScheduler(snapshot.getDetectionLatencySlaMillis());
+        return true;
+    }
+
+    private double boundaryDistance(SettingsSnapshot settings, double latitude, double longitude) {
+        double distance = registry.nearestBoundaryDistance(latitude, longitude);
+        if (settings.isGeofenceActive()) {
+            double center = GeoMath.haversineDistance(latitude, longitude,
+                    settings.getLatitude(), settings.getLongitude());
+            distance = Math.min(distance, Math.abs(center - settings.getRadius()));
+        }
+        return distance;
+    }
+
+    // Re-requesting with the same callback replaces the previous request
+    @SuppressLint("MissingPermission")
+    private void requestUpdates() {
+        LocationRequest request = new LocationRequest.Builder(scheduler.getPriority(), scheduler.getIntervalMillis())
+                .setMinUpdateIntervalMillis(scheduler.getIntervalMillis())
+                .setMinUpdateDistanceMeters(scheduler.getMinUpdateDistanceMeters())
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper())
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to request location updates: " + e.getMessage()));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.media.SoundPool;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the geofence alert from a {@link SoundPool} that decodes
+ * {@code R.raw.alert_sound} once per process. Playing a preloaded sample takes
+ * well under a millisecond, where creating a MediaPlayer per alert costs tens to
+ * hundreds. Concurrent streams are capped and repeated alerts inside
+ * {@link #MIN_ALERT_INTERVAL_MS} are skipped.
+ */
+public class AlertSoundPlayer {
+    private static final String TAG = "AlertSoundPlayer";
+
+    // At most this many alert sounds overlap; SoundPool stops the oldest beyond it
+    private static final int MAX_STREAMS = 2;
+
+    // Alerts requested closer together than this play only once
+    public static final long MIN_ALERT_INTERVAL_MS = 2000;
+
+    // Upper bound on how long the first alert after process start waits for decoding
+    private static final long LOAD_TIMEOUT_MS = 500;
+
+    private static final int TRACE_RATE_LIMITED = RingTracer.defineEvent(TAG,
+            "Alert sound rate-limited, %5$d suppressed so far");
+    private static final int TRACE_STARTED = RingTracer.defineEvent(TAG, "Alert sound started in %5$d us");
+
+    private static AlertSoundPlayer instance;
+
+    private final Context context;
+    private final SoundPool soundPool;
+    private final int soundId;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final long loadStartNanos;
+    private final RingTracer tracer = RingTracer.getInstance();
+
+    private volatile boolean loadSucceeded;
+    private volatile long loadNanos = -1;
+    private volatile long lastPlayLatencyNanos = -1;
+    private long lastPlayTime = -MIN_ALERT_INTERVAL_MS;
+    private int suppressedCount;
+    private Ringtone fallbackRingtone;
+
+    public static synchronized AlertSoundPlayer getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlertSoundPlayer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlertSoundPlayer(Context context) {
+        this.context = context;
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION_EVENT)
+                .build();
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(audioAttributes)
+                .build();
+
+        loadStartNanos = SystemClock.elapsedRealtimeNanos();
+        soundPool.setOnLoadCompleteListener((pool, sampleId, status) -> {
+            loadSucceeded = status == 0;
+            loadNanos = SystemClock.elapsedRealtimeNanos() - loadStartNanos;
+            Log.d(TAG, "Alert sound decoded in " + loadNanos / 1000 + "us, status " + status);
+            loaded.countDown();
+        });
+        soundId = soundPool.load(context, R.raw.alert_sound, 1);
+    }
+
+    /**
+     * Play the alert sound unless one was played within the last
+     * {@link #MIN_ALERT_INTERVAL_MS}. The first call after process start may
+     * block for up to {@link #LOAD_TIMEOUT_MS} while the sample decodes, so
+     * call this off the main thread.
+     *
+     * @return true if the sound was started
+     */
+    public boolean play() {
+        long requestNanos = SystemClock.elapsedRealtimeNanos();
+
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastPlayTime < MIN_ALERT_INTERVAL_MS) {
+                suppressedCount++;
+                tracer.trace(TRACE_RATE_LIMITED, RingTracer.NO_FENCE, suppressedCount);
+                return false;
+            }
+            lastPlayTime = now;
+        }
+
+        try {
+            if (!loaded.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Alert sound not decoded after " + LOAD_TIMEOUT_MS + "ms, skipping");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!loadSucceeded) {
+            return playFallback(requestNanos);
+        }
+
+        int streamId = soundPool.play(soundId, 1f, 1f, 1, 0, 1f);
+        lastPlayLatencyNanos = SystemClock.elapsedRealtimeNanos() - requestNanos;
+        if (streamId == 0) {
+            Log.e(TAG, "SoundPool failed to start alert sound");
+            return false;
+        }
+        tracer.trace(TRACE_STARTED, RingTracer.NO_FENCE, lastPlayLatencyNanos / 1000);
+        return true;
+    }
+
+    // Used only if the bundled sample cannot be decoded
+    private boolean playFallback(long requestNanos) {
+        Ringtone ringtone;
+        synchronized (this) {
+            if (fallbackRingtone == null) {
+                fallbackRingtone = RingtoneManager.getRingtone(context,
+                        android.provider.Settings.System.DEFAULT_NOTIFICATION_URI);
+            }
+            ringtone = fallbackRingtone;
+        }
+        if (ringtone == null) {
+            Log.e(TAG, "Alert sound failed to load and no default notification sound is available");
+            return false;
+        }
+        ringtone.play();
+        lastPlayLatencyNanos = SystemClock.elapsedRealtimeNanos() - requestNanos;
+        Log.d(TAG, "Using system default notification sound");
+        return true;
+    }
+
+    /**
+     * Time from the last play() call until the stream was started, or -1 if
+     * nothing has played yet
+     */
+    public long getLastPlayLatencyNanos() {
+        return lastPlayLatencyNanos;
+    }
+
+    /**
+     * Time spent decoding the sample, or -1 while it is still loading
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public synchronized int getSuppressedCount() {
+        return suppressedCount;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.geofenceapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Play Services forgets every geofence on reboot, when the app is updated
+ * and when location is turned off; this receiver has them registered again
+ * after a reboot or update, and once location is turned back on.
+ */
+public class BootReceiver extends BroadcastReceiver {
+    private static final String TAG = "BootReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent == null) {
+            return;
+        }
+        if (LocationManager.PROVIDERS_CHANGED_ACTION.equals(intent.getAction())) {
+            onProvidersChanged(context.getApplicationContext());
+            return;
+        }
+        String reason;
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            // Before anything reads state saved on the previous boot's clock
+            DwellMonitor.onBootCompleted(context.getApplicationContext());
+            reason = GeofenceRestorer.REASON_BOOT;
+        } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(intent.getAction())) {
+            reason = GeofenceRestorer.REASON_PACKAGE_REPLACED;
+        } else {
+            Log.w(TAG, "Unexpected action: " + intent.getAction());
+            return;
+        }
+        Log.d(TAG, "Restoring geofences after " + reason);
+
+        // Alarms do not survive a reboot either; this also sets the next schedule edge
+        FenceScheduler.getInstance(context.getApplicationContext()).reload(null);
+
+        // Loading and registering run off the main thread; keep the process alive until they finish
+        long receivedMillis = SystemClock.elapsedRealtime();
+        PendingResult pendingResult = goAsync();
+        GeofenceRestorer.getInstance(context.getApplicationContext())
+                .restore(reason, receivedMillis, pendingResult::finish);
+    }
+
+    // Sent for every provider toggled, so several may arrive for one change of the location setting
+    private void onProvidersChanged(Context context) {
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (locationManager == null) {
+            return;
+        }
+        GeofenceRestorer restorer = GeofenceRestorer.getInstance(context);
+        if (!locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)
+                && !locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            // Play Services drops the geofences; the GEOFENCE_NOT_AVAILABLE event may never reach us
+            Log.d(TAG, "Location turned off, geofences will be restored when it is back");
+            restorer.markLost();
+            return;
+        }
+        PendingResult pendingResult = goAsync();
+        if (restorer.restoreIfNeeded(GeofenceRestorer.REASON_LOCATION_ENABLED, SystemClock.elapsedRealtime(),
+                pendingResult::finish)) {
+            Log.d(TAG, "Location turned on, restoring geofences");
+        } else {
+            pendingResult.finish();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.geofenceapp;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the event path metrics from {@link GeofenceMetrics}, the state of
+ * the geofence registrations and the {@link RingTracer} buffer, and writes
+ * them to a file that can be pulled from the device.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    private TextView txtMetrics;
+    private ExecutorService ioExecutor;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        txtMetrics = findViewById(R.id.txt_metrics);
+        Button btnRefresh = findViewById(R.id.btn_refresh_metrics);
+        Button btnReset = findViewById(R.id.btn_reset_metrics);
+        Button btnDump = findViewById(R.id.btn_dump_metrics);
+
+        btnRefresh.setOnClickListener(v -> showReport());
+        btnReset.setOnClickListener(v -> {
+            GeofenceMetrics.getInstance().reset();
+            showReport();
+        });
+        btnDump.setOnClickListener(v -> dumpToFile());
+        ioExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ioExecutor.shutdown();
+    }
+
+    private void showReport() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeReport(writer);
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        txtMetrics.setText(writer.toString());
+    }
+
+    private void writeReport(Writer writer) throws IOException {
+        GeofenceMetrics.getInstance().dump(writer, SystemClock.elapsedRealtime());
+
+        GeofenceReconciler reconciler = GeofenceReconciler.getInstance(this);
+        GeofenceRestorer restorer = GeofenceRestorer.getInstance(this);
+        writer.write(String.format(Locale.ROOT, "%nregistrations settled=%b window=%d catalog=%d%n",
+                reconciler.isSettled(), GeofenceWindowManager.getInstance(this).getWindowIds().size(),
+                FenceRegistry.getDefault().size()));
+        if (restorer.getLastReason() != null) {
+            writer.write(String.format(Locale.ROOT, "last restore: %d fences after %s in %d ms (%d ms since boot)%n",
+                    restorer.getLastFenceCount(), restorer.getLastReason(), restorer.getLastDurationMillis(),
+                    restorer.getLastArmedSinceBootMillis()));
+        }
+
+        RingTracer tracer = RingTracer.getInstance();
+        writer.write(String.format(Locale.ROOT, "%ntrace (%d records, ms before the newest)%n",
+                tracer.getRecordCount()));
+        tracer.dump(writer);
+    }
+
+    // App-specific external storage needs no permission and can be read with adb
+    private void dumpToFile() {
+        // The report formats thousands of trace lines; keep it and the disk off the UI thread
+        ioExecutor.execute(() -> {
+            File directory = getExternalFilesDir(null);
+            if (directory == null) {
+                directory = getFilesDir();
+            }
+            String name = "metrics-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".txt";
+            File file = new File(directory, name);
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writeReport(writer);
+                showToast(getString(R.string.metrics_dumped, file.getAbsolutePath()));
+            } catch (IOException e) {
+                showToast(getString(R.string.metrics_dump_failed, e.getMessage()));
+            }
+        });
+    }
+
+    private void showToast(final String message) {
+        runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_LONG).show());
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.geofenceapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Woken by the single alarm {@link DwellMonitor} keeps at its earliest
+ * dwell deadline, and by the alarm {@link GeofenceEventPipeline} keeps at its
+ * earliest deferred transition; the checks and any alerts run on the
+ * pipeline worker.
+ */
+public class DwellAlarmReceiver extends BroadcastReceiver {
+    private static final String TAG = "DwellAlarmReceiver";
+
+    private static final int TRACE_RECEIVED = RingTracer.defineEvent(TAG, "onReceive");
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        RingTracer.getInstance().trace(TRACE_RECEIVED);
+        PendingResult pendingResult = goAsync();
+        GeofenceEventPipeline.getInstance().submitDwellCheck(context.getApplicationContext(), pendingResult);
+    }
+}
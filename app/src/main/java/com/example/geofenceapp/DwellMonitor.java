@@ -0,0 +1,284 @@
+package com.example.geofenceapp;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects DWELL locally instead of relying on Play Services. A confirmed
+ * ENTER arms a timer for the fence's loitering delay and a confirmed EXIT
+ * cancels it; a fence whose timer runs out has been dwelled in. Timers sit
+ * on a {@link TimerWheel}, so arming and cancelling stay O(1) with thousands
+ * of occupied fences, and one alarm at the wheel's next deadline wakes
+ * {@link DwellAlarmReceiver} instead of one alarm per fence.
+ *
+ * Armed timers are persisted, so a dwell still fires if the process is
+ * killed in between; they are dropped after a reboot, when every fence is
+ * registered again and occupancy starts over. Times are elapsedRealtime().
+ */
+public class DwellMonitor {
+    private static final String TAG = "DwellMonitor";
+
+    // Dwell is reported up to this much late
+    private static final long TICK_MS = 1000;
+
+    private static final String PREFS_NAME = "dwell_monitor";
+    private static final String KEY_ARMED = "armed";
+    private static final String KEY_BOOT_ID = "boot_id";
+    // Boots seen by BootReceiver, for devices without a system boot count
+    private static final String KEY_BOOTS_SEEN = "boots_seen";
+
+    private static final int TRACE_ARMED = RingTracer.defineEvent(TAG, "Dwell timer for %1$s armed, %5$d ms");
+    private static final int TRACE_CANCELLED = RingTracer.defineEvent(TAG, "Dwell timer for %1$s cancelled");
+    private static final int TRACE_ALARM = RingTracer.defineEvent(TAG,
+            "Dwell alarm in %5$d ms for %2$.0f armed fences");
+
+    private static DwellMonitor instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final AlarmManager alarmManager;
+    private final RingTracer tracer = RingTracer.getInstance();
+    private final TimerWheel wheel;
+    private final IntList expired = new IntList();
+
+    // Armed fences by slot; the slot is the timer's payload
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final IntList freeSlots = new IntList();
+    private String[] ids = new String[64];
+    private long[] deadlines = new long[64];
+    private int[] timers = new int[64];
+    private int slotCount;
+
+    private long alarmMillis = Long.MAX_VALUE;
+    private PendingIntent alarmIntent;
+
+    public static synchronized DwellMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new DwellMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DwellMonitor(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        this.wheel = new TimerWheel(TICK_MS, SystemClock.elapsedRealtime());
+        restore();
+    }
+
+    /**
+     * Start timing a visit. Re-arming a fence restarts its timer.
+     *
+     * @param fenceId              Fence ID
+     * @param loiteringDelayMillis Time inside the fence before it counts as dwelled in
+     * @param nowMillis            elapsedRealtime() of the ENTER
+     */
+    public synchronized void arm(String fenceId, long loiteringDelayMillis, long nowMillis) {
+        disarm(fenceId);
+        long deadline = nowMillis + loiteringDelayMillis;
+        add(fenceId, deadline);
+        tracer.trace(TRACE_ARMED, tracer.fenceIndex(fenceId), loiteringDelayMillis);
+        save();
+        if (deadline < alarmMillis) {
+            setAlarm(deadline);
+        }
+    }
+
+    /**
+     * Stop timing a visit, e.g. on EXIT
+     *
+     * @return true if a timer was armed for the fence
+     */
+    public synchronized boolean cancel(String fenceId) {
+        if (!disarm(fenceId)) {
+            return false;
+        }
+        tracer.trace(TRACE_CANCELLED, tracer.fenceIndex(fenceId), 0);
+        save();
+        // The alarm is left alone; if this was the earliest timer, the wakeup finds nothing and moves on
+        return true;
+    }
+
+    /**
+     * Collect the fences whose loitering delay has passed and set the alarm
+     * for the next one
+     *
+     * @param nowMillis elapsedRealtime()
+     * @param dwelled   Receives the IDs of the fences dwelled in, earliest first
+     */
+    public synchronized void poll(long nowMillis, List<String> dwelled) {
+        expired.clear();
+        wheel.advance(nowMillis, expired);
+        for (int i = 0, n = expired.size(); i < n; i++) {
+            int slot = expired.get(i);
+            dwelled.add(ids[slot]);
+            release(slot);
+        }
+        if (!expired.isEmpty()) {
+            save();
+        }
+        updateAlarm();
+    }
+
+    /**
+     * @return elapsedRealtime() the fence's timer runs out, or -1 if none is armed
+     */
+    public synchronized long getDeadline(String fenceId) {
+        Integer slot = slotsById.get(fenceId);
+        return slot != null ? deadlines[slot] : -1;
+    }
+
+    /**
+     * Number of fences with a dwell timer running
+     */
+    public synchronized int getArmedCount() {
+        return slotsById.size();
+    }
+
+    private void add(String fenceId, long deadlineMillis) {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.removeLast();
+        } else {
+            if (slotCount == ids.length) {
+                ids = Arrays.copyOf(ids, slotCount * 2);
+                deadlines = Arrays.copyOf(deadlines, slotCount * 2);
+                timers = Arrays.copyOf(timers, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        ids[slot] = fenceId;
+        deadlines[slot] = deadlineMillis;
+        timers[slot] = wheel.schedule(deadlineMillis, slot);
+        slotsById.put(fenceId, slot);
+    }
+
+    private boolean disarm(String fenceId) {
+        Integer slot = slotsById.get(fenceId);
+        if (slot == null) {
+            return false;
+        }
+        wheel.cancel(timers[slot]);
+        release(slot);
+        return true;
+    }
+
+    private void release(int slot) {
+        slotsById.remove(ids[slot]);
+        ids[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    // Set the single wakeup for the earliest timer. Finding it scans a slot of the wheel,
+    // so this runs once per wakeup rather than on every arm and cancel.
+    private void updateAlarm() {
+        long next = wheel.nextDeadline();
+        if (next != alarmMillis) {
+            setAlarm(next);
+        }
+    }
+
+    private void setAlarm(long next) {
+        if (alarmManager == null) {
+            return;
+        }
+        alarmMillis = next;
+        if (next == Long.MAX_VALUE) {
+            alarmManager.cancel(getAlarmIntent());
+            return;
+        }
+        tracer.trace(TRACE_ALARM, RingTracer.NO_FENCE, slotsById.size(), 0, 0,
+                next - SystemClock.elapsedRealtime());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // Inexact, but allowed in Doze without the exact-alarm permission
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, next, getAlarmIntent());
+        } else {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, next, getAlarmIntent());
+        }
+    }
+
+    private PendingIntent getAlarmIntent() {
+        if (alarmIntent == null) {
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                flags |= PendingIntent.FLAG_IMMUTABLE;
+            }
+            alarmIntent = PendingIntent.getBroadcast(context, 0, new Intent(context, DwellAlarmReceiver.class),
+                    flags);
+        }
+        return alarmIntent;
+    }
+
+    // Entries are "deadline:fenceId"; IDs may contain colons, deadlines don't
+    private void save() {
+        Set<String> armed = new HashSet<>(slotsById.size() * 2);
+        for (Map.Entry<String, Integer> entry : slotsById.entrySet()) {
+            armed.add(deadlines[entry.getValue()] + ":" + entry.getKey());
+        }
+        preferences.edit()
+                .putStringSet(KEY_ARMED, armed)
+                .putLong(KEY_BOOT_ID, bootId(context))
+                .apply();
+    }
+
+    private void restore() {
+        Set<String> armed = preferences.getStringSet(KEY_ARMED, null);
+        if (armed == null || armed.isEmpty()) {
+            return;
+        }
+        if (preferences.getLong(KEY_BOOT_ID, Long.MIN_VALUE) != bootId(context)) {
+            Log.d(TAG, "Dropping " + armed.size() + " dwell timers from before the last reboot");
+            preferences.edit().remove(KEY_ARMED).apply();
+            return;
+        }
+        for (String entry : armed) {
+            int separator = entry.indexOf(':');
+            try {
+                add(entry.substring(separator + 1), Long.parseLong(entry.substring(0, separator)));
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Ignoring malformed dwell timer: " + entry);
+            }
+        }
+        Log.d(TAG, "Restored " + slotsById.size() + " dwell timers");
+        updateAlarm();
+    }
+
+    /**
+     * Identifies the current boot, so elapsedRealtime() times can be saved
+     * with it and discarded after a reboot. Unlike a boot time derived from
+     * the wall clock, it does not change when the clock is set.
+     */
+    static long bootId(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            int bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+            if (bootCount >= 0) {
+                return bootCount;
+            }
+        }
+        // Negative, so it never matches a system boot count saved before an OS update
+        return -1 - context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getLong(KEY_BOOTS_SEEN, 0);
+    }
+
+    /**
+     * Count a boot for {@link #bootId(Context)} on devices without a system boot count
+     */
+    static void onBootCompleted(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        preferences.edit().putLong(KEY_BOOTS_SEEN, preferences.getLong(KEY_BOOTS_SEEN, 0) + 1).apply();
+    }
+}
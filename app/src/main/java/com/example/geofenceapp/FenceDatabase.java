@@ -0,0 +1,385 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent fence catalog. Circles are stored as center and radius; polygons
+ * additionally keep their vertices as a blob of latitude/longitude doubles.
+ * Bulk writes go through a {@link BatchWriter}, which reuses one compiled
+ * statement and commits every {@link #BATCH_SIZE} rows, so a 50k-fence import
+ * takes a few dozen transactions instead of one per fence. A fence's
+ * {@link FenceSchedule}, if it has one, is kept as its text.
+ */
+public class FenceDatabase extends SQLiteOpenHelper {
+    private static final String TAG = "FenceDatabase";
+
+    private static final String DATABASE_NAME = "fences.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_FENCES = "fences";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_LATITUDE = "latitude";
+    private static final String COLUMN_LONGITUDE = "longitude";
+    private static final String COLUMN_RADIUS = "radius";
+    private static final String COLUMN_TRANSITIONS = "transitions";
+    private static final String COLUMN_VERTICES = "vertices";
+    private static final String COLUMN_LOITERING_DELAY = "loitering_delay";
+    private static final String COLUMN_SCHEDULE = "schedule";
+
+    // Rows per transaction during bulk writes
+    static final int BATCH_SIZE = 1000;
+
+    // SQLite's default limit on bound parameters is 999
+    private static final int MAX_QUERY_ARGS = 500;
+
+    private static FenceDatabase instance;
+
+    private boolean registryLoaded;
+
+    /**
+     * Receives fences read from the database
+     */
+    public interface Visitor {
+        /**
+         * @param fence   The fence, or the enclosing circle of a polygon
+         * @param polygon The polygon, or null for a circular fence
+         */
+        void visit(Fence fence, PolygonFence polygon) throws IOException;
+    }
+
+    public static synchronized FenceDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new FenceDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FenceDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_FENCES + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_LATITUDE + " REAL NOT NULL, "
+                + COLUMN_LONGITUDE + " REAL NOT NULL, "
+                + COLUMN_RADIUS + " REAL NOT NULL, "
+                + COLUMN_TRANSITIONS + " INTEGER NOT NULL, "
+                + COLUMN_VERTICES + " BLOB, "
+                + COLUMN_LOITERING_DELAY + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_SCHEDULE + " TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_FENCES + " ADD COLUMN " + COLUMN_LOITERING_DELAY
+                    + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_FENCES + " ADD COLUMN " + COLUMN_SCHEDULE + " TEXT");
+        }
+    }
+
+    /**
+     * Start a bulk write; the caller must call {@link BatchWriter#commit()} and
+     * close the writer, or the last batch is rolled back
+     *
+     * @param mirror Registry that also receives every written fence, may be null
+     */
+    public BatchWriter openWriter(FenceRegistry mirror) {
+        return new BatchWriter(getWritableDatabase(), mirror);
+    }
+
+    /**
+     * Stream every stored fence without loading the catalog into memory
+     *
+     * @param visitor Receives each fence in turn
+     * @throws IOException If the visitor fails; iteration stops at that fence
+     */
+    public void forEach(Visitor visitor) throws IOException {
+        query(null, null, visitor);
+    }
+
+    private void query(String selection, String[] selectionArgs, Visitor visitor) throws IOException {
+        String[] columns = {COLUMN_ID, COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_RADIUS, COLUMN_TRANSITIONS,
+                COLUMN_VERTICES, COLUMN_LOITERING_DELAY};
+        try (Cursor cursor = getReadableDatabase().query(TABLE_FENCES, columns, selection, selectionArgs,
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(0);
+                int transitions = cursor.getInt(4);
+                int loiteringDelay = cursor.getInt(6);
+                if (!cursor.isNull(5)) {
+                    PolygonFence polygon = decodePolygon(id, cursor.getBlob(5), transitions, loiteringDelay);
+                    visitor.visit(polygon.toCircleFence(), polygon);
+                } else {
+                    visitor.visit(new Fence(id, cursor.getDouble(1), cursor.getDouble(2), cursor.getFloat(3),
+                            transitions, loiteringDelay), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream the stored fences with the given IDs; unknown IDs are skipped
+     *
+     * @param ids     Fence IDs
+     * @param visitor Receives each fence found
+     * @throws IOException If the visitor fails; iteration stops at that fence
+     */
+    public void forEach(Collection<String> ids, Visitor visitor) throws IOException {
+        List<String> batch = new ArrayList<>(MAX_QUERY_ARGS);
+        for (String id : ids) {
+            batch.add(id);
+            if (batch.size() == MAX_QUERY_ARGS) {
+                query(COLUMN_ID + " IN (" + placeholders(batch.size()) + ")",
+                        batch.toArray(new String[0]), visitor);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            query(COLUMN_ID + " IN (" + placeholders(batch.size()) + ")", batch.toArray(new String[0]), visitor);
+        }
+    }
+
+    /**
+     * Schedule text of every fence that has one
+     *
+     * @return Schedules by fence ID
+     */
+    public Map<String, String> getSchedules() {
+        Map<String, String> schedules = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_FENCES, new String[]{COLUMN_ID, COLUMN_SCHEDULE},
+                COLUMN_SCHEDULE + " IS NOT NULL", null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                schedules.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return schedules;
+    }
+
+    /**
+     * Number of stored fences
+     */
+    public long count() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_FENCES);
+    }
+
+    /**
+     * Delete a fence by ID
+     *
+     * @return true if a fence was deleted
+     */
+    public boolean delete(String id) {
+        return getWritableDatabase().delete(TABLE_FENCES, COLUMN_ID + " = ?", new String[]{id}) > 0;
+    }
+
+    /**
+     * Fill a registry with the stored catalog. Only the first call per process
+     * reads the database; later ones return immediately.
+     *
+     * @param registry Registry to fill
+     * @return Number of fences loaded by this call
+     */
+    public synchronized int loadInto(FenceRegistry registry) {
+        if (registryLoaded) {
+            return 0;
+        }
+        final int[] loaded = {0};
+        try {
+            forEach((fence, polygon) -> {
+                if (polygon != null) {
+                    registry.add(polygon);
+                } else {
+                    registry.add(fence);
+                }
+                loaded[0]++;
+            });
+        } catch (IOException e) {
+            // The visitor above never throws
+            Log.e(TAG, "Failed to load fences: " + e.getMessage());
+        }
+        registryLoaded = true;
+        Log.d(TAG, "Loaded " + loaded[0] + " fences into the registry");
+        return loaded[0];
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.toString();
+    }
+
+    private static byte[] encodeVertices(PolygonFence polygon) {
+        ByteBuffer buffer = ByteBuffer.allocate(polygon.getVertexCount() * 16);
+        for (int i = 0; i < polygon.getVertexCount(); i++) {
+            buffer.putDouble(polygon.getLatitude(i));
+            buffer.putDouble(polygon.getLongitude(i));
+        }
+        return buffer.array();
+    }
+
+    private static PolygonFence decodePolygon(String id, byte[] blob, int transitions, int loiteringDelay) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob);
+        int count = blob.length / 16;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = buffer.getDouble();
+            longitudes[i] = buffer.getDouble();
+        }
+        return new PolygonFence(id, latitudes, longitudes, transitions, loiteringDelay);
+    }
+
+    /**
+     * Inserts or replaces fences in batched transactions. Fences reach the
+     * mirror only once their batch is committed, so a failed write leaves the
+     * mirror matching the database. Not thread-safe.
+     */
+    public static final class BatchWriter implements FenceImporter.Sink, Closeable {
+        private final SQLiteDatabase db;
+        private final FenceRegistry mirror;
+        private final SQLiteStatement insert;
+        private final SQLiteStatement updateSchedule;
+        // Fences of the open batch, with their polygon or null, in write order
+        private final List<Fence> batchFences = new ArrayList<>();
+        private final List<PolygonFence> batchPolygons = new ArrayList<>();
+        private int pending;
+        private int written;
+        private int committed;
+        private boolean successful;
+
+        private BatchWriter(SQLiteDatabase db, FenceRegistry mirror) {
+            this.db = db;
+            this.mirror = mirror;
+            this.insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_FENCES + " ("
+                    + COLUMN_ID + ", " + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ", " + COLUMN_RADIUS + ", "
+                    + COLUMN_TRANSITIONS + ", " + COLUMN_VERTICES + ", " + COLUMN_LOITERING_DELAY
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+            // Replacing a row clears its schedule; this sets it again
+            this.updateSchedule = db.compileStatement("UPDATE " + TABLE_FENCES + " SET " + COLUMN_SCHEDULE
+                    + " = ? WHERE " + COLUMN_ID + " = ?");
+            db.beginTransactionNonExclusive();
+        }
+
+        @Override
+        public void onFence(Fence fence) {
+            bind(fence);
+            insert.bindNull(6);
+            batchFences.add(fence);
+            batchPolygons.add(null);
+            execute();
+        }
+
+        @Override
+        public void onPolygon(PolygonFence polygon) {
+            bind(polygon.toCircleFence());
+            insert.bindBlob(6, encodeVertices(polygon));
+            batchFences.add(polygon.toCircleFence());
+            batchPolygons.add(polygon);
+            execute();
+        }
+
+        @Override
+        public void onSchedule(String fenceId, FenceSchedule schedule) {
+            updateSchedule.bindString(1, schedule.toString());
+            updateSchedule.bindString(2, fenceId);
+            updateSchedule.executeUpdateDelete();
+        }
+
+        /**
+         * Number of fences written so far
+         */
+        public int getWrittenCount() {
+            return written;
+        }
+
+        /**
+         * Number of fences in committed batches
+         */
+        public int getCommittedCount() {
+            return committed;
+        }
+
+        /**
+         * Mark the write as complete, so closing commits the last batch
+         */
+        public void commit() {
+            successful = true;
+        }
+
+        /**
+         * Commit the last batch if {@link #commit()} was called, or roll it back.
+         * Batches committed before a failure are kept.
+         */
+        @Override
+        public void close() {
+            if (successful) {
+                commitBatch();
+            } else {
+                db.endTransaction();
+                batchFences.clear();
+                batchPolygons.clear();
+            }
+            insert.close();
+            updateSchedule.close();
+        }
+
+        private void bind(Fence fence) {
+            insert.bindString(1, fence.getId());
+            insert.bindDouble(2, fence.getLatitude());
+            insert.bindDouble(3, fence.getLongitude());
+            insert.bindDouble(4, fence.getRadius());
+            insert.bindLong(5, fence.getTransitionTypes());
+            insert.bindLong(7, fence.getLoiteringDelayMillis());
+        }
+
+        private void execute() {
+            insert.executeInsert();
+            written++;
+            if (++pending == BATCH_SIZE) {
+                commitBatch();
+                db.beginTransactionNonExclusive();
+            }
+        }
+
+        // Commit the open batch and mirror its fences
+        private void commitBatch() {
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            committed += pending;
+            pending = 0;
+            if (mirror != null) {
+                for (int i = 0; i < batchFences.size(); i++) {
+                    PolygonFence polygon = batchPolygons.get(i);
+                    if (polygon != null) {
+                        mirror.add(polygon);
+                    } else {
+                        mirror.add(batchFences.get(i));
+                    }
+                }
+            }
+            batchFences.clear();
+            batchPolygons.clear();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.geofenceapp;
+
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams the stored fence catalog out as CSV or GeoJSON, one fence at a time,
+ * in the formats read by {@link FenceImporter}. CSV has no polygon geometry, so
+ * polygons are written there as their enclosing circle.
+ */
+public class FenceExporter {
+    private static final String TAG = "FenceExporter";
+
+    public static final String CSV_HEADER = "id,latitude,longitude,radius,transitions,loitering_delay,schedule";
+
+    private final FenceDatabase database;
+
+    public FenceExporter(FenceDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Write every stored fence as a CSV row
+     *
+     * @param writer Destination, flushed but not closed
+     * @return Number of fences written
+     */
+    public int exportCsv(final Writer writer) throws IOException {
+        final int[] count = {0};
+        final Map<String, String> schedules = database.getSchedules();
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        database.forEach((fence, polygon) -> {
+            writer.write(quote(fence.getId()));
+            writer.write(String.format(Locale.ROOT, ",%.7f,%.7f,%.1f,%d,%d,", fence.getLatitude(),
+                    fence.getLongitude(), fence.getRadius(), fence.getTransitionTypes(),
+                    fence.getLoiteringDelayMillis()));
+            String schedule = schedules.get(fence.getId());
+            if (schedule != null) {
+                writer.write(quote(schedule));
+            }
+            writer.write('\n');
+            count[0]++;
+        });
+        writer.flush();
+        Log.d(TAG, "Exported " + count[0] + " fences as CSV");
+        return count[0];
+    }
+
+    /**
+     * Write every stored fence as a feature of a GeoJSON FeatureCollection
+     *
+     * @param writer Destination, flushed but not closed
+     * @return Number of fences written
+     */
+    public int exportGeoJson(Writer writer) throws IOException {
+        final int[] count = {0};
+        final Map<String, String> schedules = database.getSchedules();
+        final JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("type").value("FeatureCollection");
+        json.name("features").beginArray();
+        database.forEach((fence, polygon) -> {
+            json.beginObject();
+            json.name("type").value("Feature");
+            json.name("id").value(fence.getId());
+            json.name("geometry").beginObject();
+            if (polygon != null) {
+                json.name("type").value("Polygon");
+                json.name("coordinates").beginArray().beginArray();
+                for (int i = 0; i <= polygon.getVertexCount(); i++) {
+                    // GeoJSON rings repeat the first vertex at the end
+                    int vertex = i % polygon.getVertexCount();
+                    json.beginArray().value(polygon.getLongitude(vertex)).value(polygon.getLatitude(vertex)).endArray();
+                }
+                json.endArray().endArray();
+            } else {
+                json.name("type").value("Point");
+                json.name("coordinates").beginArray()
+                        .value(fence.getLongitude()).value(fence.getLatitude()).endArray();
+            }
+            json.endObject();
+            json.name("properties").beginObject();
+            if (polygon == null) {
+                json.name("radius").value(fence.getRadius());
+            }
+            json.name("transitions").value(fence.getTransitionTypes());
+            if (fence.getLoiteringDelayMillis() > 0) {
+                json.name("loiteringDelay").value(fence.getLoiteringDelayMillis());
+            }
+            if (schedules.containsKey(fence.getId())) {
+                json.name("schedule").value(schedules.get(fence.getId()));
+            }
+            json.endObject();
+            json.endObject();
+            count[0]++;
+        });
+        json.endArray();
+        json.endObject();
+        json.flush();
+        Log.d(TAG, "Exported " + count[0] + " fences as GeoJSON");
+        return count[0];
+    }
+
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.geofenceapp;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Streaming fence importer for CSV and GeoJSON. Input is parsed one row or
+ * feature at a time and handed to a {@link Sink}, so memory use does not grow
+ * with the file size apart from the set of IDs seen, which is kept to drop
+ * duplicates. Invalid entries are skipped and counted rather than failing the
+ * whole import; only malformed JSON aborts it.
+ *
+ * CSV rows are
+ * {@code id,latitude,longitude,radius[,transitions[,loitering_delay[,schedule]]]},
+ * with an optional header line and RFC 4180 quoting. GeoJSON may be a
+ * FeatureCollection or a single Feature; Points take their radius from the
+ * {@code radius} property and Polygons use their outer ring. The loitering
+ * delay, in milliseconds, is the {@code loiteringDelay} property in GeoJSON;
+ * 0 or absent means the app default. The optional {@code schedule} is a
+ * {@link FenceSchedule} in the local time zone; fences without one are
+ * always armed.
+ */
+public class FenceImporter {
+    private static final String TAG = "FenceImporter";
+
+    // Play Services rejects longer request IDs
+    private static final int MAX_ID_LENGTH = 100;
+
+    private static final int ALL_TRANSITIONS = TransitionTracker.TRANSITION_ENTER
+            | TransitionTracker.TRANSITION_EXIT | TransitionTracker.TRANSITION_DWELL;
+    private static final int DEFAULT_TRANSITIONS = TransitionTracker.TRANSITION_ENTER
+            | TransitionTracker.TRANSITION_EXIT;
+
+    // Invalid entries logged one by one before the rest are only counted
+    private static final int MAX_LOGGED_ERRORS = 20;
+
+    /**
+     * Receives each valid, previously unseen fence
+     */
+    public interface Sink {
+        void onFence(Fence fence);
+
+        void onPolygon(PolygonFence polygon);
+
+        /**
+         * Called right after the fence it belongs to
+         */
+        void onSchedule(String fenceId, FenceSchedule schedule);
+    }
+
+    /**
+     * Counts from one import
+     */
+    public static final class Result {
+        private int imported;
+        private int invalid;
+        private int duplicates;
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        @Override
+        public String toString() {
+            return imported + " imported, " + invalid + " invalid, " + duplicates + " duplicates";
+        }
+    }
+
+    private final Sink sink;
+    private final float defaultRadius;
+    private final Set<String> seenIds = new HashSet<>();
+    private final Feature feature = new Feature();
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private Result result;
+
+    public FenceImporter(Sink sink) {
+        this(sink, GeofenceSettings.DEFAULT_RADIUS);
+    }
+
+    /**
+     * @param sink          Receives the imported fences
+     * @param defaultRadius Radius in meters for GeoJSON points without a radius property
+     */
+    public FenceImporter(Sink sink, float defaultRadius) {
+        this.sink = sink;
+        this.defaultRadius = defaultRadius;
+    }
+
+    /**
+     * Guess the format from a file name or MIME type
+     *
+     * @return true for GeoJSON, false for CSV
+     */
+    public static boolean isGeoJson(String nameOrType) {
+        if (nameOrType == null) {
+            return false;
+        }
+        String lower = nameOrType.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".geojson") || lower.endsWith(".json") || lower.endsWith("json");
+    }
+
+    /**
+     * Import CSV rows
+     *
+     * @param reader Source, read to the end but not closed
+     */
+    public Result importCsv(Reader reader) throws IOException {
+        result = new Result();
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        int lineNumber = 0;
+        boolean first = true;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            splitCsv(line);
+            boolean header = first;
+            first = false;
+            if (fields.size() < 4) {
+                reject("line " + lineNumber, "expected id,latitude,longitude,radius");
+                continue;
+            }
+            double lat;
+            double lon;
+            float radius;
+            int transitions = DEFAULT_TRANSITIONS;
+            int loiteringDelay = 0;
+            String schedule = null;
+            try {
+                lat = Double.parseDouble(fields.get(1).trim());
+                lon = Double.parseDouble(fields.get(2).trim());
+                radius = Float.parseFloat(fields.get(3).trim());
+                if (fields.size() > 4 && !fields.get(4).trim().isEmpty()) {
+                    transitions = Integer.parseInt(fields.get(4).trim());
+                }
+                if (fields.size() > 5 && !fields.get(5).trim().isEmpty()) {
+                    loiteringDelay = Integer.parseInt(fields.get(5).trim());
+                }
+                if (fields.size() > 6 && !fields.get(6).trim().isEmpty()) {
+                    schedule = fields.get(6).trim();
+                }
+            } catch (NumberFormatException e) {
+                if (!header) {
+                    reject("line " + lineNumber, e.getMessage());
+                }
+                continue;
+            }
+            acceptCircle("line " + lineNumber, fields.get(0).trim(), lat, lon, radius, transitions, loiteringDelay,
+                    schedule);
+        }
+        Log.d(TAG, "CSV import: " + result);
+        return result;
+    }
+
+    /**
+     * Import a GeoJSON FeatureCollection or Feature
+     *
+     * @param reader Source, read to the end but not closed
+     */
+    public Result importGeoJson(Reader reader) throws IOException {
+        result = new Result();
+        JsonReader json = new JsonReader(reader);
+        int index = 0;
+        boolean collection = false;
+        feature.reset();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("features".equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                collection = true;
+                json.beginArray();
+                while (json.hasNext()) {
+                    feature.reset();
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        readFeatureMember(json, json.nextName());
+                    }
+                    json.endObject();
+                    acceptFeature("feature " + index++);
+                }
+                json.endArray();
+            } else {
+                readFeatureMember(json, name);
+            }
+        }
+        json.endObject();
+        // A bare Feature rather than a collection
+        if (!collection && "Feature".equals(feature.type)) {
+            acceptFeature("feature 0");
+        }
+        Log.d(TAG, "GeoJSON import: " + result);
+        return result;
+    }
+
+    private void readFeatureMember(JsonReader json, String name) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.skipValue();
+            return;
+        }
+        switch (name) {
+            case "type":
+                feature.type = json.nextString();
+                break;
+            case "id":
+                feature.id = json.nextString();
+                break;
+            case "properties":
+                readProperties(json);
+                break;
+            case "geometry":
+                readGeometry(json);
+                break;
+            default:
+                json.skipValue();
+                break;
+        }
+    }
+
+    private void readProperties(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+            } else if ("id".equals(name)) {
+                feature.propertyId = json.nextString();
+            } else if ("radius".equals(name)) {
+                feature.radius = json.nextDouble();
+            } else if ("transitions".equals(name)) {
+                feature.transitions = json.nextInt();
+            } else if ("loiteringDelay".equals(name)) {
+                feature.loiteringDelay = json.nextInt();
+            } else if ("schedule".equals(name)) {
+                feature.schedule = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readGeometry(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("type".equals(name)) {
+                feature.geometryType = json.nextString();
+            } else if ("coordinates".equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                readCoordinates(json);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    // Reads a Point position or the outer ring of a Polygon; anything else is marked unsupported
+    private void readCoordinates(JsonReader json) throws IOException {
+        json.beginArray();
+        if (json.peek() == JsonToken.NUMBER) {
+            feature.lon = json.nextDouble();
+            feature.lat = json.hasNext() ? json.nextDouble() : Double.NaN;
+            feature.hasPoint = true;
+            skipRest(json);
+            return;
+        }
+        // Empty coordinates, or a position that is neither a number nor a ring
+        if (json.peek() != JsonToken.BEGIN_ARRAY) {
+            feature.unsupported = true;
+            skipRest(json);
+            return;
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() != JsonToken.BEGIN_ARRAY) {
+                feature.unsupported = true;
+                skipRest(json);
+                skipRest(json);
+                return;
+            }
+            json.beginArray();
+            if (json.peek() != JsonToken.NUMBER) {
+                feature.unsupported = true;
+                skipRest(json);
+                skipRest(json);
+                skipRest(json);
+                return;
+            }
+            double lon = json.nextDouble();
+            double lat = json.hasNext() ? json.nextDouble() : Double.NaN;
+            feature.addVertex(lat, lon);
+            skipRest(json);
+        }
+        json.endArray();
+        // Holes are not supported; the outer ring alone bounds the fence
+        skipRest(json);
+    }
+
+    private static void skipRest(JsonReader json) throws IOException {
+        while (json.hasNext()) {
+            json.skipValue();
+        }
+        json.endArray();
+    }
+
+    private void acceptFeature(String where) {
+        String id = feature.id != null ? feature.id : feature.propertyId;
+        int transitions = feature.transitions != null ? feature.transitions : DEFAULT_TRANSITIONS;
+        int loiteringDelay = feature.loiteringDelay;
+        if (feature.unsupported) {
+            reject(where, "unsupported coordinates");
+        } else if ("Point".equals(feature.geometryType) && feature.hasPoint) {
+            double radius = feature.radius != null ? feature.radius : defaultRadius;
+            acceptCircle(where, id, feature.lat, feature.lon, (float) radius, transitions, loiteringDelay,
+                    feature.schedule);
+        } else if ("Polygon".equals(feature.geometryType) && feature.vertexCount > 0) {
+            acceptPolygon(where, id, transitions, loiteringDelay, feature.schedule);
+        } else {
+            reject(where, "unsupported geometry " + feature.geometryType);
+        }
+    }
+
+    private void acceptCircle(String where, String id, double lat, double lon, float radius, int transitions,
+                              int loiteringDelay, String schedule) {
+        String error = validate(id, transitions, loiteringDelay);
+        FenceSchedule fenceSchedule = null;
+        if (error == null && schedule != null) {
+            try {
+                fenceSchedule = FenceSchedule.parse(schedule, TimeZone.getDefault());
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+        if (error == null && !(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+            error = "coordinates out of range";
+        }
+        if (error == null && !(radius > 0 && !Float.isInfinite(radius))) {
+            error = "invalid radius " + radius;
+        }
+        if (error != null) {
+            reject(where, error);
+            return;
+        }
+        if (!seenIds.add(id)) {
+            result.duplicates++;
+            return;
+        }
+        sink.onFence(new Fence(id, lat, lon, radius, transitions, loiteringDelay));
+        if (fenceSchedule != null) {
+            sink.onSchedule(id, fenceSchedule);
+        }
+        result.imported++;
+    }
+
+    private void acceptPolygon(String where, String id, int transitions, int loiteringDelay, String schedule) {
+        String error = validate(id, transitions, loiteringDelay);
+        FenceSchedule fenceSchedule = null;
+        if (error == null && schedule != null) {
+            try {
+                fenceSchedule = FenceSchedule.parse(schedule, TimeZone.getDefault());
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+        PolygonFence polygon = null;
+        if (error == null) {
+            // The constructor checks the vertices
+            try {
+                polygon = new PolygonFence(id, Arrays.copyOf(feature.latitudes, feature.vertexCount),
+                        Arrays.copyOf(feature.longitudes, feature.vertexCount), transitions, loiteringDelay);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+        if (error != null) {
+            reject(where, error);
+            return;
+        }
+        if (!seenIds.add(id)) {
+            result.duplicates++;
+            return;
+        }
+        sink.onPolygon(polygon);
+        if (fenceSchedule != null) {
+            sink.onSchedule(id, fenceSchedule);
+        }
+        result.imported++;
+    }
+
+    private static String validate(String id, int transitions, int loiteringDelay) {
+        if (id == null || id.isEmpty()) {
+            return "missing ID";
+        }
+        if (id.length() > MAX_ID_LENGTH) {
+            return "ID longer than " + MAX_ID_LENGTH + " characters";
+        }
+        if (transitions == 0 || (transitions & ~ALL_TRANSITIONS) != 0) {
+            return "invalid transitions " + transitions;
+        }
+        if (loiteringDelay < 0) {
+            return "invalid loitering delay " + loiteringDelay;
+        }
+        return null;
+    }
+
+    private void reject(String where, String reason) {
+        if (result.invalid++ < MAX_LOGGED_ERRORS) {
+            Log.w(TAG, "Skipping " + where + ": " + reason);
+        }
+    }
+
+    // Split one CSV line into the reused field list, honoring double-quoted fields
+    private void splitCsv(String line) {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    // Scratch state for the feature being parsed, reused across features
+    private static final class Feature {
+        String type;
+        String id;
+        String propertyId;
+        Double radius;
+        Integer transitions;
+        int loiteringDelay;
+        String schedule;
+        String geometryType;
+        boolean hasPoint;
+        boolean unsupported;
+        double lat;
+        double lon;
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        int vertexCount;
+
+        void reset() {
+            type = null;
+            id = null;
+            propertyId = null;
+            radius = null;
+            transitions = null;
+            loiteringDelay = 0;
+            schedule = null;
+            geometryType = null;
+            hasPoint = false;
+            unsupported = false;
+            vertexCount = 0;
+        }
+
+        void addVertex(double vertexLat, double vertexLon) {
+            if (vertexCount == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, vertexCount * 2);
+                longitudes = Arrays.copyOf(longitudes, vertexCount * 2);
+            }
+            latitudes[vertexCount] = vertexLat;
+            longitudes[vertexCount] = vertexLon;
+            vertexCount++;
+        }
+    }
+}
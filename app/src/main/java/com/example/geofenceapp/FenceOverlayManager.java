@@ -0,0 +1,239 @@
+package com.example.geofenceapp;
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps one map overlay per fence and updates it in place. Changes are
+ * queued and applied at most once per display frame, so a burst of edits,
+ * such as dragging the radius slider, costs one overlay update per frame
+ * instead of one per event. Overlays whose geometry is unchanged are left
+ * untouched, and the rest of the map is never cleared.
+ *
+ * Must be used from the main thread.
+ */
+public class FenceOverlayManager implements Choreographer.FrameCallback {
+    private final GoogleMap map;
+    private final int strokeColor;
+    private final int fillColor;
+    private final float strokeWidth;
+
+    private final Map<String, Overlay> overlays = new HashMap<>();
+    private final Map<String, Fence> pendingFences = new LinkedHashMap<>();
+    private final Map<String, PolygonFence> pendingPolygons = new HashMap<>();
+    private final Set<String> pendingRemovals = new HashSet<>();
+    private boolean frameScheduled;
+
+    /**
+     * @param map         Map to draw on
+     * @param strokeColor Outline color
+     * @param fillColor   Fill color
+     * @param strokeWidth Outline width in pixels
+     */
+    public FenceOverlayManager(GoogleMap map, int strokeColor, int fillColor, float strokeWidth) {
+        this.map = map;
+        this.strokeColor = strokeColor;
+        this.fillColor = fillColor;
+        this.strokeWidth = strokeWidth;
+    }
+
+    /**
+     * Show a circular fence, or move and resize its existing overlay
+     *
+     * @param fence Fence to show
+     */
+    public void show(Fence fence) {
+        pendingFences.put(fence.getId(), fence);
+        pendingPolygons.remove(fence.getId());
+        pendingRemovals.remove(fence.getId());
+        scheduleFrame();
+    }
+
+    /**
+     * Show a polygon fence, replacing any existing overlay with the same ID
+     *
+     * @param polygon Polygon to show
+     */
+    public void show(PolygonFence polygon) {
+        pendingFences.put(polygon.getId(), polygon.toCircleFence());
+        pendingPolygons.put(polygon.getId(), polygon);
+        pendingRemovals.remove(polygon.getId());
+        scheduleFrame();
+    }
+
+    /**
+     * Remove the overlay of a fence
+     *
+     * @param id Fence ID
+     */
+    public void hide(String id) {
+        pendingFences.remove(id);
+        pendingPolygons.remove(id);
+        pendingRemovals.add(id);
+        scheduleFrame();
+    }
+
+    /**
+     * Show exactly the given fences; overlays of other fences are removed and
+     * overlays of unchanged fences are kept as they are
+     *
+     * @param fences   Fences to show
+     * @param registry Registry to look up polygon outlines in, may be null
+     */
+    public void showOnly(Collection<Fence> fences, FenceRegistry registry) {
+        Set<String> keep = new HashSet<>();
+        for (Fence fence : fences) {
+            keep.add(fence.getId());
+            PolygonFence polygon = registry != null ? registry.getPolygon(fence.getId()) : null;
+            if (polygon != null) {
+                show(polygon);
+            } else {
+                show(fence);
+            }
+        }
+        List<String> stale = new ArrayList<>();
+        for (String id : overlays.keySet()) {
+            if (!keep.contains(id)) {
+                stale.add(id);
+            }
+        }
+        for (String id : stale) {
+            hide(id);
+        }
+    }
+
+    /**
+     * Remove every overlay right away
+     */
+    public void clear() {
+        pendingFences.clear();
+        pendingPolygons.clear();
+        pendingRemovals.clear();
+        for (Overlay overlay : overlays.values()) {
+            overlay.remove();
+        }
+        overlays.clear();
+    }
+
+    /**
+     * Number of overlays currently on the map
+     */
+    public int size() {
+        return overlays.size();
+    }
+
+    /**
+     * Apply all queued changes immediately instead of on the next frame
+     */
+    public void flush() {
+        for (String id : pendingRemovals) {
+            Overlay overlay = overlays.remove(id);
+            if (overlay != null) {
+                overlay.remove();
+            }
+        }
+        pendingRemovals.clear();
+
+        for (Iterator<Fence> it = pendingFences.values().iterator(); it.hasNext(); ) {
+            Fence fence = it.next();
+            it.remove();
+            PolygonFence polygon = pendingPolygons.remove(fence.getId());
+            Overlay overlay = overlays.get(fence.getId());
+            if (overlay != null && overlay.polygonFence == polygon) {
+                // Polygons are immutable, so the same object needs no redraw
+                if (polygon == null) {
+                    overlay.update(fence);
+                }
+                continue;
+            }
+            if (overlay != null) {
+                overlay.remove();
+            }
+            overlays.put(fence.getId(), polygon != null ? addPolygon(polygon) : addCircle(fence));
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        flush();
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private Overlay addCircle(Fence fence) {
+        Circle circle = map.addCircle(new CircleOptions()
+                .center(new LatLng(fence.getLatitude(), fence.getLongitude()))
+                .radius(fence.getRadius())
+                .strokeColor(strokeColor)
+                .fillColor(fillColor)
+                .strokeWidth(strokeWidth));
+        return new Overlay(fence, circle, null, null);
+    }
+
+    private Overlay addPolygon(PolygonFence polygonFence) {
+        PolygonOptions options = new PolygonOptions()
+                .strokeColor(strokeColor)
+                .fillColor(fillColor)
+                .strokeWidth(strokeWidth);
+        for (int i = 0; i < polygonFence.getVertexCount(); i++) {
+            options.add(new LatLng(polygonFence.getLatitude(i), polygonFence.getLongitude(i)));
+        }
+        return new Overlay(polygonFence.toCircleFence(), null, map.addPolygon(options), polygonFence);
+    }
+
+    private static final class Overlay {
+        private Fence fence;
+        private final Circle circle;
+        private final Polygon polygon;
+        private final PolygonFence polygonFence;
+
+        Overlay(Fence fence, Circle circle, Polygon polygon, PolygonFence polygonFence) {
+            this.fence = fence;
+            this.circle = circle;
+            this.polygon = polygon;
+            this.polygonFence = polygonFence;
+        }
+
+        // Only touch the properties that changed; each setter costs a render pass
+        void update(Fence next) {
+            if (next.getLatitude() != fence.getLatitude() || next.getLongitude() != fence.getLongitude()) {
+                circle.setCenter(new LatLng(next.getLatitude(), next.getLongitude()));
+            }
+            if (next.getRadius() != fence.getRadius()) {
+                circle.setRadius(next.getRadius());
+            }
+            fence = next;
+        }
+
+        void remove() {
+            if (circle != null) {
+                circle.remove();
+            }
+            if (polygon != null) {
+                polygon.remove();
+            }
+        }
+    }
+}
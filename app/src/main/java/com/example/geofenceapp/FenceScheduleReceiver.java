@@ -0,0 +1,34 @@
+package com.example.geofenceapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Woken by the single alarm {@link FenceScheduler} keeps at the next
+ * schedule edge. Changes to the clock or the time zone move every edge, so
+ * they have the schedules indexed again.
+ */
+public class FenceScheduleReceiver extends BroadcastReceiver {
+    private static final String TAG = "FenceScheduleReceiver";
+
+    public static final String ACTION_SCHEDULE_EDGE = "com.example.geofenceapp.ACTION_SCHEDULE_EDGE";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent == null) {
+            return;
+        }
+        FenceScheduler scheduler = FenceScheduler.getInstance(context.getApplicationContext());
+        String action = intent.getAction();
+        if (ACTION_SCHEDULE_EDGE.equals(action)) {
+            scheduler.onAlarm(goAsync());
+        } else if (Intent.ACTION_TIME_CHANGED.equals(action) || Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            Log.d(TAG, "Re-indexing schedules after " + action);
+            scheduler.reload(goAsync());
+        } else {
+            Log.w(TAG, "Unexpected action: " + action);
+        }
+    }
+}
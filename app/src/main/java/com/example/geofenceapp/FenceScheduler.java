@@ -0,0 +1,262 @@
+package com.example.geofenceapp;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Arms and disarms fences that carry a {@link FenceSchedule}. Instead of an
+ * alarm per fence, the active periods of every schedule over the next
+ * {@link #HORIZON_MS} are laid out in one {@link IntervalIndex}; a single
+ * alarm wakes {@link FenceScheduleReceiver} at the earliest upcoming edge,
+ * the fences whose periods started or ended since the last wakeup are
+ * flipped together and the geofence window is recomputed once, so all
+ * changes due at the same time reach the reconciler as one batch.
+ *
+ * Fences without a schedule are always active. Schedules are in wall-clock
+ * time and the local time zone; the index is rebuilt when either changes.
+ */
+public class FenceScheduler {
+    private static final String TAG = "FenceScheduler";
+
+    // How far ahead active periods are indexed; the index is rebuilt when the alarm reaches it
+    private static final long HORIZON_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static FenceScheduler instance;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final ExecutorService executor;
+    private PendingIntent alarmIntent;
+
+    // Guarded by this
+    private Map<String, FenceSchedule> schedules = new HashMap<>();
+    private TimeZone timeZone = TimeZone.getDefault();
+    private final Set<String> inactiveIds = new HashSet<>();
+    private final IntervalIndex activePeriods = new IntervalIndex();
+    private final IntList changed = new IntList();
+    private String[] slotIds = new String[0];
+    private long indexedMillis;
+    private long horizonMillis;
+    private boolean loaded;
+
+    public static synchronized FenceScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new FenceScheduler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FenceScheduler(Context context) {
+        this.context = context;
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "fence-scheduler"));
+        // Schedules live in the database; read them off the caller's thread
+        reload(null);
+    }
+
+    /**
+     * Read the schedules from the database again and rebuild the index, e.g.
+     * after an import or when the clock or time zone changed
+     *
+     * @param pendingResult Finished once the window is updated, may be null
+     */
+    public void reload(BroadcastReceiver.PendingResult pendingResult) {
+        executor.execute(() -> {
+            try {
+                TimeZone zone = TimeZone.getDefault();
+                Map<String, FenceSchedule> parsed = readSchedules(zone);
+                synchronized (this) {
+                    schedules = parsed;
+                    timeZone = zone;
+                    loaded = true;
+                }
+                rebuild(true);
+            } finally {
+                if (pendingResult != null) {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Flip the fences whose active periods started or ended since the last
+     * wakeup and set the alarm for the next edge
+     *
+     * @param pendingResult Finished once the window is updated, may be null
+     */
+    public void onAlarm(BroadcastReceiver.PendingResult pendingResult) {
+        executor.execute(() -> {
+            try {
+                rebuild(false);
+            } finally {
+                if (pendingResult != null) {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Check whether a fence should be armed now. Evaluated from its schedule,
+     * so it is exact even when the alarm is held back by Doze. In a process
+     * started for a geofence event the first call reads the schedules itself
+     * rather than waiting for {@link #reload}, so call this off the main thread.
+     *
+     * @param fenceId    Fence ID
+     * @param timeMillis Wall-clock time
+     */
+    public synchronized boolean isActive(String fenceId, long timeMillis) {
+        if (!loaded) {
+            timeZone = TimeZone.getDefault();
+            schedules = readSchedules(timeZone);
+            loaded = true;
+        }
+        FenceSchedule schedule = schedules.get(fenceId);
+        return schedule == null || schedule.isActive(timeMillis, timeZone);
+    }
+
+    /**
+     * IDs of the scheduled fences that are currently disarmed, as of the last wakeup
+     */
+    public synchronized Set<String> getInactiveIds() {
+        return new HashSet<>(inactiveIds);
+    }
+
+    /**
+     * Number of fences with a schedule
+     */
+    public synchronized int getScheduledCount() {
+        return schedules.size();
+    }
+
+    private Map<String, FenceSchedule> readSchedules(TimeZone zone) {
+        Map<String, String> specs = FenceDatabase.getInstance(context).getSchedules();
+        Map<String, FenceSchedule> parsed = new HashMap<>(specs.size() * 2);
+        for (Map.Entry<String, String> entry : specs.entrySet()) {
+            try {
+                parsed.put(entry.getKey(), FenceSchedule.parse(entry.getValue(), zone));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring schedule of " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        return parsed;
+    }
+
+    // Runs on the scheduler thread
+    private void rebuild(boolean full) {
+        long now = System.currentTimeMillis();
+        boolean windowChanged;
+        long nextEdge;
+        synchronized (this) {
+            // A clock set backwards, or a wakeup past the horizon, invalidates the index
+            if (full || now < indexedMillis || now >= horizonMillis) {
+                windowChanged = index(now);
+            } else {
+                windowChanged = flip(now);
+            }
+            indexedMillis = now;
+            nextEdge = Math.min(activePeriods.nextEdge(now), horizonMillis);
+            if (schedules.isEmpty()) {
+                nextEdge = Long.MAX_VALUE;
+            }
+        }
+        setAlarm(nextEdge);
+
+        if (windowChanged) {
+            FenceDatabase.getInstance(context).loadInto(FenceRegistry.getDefault());
+            GeofenceWindowManager.getInstance(context).refreshWindow();
+        }
+    }
+
+    // Lay out every schedule's active periods up to the horizon and recompute the inactive set
+    private boolean index(long now) {
+        activePeriods.clear();
+        horizonMillis = now + HORIZON_MS;
+        slotIds = new String[schedules.size()];
+        Set<String> inactive = new HashSet<>();
+        int slot = 0;
+        for (Map.Entry<String, FenceSchedule> entry : schedules.entrySet()) {
+            FenceSchedule schedule = entry.getValue();
+            slotIds[slot] = entry.getKey();
+            long start = now;
+            if (!schedule.isActive(now, timeZone)) {
+                inactive.add(entry.getKey());
+                start = schedule.nextChange(now, timeZone);
+            }
+            while (start < horizonMillis) {
+                long end = schedule.nextChange(start, timeZone);
+                activePeriods.add(start, Math.min(end, horizonMillis), slot);
+                start = end == Long.MAX_VALUE ? end : schedule.nextChange(end, timeZone);
+            }
+            slot++;
+        }
+        Log.d(TAG, "Indexed " + activePeriods.size() + " active periods of " + schedules.size()
+                + " schedules, " + inactive.size() + " inactive");
+        boolean windowChanged = !inactive.equals(inactiveIds);
+        inactiveIds.clear();
+        inactiveIds.addAll(inactive);
+        return windowChanged;
+    }
+
+    // Apply the period edges passed since the last wakeup; a fence may have crossed
+    // several while asleep, so its state is taken from the schedule
+    private boolean flip(long now) {
+        changed.clear();
+        activePeriods.startingIn(indexedMillis, now, changed);
+        activePeriods.endingIn(indexedMillis, now, changed);
+        boolean windowChanged = false;
+        for (int i = 0, n = changed.size(); i < n; i++) {
+            String id = slotIds[changed.get(i)];
+            if (schedules.get(id).isActive(now, timeZone)) {
+                windowChanged |= inactiveIds.remove(id);
+            } else {
+                windowChanged |= inactiveIds.add(id);
+            }
+        }
+        Log.d(TAG, changed.size() + " schedule edges due, " + inactiveIds.size() + " fences inactive");
+        return windowChanged;
+    }
+
+    private void setAlarm(long timeMillis) {
+        if (alarmManager == null) {
+            return;
+        }
+        if (timeMillis == Long.MAX_VALUE) {
+            alarmManager.cancel(getAlarmIntent());
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // Inexact, but allowed in Doze without the exact-alarm permission
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, timeMillis, getAlarmIntent());
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, timeMillis, getAlarmIntent());
+        }
+    }
+
+    private synchronized PendingIntent getAlarmIntent() {
+        if (alarmIntent == null) {
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                flags |= PendingIntent.FLAG_IMMUTABLE;
+            }
+            Intent intent = new Intent(context, FenceScheduleReceiver.class)
+                    .setAction(FenceScheduleReceiver.ACTION_SCHEDULE_EDGE);
+            alarmIntent = PendingIntent.getBroadcast(context, 0, intent, flags);
+        }
+        return alarmIntent;
+    }
+}
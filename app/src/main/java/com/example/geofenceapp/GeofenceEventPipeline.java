@@ -0,0 +1,741 @@
+package com.example.geofenceapp;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes geofence transition broadcasts on a dedicated worker thread.
+ * {@link GeofenceBroadcastReceiver} hands over the intent together with the
+ * receiver's {@link BroadcastReceiver.PendingResult}, so the main thread only
+ * pays for {@code goAsync()} and the hand-off. Every geofence in an event is
+ * handled in one batch and the time spent in each stage is logged. Transitions
+ * pass through a {@link TransitionDebouncer} first, so boundary flapping does
+ * not raise alerts. Confirmed ENTER and EXIT start and stop the fence's
+ * {@link DwellMonitor} timer, which raises DWELL later. Confirmed transitions
+ * are recorded in a {@link TransitionJournal} in the app's no-backup directory.
+ * Entering the circle of a polygon fence outside the polygon raises nothing;
+ * {@link PolygonWatcher} samples until the polygon is entered or the circle left.
+ *
+ * The debouncer's state is persisted after every change and the earliest
+ * pending deadline is backed by an alarm to {@link DwellAlarmReceiver}, so a
+ * deferred transition is still confirmed if the process is frozen or killed
+ * once the broadcast has finished.
+ */
+public class GeofenceEventPipeline {
+    private static final String TAG = "GeofenceEventPipeline";
+
+    // Events waiting beyond this are dropped instead of piling up behind a slow stage
+    private static final int MAX_QUEUED_EVENTS = 64;
+
+    // Stage indices, in processing order
+    static final int STAGE_QUEUE = 0;
+    static final int STAGE_PARSE = 1;
+    static final int STAGE_SETTINGS = 2;
+    static final int STAGE_DEBOUNCE = 3;
+    static final int STAGE_JOURNAL = 4;
+    static final int STAGE_NOTIFY = 5;
+    static final int STAGE_SOUND = 6;
+    static final int STAGE_VIBRATE = 7;
+    static final String[] STAGE_NAMES = {"queue", "parse", "settings", "debounce", "journal", "notify", "sound",
+            "vibrate"};
+
+    private static final String JOURNAL_DIRECTORY = "journal";
+
+    private static final String PREFS_NAME = "transition_debouncer";
+    private static final String KEY_STATES = "states";
+    private static final String KEY_BOOT_ID = "boot_id";
+    // Distinct from DwellMonitor's alarm, which goes to the same receiver
+    private static final int DEBOUNCE_ALARM_REQUEST_CODE = 1;
+
+    private static final int TRACE_EVENT = RingTracer.defineEvent(TAG,
+            "Transition %5$d for %2$.0f geofences");
+    private static final int TRACE_UNCONFIRMED = RingTracer.defineEvent(TAG,
+            "No transitions confirmed yet for %2$.0f geofences");
+    private static final int TRACE_OUTSIDE_POLYGON = RingTracer.defineEvent(TAG,
+            "Inside the circle of %1$s but outside its polygon");
+    private static final int TRACE_DEFERRED = RingTracer.defineEvent(TAG,
+            "Confirmed %5$d deferred transitions");
+    private static final int TRACE_PROCESSED = RingTracer.defineEvent(TAG,
+            "Processed %5$d geofences in %2$.0f us (notify %3$.0f us, sound %4$.0f us)");
+    private static final int TRACE_REFRESH = RingTracer.defineEvent(TAG,
+            "Refresh geofence exited, recomputing geofence window");
+    private static final int TRACE_VIBRATE = RingTracer.defineEvent(TAG, "Vibration started: %5$d");
+    private static final int TRACE_DWELLED = RingTracer.defineEvent(TAG, "%5$d fences dwelled in");
+
+    private static GeofenceEventPipeline instance;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+    private final GeofenceMetrics metrics = GeofenceMetrics.getInstance();
+    private final RingTracer tracer = RingTracer.getInstance();
+    private final TransitionDebouncer debouncer = new TransitionDebouncer();
+    private ScheduledFuture<?> pendingPoll;
+    private long debounceAlarmMillis = Long.MAX_VALUE;
+    private PendingIntent debounceAlarmIntent;
+    private boolean debouncerRestored;
+    private TransitionJournal journal;
+    private boolean journalFailed;
+
+    public static synchronized GeofenceEventPipeline getInstance() {
+        if (instance == null) {
+            instance = new GeofenceEventPipeline();
+        }
+        return instance;
+    }
+
+    private GeofenceEventPipeline() {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "geofence-worker");
+            thread.setPriority(Thread.NORM_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a geofence broadcast for processing
+     *
+     * @param context       Application context
+     * @param intent        Broadcast intent from Play Services
+     * @param receivedNanos elapsedRealtimeNanos() when the broadcast arrived
+     * @param pendingResult Result from goAsync(), finished once processing is done
+     */
+    public void submit(final Context context, final Intent intent, final long receivedNanos,
+                       final BroadcastReceiver.PendingResult pendingResult) {
+        metrics.onReceived(receivedNanos / 1000000L);
+        if (queuedEvents.incrementAndGet() > MAX_QUEUED_EVENTS) {
+            queuedEvents.decrementAndGet();
+            metrics.onDropped();
+            Log.e(TAG, "Geofence event dropped, " + MAX_QUEUED_EVENTS + " events already queued");
+            pendingResult.finish();
+            return;
+        }
+        executor.execute(() -> {
+            queuedEvents.decrementAndGet();
+            try {
+                process(context, intent, receivedNanos);
+            } catch (Exception e) {
+                metrics.onFailed();
+                Log.e(TAG, "Error processing geofence event: " + e.getMessage());
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    /**
+     * Queue a check for deferred transitions and fences whose loitering delay has passed
+     *
+     * @param context       Application context
+     * @param pendingResult Result from goAsync(), finished once the check is done
+     */
+    public void submitDwellCheck(final Context context, final BroadcastReceiver.PendingResult pendingResult) {
+        executor.execute(() -> {
+            try {
+                pollDebouncer(context);
+                checkDwell(context);
+            } catch (Exception e) {
+                metrics.onFailed();
+                Log.e(TAG, "Error checking dwell timers: " + e.getMessage());
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    /**
+     * Queue a fix sampled by {@link PolygonWatcher} for checking against the watched polygons
+     *
+     * @param context       Application context
+     * @param location      The fix
+     * @param pendingResult Result from goAsync(), finished once the check is done
+     */
+    public void submitPolygonFix(final Context context, final Location location,
+                                 final BroadcastReceiver.PendingResult pendingResult) {
+        executor.execute(() -> {
+            try {
+                checkPolygons(context, location);
+            } catch (Exception e) {
+                metrics.onFailed();
+                Log.e(TAG, "Error checking polygon fences: " + e.getMessage());
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    /**
+     * Reset the debouncing and dwell state of a fence that was re-registered or removed
+     *
+     * @param context    Application context
+     * @param geofenceId Fence ID
+     */
+    public void forgetGeofence(Context context, String geofenceId) {
+        restoreDebouncer(context);
+        debouncer.forget(geofenceId);
+        saveDebouncer(context);
+        DwellMonitor.getInstance(context).cancel(geofenceId);
+        PolygonWatcher.getInstance(context).unwatch(geofenceId);
+    }
+
+    /**
+     * Mark the catalog fences this pipeline has confirmed ENTER for as occupied
+     * in a stream's detector, so the stream doesn't alert for them again.
+     * Fences with a dwell timer still running keep their entry time.
+     *
+     * @param context  Application context
+     * @param detector Detector to seed, before it sees any fix
+     */
+    void seedOccupancy(Context context, TransitionDetector detector) {
+        restoreDebouncer(context);
+        List<String> inside = new ArrayList<>();
+        debouncer.insideFences(inside);
+        DwellMonitor dwellMonitor = DwellMonitor.getInstance(context);
+        long now = SystemClock.elapsedRealtime();
+        for (String geofenceId : inside) {
+            Fence fence = FenceRegistry.getDefault().get(geofenceId);
+            if (fence == null) {
+                continue;
+            }
+            long deadline = dwellMonitor.getDeadline(geofenceId);
+            if (deadline >= 0) {
+                detector.markOccupied(fence, deadline - getLoiteringDelay(fence), false);
+            } else {
+                detector.markOccupied(fence, now, true);
+            }
+        }
+    }
+
+    /**
+     * Record a transition the {@link LocationStream} alerted for, so the same
+     * transition from Play Services is filtered as a duplicate and DWELL is
+     * still timed once the stream stops
+     *
+     * @param context    Application context
+     * @param transition Transition detected by the stream
+     */
+    void onStreamTransition(Context context, FenceTransition transition) {
+        restoreDebouncer(context);
+        String geofenceId = transition.getFenceId();
+        DwellMonitor dwellMonitor = DwellMonitor.getInstance(context);
+        switch (transition.getTransition()) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                debouncer.confirm(geofenceId, TransitionDebouncer.TRANSITION_ENTER);
+                Fence fence = FenceRegistry.getDefault().get(geofenceId);
+                if (fence != null && (fence.getTransitionTypes() & Geofence.GEOFENCE_TRANSITION_DWELL) != 0) {
+                    dwellMonitor.arm(geofenceId, getLoiteringDelay(fence), transition.getFix().getTimeMillis());
+                }
+                break;
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                debouncer.confirm(geofenceId, TransitionDebouncer.TRANSITION_EXIT);
+                dwellMonitor.cancel(geofenceId);
+                break;
+            default:
+                dwellMonitor.cancel(geofenceId);
+                return;
+        }
+        saveDebouncer(context);
+    }
+
+    /**
+     * Get the transition journal, opening it on first use
+     *
+     * @param context Application context
+     * @return The journal, or null if it could not be opened
+     */
+    public synchronized TransitionJournal getJournal(Context context) {
+        if (journal == null && !journalFailed) {
+            try {
+                // History is device-specific and too large for the backup quota
+                journal = TransitionJournal.open(new File(context.getNoBackupFilesDir(), JOURNAL_DIRECTORY),
+                        TransitionJournal.DEFAULT_CAPACITY);
+            } catch (IOException e) {
+                // Don't retry on every event; alerts still work without history
+                journalFailed = true;
+                Log.e(TAG, "Could not open transition journal: " + e.getMessage());
+            }
+        }
+        return journal;
+    }
+
+    private void process(Context context, Intent intent, long receivedNanos) {
+        long[] stageNanos = new long[STAGE_NAMES.length];
+        long stageStart = SystemClock.elapsedRealtimeNanos();
+        stageNanos[STAGE_QUEUE] = stageStart - receivedNanos;
+
+        // The process may have been started for this event; polygon checks and
+        // window updates need the imported catalog
+        FenceDatabase.getInstance(context).loadInto(FenceRegistry.getDefault());
+
+        GeofencingEvent geofencingEvent = GeofencingEvent.fromIntent(intent);
+
+        if (geofencingEvent == null) {
+            Log.e(TAG, "Geofencing Event is null");
+            return;
+        }
+
+        if (geofencingEvent.hasError()) {
+            String errorMessage = GeofenceStatusCodes.getStatusCodeString(geofencingEvent.getErrorCode());
+            Log.e(TAG, "Geofencing Error: " + errorMessage);
+            // Play Services removes every geofence when location is turned off
+            if (geofencingEvent.getErrorCode()
+                    == com.google.android.gms.location.GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE) {
+                GeofenceRestorer.getInstance(context).markLost();
+            }
+            return;
+        }
+
+        int geofenceTransition = geofencingEvent.getGeofenceTransition();
+
+        // DWELL is timed locally by DwellMonitor; ignore it from fences registered before that
+        if (geofenceTransition != Geofence.GEOFENCE_TRANSITION_EXIT &&
+                geofenceTransition != Geofence.GEOFENCE_TRANSITION_ENTER) {
+            return;
+        }
+
+        // Leaving the refresh geofence means the window of registered fences is stale
+        List<Geofence> triggeredGeofences = handleRefreshGeofence(context, geofencingEvent,
+                geofencingEvent.getTriggeringGeofences());
+        if (triggeredGeofences == null || triggeredGeofences.isEmpty()) {
+            return;
+        }
+
+        tracer.trace(TRACE_EVENT, RingTracer.NO_FENCE, triggeredGeofences.size(), 0, 0, geofenceTransition);
+
+        // Get the location that triggered the geofences
+        Location triggeringLocation = geofencingEvent.getTriggeringLocation();
+        String locationInfo = "";
+        if (triggeringLocation != null) {
+            locationInfo = " at location " +
+                    triggeringLocation.getLatitude() + ", " +
+                    triggeringLocation.getLongitude();
+        }
+        stageStart = endStage(stageNanos, STAGE_PARSE, stageStart);
+
+        SettingsSnapshot settings = SettingsRepository.getInstance(context).getSnapshot();
+        stageStart = endStage(stageNanos, STAGE_SETTINGS, stageStart);
+
+        // Suppress boundary flapping before any alert work is done
+        restoreDebouncer(context);
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>(triggeredGeofences.size());
+        long now = SystemClock.elapsedRealtime();
+        for (Geofence geofence : triggeredGeofences) {
+            String geofenceId = geofence.getRequestId();
+            int decision = debounce(context, geofenceId, geofenceTransition, triggeringLocation, settings, now);
+            if (decision != TransitionDebouncer.TRANSITION_NONE) {
+                confirmed.add(new TransitionDebouncer.Confirmation(geofenceId, decision));
+            }
+        }
+        saveDebouncer(context);
+        scheduleDebouncePoll(context);
+        confirmed = trackDwell(context, confirmed, now);
+        stageStart = endStage(stageNanos, STAGE_DEBOUNCE, stageStart);
+
+        if (confirmed.isEmpty()) {
+            tracer.trace(TRACE_UNCONFIRMED, RingTracer.NO_FENCE, triggeredGeofences.size(), 0, 0, 0);
+            recordMetrics(stageNanos, triggeringLocation, receivedNanos, 0);
+            return;
+        }
+        alert(context, settings, confirmed, triggeringLocation, locationInfo, stageNanos, stageStart, receivedNanos);
+    }
+
+    // Record confirmed transitions and raise notifications, sound and vibration for them
+    private void alert(Context context, SettingsSnapshot settings, List<TransitionDebouncer.Confirmation> confirmed,
+                       Location location, String locationInfo, long[] stageNanos, long stageStart,
+                       long receivedNanos) {
+        journal(context, confirmed, location);
+        stageStart = endStage(stageNanos, STAGE_JOURNAL, stageStart);
+
+        if (settings.isNotificationEnabled()) {
+            NotificationDispatcher dispatcher = NotificationDispatcher.getInstance(context);
+            long fixNanos = location != null ? location.getElapsedRealtimeNanos() : 0;
+            for (TransitionDebouncer.Confirmation confirmation : confirmed) {
+                dispatcher.post(confirmation.getFenceId(), confirmation.getTransition(),
+                        buildMessage(confirmation.getTransition(), confirmation.getFenceId(), locationInfo), fixNanos);
+            }
+        }
+        stageStart = endStage(stageNanos, STAGE_NOTIFY, stageStart);
+
+        // One alert per batch, however many geofences were crossed
+        if (settings.isSoundEnabled()) {
+            AlertSoundPlayer.getInstance(context).play();
+        }
+        stageStart = endStage(stageNanos, STAGE_SOUND, stageStart);
+
+        if (settings.isVibrationEnabled()) {
+            vibrate(context);
+        }
+        endStage(stageNanos, STAGE_VIBRATE, stageStart);
+
+        traceStageTimings(stageNanos, confirmed.size());
+        recordMetrics(stageNanos, location, receivedNanos, confirmed.size());
+    }
+
+    // Latencies are measured from the fix that triggered the event when there is one
+    private void recordMetrics(long[] stageNanos, Location location, long receivedNanos, int alertCount) {
+        long fixNanos = location != null ? location.getElapsedRealtimeNanos() : 0;
+        long deliveryNanos = -1;
+        long endToEndNanos = -1;
+        if (fixNanos > 0) {
+            endToEndNanos = SystemClock.elapsedRealtimeNanos() - fixNanos;
+            if (receivedNanos > 0) {
+                deliveryNanos = receivedNanos - fixNanos;
+            }
+        }
+        metrics.onProcessed(stageNanos, deliveryNanos, endToEndNanos, alertCount);
+    }
+
+    private void journal(Context context, List<TransitionDebouncer.Confirmation> confirmed, Location location) {
+        TransitionJournal transitionJournal = getJournal(context);
+        if (transitionJournal == null) {
+            return;
+        }
+        double latitude = location != null ? location.getLatitude() : Double.NaN;
+        double longitude = location != null ? location.getLongitude() : Double.NaN;
+        float accuracy = location != null && location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+        long now = System.currentTimeMillis();
+        try {
+            for (TransitionDebouncer.Confirmation confirmation : confirmed) {
+                transitionJournal.append(now, confirmation.getFenceId(), confirmation.getTransition(),
+                        latitude, longitude, accuracy);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not journal transitions: " + e.getMessage());
+        }
+    }
+
+    private int debounce(Context context, String geofenceId, int transition, Location location,
+                         SettingsSnapshot settings, long now) {
+        // The circle registered for a polygon fence is only a wake-up; the polygon decides
+        PolygonFence polygon = FenceRegistry.getDefault().getPolygon(geofenceId);
+        if (polygon != null) {
+            PolygonWatcher watcher = PolygonWatcher.getInstance(context);
+            if (transition == Geofence.GEOFENCE_TRANSITION_ENTER && location != null
+                    && !polygon.contains(location.getLatitude(), location.getLongitude())) {
+                tracer.trace(TRACE_OUTSIDE_POLYGON, tracer.fenceIndex(geofenceId), 0);
+                // Play Services stays silent until the circle is exited: sample until the polygon is
+                // entered, and filter the circle EXIT as the duplicate it is
+                debouncer.confirm(geofenceId, TransitionDebouncer.TRANSITION_EXIT);
+                watcher.watch(geofenceId);
+                return TransitionDebouncer.TRANSITION_NONE;
+            }
+            watcher.unwatch(geofenceId);
+            return debouncer.onTransition(geofenceId, transition, now);
+        }
+
+        if (location == null) {
+            return debouncer.onTransition(geofenceId, transition, now);
+        }
+
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : TransitionDebouncer.DEFAULT_MIN_MARGIN_METERS;
+        Fence fence = FenceRegistry.getDefault().get(geofenceId);
+        if (fence != null) {
+            return debouncer.onTransition(geofenceId, fence.getLatitude(), fence.getLongitude(), fence.getRadius(),
+                    transition, location.getLatitude(), location.getLongitude(), accuracy, now);
+        }
+        if (MapsActivity.GEOFENCE_ID.equals(geofenceId)) {
+            return debouncer.onTransition(geofenceId, settings.getLatitude(), settings.getLongitude(),
+                    settings.getRadius(), transition, location.getLatitude(), location.getLongitude(), accuracy, now);
+        }
+        return debouncer.onTransition(geofenceId, transition, now);
+    }
+
+    // Polygons entered are debounced like an ENTER reported without geometry
+    private void checkPolygons(Context context, Location location) {
+        // The process may have been started for this fix
+        FenceDatabase.getInstance(context).loadInto(FenceRegistry.getDefault());
+        List<String> entered = new ArrayList<>();
+        PolygonWatcher.getInstance(context).onFix(location, entered);
+        if (entered.isEmpty()) {
+            return;
+        }
+
+        restoreDebouncer(context);
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>(entered.size());
+        long now = SystemClock.elapsedRealtime();
+        for (String geofenceId : entered) {
+            int decision = debouncer.onTransition(geofenceId, Geofence.GEOFENCE_TRANSITION_ENTER, now);
+            if (decision != TransitionDebouncer.TRANSITION_NONE) {
+                confirmed.add(new TransitionDebouncer.Confirmation(geofenceId, decision));
+            }
+        }
+        saveDebouncer(context);
+        scheduleDebouncePoll(context);
+        confirmed = trackDwell(context, confirmed, now);
+        if (confirmed.isEmpty()) {
+            return;
+        }
+        SettingsSnapshot settings = SettingsRepository.getInstance(context).getSnapshot();
+        String locationInfo = " at location " + location.getLatitude() + ", " + location.getLongitude();
+        alert(context, settings, confirmed, location, locationInfo, new long[STAGE_NAMES.length],
+                SystemClock.elapsedRealtimeNanos(), -1);
+    }
+
+    // Confirm deferred transitions once their dwell time has passed. The executor is
+    // prompt while the process runs; the alarm covers it being frozen or killed.
+    private synchronized void scheduleDebouncePoll(final Context context) {
+        long deadline = debouncer.nextDeadline();
+        if (pendingPoll != null) {
+            pendingPoll.cancel(false);
+            pendingPoll = null;
+        }
+        if (deadline != Long.MAX_VALUE) {
+            long delay = Math.max(0, deadline - SystemClock.elapsedRealtime());
+            pendingPoll = executor.schedule(() -> pollDebouncer(context), delay, TimeUnit.MILLISECONDS);
+        }
+        if (deadline != debounceAlarmMillis) {
+            setDebounceAlarm(context, deadline);
+        }
+    }
+
+    private void setDebounceAlarm(Context context, long deadline) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
+        }
+        if (debounceAlarmIntent == null) {
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                flags |= PendingIntent.FLAG_IMMUTABLE;
+            }
+            debounceAlarmIntent = PendingIntent.getBroadcast(context, DEBOUNCE_ALARM_REQUEST_CODE,
+                    new Intent(context, DwellAlarmReceiver.class), flags);
+        }
+        debounceAlarmMillis = deadline;
+        if (deadline == Long.MAX_VALUE) {
+            alarmManager.cancel(debounceAlarmIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, debounceAlarmIntent);
+        } else {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, debounceAlarmIntent);
+        }
+    }
+
+    // Load the state saved by an earlier process, once; pending deadlines from before a reboot are void
+    private synchronized void restoreDebouncer(Context context) {
+        if (debouncerRestored) {
+            return;
+        }
+        debouncerRestored = true;
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> states = preferences.getStringSet(KEY_STATES, null);
+        if (states == null || states.isEmpty()) {
+            return;
+        }
+        if (preferences.getLong(KEY_BOOT_ID, Long.MIN_VALUE) != DwellMonitor.bootId(context)) {
+            Log.d(TAG, "Dropping " + states.size() + " debouncer states from before the last reboot");
+            preferences.edit().remove(KEY_STATES).apply();
+            return;
+        }
+        Log.d(TAG, "Restored " + debouncer.importStates(states) + " debouncer states");
+    }
+
+    // Synchronized so saves are applied in the order their states were exported
+    private synchronized void saveDebouncer(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putStringSet(KEY_STATES, debouncer.exportStates())
+                .putLong(KEY_BOOT_ID, DwellMonitor.bootId(context))
+                .apply();
+    }
+
+    private void pollDebouncer(Context context) {
+        restoreDebouncer(context);
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>();
+        long now = SystemClock.elapsedRealtime();
+        debouncer.poll(now, confirmed);
+        if (!confirmed.isEmpty()) {
+            saveDebouncer(context);
+        }
+        scheduleDebouncePoll(context);
+        confirmed = trackDwell(context, confirmed, now);
+        if (confirmed.isEmpty()) {
+            return;
+        }
+
+        tracer.trace(TRACE_DEFERRED, RingTracer.NO_FENCE, confirmed.size());
+        SettingsSnapshot settings = SettingsRepository.getInstance(context).getSnapshot();
+        alert(context, settings, confirmed, null, "", new long[STAGE_NAMES.length], SystemClock.elapsedRealtimeNanos(),
+                -1);
+    }
+
+    // Arm dwell timers on ENTER and cancel them on EXIT, then keep the transitions
+    // the fence asked for; fences wanting DWELL are registered for ENTER and EXIT too.
+    // Fences their schedule has disarmed may still report until the window catches up.
+    // Catalog fences are alerted by the LocationStream while it runs; their timers
+    // are still kept so DWELL follows once it stops.
+    private List<TransitionDebouncer.Confirmation> trackDwell(Context context,
+                                                              List<TransitionDebouncer.Confirmation> confirmed,
+                                                              long now) {
+        if (confirmed.isEmpty()) {
+            return confirmed;
+        }
+        DwellMonitor dwellMonitor = DwellMonitor.getInstance(context);
+        FenceScheduler scheduler = FenceScheduler.getInstance(context);
+        boolean streaming = LocationStream.getInstance(context).isRunning();
+        long wallClock = System.currentTimeMillis();
+        List<TransitionDebouncer.Confirmation> wanted = new ArrayList<>(confirmed.size());
+        for (TransitionDebouncer.Confirmation confirmation : confirmed) {
+            String geofenceId = confirmation.getFenceId();
+            if (!scheduler.isActive(geofenceId, wallClock)) {
+                dwellMonitor.cancel(geofenceId);
+                continue;
+            }
+            Fence fence = FenceRegistry.getDefault().get(geofenceId);
+            int transitionTypes = fence != null ? fence.getTransitionTypes()
+                    : Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT;
+            if (confirmation.getTransition() == Geofence.GEOFENCE_TRANSITION_ENTER) {
+                if ((transitionTypes & Geofence.GEOFENCE_TRANSITION_DWELL) != 0) {
+                    dwellMonitor.arm(geofenceId, getLoiteringDelay(fence), now);
+                }
+            } else {
+                dwellMonitor.cancel(geofenceId);
+            }
+            if ((transitionTypes & confirmation.getTransition()) != 0 && !(streaming && fence != null)) {
+                wanted.add(confirmation);
+            }
+        }
+        return wanted;
+    }
+
+    private static long getLoiteringDelay(Fence fence) {
+        return fence.getLoiteringDelayMillis() > 0 ? fence.getLoiteringDelayMillis()
+                : TransitionTracker.DEFAULT_LOITERING_DELAY_MS;
+    }
+
+    private void checkDwell(Context context) {
+        List<String> dwelled = new ArrayList<>();
+        DwellMonitor.getInstance(context).poll(SystemClock.elapsedRealtime(), dwelled);
+        if (dwelled.isEmpty()) {
+            return;
+        }
+
+        tracer.trace(TRACE_DWELLED, RingTracer.NO_FENCE, dwelled.size());
+        FenceScheduler scheduler = FenceScheduler.getInstance(context);
+        boolean streaming = LocationStream.getInstance(context).isRunning();
+        long wallClock = System.currentTimeMillis();
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>(dwelled.size());
+        for (String geofenceId : dwelled) {
+            if (!scheduler.isActive(geofenceId, wallClock)
+                    || (streaming && FenceRegistry.getDefault().get(geofenceId) != null)) {
+                continue;
+            }
+            confirmed.add(new TransitionDebouncer.Confirmation(geofenceId, Geofence.GEOFENCE_TRANSITION_DWELL));
+        }
+        if (confirmed.isEmpty()) {
+            return;
+        }
+        SettingsSnapshot settings = SettingsRepository.getInstance(context).getSnapshot();
+        alert(context, settings, confirmed, null, "", new long[STAGE_NAMES.length], SystemClock.elapsedRealtimeNanos(),
+                -1);
+    }
+
+    private static long endStage(long[] stageNanos, int stage, long stageStart) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        stageNanos[stage] = now - stageStart;
+        return now;
+    }
+
+    private void traceStageTimings(long[] stageNanos, int geofenceCount) {
+        long total = 0;
+        for (long nanos : stageNanos) {
+            total += nanos;
+        }
+        tracer.trace(TRACE_PROCESSED, RingTracer.NO_FENCE, total / 1000, stageNanos[STAGE_NOTIFY] / 1000,
+                stageNanos[STAGE_SOUND] / 1000, geofenceCount);
+    }
+
+    static String buildMessage(int geofenceTransition, String geofenceId, String locationInfo) {
+        String action;
+        switch (geofenceTransition) {
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                action = "exited";
+                break;
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                action = "stayed in";
+                break;
+            default:
+                action = "entered";
+                break;
+        }
+        return "You have " + action + " the geofence area " + geofenceId + locationInfo;
+    }
+
+    private List<Geofence> handleRefreshGeofence(Context context, GeofencingEvent geofencingEvent,
+                                                  List<Geofence> triggeredGeofences) {
+        if (triggeredGeofences == null) {
+            return null;
+        }
+
+        List<Geofence> userGeofences = new ArrayList<>(triggeredGeofences.size());
+        for (Geofence geofence : triggeredGeofences) {
+            if (GeofenceWindowManager.isRefreshGeofence(geofence.getRequestId())) {
+                Location location = geofencingEvent.getTriggeringLocation();
+                if (location != null) {
+                    tracer.trace(TRACE_REFRESH);
+                    GeofenceWindowManager.getInstance(context)
+                            .updateWindow(location.getLatitude(), location.getLongitude());
+                }
+            } else {
+                userGeofences.add(geofence);
+            }
+        }
+        return userGeofences;
+    }
+
+    void vibrate(Context context) {
+        try {
+            Vibrator vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+            if (vibrator != null && vibrator.hasVibrator()) {
+                // Vibrate pattern: wait 0ms, vibrate 1000ms, pause 500ms, vibrate 1000ms
+                long[] pattern = {0, 1000, 500, 1000};
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    vibrator.vibrate(VibrationEffect.createWaveform(pattern, -1));
+                } else {
+                    // For older devices
+                    vibrator.vibrate(pattern, -1);
+                }
+                tracer.trace(TRACE_VIBRATE, RingTracer.NO_FENCE, 1);
+            } else {
+                tracer.trace(TRACE_VIBRATE, RingTracer.NO_FENCE, 0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error triggering vibration: " + e.getMessage());
+        }
+    }
+
+    static String getTransitionString(int transitionType) {
+        switch (transitionType) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                return "GEOFENCE_TRANSITION_ENTER";
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                return "GEOFENCE_TRANSITION_EXIT";
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                return "GEOFENCE_TRANSITION_DWELL";
+            default:
+                return "UNKNOWN_TRANSITION_TYPE: " + transitionType;
+        }
+    }
+}
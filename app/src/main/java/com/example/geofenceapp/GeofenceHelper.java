@@ -13,8 +13,21 @@ import com.google.android.gms.location.GeofenceStatusCodes;
 import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.maps.model.LatLng;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class GeofenceHelper {
     private static final String TAG = "GeofenceHelper";
+
+    // Play Services rejects requests with more geofences than this
+    public static final int MAX_GEOFENCES_PER_REQUEST = 100;
+
+    private static final int TRACE_REQUEST = RingTracer.defineEvent(TAG,
+            "GeofencingRequest for %5$d geofences");
+    private static final int TRACE_GEOFENCE = RingTracer.defineEvent(TAG,
+            "Geofence %1$s at %2$.6f, %3$.6f radius %4$.0f m transitions %5$d");
+
+    private final RingTracer tracer = RingTracer.getInstance();
     private final Context context;
     private PendingIntent pendingIntent;
 
@@ -23,25 +36,74 @@ public class GeofenceHelper {
     }
 
     public GeofencingRequest getGeofencingRequest(Geofence geofence) {
-        Log.d(TAG, "Creating GeofencingRequest with INITIAL_TRIGGER_ENTER | INITIAL_TRIGGER_EXIT");
+        tracer.trace(TRACE_REQUEST, RingTracer.NO_FENCE, 1);
         return new GeofencingRequest.Builder()
                 .addGeofence(geofence)
                 .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER | GeofencingRequest.INITIAL_TRIGGER_EXIT)
                 .build();
     }
 
+    public GeofencingRequest getGeofencingRequest(List<Geofence> geofences, int initialTrigger) {
+        tracer.trace(TRACE_REQUEST, RingTracer.NO_FENCE, geofences.size());
+        return new GeofencingRequest.Builder()
+                .addGeofences(geofences)
+                .setInitialTrigger(initialTrigger)
+                .build();
+    }
+
+    /**
+     * Split geofences into requests that each stay within the per-request limit
+     *
+     * @param geofences      Geofences to register
+     * @param initialTrigger Initial trigger for every request
+     */
+    public List<GeofencingRequest> getGeofencingRequests(List<Geofence> geofences, int initialTrigger) {
+        List<GeofencingRequest> requests = new ArrayList<>();
+        for (int start = 0; start < geofences.size(); start += MAX_GEOFENCES_PER_REQUEST) {
+            int end = Math.min(geofences.size(), start + MAX_GEOFENCES_PER_REQUEST);
+            requests.add(getGeofencingRequest(geofences.subList(start, end), initialTrigger));
+        }
+        return requests;
+    }
+
+    public Geofence getGeofence(Fence fence) {
+        return getGeofence(fence.getId(), new LatLng(fence.getLatitude(), fence.getLongitude()),
+                fence.getRadius(), fence.getTransitionTypes());
+    }
+
+    /**
+     * Build the circular geofence that wakes the app near a polygon fence;
+     * containment in the polygon itself is checked locally
+     */
+    public Geofence getGeofence(PolygonFence polygon) {
+        return getGeofence(polygon.toCircleFence());
+    }
+
     public Geofence getGeofence(String ID, LatLng latLng, float radius, int transitionTypes) {
-        Log.d(TAG, "Creating Geofence with ID: " + ID + " at " + latLng.latitude + ", " + latLng.longitude +
-                " with radius: " + radius + "m and transitions: " + transitionTypes);
+        tracer.trace(TRACE_GEOFENCE, tracer.fenceIndex(ID), latLng.latitude, latLng.longitude, radius,
+                transitionTypes);
         return new Geofence.Builder()
                 .setCircularRegion(latLng.latitude, latLng.longitude, radius)
                 .setRequestId(ID)
-                .setTransitionTypes(transitionTypes)
-                .setLoiteringDelay(5000) // 5 seconds delay for DWELL transition
+                .setTransitionTypes(getRegisteredTransitions(transitionTypes))
                 .setExpirationDuration(Geofence.NEVER_EXPIRE)
                 .build();
     }
 
+    /**
+     * Transitions to register with Play Services for a fence. DWELL is timed
+     * locally by {@link DwellMonitor} from the ENTER and EXIT it is given.
+     *
+     * @param transitionTypes Transitions the fence reports
+     */
+    static int getRegisteredTransitions(int transitionTypes) {
+        if ((transitionTypes & Geofence.GEOFENCE_TRANSITION_DWELL) == 0) {
+            return transitionTypes;
+        }
+        return (transitionTypes & ~Geofence.GEOFENCE_TRANSITION_DWELL)
+                | Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT;
+    }
+
     public PendingIntent getPendingIntent() {
         if (pendingIntent != null) {
             return pendingIntent;
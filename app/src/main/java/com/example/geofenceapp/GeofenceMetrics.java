@@ -0,0 +1,223 @@
+package com.example.geofenceapp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide latency histograms and counters for the geofence event path,
+ * from the fix that triggered a geofence to the last alert it raised. Stage
+ * histograms follow {@link GeofenceEventPipeline#STAGE_NAMES}; the
+ * end-to-end histograms are measured against the triggering location's
+ * timestamp, so they include the time Play Services took to deliver the
+ * broadcast. The "notify" stage only queues alerts with
+ * {@link NotificationDispatcher}; the time until each is actually posted, after
+ * the coalescing window, is recorded separately.
+ */
+public final class GeofenceMetrics {
+    // Width of the window the event rate is averaged over
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private static GeofenceMetrics instance;
+
+    private final String[] stageNames;
+    private final LatencyHistogram[] stages;
+    private final LatencyHistogram delivery = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram posting = new LatencyHistogram();
+    private final LatencyHistogram fixToPosted = new LatencyHistogram();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong alerts = new AtomicLong();
+
+    // Events per second over the last RATE_WINDOW_SECONDS, as a ring of per-second counts
+    private final long[] rateSeconds = new long[RATE_WINDOW_SECONDS];
+    private final long[] rateCounts = new long[RATE_WINDOW_SECONDS];
+
+    private long startMillis;
+
+    public static synchronized GeofenceMetrics getInstance() {
+        if (instance == null) {
+            instance = new GeofenceMetrics(GeofenceEventPipeline.STAGE_NAMES);
+        }
+        return instance;
+    }
+
+    GeofenceMetrics(String[] stageNames) {
+        this.stageNames = stageNames;
+        this.stages = new LatencyHistogram[stageNames.length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Count a broadcast as it arrives
+     *
+     * @param nowMillis Monotonic time in milliseconds
+     */
+    public void onReceived(long nowMillis) {
+        received.incrementAndGet();
+        long second = nowMillis / 1000;
+        int slot = (int) (second % RATE_WINDOW_SECONDS);
+        synchronized (rateCounts) {
+            if (rateSeconds[slot] != second) {
+                rateSeconds[slot] = second;
+                rateCounts[slot] = 0;
+            }
+            rateCounts[slot]++;
+        }
+    }
+
+    public void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    public void onFailed() {
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Record one processed event
+     *
+     * @param stageNanos    Time spent in each stage, 0 for stages that did not run
+     * @param deliveryNanos Time from the triggering fix to the broadcast, or negative if unknown
+     * @param endToEndNanos Time from the triggering fix to the end of processing, or negative if unknown
+     * @param alertCount    Number of transitions alerted for
+     */
+    public void onProcessed(long[] stageNanos, long deliveryNanos, long endToEndNanos, int alertCount) {
+        for (int i = 0; i < stages.length && i < stageNanos.length; i++) {
+            if (stageNanos[i] > 0) {
+                stages[i].record(stageNanos[i]);
+            }
+        }
+        if (deliveryNanos >= 0) {
+            delivery.record(deliveryNanos);
+        }
+        if (endToEndNanos >= 0) {
+            endToEnd.record(endToEndNanos);
+        }
+        alerts.addAndGet(alertCount);
+    }
+
+    /**
+     * Record one notification posted by {@link NotificationDispatcher}
+     *
+     * @param postingNanos     Time from queueing the alert to posting its notification
+     * @param fixToPostedNanos Time from the triggering fix to the notification, or negative if unknown
+     */
+    public void onNotified(long postingNanos, long fixToPostedNanos) {
+        posting.record(postingNanos);
+        if (fixToPostedNanos >= 0) {
+            fixToPosted.record(fixToPostedNanos);
+        }
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    public LatencyHistogram getDelivery() {
+        return delivery;
+    }
+
+    public LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+
+    public LatencyHistogram getPosting() {
+        return posting;
+    }
+
+    public LatencyHistogram getFixToPosted() {
+        return fixToPosted;
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getAlertCount() {
+        return alerts.get();
+    }
+
+    /**
+     * Average events per second over the last minute
+     *
+     * @param nowMillis Monotonic time in milliseconds, on the clock passed to {@link #onReceived(long)}
+     */
+    public double getEventsPerSecond(long nowMillis) {
+        long second = nowMillis / 1000;
+        long total = 0;
+        synchronized (rateCounts) {
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                if (second - rateSeconds[i] < RATE_WINDOW_SECONDS) {
+                    total += rateCounts[i];
+                }
+            }
+        }
+        return total / (double) RATE_WINDOW_SECONDS;
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        delivery.reset();
+        endToEnd.reset();
+        posting.reset();
+        fixToPosted.reset();
+        received.set(0);
+        dropped.set(0);
+        failed.set(0);
+        alerts.set(0);
+        synchronized (rateCounts) {
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                rateSeconds[i] = 0;
+                rateCounts[i] = 0;
+            }
+        }
+        startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Write a plain-text report of every counter and histogram
+     *
+     * @param writer    Destination, not closed
+     * @param nowMillis Monotonic time in milliseconds, for the event rate
+     */
+    public void dump(Writer writer, long nowMillis) throws IOException {
+        writer.write(String.format(Locale.ROOT, "Since %tF %<tT%n", startMillis));
+        writer.write(String.format(Locale.ROOT, "received=%d dropped=%d failed=%d alerts=%d rate=%.2f/s%n%n",
+                getReceivedCount(), getDroppedCount(), getFailedCount(), getAlertCount(),
+                getEventsPerSecond(nowMillis)));
+        writer.write(String.format(Locale.ROOT, "%-10s %8s %10s %10s %10s %10s%n",
+                "stage", "count", "p50 ms", "p99 ms", "max ms", "mean ms"));
+        for (int i = 0; i < stages.length; i++) {
+            writeRow(writer, stageNames[i], stages[i]);
+        }
+        writeRow(writer, "delivery", delivery);
+        writeRow(writer, "end2end", endToEnd);
+        writeRow(writer, "posting", posting);
+        writeRow(writer, "fix2post", fixToPosted);
+    }
+
+    private static void writeRow(Writer writer, String name, LatencyHistogram histogram) throws IOException {
+        writer.write(String.format(Locale.ROOT, "%-10s %8d %10.3f %10.3f %10.3f %10.3f%n", name,
+                histogram.getCount(), histogram.getValueAtQuantile(0.5) / 1e6,
+                histogram.getValueAtQuantile(0.99) / 1e6, histogram.getMaxNanos() / 1e6,
+                histogram.getMeanNanos() / 1e6));
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.geofenceapp;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single owner of the app's Play Services geofence registrations. Callers
+ * edit the desired set of fences; the reconciler compares it with the set
+ * Play Services last acknowledged and issues only the difference: one
+ * removeGeofences call followed by addGeofences in requests of at most 100.
+ *
+ * Only one pass runs at a time. Edits made while a pass is in flight, or
+ * within the same main-thread turn, are coalesced into the next pass, so a
+ * burst of edits costs one round of calls and an add followed by a remove of
+ * the same fence costs none. Failed passes are retried with exponential
+ * backoff, except for errors that retrying cannot fix. An edit made during
+ * the backoff runs the retry at once rather than waiting it out.
+ *
+ * Methods may be called from any thread; listeners run on the main thread.
+ */
+public class GeofenceReconciler {
+    private static final String TAG = "GeofenceReconciler";
+
+    private static final long INITIAL_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+    private static final String PREFS_NAME = "geofence_reconciler";
+    private static final String KEY_REGISTERED_IDS = "registered_ids";
+
+    public interface Listener {
+        /**
+         * Called after Play Services acknowledged a pass
+         *
+         * @param added   IDs that were added or replaced
+         * @param removed IDs that were removed
+         */
+        void onReconciled(Collection<String> added, Collection<String> removed);
+
+        /**
+         * Called when a pass failed
+         *
+         * @param e         The failure, may be null
+         * @param willRetry Whether the pass will be retried after a backoff
+         */
+        void onReconcileFailed(Exception e, boolean willRetry);
+    }
+
+    private static GeofenceReconciler instance;
+
+    private final Context context;
+    private final GeofencingClient geofencingClient;
+    private final GeofenceHelper geofenceHelper;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Fence> desired = new LinkedHashMap<>();
+    // Acknowledged registrations; a null value means registered with unknown geometry,
+    // e.g. restored after a restart or left by a partially failed add
+    private final Map<String, Fence> registered = new HashMap<>();
+
+    private boolean passScheduled;
+    // Whether the scheduled pass is a retry waiting out the backoff
+    private boolean retryScheduled;
+    private boolean inFlight;
+    private long backoffMillis;
+
+    private final Runnable passRunnable = this::runPass;
+
+    public static synchronized GeofenceReconciler getInstance(Context context) {
+        if (instance == null) {
+            instance = new GeofenceReconciler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private GeofenceReconciler(Context context) {
+        this.context = context;
+        this.geofencingClient = LocationServices.getGeofencingClient(context);
+        this.geofenceHelper = new GeofenceHelper(context);
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        // Registrations outlive the process; what they were is unknown until re-added
+        for (String id : preferences.getStringSet(KEY_REGISTERED_IDS, new HashSet<String>())) {
+            registered.put(id, null);
+            desired.put(id, null);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Register a fence, replacing any fence with the same ID
+     *
+     * @param fence Fence to register
+     */
+    public void put(Fence fence) {
+        update(Collections.singletonList(fence), Collections.<String>emptyList());
+    }
+
+    /**
+     * Unregister a fence
+     *
+     * @param id Fence ID
+     */
+    public void remove(String id) {
+        update(Collections.<Fence>emptyList(), Collections.singletonList(id));
+    }
+
+    /**
+     * Apply several edits as one change to the desired set. Removals are
+     * applied before additions.
+     *
+     * @param toPut    Fences to register or replace
+     * @param toRemove IDs to unregister
+     */
+    public synchronized void update(Collection<Fence> toPut, Collection<String> toRemove) {
+        for (String id : toRemove) {
+            desired.remove(id);
+        }
+        for (Fence fence : toPut) {
+            desired.put(fence.getId(), fence);
+        }
+        schedulePass(0);
+    }
+
+    /**
+     * Forget every acknowledged registration after Play Services dropped them,
+     * as it does on reboot, app update and when location is turned off.
+     * Fences kept from a previous process without their geometry leave the
+     * desired set; their owners have to put them again.
+     */
+    public synchronized void onRegistrationsLost() {
+        registered.clear();
+        for (Iterator<Fence> it = desired.values().iterator(); it.hasNext(); ) {
+            if (it.next() == null) {
+                it.remove();
+            }
+        }
+        saveRegisteredIds();
+        schedulePass(0);
+    }
+
+    /**
+     * Whether a fence is in the desired set
+     */
+    public synchronized boolean isDesired(String id) {
+        return desired.containsKey(id);
+    }
+
+    /**
+     * Whether a fence is desired with a different center, radius or
+     * transitions than the given version of it. Fences kept from a previous
+     * process without their geometry are not considered outdated.
+     *
+     * @param fence Current version of the fence
+     */
+    public synchronized boolean isOutdated(Fence fence) {
+        Fence current = desired.get(fence.getId());
+        return current != null && !current.equals(fence);
+    }
+
+    /**
+     * Whether Play Services has acknowledged the fence as registered
+     */
+    public synchronized boolean isRegistered(String id) {
+        return registered.containsKey(id);
+    }
+
+    /**
+     * Whether the acknowledged registrations match the desired set
+     */
+    public synchronized boolean isSettled() {
+        return !inFlight && computeRemovals().isEmpty() && computeAdditions().isEmpty();
+    }
+
+    private void schedulePass(long delayMillis) {
+        if (inFlight) {
+            // The completion of the current pass runs the next one
+            return;
+        }
+        if (delayMillis == 0 && passScheduled && !retryScheduled) {
+            return;
+        }
+        handler.removeCallbacks(passRunnable);
+        passScheduled = true;
+        retryScheduled = delayMillis > 0;
+        handler.postDelayed(passRunnable, delayMillis);
+    }
+
+    private synchronized void runPass() {
+        passScheduled = false;
+        retryScheduled = false;
+        if (inFlight) {
+            return;
+        }
+        final List<String> toRemove = computeRemovals();
+        final List<Fence> toAdd = computeAdditions();
+        if (toRemove.isEmpty() && toAdd.isEmpty()) {
+            backoffMillis = 0;
+            return;
+        }
+        if (!toAdd.isEmpty() && ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            // The next edit tries again
+            Log.w(TAG, "Location permission missing, not registering geofences");
+            return;
+        }
+
+        inFlight = true;
+        Log.d(TAG, "Reconciling: +" + toAdd.size() + " -" + toRemove.size());
+        if (toRemove.isEmpty()) {
+            addGeofences(toAdd, toRemove);
+            return;
+        }
+        // Remove first so the additions never push us over the Play Services limit
+        geofencingClient.removeGeofences(toRemove)
+                .addOnCompleteListener(task -> {
+                    if (!task.isSuccessful()) {
+                        onPassFailed(task.getException());
+                        return;
+                    }
+                    synchronized (GeofenceReconciler.this) {
+                        for (String id : toRemove) {
+                            registered.remove(id);
+                        }
+                    }
+                    addGeofences(toAdd, toRemove);
+                });
+    }
+
+    private List<String> computeRemovals() {
+        List<String> toRemove = new ArrayList<>();
+        for (String id : registered.keySet()) {
+            if (!desired.containsKey(id)) {
+                toRemove.add(id);
+            }
+        }
+        return toRemove;
+    }
+
+    private List<Fence> computeAdditions() {
+        List<Fence> toAdd = new ArrayList<>();
+        for (Fence fence : desired.values()) {
+            // Null entries were restored from a previous process and are still registered as they were
+            if (fence != null && !fence.equals(registered.get(fence.getId()))) {
+                toAdd.add(fence);
+            }
+        }
+        return toAdd;
+    }
+
+    private void addGeofences(final List<Fence> toAdd, final List<String> removed) {
+        if (toAdd.isEmpty()) {
+            onPassSucceeded(toAdd, removed);
+            return;
+        }
+        List<Geofence> geofences = new ArrayList<>(toAdd.size());
+        for (Fence fence : toAdd) {
+            geofences.add(geofenceHelper.getGeofence(fence));
+        }
+        List<Task<Void>> tasks = new ArrayList<>();
+        try {
+            for (GeofencingRequest request : geofenceHelper.getGeofencingRequests(geofences,
+                    GeofencingRequest.INITIAL_TRIGGER_ENTER)) {
+                tasks.add(geofencingClient.addGeofences(request, geofenceHelper.getPendingIntent()));
+            }
+        } catch (SecurityException e) {
+            onPassFailed(e);
+            return;
+        }
+        Tasks.whenAll(tasks).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                onPassSucceeded(toAdd, removed);
+                return;
+            }
+            // Some requests may have gone through; they are re-added or removed by the retry
+            synchronized (GeofenceReconciler.this) {
+                for (Fence fence : toAdd) {
+                    registered.put(fence.getId(), null);
+                }
+                saveRegisteredIds();
+            }
+            onPassFailed(task.getException());
+        });
+    }
+
+    private void onPassSucceeded(List<Fence> added, List<String> removed) {
+        List<String> addedIds = new ArrayList<>(added.size());
+        synchronized (this) {
+            for (Fence fence : added) {
+                registered.put(fence.getId(), fence);
+                addedIds.add(fence.getId());
+            }
+            saveRegisteredIds();
+            inFlight = false;
+            backoffMillis = 0;
+            // Edits made while this pass was in flight
+            schedulePass(0);
+        }
+        for (Listener listener : listeners) {
+            listener.onReconciled(addedIds, removed);
+        }
+    }
+
+    private void onPassFailed(Exception e) {
+        boolean retry = isRetryable(e);
+        synchronized (this) {
+            inFlight = false;
+            if (retry) {
+                backoffMillis = backoffMillis == 0 ? INITIAL_BACKOFF_MS : Math.min(MAX_BACKOFF_MS, backoffMillis * 2);
+                schedulePass(backoffMillis);
+            }
+        }
+        Log.e(TAG, "Geofence reconcile failed" + (retry ? ", retrying in " + backoffMillis / 1000 + " s" : "")
+                + ": " + (e != null ? geofenceHelper.getErrorString(e) : "unknown error"));
+        for (Listener listener : listeners) {
+            listener.onReconcileFailed(e, retry);
+        }
+    }
+
+    // Limits are not lifted by waiting; the next edit of the desired set tries again
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof SecurityException) {
+            return false;
+        }
+        if (e instanceof ApiException) {
+            int status = ((ApiException) e).getStatusCode();
+            return status != GeofenceStatusCodes.GEOFENCE_TOO_MANY_GEOFENCES
+                    && status != GeofenceStatusCodes.GEOFENCE_TOO_MANY_PENDING_INTENTS;
+        }
+        return true;
+    }
+
+    private void saveRegisteredIds() {
+        preferences.edit().putStringSet(KEY_REGISTERED_IDS, new HashSet<>(registered.keySet())).apply();
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Re-registers the persisted fences after Play Services dropped them, which
+ * it does on reboot, app update and when location is turned off.
+ *
+ * Only what was registered before is restored: the custom fence from the
+ * settings and the last geofence window. The window fences are read from the
+ * database by ID, so arming does not wait for the whole catalog; the catalog
+ * is loaded into the registry after the fences are armed. The time from the
+ * trigger until the reconciler has every fence acknowledged is recorded.
+ */
+public class GeofenceRestorer implements GeofenceReconciler.Listener {
+    private static final String TAG = "GeofenceRestorer";
+
+    public static final String REASON_BOOT = "boot";
+    public static final String REASON_PACKAGE_REPLACED = "package_replaced";
+    public static final String REASON_SERVICE_UNAVAILABLE = "service_unavailable";
+    public static final String REASON_LOCATION_ENABLED = "location_enabled";
+
+    // Broadcast receivers are killed after about 10 s; leave the rest to the reconciler
+    private static final long MAX_WAIT_MS = 9000;
+
+    private static final String PREFS_NAME = "geofence_restorer";
+    private static final String KEY_RESTORE_PENDING = "restore_pending";
+    private static final String KEY_LAST_REASON = "last_reason";
+    private static final String KEY_LAST_DURATION_MS = "last_duration_ms";
+    private static final String KEY_LAST_ARMED_SINCE_BOOT_MS = "last_armed_since_boot_ms";
+    private static final String KEY_LAST_FENCE_COUNT = "last_fence_count";
+
+    private static GeofenceRestorer instance;
+
+    private final Context context;
+    private final GeofenceReconciler reconciler;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+
+    // State of the restore in progress, guarded by this. A restore is in progress from
+    // being queued until it finishes; reason is set once its fences are handed over.
+    private boolean restoring;
+    private String reason;
+    private long startMillis;
+    private int fenceCount;
+    private final List<Runnable> onDone = new ArrayList<>();
+    private final Runnable timeout = () -> finish(false);
+
+    public static synchronized GeofenceRestorer getInstance(Context context) {
+        if (instance == null) {
+            instance = new GeofenceRestorer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private GeofenceRestorer(Context context) {
+        this.context = context;
+        this.reconciler = GeofenceReconciler.getInstance(context);
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "geofence-restore"));
+        reconciler.addListener(this);
+    }
+
+    /**
+     * Note that Play Services dropped the registrations while the app may not
+     * be able to restore them yet, e.g. because location is off; the next
+     * {@link #restoreIfNeeded()} restores them
+     */
+    public void markLost() {
+        reconciler.onRegistrationsLost();
+        preferences.edit().putBoolean(KEY_RESTORE_PENDING, true).apply();
+    }
+
+    /**
+     * Restore the fences if an earlier loss has not been repaired yet. Cheap
+     * when nothing is pending, so it can run on every cold start.
+     */
+    public void restoreIfNeeded() {
+        restoreIfNeeded(REASON_SERVICE_UNAVAILABLE, SystemClock.elapsedRealtime(), null);
+    }
+
+    /**
+     * Restore the fences if an earlier loss has not been repaired yet and no
+     * restore is in progress
+     *
+     * @param reason        Why the restore can run now, one of the REASON constants
+     * @param triggerMillis elapsedRealtime() when that was noticed
+     * @param onDone        Run once every fence is armed or the wait gave up, may be null
+     * @return true if a restore was started; otherwise onDone is not run
+     */
+    public boolean restoreIfNeeded(String reason, long triggerMillis, Runnable onDone) {
+        synchronized (this) {
+            if (restoring || !preferences.getBoolean(KEY_RESTORE_PENDING, false)) {
+                return false;
+            }
+            begin(onDone);
+        }
+        queue(reason, triggerMillis);
+        return true;
+    }
+
+    /**
+     * Re-register the persisted fences off the main thread. If a restore is
+     * already in progress it covers this one too, and onDone runs when it
+     * finishes.
+     *
+     * @param reason       Why the registrations were lost, one of the REASON constants
+     * @param triggerMillis elapsedRealtime() when the loss was noticed
+     * @param onDone       Run once every fence is armed or the wait gave up, may be null
+     */
+    public void restore(String reason, long triggerMillis, Runnable onDone) {
+        preferences.edit().putBoolean(KEY_RESTORE_PENDING, true).apply();
+        synchronized (this) {
+            boolean running = restoring;
+            begin(onDone);
+            if (running) {
+                Log.d(TAG, "Restore already in progress, " + reason + " joins it");
+                return;
+            }
+        }
+        queue(reason, triggerMillis);
+    }
+
+    // Marks a restore as in progress; called with the lock held
+    private void begin(Runnable done) {
+        restoring = true;
+        if (done != null) {
+            onDone.add(done);
+        }
+    }
+
+    private void queue(final String reason, final long triggerMillis) {
+        executor.execute(() -> {
+            try {
+                arm(reason, triggerMillis);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to restore geofences: " + e.getMessage());
+                List<Runnable> done;
+                synchronized (this) {
+                    done = end();
+                }
+                runCallbacks(done);
+                return;
+            }
+            // Window updates need the whole catalog, which can wait until the fences are armed.
+            // The restore may have finished already, so a failure here must not end it.
+            try {
+                FenceDatabase.getInstance(context).loadInto(FenceRegistry.getDefault());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load the fence catalog: " + e.getMessage());
+            }
+        });
+    }
+
+    private void arm(String reason, long triggerMillis) throws IOException {
+        reconciler.onRegistrationsLost();
+
+        List<Fence> custom = new ArrayList<>();
+        SettingsSnapshot settings = SettingsRepository.getInstance(context).getSnapshot();
+        if (settings.isGeofenceActive()) {
+            custom.add(new Fence(MapsActivity.GEOFENCE_ID, settings.getLatitude(), settings.getLongitude(),
+                    settings.getRadius(), Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT));
+        }
+
+        GeofenceWindowManager windowManager = GeofenceWindowManager.getInstance(context);
+        final List<Fence> window = new ArrayList<>();
+        FenceDatabase.getInstance(context).forEach(windowManager.getWindowIds(), (fence, polygon) -> window.add(fence));
+
+        synchronized (this) {
+            this.reason = reason;
+            this.startMillis = triggerMillis;
+            this.fenceCount = custom.size() + window.size();
+        }
+        handler.postDelayed(timeout, MAX_WAIT_MS);
+        reconciler.update(custom, new ArrayList<String>());
+        windowManager.restoreWindow(window);
+        Log.d(TAG, "Restoring " + (custom.size() + window.size()) + " geofences after " + reason);
+
+        // Nothing to wait for if there was nothing to restore
+        if (reconciler.isSettled()) {
+            finish(true);
+        }
+    }
+
+    @Override
+    public void onReconciled(Collection<String> added, Collection<String> removed) {
+        if (reconciler.isSettled()) {
+            finish(true);
+        }
+    }
+
+    @Override
+    public void onReconcileFailed(Exception e, boolean willRetry) {
+        if (!willRetry) {
+            finish(false);
+        }
+    }
+
+    private void finish(boolean armed) {
+        List<Runnable> done;
+        synchronized (this) {
+            if (reason == null) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long duration = now - startMillis;
+            if (armed) {
+                preferences.edit()
+                        .putBoolean(KEY_RESTORE_PENDING, false)
+                        .putString(KEY_LAST_REASON, reason)
+                        .putLong(KEY_LAST_DURATION_MS, duration)
+                        .putLong(KEY_LAST_ARMED_SINCE_BOOT_MS, now)
+                        .putInt(KEY_LAST_FENCE_COUNT, fenceCount)
+                        .apply();
+                Log.d(TAG, "Armed " + fenceCount + " geofences " + duration + " ms after " + reason
+                        + " (" + now + " ms since boot)");
+            } else {
+                Log.w(TAG, "Geofences not armed " + duration + " ms after " + reason + ", left to the reconciler");
+            }
+            done = end();
+        }
+        runCallbacks(done);
+    }
+
+    // Ends the restore in progress and returns its callbacks; called with the lock held
+    private List<Runnable> end() {
+        restoring = false;
+        reason = null;
+        List<Runnable> done = new ArrayList<>(onDone);
+        onDone.clear();
+        return done;
+    }
+
+    private void runCallbacks(List<Runnable> done) {
+        handler.removeCallbacks(timeout);
+        for (Runnable runnable : done) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Milliseconds from the last completed restore's trigger until every fence was armed, or -1
+     */
+    public long getLastDurationMillis() {
+        return preferences.getLong(KEY_LAST_DURATION_MS, -1);
+    }
+
+    /**
+     * elapsedRealtime() when the last completed restore had every fence armed, or -1
+     */
+    public long getLastArmedSinceBootMillis() {
+        return preferences.getLong(KEY_LAST_ARMED_SINCE_BOOT_MS, -1);
+    }
+
+    /**
+     * Reason of the last completed restore, or null
+     */
+    public String getLastReason() {
+        return preferences.getString(KEY_LAST_REASON, null);
+    }
+
+    /**
+     * Number of fences armed by the last completed restore
+     */
+    public int getLastFenceCount() {
+        return preferences.getInt(KEY_LAST_FENCE_COUNT, 0);
+    }
+}
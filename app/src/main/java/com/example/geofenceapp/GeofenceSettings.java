@@ -9,17 +9,22 @@ public class GeofenceSettings {
     // Shared Preferences Keys
     public static final String KEY_LATITUDE = "geofence_latitude";
     public static final String KEY_LONGITUDE = "geofence_longitude";
+    // Full double precision coordinates, stored as raw long bits
+    public static final String KEY_LATITUDE_BITS = "geofence_latitude_bits";
+    public static final String KEY_LONGITUDE_BITS = "geofence_longitude_bits";
     public static final String KEY_RADIUS = "geofence_radius";
     public static final String KEY_GEOFENCE_ACTIVE = "geofence_active";
     public static final String KEY_NOTIFICATION_ENABLED = "notification_enabled";
     public static final String KEY_SOUND_ENABLED = "sound_enabled";
     public static final String KEY_VIBRATION_ENABLED = "vibration_enabled";
+    public static final String KEY_DETECTION_LATENCY_SLA = "detection_latency_sla_seconds";
 
     // Default values
     public static final float DEFAULT_RADIUS = 100f; // meters
     public static final boolean DEFAULT_NOTIFICATION_ENABLED = true;
     public static final boolean DEFAULT_SOUND_ENABLED = true;
     public static final boolean DEFAULT_VIBRATION_ENABLED = true;
+    public static final int DEFAULT_DETECTION_LATENCY_SLA = 30; // seconds
 
     /**
      * Check if a geofence is currently active
@@ -45,8 +50,10 @@ public class GeofenceSettings {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         SharedPreferences.Editor editor = sharedPreferences.edit();
         
-        editor.putFloat(KEY_LATITUDE, (float) latitude);
-        editor.putFloat(KEY_LONGITUDE, (float) longitude);
+        editor.putLong(KEY_LATITUDE_BITS, Double.doubleToRawLongBits(latitude));
+        editor.putLong(KEY_LONGITUDE_BITS, Double.doubleToRawLongBits(longitude));
+        editor.remove(KEY_LATITUDE);
+        editor.remove(KEY_LONGITUDE);
         editor.putFloat(KEY_RADIUS, radius);
         editor.putBoolean(KEY_GEOFENCE_ACTIVE, isActive);
         
@@ -61,7 +68,7 @@ public class GeofenceSettings {
      */
     public static double getLatitude(Context context) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
-        return sharedPreferences.getFloat(KEY_LATITUDE, 0);
+        return getDouble(sharedPreferences, KEY_LATITUDE_BITS, KEY_LATITUDE);
     }
 
     /**
@@ -72,7 +79,23 @@ public class GeofenceSettings {
      */
     public static double getLongitude(Context context) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
-        return sharedPreferences.getFloat(KEY_LONGITUDE, 0);
+        return getDouble(sharedPreferences, KEY_LONGITUDE_BITS, KEY_LONGITUDE);
+    }
+
+    /**
+     * Read a double stored as long bits, falling back to the float value
+     * written under the legacy key by older versions of the app
+     *
+     * @param sharedPreferences Preferences to read from
+     * @param key               Key holding the raw long bits
+     * @param legacyFloatKey    Key holding the old float value
+     * @return The stored value, or 0 if neither key is set
+     */
+    private static double getDouble(SharedPreferences sharedPreferences, String key, String legacyFloatKey) {
+        if (sharedPreferences.contains(key)) {
+            return Double.longBitsToDouble(sharedPreferences.getLong(key, 0));
+        }
+        return sharedPreferences.getFloat(legacyFloatKey, 0);
     }
 
     /**
@@ -119,6 +142,19 @@ public class GeofenceSettings {
         return sharedPreferences.getBoolean(KEY_VIBRATION_ENABLED, DEFAULT_VIBRATION_ENABLED);
     }
 
+    /**
+     * Get the longest acceptable delay between crossing a fence boundary and
+     * the app sampling a location that shows it
+     *
+     * @param context Application context
+     * @return Latency in milliseconds
+     */
+    public static long getDetectionLatencySlaMillis(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        int seconds = sharedPreferences.getInt(KEY_DETECTION_LATENCY_SLA, DEFAULT_DETECTION_LATENCY_SLA);
+        return Math.max(1, seconds) * 1000L;
+    }
+
     /**
      * Save notification settings
      *
@@ -0,0 +1,213 @@
+package com.example.geofenceapp;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps only the fences nearest the device registered with Play Services, so the
+ * catalog in {@link FenceRegistry} can be larger than the 100 geofence limit.
+ * A "refresh" geofence centered on the device marks how far it can move before a
+ * fence outside the window could be closer than the ones inside it; exiting that
+ * geofence makes the receiver call {@link #updateWindow(double, double)} again.
+ * Fences that their {@link FenceSchedule} currently disarms are left out of
+ * the window. Registration itself is left to the {@link GeofenceReconciler}.
+ */
+public class GeofenceWindowManager {
+    private static final String TAG = "GeofenceWindowManager";
+
+    public static final String REFRESH_GEOFENCE_ID = "WINDOW_REFRESH_GEOFENCE";
+
+    // Play Services limit per app
+    public static final int MAX_ACTIVE_GEOFENCES = 100;
+
+    // One slot for the refresh geofence and one for the fence set in MapsActivity
+    private static final int RESERVED_GEOFENCES = 2;
+    public static final int DEFAULT_WINDOW_SIZE = MAX_ACTIVE_GEOFENCES - RESERVED_GEOFENCES;
+
+    // Play Services is unreliable for geofences much smaller than this
+    private static final float MIN_REFRESH_RADIUS = 200f;
+
+    // Fraction of the distance to the farthest window fence used as refresh radius,
+    // leaving margin for the delay before Play Services reports the exit
+    private static final double REFRESH_RADIUS_FRACTION = 0.5;
+
+    private static final String PREFS_NAME = "geofence_window";
+    private static final String KEY_WINDOW_IDS = "window_ids";
+    private static final String KEY_REFRESH_LATITUDE_BITS = "refresh_latitude_bits";
+    private static final String KEY_REFRESH_LONGITUDE_BITS = "refresh_longitude_bits";
+    private static final String KEY_REFRESH_RADIUS = "refresh_radius";
+    private static final String KEY_CENTER_LATITUDE_BITS = "center_latitude_bits";
+    private static final String KEY_CENTER_LONGITUDE_BITS = "center_longitude_bits";
+
+    private static GeofenceWindowManager instance;
+
+    private final Context context;
+    private final FenceRegistry registry;
+    private final GeofenceReconciler reconciler;
+    private final SharedPreferences preferences;
+    private final int windowSize;
+
+    private Set<String> windowIds;
+
+    public static synchronized GeofenceWindowManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new GeofenceWindowManager(context.getApplicationContext(),
+                    FenceRegistry.getDefault(), DEFAULT_WINDOW_SIZE);
+        }
+        return instance;
+    }
+
+    public GeofenceWindowManager(Context context, FenceRegistry registry, int windowSize) {
+        this.context = context;
+        this.registry = registry;
+        this.windowSize = windowSize;
+        this.reconciler = GeofenceReconciler.getInstance(context);
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        // Registrations outlive the process, so start from what was last registered
+        this.windowIds = new HashSet<>(preferences.getStringSet(KEY_WINDOW_IDS, new HashSet<String>()));
+    }
+
+    public static boolean isRefreshGeofence(String geofenceId) {
+        return REFRESH_GEOFENCE_ID.equals(geofenceId);
+    }
+
+    public synchronized Set<String> getWindowIds() {
+        return new HashSet<>(windowIds);
+    }
+
+    /**
+     * Recompute the window around a location and register the difference
+     *
+     * @param latitude  Device latitude
+     * @param longitude Device longitude
+     */
+    public synchronized void updateWindow(double latitude, double longitude) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Location permission missing, not updating geofence window");
+            return;
+        }
+
+        Set<String> inactiveIds = FenceScheduler.getInstance(context).getInactiveIds();
+        List<Fence> nearest = registry.nearest(latitude, longitude, windowSize, inactiveIds);
+
+        Set<String> newIds = new HashSet<>();
+        List<Fence> toAdd = new ArrayList<>();
+        for (Fence fence : nearest) {
+            newIds.add(fence.getId());
+            if (!windowIds.contains(fence.getId())) {
+                toAdd.add(fence);
+            } else if (reconciler.isOutdated(fence)) {
+                // Re-imported with a new center or radius; putting it again replaces the registration
+                toAdd.add(fence);
+                GeofenceEventPipeline.getInstance().forgetGeofence(context, fence.getId());
+            }
+        }
+
+        List<String> toRemove = new ArrayList<>();
+        for (String id : windowIds) {
+            if (!newIds.contains(id)) {
+                toRemove.add(id);
+                GeofenceEventPipeline.getInstance().forgetGeofence(context, id);
+            }
+        }
+
+        // Only needed when part of the catalog is left out of the window
+        Fence refreshFence = null;
+        if (nearest.size() == windowSize && registry.size() > windowSize) {
+            Fence farthest = nearest.get(nearest.size() - 1);
+            double distance = FenceRegistry.boundaryDistance(farthest, latitude, longitude);
+            float refreshRadius = (float) Math.max(MIN_REFRESH_RADIUS, distance * REFRESH_RADIUS_FRACTION);
+            refreshFence = new Fence(REFRESH_GEOFENCE_ID, latitude, longitude, refreshRadius,
+                    Geofence.GEOFENCE_TRANSITION_EXIT);
+            // Re-adding with the same request ID replaces the previous refresh geofence
+            toAdd.add(refreshFence);
+        } else {
+            toRemove.add(REFRESH_GEOFENCE_ID);
+        }
+
+        Log.d(TAG, "Window update: " + nearest.size() + " fences, +" + toAdd.size() + " -" + toRemove.size()
+                + ", " + inactiveIds.size() + " inactive");
+        windowIds = newIds;
+        saveWindow(newIds, refreshFence);
+        preferences.edit()
+                .putLong(KEY_CENTER_LATITUDE_BITS, Double.doubleToRawLongBits(latitude))
+                .putLong(KEY_CENTER_LONGITUDE_BITS, Double.doubleToRawLongBits(longitude))
+                .apply();
+        reconciler.update(toAdd, toRemove);
+    }
+
+    /**
+     * Recompute the window around the location it was last computed for, e.g.
+     * when scheduled fences were armed or disarmed. Does nothing before the
+     * first {@link #updateWindow(double, double)}.
+     */
+    public synchronized void refreshWindow() {
+        if (!preferences.contains(KEY_CENTER_LATITUDE_BITS)) {
+            return;
+        }
+        updateWindow(Double.longBitsToDouble(preferences.getLong(KEY_CENTER_LATITUDE_BITS, 0)),
+                Double.longBitsToDouble(preferences.getLong(KEY_CENTER_LONGITUDE_BITS, 0)));
+    }
+
+    /**
+     * Register the last window again after Play Services dropped it. The
+     * caller looks the window fences up, so this works before the catalog
+     * has been loaded into the registry.
+     *
+     * @param fences Fences whose IDs are in {@link #getWindowIds()}
+     */
+    public synchronized void restoreWindow(List<Fence> fences) {
+        List<Fence> toAdd = new ArrayList<>(fences);
+        if (preferences.contains(KEY_REFRESH_RADIUS)) {
+            toAdd.add(new Fence(REFRESH_GEOFENCE_ID,
+                    Double.longBitsToDouble(preferences.getLong(KEY_REFRESH_LATITUDE_BITS, 0)),
+                    Double.longBitsToDouble(preferences.getLong(KEY_REFRESH_LONGITUDE_BITS, 0)),
+                    preferences.getFloat(KEY_REFRESH_RADIUS, MIN_REFRESH_RADIUS),
+                    Geofence.GEOFENCE_TRANSITION_EXIT));
+        }
+        Log.d(TAG, "Restoring window of " + fences.size() + " fences");
+        reconciler.update(toAdd, new ArrayList<String>());
+    }
+
+    /**
+     * Unregister every window geofence, including the refresh geofence
+     */
+    public synchronized void clearWindow() {
+        List<String> toRemove = new ArrayList<>(windowIds);
+        toRemove.add(REFRESH_GEOFENCE_ID);
+        windowIds = new HashSet<>();
+        saveWindow(windowIds, null);
+        // Schedule edges must not bring the window back
+        preferences.edit().remove(KEY_CENTER_LATITUDE_BITS).remove(KEY_CENTER_LONGITUDE_BITS).apply();
+        reconciler.update(new ArrayList<Fence>(), toRemove);
+    }
+
+    private void saveWindow(Set<String> ids, Fence refreshFence) {
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putStringSet(KEY_WINDOW_IDS, new HashSet<>(ids));
+        if (refreshFence != null) {
+            editor.putLong(KEY_REFRESH_LATITUDE_BITS, Double.doubleToRawLongBits(refreshFence.getLatitude()));
+            editor.putLong(KEY_REFRESH_LONGITUDE_BITS, Double.doubleToRawLongBits(refreshFence.getLongitude()));
+            editor.putFloat(KEY_REFRESH_RADIUS, refreshFence.getRadius());
+        } else {
+            editor.remove(KEY_REFRESH_LATITUDE_BITS);
+            editor.remove(KEY_REFRESH_LONGITUDE_BITS);
+            editor.remove(KEY_REFRESH_RADIUS);
+        }
+        editor.apply();
+    }
+}
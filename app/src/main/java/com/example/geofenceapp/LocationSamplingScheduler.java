@@ -0,0 +1,195 @@
+package com.example.geofenceapp;
+
+/**
+ * Chooses how often and how precisely to sample the location, from the distance
+ * to the nearest fence boundary and the device speed.
+ *
+ * A crossing cannot happen before the device has covered the distance to the
+ * boundary, less the fix accuracy, at its highest plausible speed. Sampling
+ * again within that travel time plus the latency SLA therefore catches any
+ * crossing no later than the SLA allows. Far from every fence this stretches
+ * the interval to minutes; next to a boundary it shrinks to the SLA itself.
+ * Intervals are rounded down to a doubling ladder starting at the minimum
+ * interval, so the location request only changes when the ladder step or
+ * the priority does, or when the device has closed in on a boundary faster
+ * than its minimum update distance allows for.
+ *
+ * The priority is the cheapest one whose typical accuracy is well inside the
+ * distance to the boundary, so a fix cannot land on the wrong side of it.
+ * This class is not thread-safe.
+ */
+public final class LocationSamplingScheduler {
+    // Same values as com.google.android.gms.location.Priority
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 5000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 15 * 60 * 1000;
+
+    // Assumed before any speed has been seen: fast urban driving
+    private static final float UNKNOWN_SPEED_MPS = 30f;
+
+    // Floor on the speed bound, about a brisk walk
+    private static final float MIN_SPEED_MPS = 1.5f;
+
+    // Headroom over the observed speed for acceleration between fixes
+    private static final float SPEED_SAFETY_FACTOR = 1.5f;
+
+    // Weight of a new speed observation in the running estimate
+    private static final float SPEED_SMOOTHING = 0.3f;
+
+    // Typical accuracy of the balanced ("block") and low-power ("city") priorities
+    private static final double BALANCED_ACCURACY_METERS = 100;
+    private static final double LOW_POWER_ACCURACY_METERS = 10000;
+
+    // A priority is used only if the boundary is this many accuracies away
+    private static final double ACCURACY_MARGIN = 2.0;
+
+    private final long latencySlaMillis;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    private long intervalMillis;
+    private int priority;
+    private float minUpdateDistanceMeters;
+    private float speedEstimate;
+    private float speedBound;
+
+    private boolean hasPrevious;
+    private long previousTime;
+    private double previousLat;
+    private double previousLon;
+
+    public LocationSamplingScheduler(long latencySlaMillis) {
+        this(latencySlaMillis, DEFAULT_MIN_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    /**
+     * @param latencySlaMillis  Longest acceptable delay between a boundary crossing and a fix showing it
+     * @param minIntervalMillis Shortest sampling interval; lowered to the SLA if the SLA is shorter
+     * @param maxIntervalMillis Longest sampling interval, however far the nearest boundary is
+     */
+    public LocationSamplingScheduler(long latencySlaMillis, long minIntervalMillis, long maxIntervalMillis) {
+        if (latencySlaMillis <= 0) {
+            throw new IllegalArgumentException("Latency SLA must be positive: " + latencySlaMillis);
+        }
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Invalid interval range: " + minIntervalMillis + "-" + maxIntervalMillis);
+        }
+        this.latencySlaMillis = latencySlaMillis;
+        this.minIntervalMillis = Math.min(minIntervalMillis, latencySlaMillis);
+        this.maxIntervalMillis = maxIntervalMillis;
+        reset();
+    }
+
+    /**
+     * Forget the speed history and go back to the initial request, which
+     * samples quickly and precisely to get a first fix
+     */
+    public void reset() {
+        intervalMillis = minIntervalMillis;
+        priority = PRIORITY_HIGH_ACCURACY;
+        minUpdateDistanceMeters = 0;
+        speedEstimate = -1;
+        speedBound = UNKNOWN_SPEED_MPS;
+        hasPrevious = false;
+    }
+
+    /**
+     * Plan the next sample after a fix
+     *
+     * @param timeMillis             Fix time on a monotonic clock
+     * @param lat                    Latitude in degrees
+     * @param lon                    Longitude in degrees
+     * @param accuracyMeters         Horizontal accuracy, or 0 if unknown
+     * @param speedMetersPerSecond   Reported speed, or negative if unknown
+     * @param boundaryDistanceMeters Distance to the nearest fence boundary, or
+     *                               positive infinity if there are no fences
+     * @return true if the interval or priority changed and the location
+     *         request should be replaced
+     */
+    public boolean onFix(long timeMillis, double lat, double lon, float accuracyMeters,
+                         float speedMetersPerSecond, double boundaryDistanceMeters) {
+        updateSpeed(timeMillis, lat, lon, speedMetersPerSecond);
+
+        double margin = Math.max(0, boundaryDistanceMeters - Math.max(0, accuracyMeters));
+        double travelMillis = margin / speedBound * 1000.0;
+        long target = (long) Math.min(maxIntervalMillis, latencySlaMillis + travelMillis);
+
+        long step = minIntervalMillis;
+        while (step * 2 <= target) {
+            step *= 2;
+        }
+        long nextInterval = target >= maxIntervalMillis ? maxIntervalMillis : step;
+
+        int nextPriority;
+        if (boundaryDistanceMeters < BALANCED_ACCURACY_METERS * ACCURACY_MARGIN) {
+            nextPriority = PRIORITY_HIGH_ACCURACY;
+        } else if (boundaryDistanceMeters < LOW_POWER_ACCURACY_METERS * ACCURACY_MARGIN) {
+            nextPriority = PRIORITY_BALANCED_POWER_ACCURACY;
+        } else {
+            nextPriority = PRIORITY_LOW_POWER;
+        }
+
+        // Nothing can change until the device has moved part of the way to the boundary.
+        // A threshold larger than that could hide a crossing, so it forces a new request.
+        float nextMinDistance = (float) Math.min(margin / 2, LOW_POWER_ACCURACY_METERS);
+
+        boolean changed = nextInterval != intervalMillis || nextPriority != priority
+                || nextMinDistance < minUpdateDistanceMeters;
+        if (changed) {
+            intervalMillis = nextInterval;
+            priority = nextPriority;
+            minUpdateDistanceMeters = nextMinDistance;
+        }
+        return changed;
+    }
+
+    private void updateSpeed(long timeMillis, double lat, double lon, float reportedSpeed) {
+        float observed = reportedSpeed;
+        if (observed < 0 && hasPrevious && timeMillis > previousTime) {
+            observed = (float) (GeoMath.haversineDistance(previousLat, previousLon, lat, lon)
+                    * 1000.0 / (timeMillis - previousTime));
+        }
+        hasPrevious = true;
+        previousTime = timeMillis;
+        previousLat = lat;
+        previousLon = lon;
+        if (observed < 0) {
+            return;
+        }
+
+        speedEstimate = speedEstimate < 0 ? observed : speedEstimate + SPEED_SMOOTHING * (observed - speedEstimate);
+        speedBound = Math.max(MIN_SPEED_MPS, Math.max(observed, speedEstimate) * SPEED_SAFETY_FACTOR);
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * One of the PRIORITY constants, usable as a Play Services priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Movement below which the next fix may be skipped
+     */
+    public float getMinUpdateDistanceMeters() {
+        return minUpdateDistanceMeters;
+    }
+
+    /**
+     * Highest speed currently assumed for the device, in meters per second
+     */
+    public float getSpeedBound() {
+        return speedBound;
+    }
+
+    public long getLatencySlaMillis() {
+        return latencySlaMillis;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates foreground location updates on the device as a stream, so alerts
+ * follow the fixes {@link AdaptiveLocationTracker} already receives instead
+ * of waiting for Play Services to report a crossing. Fixes are buffered for
+ * a {@link TransitionStream} on its own thread, which keeps the latest
+ * {@link #SOURCE_CAPACITY} when evaluation falls behind. Its transitions fan
+ * out to the journal, notification, sound and vibration sinks, each with its
+ * own bounded buffer and thread: the journal and notifications keep the most
+ * recent transitions, while sound and vibration conflate a burst into one
+ * alert. A slow sink therefore loses its own alerts and never stalls
+ * evaluation or the other sinks.
+ *
+ * While the stream runs, {@link GeofenceEventPipeline} leaves alerts for
+ * catalog fences to it and only handles the custom geofence. The two share
+ * which fences are occupied through the pipeline's debouncer, so neither
+ * alerts again for a visit the other has reported.
+ */
+public class LocationStream {
+    private static final String TAG = "LocationStream";
+
+    // Fixes waiting for evaluation; the oldest are dropped beyond this
+    static final int SOURCE_CAPACITY = 32;
+    private static final int JOURNAL_CAPACITY = 256;
+    private static final int NOTIFICATION_CAPACITY = 16;
+
+    private static LocationStream instance;
+
+    private final Context context;
+    private final ExecutorService evaluationExecutor;
+    private final ExecutorService journalExecutor;
+    private final ExecutorService notificationExecutor;
+    private final ExecutorService soundExecutor;
+    private final ExecutorService vibrationExecutor;
+
+    // Only touched on the main thread
+    private BufferedPublisher<LocationFix> source;
+    private TransitionStream stream;
+    private volatile boolean running;
+
+    public static synchronized LocationStream getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationStream(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LocationStream(Context context) {
+        this.context = context;
+        this.evaluationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "location-stream"));
+        this.journalExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "stream-journal"));
+        this.notificationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "stream-notifications"));
+        this.soundExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "stream-sound"));
+        this.vibrationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "stream-vibration"));
+    }
+
+    /**
+     * Start evaluating offered fixes. Fences the pipeline has already
+     * confirmed ENTER for count as occupied, so resuming the stream doesn't
+     * alert for them again.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        final TransitionDetector detector = new TransitionDetector();
+        // The evaluation thread is single, so this runs before the first fix is evaluated
+        evaluationExecutor.execute(() -> {
+            FenceDatabase.getInstance(context).loadInto(FenceRegistry.getDefault());
+            GeofenceEventPipeline.getInstance().seedOccupancy(context, detector);
+        });
+        source = new BufferedPublisher<>(evaluationExecutor, SOURCE_CAPACITY,
+                BufferedPublisher.OverflowPolicy.DROP_OLDEST);
+        stream = new TransitionStream(FenceRegistry.getDefault(), new FixSmoother(), detector, journalExecutor);
+        // Runs on the evaluation thread and takes everything, so no transition escapes the shared state
+        stream.subscribe(new Sink(this::recordState), 1, BufferedPublisher.OverflowPolicy.DROP_NEWEST,
+                Runnable::run);
+        stream.subscribe(new Sink(this::journal), JOURNAL_CAPACITY,
+                BufferedPublisher.OverflowPolicy.DROP_OLDEST, journalExecutor);
+        stream.subscribe(new Sink(this::postNotification), NOTIFICATION_CAPACITY,
+                BufferedPublisher.OverflowPolicy.DROP_OLDEST, notificationExecutor);
+        stream.subscribe(new Sink(this::playSound), 1,
+                BufferedPublisher.OverflowPolicy.CONFLATE, soundExecutor);
+        stream.subscribe(new Sink(this::vibrate), 1,
+                BufferedPublisher.OverflowPolicy.CONFLATE, vibrationExecutor);
+        source.subscribe(stream);
+        running = true;
+    }
+
+    /**
+     * Stop the stream; fixes already buffered are still evaluated
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        source.complete();
+        Log.d(TAG, "Stopped after " + stream.getFixCount() + " fixes, " + stream.getFilteredCount()
+                + " filtered, " + stream.getTransitionCount() + " transitions, " + getDroppedCount() + " dropped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Hand a fix to the stream; never blocks
+     *
+     * @param location The fix
+     */
+    public void offer(Location location) {
+        if (!running) {
+            return;
+        }
+        source.offer(new LocationFix(location.getElapsedRealtimeNanos() / 1000000L, location.getLatitude(),
+                location.getLongitude(), location.hasAccuracy() ? location.getAccuracy() : 0f));
+    }
+
+    /**
+     * Fixes and alerts lost to full buffers since the stream was started
+     */
+    public long getDroppedCount() {
+        return source == null ? 0 : source.getDroppedCount() + stream.getDroppedCount();
+    }
+
+    // Fences their schedule has disarmed are still tracked but raise no alerts
+    private boolean isActive(FenceTransition transition) {
+        return FenceScheduler.getInstance(context).isActive(transition.getFenceId(), System.currentTimeMillis());
+    }
+
+    private void recordState(FenceTransition transition) {
+        GeofenceEventPipeline.getInstance().onStreamTransition(context, transition);
+    }
+
+    private void journal(FenceTransition transition) {
+        TransitionJournal journal = GeofenceEventPipeline.getInstance().getJournal(context);
+        if (journal == null || !isActive(transition)) {
+            return;
+        }
+        LocationFix fix = transition.getFix();
+        try {
+            journal.append(System.currentTimeMillis(), transition.getFenceId(), transition.getTransition(),
+                    fix.getLatitude(), fix.getLongitude(), fix.getAccuracy());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not journal transition: " + e.getMessage());
+        }
+    }
+
+    private void postNotification(FenceTransition transition) {
+        if (!SettingsRepository.getInstance(context).getSnapshot().isNotificationEnabled() || !isActive(transition)) {
+            return;
+        }
+        LocationFix fix = transition.getFix();
+        String locationInfo = " at location " + fix.getLatitude() + ", " + fix.getLongitude();
+        NotificationDispatcher.getInstance(context).post(transition.getFenceId(), transition.getTransition(),
+                GeofenceEventPipeline.buildMessage(transition.getTransition(), transition.getFenceId(),
+                        locationInfo));
+    }
+
+    private void playSound(FenceTransition transition) {
+        if (SettingsRepository.getInstance(context).getSnapshot().isSoundEnabled() && isActive(transition)) {
+            AlertSoundPlayer.getInstance(context).play();
+        }
+    }
+
+    private void vibrate(FenceTransition transition) {
+        if (SettingsRepository.getInstance(context).getSnapshot().isVibrationEnabled() && isActive(transition)) {
+            GeofenceEventPipeline.getInstance().vibrate(context);
+        }
+    }
+
+    private interface Handler {
+        void handle(FenceTransition transition);
+    }
+
+    // Takes one transition at a time, so its buffer absorbs the backlog
+    private static final class Sink implements ReactiveFlow.Subscriber<FenceTransition> {
+        private final Handler handler;
+        private ReactiveFlow.Subscription subscription;
+
+        Sink(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onSubscribe(ReactiveFlow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(FenceTransition transition) {
+            try {
+                handler.handle(transition);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Alert sink failed: " + e.getMessage());
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            Log.e(TAG, "Location stream failed: " + throwable.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.example.geofenceapp;
 
 import android.Manifest;
+import android.annotation.SuppressLint;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -18,23 +21,43 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import androidx.preference.PreferenceManager;
 
 import com.google.android.gms.location.LocationServices;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
     private static final int BACKGROUND_LOCATION_PERMISSION_REQUEST_CODE = 1002;
     private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 1003;
+    private static final int IMPORT_FENCES_REQUEST_CODE = 2001;
+    private static final int EXPORT_FENCES_REQUEST_CODE = 2002;
 
     private Button btnOpenMap;
     private Button btnSettings;
+    private Button btnImportFences;
+    private Button btnExportFences;
+    private Button btnDiagnostics;
     private TextView txtGeofenceStatus;
     private TextView txtCurrentSettings;
 
     private GeofenceHelper geofenceHelper;
-    private SharedPreferences sharedPreferences;
+
+    // Database and file work stays off the main thread
+    private ExecutorService ioExecutor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,18 +67,29 @@ public class MainActivity extends AppCompatActivity {
         // Initialize UI components
         btnOpenMap = findViewById(R.id.btn_open_map);
         btnSettings = findViewById(R.id.btn_settings);
+        btnImportFences = findViewById(R.id.btn_import_fences);
+        btnExportFences = findViewById(R.id.btn_export_fences);
+        btnDiagnostics = findViewById(R.id.btn_diagnostics);
         txtGeofenceStatus = findViewById(R.id.txt_geofence_status);
         txtCurrentSettings = findViewById(R.id.txt_current_settings);
 
         // Initialize GeofenceHelper
         geofenceHelper = new GeofenceHelper(this);
 
-        // Initialize SharedPreferences
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-
         // Set click listeners
         btnOpenMap.setOnClickListener(v -> openMapActivity());
         btnSettings.setOnClickListener(v -> openSettingsActivity());
+        btnImportFences.setOnClickListener(v -> chooseImportFile());
+        btnExportFences.setOnClickListener(v -> chooseExportFile());
+        btnDiagnostics.setOnClickListener(v -> startActivity(new Intent(this, DiagnosticsActivity.class)));
+
+        // Load the stored catalog before the map needs it
+        ioExecutor = Executors.newSingleThreadExecutor();
+        final FenceDatabase database = FenceDatabase.getInstance(this);
+        ioExecutor.execute(() -> database.loadInto(FenceRegistry.getDefault()));
+
+        // Re-register fences Play Services dropped while location was off
+        GeofenceRestorer.getInstance(this).restoreIfNeeded();
 
         // Check location permissions
         checkAndRequestPermissions();
@@ -68,6 +102,12 @@ public class MainActivity extends AppCompatActivity {
         updateCurrentSettings();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ioExecutor.shutdown();
+    }
+
     private void openMapActivity() {
         if (checkLocationPermission()) {
             Intent intent = new Intent(this, MapsActivity.class);
@@ -83,6 +123,122 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    private void chooseImportFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"text/csv", "text/comma-separated-values",
+                "application/geo+json", "application/json", "text/plain"});
+        startActivityForResult(intent, IMPORT_FENCES_REQUEST_CODE);
+    }
+
+    private void chooseExportFile() {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("application/geo+json");
+        intent.putExtra(Intent.EXTRA_TITLE, "fences.geojson");
+        startActivityForResult(intent, EXPORT_FENCES_REQUEST_CODE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == IMPORT_FENCES_REQUEST_CODE) {
+            importFences(data.getData());
+        } else if (requestCode == EXPORT_FENCES_REQUEST_CODE) {
+            exportFences(data.getData());
+        }
+    }
+
+    private void importFences(final Uri uri) {
+        final boolean geoJson = FenceImporter.isGeoJson(getDisplayName(uri))
+                || FenceImporter.isGeoJson(getContentResolver().getType(uri));
+        final FenceDatabase database = FenceDatabase.getInstance(this);
+        ioExecutor.execute(() -> {
+            // The catalog must be in memory first, or the mirror would be the only content
+            database.loadInto(FenceRegistry.getDefault());
+            FenceImporter.Result result = null;
+            Exception failure = null;
+            int committed = 0;
+            try (InputStream in = getContentResolver().openInputStream(uri);
+                 Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                 FenceDatabase.BatchWriter writer = database.openWriter(FenceRegistry.getDefault())) {
+                try {
+                    FenceImporter importer = new FenceImporter(writer);
+                    result = geoJson ? importer.importGeoJson(reader) : importer.importCsv(reader);
+                    writer.commit();
+                } finally {
+                    // Batches committed before a failure stay imported; the open one is rolled back
+                    committed = writer.getCommittedCount();
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Fence import failed", e);
+                failure = e;
+            }
+            if (failure == null) {
+                showToast(getString(R.string.import_result, result.getImported(), result.getInvalid(),
+                        result.getDuplicates()));
+            } else if (committed == 0) {
+                showToast(getString(R.string.import_failed, failure.getMessage()));
+                return;
+            } else {
+                showToast(getString(R.string.import_partial, committed, failure.getMessage()));
+            }
+            // Imported schedules re-index in the background and refresh the window if they disarm fences
+            FenceScheduler.getInstance(this).reload(null);
+            runOnUiThread(this::refreshGeofenceWindow);
+        });
+    }
+
+    private void exportFences(final Uri uri) {
+        final boolean geoJson = FenceImporter.isGeoJson(getDisplayName(uri));
+        final FenceExporter exporter = new FenceExporter(FenceDatabase.getInstance(this));
+        ioExecutor.execute(() -> {
+            int count;
+            try (OutputStream out = getContentResolver().openOutputStream(uri);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                count = geoJson ? exporter.exportGeoJson(writer) : exporter.exportCsv(writer);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Fence export failed", e);
+                showToast(getString(R.string.export_failed, e.getMessage()));
+                return;
+            }
+            showToast(getString(R.string.export_result, count));
+        });
+    }
+
+    private String getDisplayName(Uri uri) {
+        try (Cursor cursor = getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME},
+                null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        }
+        return uri.getLastPathSegment();
+    }
+
+    private void showToast(final String message) {
+        runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_LONG).show());
+    }
+
+    // Register the newly imported fences nearest to the device
+    @SuppressLint("MissingPermission")
+    private void refreshGeofenceWindow() {
+        if (!checkLocationPermission()) {
+            return;
+        }
+        LocationServices.getFusedLocationProviderClient(this).getLastLocation()
+                .addOnSuccessListener(this, location -> {
+                    if (location != null) {
+                        GeofenceWindowManager.getInstance(this)
+                                .updateWindow(location.getLatitude(), location.getLongitude());
+                    }
+                });
+    }
+
     private boolean checkLocationPermission() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED;
@@ -243,7 +399,9 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void updateGeofenceStatus() {
-        boolean isGeofenceActive = GeofenceSettings.isGeofenceActive(this);
+        // The saved flag alone stays set when Play Services has dropped the fence
+        boolean isGeofenceActive = SettingsRepository.getInstance(this).getSnapshot().isGeofenceActive()
+                && GeofenceReconciler.getInstance(this).isRegistered(MapsActivity.GEOFENCE_ID);
 
         if (isGeofenceActive) {
             txtGeofenceStatus.setText(getString(R.string.geofence_status_active));
@@ -255,9 +413,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void updateCurrentSettings() {
-        double latitude = sharedPreferences.getFloat(GeofenceSettings.KEY_LATITUDE, 0);
-        double longitude = sharedPreferences.getFloat(GeofenceSettings.KEY_LONGITUDE, 0);
-        float radius = sharedPreferences.getFloat(GeofenceSettings.KEY_RADIUS, 100);
+        SettingsSnapshot settings = SettingsRepository.getInstance(this).getSnapshot();
+        double latitude = settings.getLatitude();
+        double longitude = settings.getLongitude();
+        float radius = settings.getRadius();
 
         StringBuilder sb = new StringBuilder();
         sb.append(getString(R.string.current_location))
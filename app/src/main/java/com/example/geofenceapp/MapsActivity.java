@@ -24,34 +24,43 @@ import androidx.preference.PreferenceManager;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.Geofence;
-import com.google.android.gms.location.GeofencingClient;
-import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.CircleOptions;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class MapsActivity extends FragmentActivity implements OnMapReadyCallback, GoogleMap.OnMapLongClickListener {
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
-    private static final String GEOFENCE_ID = "CUSTOM_GEOFENCE";
+    static final String GEOFENCE_ID = "CUSTOM_GEOFENCE";
+
+    // Catalog overlays drawn at once; beyond this only the fences nearest the center are shown
+    private static final int MAX_CATALOG_OVERLAYS = 300;
 
     private GoogleMap mMap;
+    private Marker selectedMarker;
+    private FenceOverlayManager selectionOverlay;
+    private FenceOverlayManager catalogOverlay;
     private SeekBar radiusSeekBar;
     private TextView radiusText;
     private Button btnAddGeofence;
     private Button btnRemoveGeofence;
 
-    private GeofencingClient geofencingClient;
+    private GeofenceReconciler reconciler;
     private GeofenceHelper geofenceHelper;
     private FusedLocationProviderClient fusedLocationClient;
+    private AdaptiveLocationTracker locationTracker;
+    private boolean userLocated;
+    private boolean cameraPositioned;
 
     private float geofenceRadius = 100;
     private LatLng selectedLocation;
@@ -71,9 +80,11 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         btnRemoveGeofence = findViewById(R.id.btn_remove_geofence);
 
         // Initialize Geofencing client and helper
-        geofencingClient = LocationServices.getGeofencingClient(this);
+        reconciler = GeofenceReconciler.getInstance(this);
+        reconciler.addListener(reconcileListener);
         geofenceHelper = new GeofenceHelper(this);
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
+        locationTracker = new AdaptiveLocationTracker(this, this::onUserLocation);
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 
         // Obtain the SupportMapFragment and get notified when the map is ready to be used
@@ -116,6 +127,47 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         loadGeofenceSettings();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        reconciler.removeListener(reconcileListener);
+    }
+
+    // Edits are registered asynchronously and may be coalesced, so results are reported here
+    private final GeofenceReconciler.Listener reconcileListener = new GeofenceReconciler.Listener() {
+        @Override
+        public void onReconciled(Collection<String> added, Collection<String> removed) {
+            if (added.contains(GEOFENCE_ID)) {
+                Toast.makeText(MapsActivity.this, "Geofence added successfully", Toast.LENGTH_SHORT).show();
+            } else if (removed.contains(GEOFENCE_ID)) {
+                Toast.makeText(MapsActivity.this, "Geofence removed successfully", Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        @Override
+        public void onReconcileFailed(Exception e, boolean willRetry) {
+            if (!willRetry) {
+                String errorMessage = e != null ? geofenceHelper.getErrorString(e) : "unknown error";
+                Toast.makeText(MapsActivity.this, "Failed to update geofences: " + errorMessage,
+                        Toast.LENGTH_SHORT).show();
+            }
+        }
+    };
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mMap != null) {
+            locationTracker.start();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        locationTracker.stop();
+    }
+
     @Override
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
@@ -123,11 +175,16 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         // Set map type to normal
         mMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
 
+        selectionOverlay = new FenceOverlayManager(mMap, Color.RED, Color.parseColor("#220000FF"), 5);
+        catalogOverlay = new FenceOverlayManager(mMap, Color.BLUE, Color.parseColor("#110000FF"), 3);
+        mMap.setOnCameraIdleListener(this::showVisibleFences);
+
         // Check if location permission is granted
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
             enableUserLocation();
             zoomToUserLocation();
+            locationTracker.start();
         } else {
             ActivityCompat.requestPermissions(this,
                     new String[]{Manifest.permission.ACCESS_FINE_LOCATION},
@@ -162,6 +219,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                 if (mMap != null) {
                     enableUserLocation();
                     zoomToUserLocation();
+                    locationTracker.start();
                 }
             } else {
                 // Permission denied
@@ -184,24 +242,24 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         }
 
         try {
-            // Clear previous markers
-            mMap.clear();
-
-            // Add marker for the selected location
-            mMap.addMarker(new MarkerOptions()
-                    .position(position)
-                    .title("Geofence Center"));
-
-            // Add circle to represent the geofence radius
-            mMap.addCircle(new CircleOptions()
-                    .center(position)
-                    .radius(geofenceRadius)
-                    .strokeColor(Color.RED)
-                    .fillColor(Color.parseColor("#220000FF"))
-                    .strokeWidth(5));
-
-            // Move camera to the selected location
-            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(position, 15));
+            // Move the existing marker rather than redrawing the map
+            if (selectedMarker == null) {
+                selectedMarker = mMap.addMarker(new MarkerOptions()
+                        .position(position)
+                        .title("Geofence Center"));
+            } else if (!position.equals(selectedMarker.getPosition())) {
+                selectedMarker.setPosition(position);
+            }
+
+            // Circle representing the geofence radius
+            showSelectedCircle();
+
+            // Move camera only if the selected location is off screen
+            LatLngBounds visible = mMap.getProjection().getVisibleRegion().latLngBounds;
+            if (!cameraPositioned || !visible.contains(position)) {
+                cameraPositioned = true;
+                mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(position, 15));
+            }
         } catch (Exception e) {
             // Log any errors that might occur
             Log.e("MapsActivity", "Error drawing marker with circle: " + e.getMessage());
@@ -210,10 +268,29 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
     private void updateGeofenceCircle() {
         if (mMap != null && selectedLocation != null) {
-            drawMarkerWithCircle(selectedLocation);
+            showSelectedCircle();
         }
     }
 
+    // Queued on the overlay manager, so slider drags resize the circle at most once per frame
+    private void showSelectedCircle() {
+        selectionOverlay.show(new Fence(GEOFENCE_ID, selectedLocation.latitude, selectedLocation.longitude,
+                geofenceRadius, Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT));
+    }
+
+    // Draw the catalog fences in view; overlays already on the map are kept as they are
+    private void showVisibleFences() {
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        FenceRegistry registry = FenceRegistry.getDefault();
+        List<Fence> visible = registry.inBoundingBox(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+        if (visible.size() > MAX_CATALOG_OVERLAYS) {
+            LatLng center = mMap.getCameraPosition().target;
+            visible = registry.nearest(center.latitude, center.longitude, MAX_CATALOG_OVERLAYS);
+        }
+        catalogOverlay.showOnly(visible, registry);
+    }
+
     private void enableUserLocation() {
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             return;
@@ -229,18 +306,35 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         fusedLocationClient.getLastLocation()
                 .addOnSuccessListener(this, location -> {
                     if (location != null) {
-                        LatLng userLocation = new LatLng(location.getLatitude(), location.getLongitude());
-                        mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(userLocation, 15));
-
-                        // If no location is selected yet, use current location
-                        if (selectedLocation == null) {
-                            selectedLocation = userLocation;
-                            drawMarkerWithCircle(userLocation);
-                        }
+                        onUserLocation(location);
                     }
                 });
     }
 
+    // Position the map on the first known location, from the last fix or the location tracker
+    private void onUserLocation(Location location) {
+        if (userLocated || mMap == null) {
+            return;
+        }
+        userLocated = true;
+        cameraPositioned = true;
+
+        LatLng userLocation = new LatLng(location.getLatitude(), location.getLongitude());
+        mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(userLocation, 15));
+
+        // Register the catalog fences nearest to the user
+        if (FenceRegistry.getDefault().size() > 0) {
+            GeofenceWindowManager.getInstance(this)
+                    .updateWindow(location.getLatitude(), location.getLongitude());
+        }
+
+        // If no location is selected yet, use current location
+        if (selectedLocation == null) {
+            selectedLocation = userLocation;
+            drawMarkerWithCircle(userLocation);
+        }
+    }
+
     private void addGeofence() {
         if (selectedLocation == null) {
             Toast.makeText(this, "Please select a location first", Toast.LENGTH_SHORT).show();
@@ -260,75 +354,48 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
             return;
         }
 
-        // Create geofence - register for both ENTER and EXIT transitions
-        Geofence geofence = geofenceHelper.getGeofence(
-                GEOFENCE_ID,
-                selectedLocation,
-                geofenceRadius,
-                Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT
-        );
-
-        // Create geofencing request
-        GeofencingRequest geofencingRequest = geofenceHelper.getGeofencingRequest(geofence);
-
-        // Get pending intent
-        PendingIntent pendingIntent = geofenceHelper.getPendingIntent();
-
-        // Add geofence
-        geofencingClient.addGeofences(geofencingRequest, pendingIntent)
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(MapsActivity.this, "Geofence added successfully", Toast.LENGTH_SHORT).show();
-
-                    // Save geofence settings
-                    saveGeofenceSettings();
-                })
-                .addOnFailureListener(e -> {
-                    String errorMessage = geofenceHelper.getErrorString(e);
-                    Toast.makeText(MapsActivity.this, "Failed to add geofence: " + errorMessage, Toast.LENGTH_SHORT).show();
-                });
+        // Register for both ENTER and EXIT transitions; re-adding replaces the previous fence
+        reconciler.put(new Fence(GEOFENCE_ID, selectedLocation.latitude, selectedLocation.longitude,
+                geofenceRadius, Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT));
+        GeofenceEventPipeline.getInstance().forgetGeofence(this, GEOFENCE_ID);
+
+        // Save geofence settings
+        saveGeofenceSettings();
     }
 
     private void removeGeofence() {
-        // Create an array of geofence IDs to remove
-        List<String> geofenceIds = new ArrayList<>();
-        geofenceIds.add(GEOFENCE_ID);
+        reconciler.remove(GEOFENCE_ID);
+        GeofenceEventPipeline.getInstance().forgetGeofence(this, GEOFENCE_ID);
 
-        geofencingClient.removeGeofences(geofenceIds)
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(MapsActivity.this, "Geofence removed successfully", Toast.LENGTH_SHORT).show();
-
-                    // Clear the map if it's initialized
-                    if (mMap != null) {
-                        mMap.clear();
-                    }
+        // Remove the selected fence from the map
+        if (selectedMarker != null) {
+            selectedMarker.remove();
+            selectedMarker = null;
+        }
+        if (selectionOverlay != null) {
+            selectionOverlay.hide(GEOFENCE_ID);
+        }
 
-                    // Reset selectedLocation
-                    selectedLocation = null;
+        // Reset selectedLocation
+        selectedLocation = null;
 
-                    // Clear saved geofence settings
-                    clearGeofenceSettings();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(MapsActivity.this, "Failed to remove geofence", Toast.LENGTH_SHORT).show();
-                });
+        // Clear saved geofence settings
+        clearGeofenceSettings();
     }
 
     private void saveGeofenceSettings() {
         if (selectedLocation != null) {
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putFloat(GeofenceSettings.KEY_LATITUDE, (float) selectedLocation.latitude);
-            editor.putFloat(GeofenceSettings.KEY_LONGITUDE, (float) selectedLocation.longitude);
-            editor.putFloat(GeofenceSettings.KEY_RADIUS, geofenceRadius);
-            editor.putBoolean(GeofenceSettings.KEY_GEOFENCE_ACTIVE, true);
-            editor.apply();
+            GeofenceSettings.saveGeofenceSettings(this, selectedLocation.latitude, selectedLocation.longitude,
+                    geofenceRadius, true);
         }
     }
 
     private void loadGeofenceSettings() {
-        float latitude = sharedPreferences.getFloat(GeofenceSettings.KEY_LATITUDE, 0);
-        float longitude = sharedPreferences.getFloat(GeofenceSettings.KEY_LONGITUDE, 0);
-        geofenceRadius = sharedPreferences.getFloat(GeofenceSettings.KEY_RADIUS, 100);
-        boolean isGeofenceActive = sharedPreferences.getBoolean(GeofenceSettings.KEY_GEOFENCE_ACTIVE, false);
+        SettingsSnapshot settings = SettingsRepository.getInstance(this).getSnapshot();
+        double latitude = settings.getLatitude();
+        double longitude = settings.getLongitude();
+        geofenceRadius = settings.getRadius();
+        boolean isGeofenceActive = settings.isGeofenceActive();
 
         if (isGeofenceActive && latitude != 0 && longitude != 0) {
             selectedLocation = new LatLng(latitude, longitude);
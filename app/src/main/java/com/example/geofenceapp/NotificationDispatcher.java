@@ -0,0 +1,206 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Posts geofence alerts as one notification per fence, grouped under a summary.
+ * Alerts arriving within the coalescing window are held and posted together,
+ * so a burst of transitions produces a single summary update and one sound
+ * instead of a rebuild per event. Later alerts for the same fence inside a
+ * window replace earlier ones.
+ */
+public class NotificationDispatcher {
+    private static final String TAG = "NotificationDispatcher";
+
+    private static final String GROUP_KEY = "com.example.geofenceapp.GEOFENCE_ALERTS";
+    private static final int SUMMARY_NOTIFICATION_ID = 1000;
+
+    // Per-fence IDs are taken from this range so they never collide with the summary
+    private static final int FENCE_NOTIFICATION_ID_BASE = 10000;
+    private static final int FENCE_NOTIFICATION_ID_RANGE = 1 << 20;
+
+    public static final long DEFAULT_COALESCE_WINDOW_MS = 1000;
+
+    // Number of fences listed line by line in the summary
+    private static final int MAX_SUMMARY_LINES = 5;
+
+    private static final int TRACE_POSTED = RingTracer.defineEvent(TAG,
+            "Posted %5$d geofence alerts, %2$.0f coalesced");
+
+    private static NotificationDispatcher instance;
+
+    private final NotificationHelper notificationHelper;
+    private final Handler handler;
+    private final RingTracer tracer = RingTracer.getInstance();
+    private final GeofenceMetrics metrics = GeofenceMetrics.getInstance();
+
+    // Guarded by this; keyed by fence ID in arrival order
+    private final Map<String, PendingAlert> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private volatile long coalesceWindowMillis = DEFAULT_COALESCE_WINDOW_MS;
+
+    // Only touched on the handler thread
+    private NotificationCompat.Builder fenceBuilder;
+    private NotificationCompat.Builder summaryBuilder;
+
+    public static synchronized NotificationDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationDispatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NotificationDispatcher(Context context) {
+        notificationHelper = new NotificationHelper(context);
+        HandlerThread thread = new HandlerThread("geofence-notifications");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Set how long alerts are held before being posted together
+     *
+     * @param windowMillis Coalescing window in milliseconds, 0 to post immediately
+     */
+    public void setCoalesceWindowMillis(long windowMillis) {
+        coalesceWindowMillis = Math.max(0, windowMillis);
+    }
+
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    /**
+     * Queue an alert for a fence
+     *
+     * @param fenceId    ID of the fence that was crossed
+     * @param transition Geofence.GEOFENCE_TRANSITION_* value
+     * @param message    Notification text
+     */
+    public void post(String fenceId, int transition, String message) {
+        post(fenceId, transition, message, 0);
+    }
+
+    /**
+     * Queue an alert for a fence raised by a known fix
+     *
+     * @param fixNanos elapsedRealtimeNanos() of the fix that triggered the alert, or 0 if unknown
+     */
+    public void post(String fenceId, int transition, String message, long fixNanos) {
+        long postedNanos = SystemClock.elapsedRealtimeNanos();
+        synchronized (this) {
+            PendingAlert previous = pending.remove(fenceId);
+            int coalesced = previous == null ? 0 : previous.coalesced + 1;
+            pending.put(fenceId, new PendingAlert(fenceId, transition, message, coalesced, postedNanos, fixNanos));
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        handler.postDelayed(this::flush, coalesceWindowMillis);
+    }
+
+    private void flush() {
+        List<PendingAlert> alerts;
+        synchronized (this) {
+            alerts = new ArrayList<>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (alerts.isEmpty()) {
+            return;
+        }
+
+        if (fenceBuilder == null) {
+            fenceBuilder = notificationHelper.createAlertBuilder()
+                    .setGroup(GROUP_KEY)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+            summaryBuilder = notificationHelper.createAlertBuilder()
+                    .setGroup(GROUP_KEY)
+                    .setGroupSummary(true)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+        }
+
+        int coalesced = 0;
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        for (int i = 0; i < alerts.size(); i++) {
+            PendingAlert alert = alerts.get(i);
+            coalesced += alert.coalesced;
+
+            fenceBuilder.setContentTitle(getTitle(alert.transition))
+                    .setContentText(alert.message)
+                    .setWhen(System.currentTimeMillis());
+            notificationHelper.notify(notificationIdFor(alert.fenceId), fenceBuilder.build());
+            long notifiedNanos = SystemClock.elapsedRealtimeNanos();
+            metrics.onNotified(notifiedNanos - alert.postedNanos,
+                    alert.fixNanos > 0 ? notifiedNanos - alert.fixNanos : -1);
+
+            if (i < MAX_SUMMARY_LINES) {
+                inboxStyle.addLine(getTitle(alert.transition) + ": " + alert.fenceId);
+            }
+        }
+        if (alerts.size() > MAX_SUMMARY_LINES) {
+            inboxStyle.setSummaryText("+" + (alerts.size() - MAX_SUMMARY_LINES) + " more");
+        }
+
+        // The summary is the only notification that alerts, so a burst sounds once
+        String summaryText = alerts.size() == 1 ? alerts.get(0).message : alerts.size() + " geofence alerts";
+        summaryBuilder.setContentTitle(alerts.size() == 1 ? getTitle(alerts.get(0).transition) : "Geofence Alerts")
+                .setContentText(summaryText)
+                .setStyle(inboxStyle)
+                .setNumber(alerts.size())
+                .setWhen(System.currentTimeMillis());
+        notificationHelper.notify(SUMMARY_NOTIFICATION_ID, summaryBuilder.build());
+
+        tracer.trace(TRACE_POSTED, RingTracer.NO_FENCE, coalesced, 0, 0, alerts.size());
+    }
+
+    private static String getTitle(int transition) {
+        switch (transition) {
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                return "Geofence Exit Alert";
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                return "Geofence Dwell Alert";
+            default:
+                return "Geofence Enter Alert";
+        }
+    }
+
+    /**
+     * Stable notification ID for a fence, so repeated alerts update one notification
+     */
+    static int notificationIdFor(String fenceId) {
+        return FENCE_NOTIFICATION_ID_BASE + ((fenceId.hashCode() & 0x7FFFFFFF) % FENCE_NOTIFICATION_ID_RANGE);
+    }
+
+    private static final class PendingAlert {
+        final String fenceId;
+        final int transition;
+        final String message;
+        final int coalesced;
+        final long postedNanos;
+        final long fixNanos;
+
+        PendingAlert(String fenceId, int transition, String message, int coalesced, long postedNanos,
+                     long fixNanos) {
+            this.fenceId = fenceId;
+            this.transition = transition;
+            this.message = message;
+            this.coalesced = coalesced;
+            this.postedNanos = postedNanos;
+            this.fixNanos = fixNanos;
+        }
+    }
+}
@@ -19,22 +19,36 @@ public class NotificationHelper {
     private static final String TAG = "NotificationHelper";
     private static final String CHANNEL_ID = "geofence_channel";
     private static final String CHANNEL_NAME = "Geofence Notifications";
-    private static final int NOTIFICATION_ID_ENTER = 1001;
-    private static final int NOTIFICATION_ID_EXIT = 1002;
 
+    private static final int TRACE_POSTED = RingTracer.defineEvent(TAG, "Notification %5$d posted");
+
+    // The channel only needs creating once per process
+    private static volatile boolean channelCreated;
 
     private final Context context;
     private final NotificationManager notificationManager;
+    private final RingTracer tracer = RingTracer.getInstance();
+    private PendingIntent contentIntent;
+    private Uri soundUri;
+    private boolean soundUriResolved;
 
     public NotificationHelper(Context context) {
         this.context = context;
         this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 
         // Create notification channel for Android Oreo and above
-        createNotificationChannel();
+        if (!channelCreated) {
+            createNotificationChannel();
+        }
     }
 
     private void createNotificationChannel() {
+        synchronized (NotificationHelper.class) {
+            if (channelCreated) {
+                return;
+            }
+            channelCreated = true;
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
                     CHANNEL_ID,
@@ -80,16 +94,52 @@ public class NotificationHelper {
         }
     }
 
-    public void showGeofenceExitNotification(String message) {
-        showGeofenceNotification("Geofence Exit Alert", message, NOTIFICATION_ID_EXIT);
+    /**
+     * Create a builder preset with the channel, icon, sound and tap action shared
+     * by all geofence alerts. Builders can be kept and reused between posts.
+     *
+     * @return Builder with the common alert configuration applied
+     */
+    public NotificationCompat.Builder createAlertBuilder() {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setContentIntent(getContentIntent())
+                .setAutoCancel(true)
+                .setVibrate(new long[]{0, 1000, 500, 1000});
+
+        // Set sound if we have a custom one, otherwise use default
+        Uri sound = getSoundUri();
+        if (sound != null) {
+            builder.setSound(sound);
+        } else {
+            builder.setDefaults(Notification.DEFAULT_SOUND | Notification.DEFAULT_LIGHTS);
+        }
+        return builder;
     }
 
-    public void showGeofenceEnterNotification(String message) {
-        showGeofenceNotification("Geofence Enter Alert", message, NOTIFICATION_ID_ENTER);
+    /**
+     * Post a notification, logging instead of throwing on failure
+     *
+     * @param notificationId ID to post under; posting the same ID again replaces it
+     * @param notification   Notification to show
+     */
+    public void notify(int notificationId, Notification notification) {
+        try {
+            notificationManager.notify(notificationId, notification);
+            tracer.trace(TRACE_POSTED, RingTracer.NO_FENCE, notificationId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing notification: " + e.getMessage());
+        }
     }
 
-    private void showGeofenceNotification(String title, String message, int notificationId) {
-        // Create an intent to open the app when notification is tapped
+    // Opens the app when a notification is tapped; created once and shared by every alert
+    private PendingIntent getContentIntent() {
+        if (contentIntent != null) {
+            return contentIntent;
+        }
+
         Intent intent = new Intent(context, MainActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
 
@@ -100,11 +150,15 @@ public class NotificationHelper {
             pendingIntentFlags = PendingIntent.FLAG_UPDATE_CURRENT;
         }
 
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                context, 0, intent, pendingIntentFlags);
+        contentIntent = PendingIntent.getActivity(context, 0, intent, pendingIntentFlags);
+        return contentIntent;
+    }
 
-        // Get the sound URI
-        Uri soundUri = null;
+    private Uri getSoundUri() {
+        if (soundUriResolved) {
+            return soundUri;
+        }
+        soundUriResolved = true;
         try {
             int soundResourceId = context.getResources().getIdentifier("alert_sound", "raw", context.getPackageName());
             if (soundResourceId != 0) {
@@ -114,31 +168,6 @@ public class NotificationHelper {
         } catch (Exception e) {
             Log.e(TAG, "Error getting sound URI: " + e.getMessage());
         }
-
-        // Build the notification
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_notification)
-                .setContentTitle(title)
-                .setContentText(message)
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setContentIntent(pendingIntent)
-                .setAutoCancel(true)
-                .setVibrate(new long[]{0, 1000, 500, 1000});
-
-        // Set sound if we have a custom one, otherwise use default
-        if (soundUri != null) {
-            builder.setSound(soundUri);
-        } else {
-            builder.setDefaults(Notification.DEFAULT_SOUND | Notification.DEFAULT_LIGHTS);
-        }
-
-        // Show the notification
-        try {
-            notificationManager.notify(notificationId, builder.build());
-            Log.d(TAG, "Notification posted successfully with ID: " + notificationId);
-        } catch (Exception e) {
-            Log.e(TAG, "Error showing notification: " + e.getMessage());
-        }
+        return soundUri;
     }
-}
\ No newline at end of file
+}
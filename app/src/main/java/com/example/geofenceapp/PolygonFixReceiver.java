@@ -0,0 +1,29 @@
+package com.example.geofenceapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+
+import com.google.android.gms.location.LocationResult;
+
+/**
+ * Receives the locations {@link PolygonWatcher} samples in the background;
+ * they are checked against the watched polygons on the pipeline worker.
+ */
+public class PolygonFixReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent == null || !LocationResult.hasResult(intent)) {
+            return;
+        }
+        LocationResult result = LocationResult.extractResult(intent);
+        Location location = result != null ? result.getLastLocation() : null;
+        if (location == null) {
+            return;
+        }
+        PendingResult pendingResult = goAsync();
+        GeofenceEventPipeline.getInstance().submitPolygonFix(context.getApplicationContext(), location,
+                pendingResult);
+    }
+}
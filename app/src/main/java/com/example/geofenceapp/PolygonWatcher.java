@@ -0,0 +1,213 @@
+package com.example.geofenceapp;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Samples the location in the background while the device is inside the
+ * circle registered for a polygon fence but outside the polygon itself. Play
+ * Services reports nothing more until that circle is exited, so without this
+ * the polygon being entered later would go unnoticed.
+ *
+ * Updates are delivered through a PendingIntent to {@link PolygonFixReceiver},
+ * so they keep arriving with the app in the background or its process gone.
+ * Their interval follows a {@link LocationSamplingScheduler} fed with the
+ * distance to the nearest watched polygon. A fence stops being watched once
+ * a fix is inside its polygon or outside its circle; updates stop with the
+ * last one. Watched fences are persisted.
+ */
+public class PolygonWatcher {
+    private static final String TAG = "PolygonWatcher";
+
+    private static final String PREFS_NAME = "polygon_watcher";
+    private static final String KEY_WATCHED = "watched";
+
+    private static final int TRACE_WATCH = RingTracer.defineEvent(TAG,
+            "Watching the polygon of %1$s, %5$d fences watched");
+    private static final int TRACE_UNWATCH = RingTracer.defineEvent(TAG,
+            "Stopped watching the polygon of %1$s, %5$d fences watched");
+
+    private static PolygonWatcher instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final RingTracer tracer = RingTracer.getInstance();
+    private final Set<String> watched;
+    private LocationSamplingScheduler scheduler;
+    // Whether this process has requested updates; a new process re-requests on its first fix
+    private boolean requested;
+    private PendingIntent updatesIntent;
+
+    public static synchronized PolygonWatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new PolygonWatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PolygonWatcher(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.watched = new HashSet<>(preferences.getStringSet(KEY_WATCHED, new HashSet<String>()));
+    }
+
+    /**
+     * Start sampling for a polygon fence whose circle the device is in
+     *
+     * @param fenceId Fence ID
+     */
+    public synchronized void watch(String fenceId) {
+        if (!watched.add(fenceId)) {
+            return;
+        }
+        tracer.trace(TRACE_WATCH, tracer.fenceIndex(fenceId), 0, 0, 0, watched.size());
+        save();
+        if (!requested) {
+            getScheduler().reset();
+            requestUpdates();
+        }
+    }
+
+    /**
+     * Stop sampling for a fence, e.g. after its circle was exited
+     *
+     * @param fenceId Fence ID
+     */
+    public synchronized void unwatch(String fenceId) {
+        if (!watched.remove(fenceId)) {
+            return;
+        }
+        tracer.trace(TRACE_UNWATCH, tracer.fenceIndex(fenceId), 0, 0, 0, watched.size());
+        save();
+        if (watched.isEmpty()) {
+            removeUpdates();
+        }
+    }
+
+    /**
+     * Check a sampled fix against the watched polygons and plan the next sample
+     *
+     * @param location The fix
+     * @param entered  Receives the fences whose polygon contains the fix
+     */
+    public synchronized void onFix(Location location, Collection<String> entered) {
+        if (watched.isEmpty()) {
+            // Left over from a process that stopped before removing them
+            removeUpdates();
+            return;
+        }
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0f;
+        double distance = Double.POSITIVE_INFINITY;
+        int watchedBefore = watched.size();
+        for (Iterator<String> it = watched.iterator(); it.hasNext(); ) {
+            String fenceId = it.next();
+            PolygonFence polygon = FenceRegistry.getDefault().getPolygon(fenceId);
+            if (polygon == null) {
+                it.remove();
+                continue;
+            }
+            if (polygon.contains(latitude, longitude)) {
+                entered.add(fenceId);
+                it.remove();
+                continue;
+            }
+            // The circle EXIT may never come, e.g. if the fence was registered again meanwhile
+            Fence circle = polygon.toCircleFence();
+            double center = GeoMath.haversineDistance(latitude, longitude, circle.getLatitude(),
+                    circle.getLongitude());
+            if (center > circle.getRadius() + Math.max(accuracy, TransitionDebouncer.DEFAULT_MIN_MARGIN_METERS)) {
+                it.remove();
+                continue;
+            }
+            distance = Math.min(distance, polygon.boundaryDistance(latitude, longitude));
+        }
+        if (watched.size() != watchedBefore) {
+            save();
+        }
+        if (watched.isEmpty()) {
+            removeUpdates();
+            return;
+        }
+        boolean changed = getScheduler().onFix(location.getElapsedRealtimeNanos() / 1000000L, latitude, longitude,
+                accuracy, location.hasSpeed() ? location.getSpeed() : -1f, distance);
+        if (changed || !requested) {
+            requestUpdates();
+        }
+    }
+
+    // The SLA may have changed since the last sample; a new one starts a fresh schedule
+    private LocationSamplingScheduler getScheduler() {
+        long slaMillis = SettingsRepository.getInstance(context).getSnapshot().getDetectionLatencySlaMillis();
+        if (scheduler == null || scheduler.getLatencySlaMillis() != slaMillis) {
+            scheduler = new LocationSamplingScheduler(slaMillis);
+        }
+        return scheduler;
+    }
+
+    // Re-requesting with the same PendingIntent replaces the previous request
+    @SuppressLint("MissingPermission")
+    private void requestUpdates() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Location permission missing, not sampling for polygon fences");
+            return;
+        }
+        LocationRequest request = new LocationRequest.Builder(scheduler.getPriority(), scheduler.getIntervalMillis())
+                .setMinUpdateIntervalMillis(scheduler.getIntervalMillis())
+                .setMinUpdateDistanceMeters(scheduler.getMinUpdateDistanceMeters())
+                .build();
+        requested = true;
+        fusedLocationClient.requestLocationUpdates(request, getUpdatesIntent())
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to request location updates: " + e.getMessage());
+                    synchronized (PolygonWatcher.this) {
+                        requested = false;
+                    }
+                });
+    }
+
+    private void removeUpdates() {
+        requested = false;
+        fusedLocationClient.removeLocationUpdates(getUpdatesIntent());
+    }
+
+    private PendingIntent getUpdatesIntent() {
+        if (updatesIntent == null) {
+            // Play Services adds the locations to the intent
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                flags |= PendingIntent.FLAG_MUTABLE;
+            }
+            updatesIntent = PendingIntent.getBroadcast(context, 0,
+                    new Intent(context, PolygonFixReceiver.class), flags);
+        }
+        return updatesIntent;
+    }
+
+    private void save() {
+        preferences.edit().putStringSet(KEY_WATCHED, new HashSet<>(watched)).apply();
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.geofenceapp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocation-free trace buffer for hot paths. Each record is a typed event
+ * (an ID from {@link #defineEvent(String, String)}), a fence index, a
+ * timestamp and a fixed set of numeric arguments, written into preallocated
+ * arrays. Nothing is formatted until the buffer is dumped, so tracing costs
+ * a few array stores per call instead of building a log string.
+ *
+ * Writers claim a slot with one atomic increment and never block. The
+ * buffer keeps the latest {@link #DEFAULT_CAPACITY} records; older ones are
+ * overwritten. Each slot carries the sequence number of its record, checked
+ * before and after the slot is read, so a record being rewritten while the
+ * buffer is dumped is normally skipped rather than printed torn; the dump is
+ * diagnostic output and does not fence writers to make that exact.
+ */
+public final class RingTracer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Fence index for events not about a particular fence
+     */
+    public static final int NO_FENCE = -1;
+
+    private static RingTracer instance;
+
+    // Event definitions are shared by every tracer
+    private static final List<String> eventTags = new ArrayList<>();
+    private static final List<String> eventFormats = new ArrayList<>();
+
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    // Sequence number + 1 of the record in each slot, 0 while it is being written
+    private final AtomicLongArray published;
+    private final long[] timestamps;
+    private final int[] events;
+    private final int[] fences;
+    private final double[] args0;
+    private final double[] args1;
+    private final double[] args2;
+    private final long[] args3;
+
+    private final ConcurrentHashMap<String, Integer> fenceIndexes = new ConcurrentHashMap<>();
+    private final List<String> fenceNames = new ArrayList<>();
+
+    public static synchronized RingTracer getInstance() {
+        if (instance == null) {
+            instance = new RingTracer(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    /**
+     * @param capacity Number of records kept, rounded up to a power of two
+     */
+    public RingTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        published = new AtomicLongArray(size);
+        timestamps = new long[size];
+        events = new int[size];
+        fences = new int[size];
+        args0 = new double[size];
+        args1 = new double[size];
+        args2 = new double[size];
+        args3 = new long[size];
+    }
+
+    /**
+     * Define an event type, typically once in a static initializer. The
+     * format receives the fence ID, the three double arguments and the long
+     * argument, in that order, so it refers to them by position, e.g.
+     * {@code "%1$s at %2$.6f, %3$.6f"}.
+     *
+     * @param tag    Short name of the component, like a log tag
+     * @param format {@link String#format} pattern for dumping the event
+     * @return Event ID to pass to {@link #trace}
+     */
+    public static synchronized int defineEvent(String tag, String format) {
+        eventTags.add(tag);
+        eventFormats.add(format);
+        return eventTags.size() - 1;
+    }
+
+    /**
+     * Index standing for a fence ID in trace records. Only the first call for
+     * an ID allocates.
+     *
+     * @param fenceId Fence ID, may be null
+     * @return Index, or {@link #NO_FENCE} for null
+     */
+    public int fenceIndex(String fenceId) {
+        if (fenceId == null) {
+            return NO_FENCE;
+        }
+        Integer index = fenceIndexes.get(fenceId);
+        if (index != null) {
+            return index;
+        }
+        synchronized (fenceNames) {
+            index = fenceIndexes.get(fenceId);
+            if (index == null) {
+                index = fenceNames.size();
+                fenceNames.add(fenceId);
+                fenceIndexes.put(fenceId, index);
+            }
+            return index;
+        }
+    }
+
+    public void trace(int event) {
+        trace(event, NO_FENCE, 0, 0, 0, 0);
+    }
+
+    public void trace(int event, int fence, long arg3) {
+        trace(event, fence, 0, 0, 0, arg3);
+    }
+
+    /**
+     * Record an event
+     *
+     * @param event Event ID from {@link #defineEvent(String, String)}
+     * @param fence Index from {@link #fenceIndex(String)}, or {@link #NO_FENCE}
+     */
+    public void trace(int event, int fence, double arg0, double arg1, double arg2, long arg3) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+        published.lazySet(slot, 0);
+        timestamps[slot] = System.nanoTime();
+        events[slot] = event;
+        fences[slot] = fence;
+        args0[slot] = arg0;
+        args1[slot] = arg1;
+        args2[slot] = arg2;
+        args3[slot] = arg3;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Number of records written since the tracer was created
+     */
+    public long getRecordCount() {
+        return cursor.get();
+    }
+
+    /**
+     * Format the buffered records, oldest first, one per line with the time
+     * in milliseconds relative to the newest record
+     *
+     * @param writer Destination, not closed
+     */
+    public void dump(Writer writer) throws IOException {
+        long end = cursor.get();
+        long start = Math.max(0, end - (mask + 1));
+        long newest = end > 0 ? timestamps[(int) (end - 1) & mask] : 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence + 1) {
+                continue;
+            }
+            long timestamp = timestamps[slot];
+            int event = events[slot];
+            int fence = fences[slot];
+            double arg0 = args0[slot];
+            double arg1 = args1[slot];
+            double arg2 = args2[slot];
+            long arg3 = args3[slot];
+            // Overwritten while it was being read
+            if (published.get(slot) != sequence + 1) {
+                continue;
+            }
+            writer.write(format(timestamp - newest, event, fence, arg0, arg1, arg2, arg3));
+            writer.write('\n');
+        }
+    }
+
+    private String format(long relativeNanos, int event, int fence, double arg0, double arg1, double arg2,
+                          long arg3) {
+        String tag;
+        String pattern;
+        synchronized (RingTracer.class) {
+            if (event < 0 || event >= eventTags.size()) {
+                return String.format(Locale.ROOT, "%+10.3f ? unknown event %d", relativeNanos / 1e6, event);
+            }
+            tag = eventTags.get(event);
+            pattern = eventFormats.get(event);
+        }
+        String fenceId;
+        synchronized (fenceNames) {
+            fenceId = fence >= 0 && fence < fenceNames.size() ? fenceNames.get(fence) : "-";
+        }
+        return String.format(Locale.ROOT, "%+10.3f %s ", relativeNanos / 1e6, tag)
+                + String.format(Locale.ROOT, pattern, fenceId, arg0, arg1, arg2, arg3);
+    }
+}
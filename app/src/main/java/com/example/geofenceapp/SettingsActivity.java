@@ -40,10 +40,11 @@ public class SettingsActivity extends AppCompatActivity {
     }
 
     private void loadSettings() {
-        // Get current settings from GeofenceSettings class
-        boolean notificationEnabled = GeofenceSettings.isNotificationEnabled(this);
-        boolean soundEnabled = GeofenceSettings.isSoundEnabled(this);
-        boolean vibrationEnabled = GeofenceSettings.isVibrationEnabled(this);
+        // Get current settings from the shared snapshot
+        SettingsSnapshot settings = SettingsRepository.getInstance(this).getSnapshot();
+        boolean notificationEnabled = settings.isNotificationEnabled();
+        boolean soundEnabled = settings.isSoundEnabled();
+        boolean vibrationEnabled = settings.isVibrationEnabled();
 
         // Set switch states
         switchNotification.setChecked(notificationEnabled);
@@ -0,0 +1,65 @@
+package com.example.geofenceapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+
+/**
+ * Publishes the current {@link SettingsSnapshot}. The snapshot is rebuilt once
+ * per preference change by an {@link SharedPreferences.OnSharedPreferenceChangeListener},
+ * so readers get every setting with a single volatile read instead of a
+ * SharedPreferences lookup per value.
+ */
+public class SettingsRepository {
+    private static SettingsRepository instance;
+
+    private final Context context;
+    private final SharedPreferences sharedPreferences;
+
+    // SharedPreferences only keeps a weak reference to listeners, so hold it here
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener =
+            (preferences, key) -> reload();
+
+    private volatile SettingsSnapshot snapshot;
+    private long version;
+
+    public static synchronized SettingsRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SettingsRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SettingsRepository(Context context) {
+        this.context = context;
+        this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        reload();
+        sharedPreferences.registerOnSharedPreferenceChangeListener(changeListener);
+    }
+
+    /**
+     * Get the latest settings. Lock-free and allocation-free.
+     *
+     * @return Current immutable snapshot
+     */
+    public SettingsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Rebuild the snapshot from SharedPreferences
+     */
+    public synchronized void reload() {
+        snapshot = new SettingsSnapshot(
+                ++version,
+                GeofenceSettings.isGeofenceActive(context),
+                GeofenceSettings.getLatitude(context),
+                GeofenceSettings.getLongitude(context),
+                GeofenceSettings.getRadius(context),
+                GeofenceSettings.isNotificationEnabled(context),
+                GeofenceSettings.isSoundEnabled(context),
+                GeofenceSettings.isVibrationEnabled(context),
+                GeofenceSettings.getDetectionLatencySlaMillis(context));
+    }
+}
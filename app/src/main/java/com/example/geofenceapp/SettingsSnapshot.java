@@ -0,0 +1,74 @@
+package com.example.geofenceapp;
+
+/**
+ * Immutable view of every alert and fence setting at one point in time.
+ * Published by {@link SettingsRepository}; a new instance with a higher
+ * version replaces it whenever a preference changes.
+ */
+public final class SettingsSnapshot {
+    private final long version;
+    private final boolean geofenceActive;
+    private final double latitude;
+    private final double longitude;
+    private final float radius;
+    private final boolean notificationEnabled;
+    private final boolean soundEnabled;
+    private final boolean vibrationEnabled;
+    private final long detectionLatencySlaMillis;
+
+    public SettingsSnapshot(long version, boolean geofenceActive, double latitude, double longitude, float radius,
+                            boolean notificationEnabled, boolean soundEnabled, boolean vibrationEnabled,
+                            long detectionLatencySlaMillis) {
+        this.version = version;
+        this.geofenceActive = geofenceActive;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.notificationEnabled = notificationEnabled;
+        this.soundEnabled = soundEnabled;
+        this.vibrationEnabled = vibrationEnabled;
+        this.detectionLatencySlaMillis = detectionLatencySlaMillis;
+    }
+
+    /**
+     * Monotonic version, incremented each time the settings are reloaded
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isGeofenceActive() {
+        return geofenceActive;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public boolean isNotificationEnabled() {
+        return notificationEnabled;
+    }
+
+    public boolean isSoundEnabled() {
+        return soundEnabled;
+    }
+
+    public boolean isVibrationEnabled() {
+        return vibrationEnabled;
+    }
+
+    /**
+     * Longest acceptable delay between a boundary crossing and a fix showing it, in milliseconds
+     */
+    public long getDetectionLatencySlaMillis() {
+        return detectionLatencySlaMillis;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.geofenceapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible fence sets and query points for the benchmarks. Fences are
+ * spread at a constant density, so a larger catalog covers a larger area the
+ * way adding sites does, rather than piling more fences onto the same streets.
+ */
+final class BenchmarkFences {
+    // Roughly one fence per 500 m square
+    private static final double DEGREES_PER_FENCE = 0.0045;
+
+    static final double ORIGIN_LAT = 51.40;
+    static final double ORIGIN_LON = -0.30;
+
+    static final float MIN_RADIUS = 50f;
+    static final float MAX_RADIUS = 500f;
+
+    private BenchmarkFences() {
+    }
+
+    /**
+     * Side of the square region that holds a number of fences, in degrees
+     */
+    static double regionSize(int fenceCount) {
+        return Math.sqrt(fenceCount) * DEGREES_PER_FENCE;
+    }
+
+    static List<Fence> generate(int fenceCount, long seed) {
+        Random random = new Random(seed);
+        double size = regionSize(fenceCount);
+        List<Fence> fences = new ArrayList<>(fenceCount);
+        for (int i = 0; i < fenceCount; i++) {
+            fences.add(new Fence("fence-" + i,
+                    ORIGIN_LAT + random.nextDouble() * size,
+                    ORIGIN_LON + random.nextDouble() * size,
+                    MIN_RADIUS + random.nextFloat() * (MAX_RADIUS - MIN_RADIUS),
+                    TransitionTracker.TRANSITION_ENTER | TransitionTracker.TRANSITION_EXIT));
+        }
+        return fences;
+    }
+
+    /**
+     * Query points spread over the same region as the fences
+     *
+     * @return Interleaved latitude, longitude pairs
+     */
+    static double[] queryPoints(int fenceCount, int pointCount, long seed) {
+        Random random = new Random(seed);
+        double size = regionSize(fenceCount);
+        double[] points = new double[pointCount * 2];
+        for (int i = 0; i < pointCount; i++) {
+            points[2 * i] = ORIGIN_LAT + random.nextDouble() * size;
+            points[2 * i + 1] = ORIGIN_LON + random.nextDouble() * size;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the fences that contain a fix, from a linear scan with each
+ * distance formula up to the registry with the grid and geohash indexes,
+ * across catalog sizes.
+ * Also covers the nearest-fence query behind the geofence window, over
+ * both indexes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContainmentBenchmark {
+    private static final int QUERY_POINTS = 1024;
+
+    // GeofenceWindowManager.DEFAULT_WINDOW_SIZE, which lives in an Android class
+    private static final int WINDOW_SIZE = 98;
+
+    @Param({"1", "10", "100", "1000", "10000", "100000"})
+    public int fenceCount;
+
+    private double[] lat;
+    private double[] lon;
+    private float[] radius;
+    private double[] cosLat;
+    private double[] radiusDegreesSq;
+    private double[] points;
+    private FenceRegistry registry;
+    private FenceRegistry geohashRegistry;
+    private TransitionTracker tracker;
+    private int next;
+    private long fixTime;
+
+    @Setup
+    public void setUp() {
+        List<Fence> fences = BenchmarkFences.generate(fenceCount, 42);
+        lat = new double[fenceCount];
+        lon = new double[fenceCount];
+        radius = new float[fenceCount];
+        cosLat = new double[fenceCount];
+        radiusDegreesSq = new double[fenceCount];
+        registry = new FenceRegistry();
+        geohashRegistry = new FenceRegistry(new GeohashCellIndex());
+        for (int i = 0; i < fenceCount; i++) {
+            Fence fence = fences.get(i);
+            lat[i] = fence.getLatitude();
+            lon[i] = fence.getLongitude();
+            radius[i] = fence.getRadius();
+            cosLat[i] = DistanceKernel.cosLatitude(lat[i]);
+            radiusDegreesSq[i] = DistanceKernel.radiusDegreesSquared(radius[i]);
+            registry.add(fence);
+            geohashRegistry.add(fence);
+        }
+        tracker = new TransitionTracker(fences);
+        points = BenchmarkFences.queryPoints(fenceCount, QUERY_POINTS, 7);
+    }
+
+    private int nextPoint() {
+        next = (next + 2) & (QUERY_POINTS * 2 - 1);
+        return next;
+    }
+
+    @Benchmark
+    public int linearScanHaversine() {
+        int p = nextPoint();
+        double qLat = points[p];
+        double qLon = points[p + 1];
+        int inside = 0;
+        for (int i = 0; i < lat.length; i++) {
+            if (GeoMath.haversineDistance(qLat, qLon, lat[i], lon[i]) <= radius[i]) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int linearScanEquirectangular() {
+        int p = nextPoint();
+        double qLat = points[p];
+        double qLon = points[p + 1];
+        int inside = 0;
+        for (int i = 0; i < lat.length; i++) {
+            if (GeoMath.equirectangularDistance(qLat, qLon, lat[i], lon[i]) <= radius[i]) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int linearScanKernel() {
+        int p = nextPoint();
+        double qLat = points[p];
+        double qLon = points[p + 1];
+        double qCos = DistanceKernel.cosLatitude(qLat);
+        int inside = 0;
+        for (int i = 0; i < lat.length; i++) {
+            if (DistanceKernel.contains(lat[i], lon[i], cosLat[i], radiusDegreesSq[i], radius[i], qLat, qLon, qCos)) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int linearScanVincenty() {
+        int p = nextPoint();
+        double qLat = points[p];
+        double qLon = points[p + 1];
+        int inside = 0;
+        for (int i = 0; i < lat.length; i++) {
+            if (GeoMath.vincentyDistance(qLat, qLon, lat[i], lon[i]) <= radius[i]) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public List<Fence> registryContaining() {
+        int p = nextPoint();
+        return registry.containing(points[p], points[p + 1]);
+    }
+
+    @Benchmark
+    public List<Fence> registryContainingGeohash() {
+        int p = nextPoint();
+        return geohashRegistry.containing(points[p], points[p + 1]);
+    }
+
+    @Benchmark
+    public List<Fence> registryNearestWindow() {
+        int p = nextPoint();
+        return registry.nearest(points[p], points[p + 1], WINDOW_SIZE);
+    }
+
+    @Benchmark
+    public List<Fence> registryNearestWindowGeohash() {
+        int p = nextPoint();
+        return geohashRegistry.nearest(points[p], points[p + 1], WINDOW_SIZE);
+    }
+
+    @Benchmark
+    public void trackerOnFix(Blackhole blackhole) {
+        int p = nextPoint();
+        fixTime += 1000;
+        tracker.onFix(fixTime, points[p], points[p + 1], null);
+        blackhole.consume(tracker.getOccupiedCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one point-in-circle test with each distance formula. Vincenty is
+ * the method behind Location.distanceBetween, which is what an Android-side
+ * check would normally call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistanceBenchmark {
+    private static final int PAIRS = 4096;
+
+    private final double[] fenceLat = new double[PAIRS];
+    private final double[] fenceLon = new double[PAIRS];
+    private final float[] radius = new float[PAIRS];
+    private final double[] fenceCos = new double[PAIRS];
+    private final double[] radiusDegreesSq = new double[PAIRS];
+    private final double[] pointCos = new double[PAIRS];
+    private final double[] pointLat = new double[PAIRS];
+    private final double[] pointLon = new double[PAIRS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Points within a few kilometers of the fence, the range that matters for containment
+        Random random = new Random(42);
+        for (int i = 0; i < PAIRS; i++) {
+            fenceLat[i] = BenchmarkFences.ORIGIN_LAT + random.nextDouble();
+            fenceLon[i] = BenchmarkFences.ORIGIN_LON + random.nextDouble();
+            radius[i] = BenchmarkFences.MIN_RADIUS
+                    + random.nextFloat() * (BenchmarkFences.MAX_RADIUS - BenchmarkFences.MIN_RADIUS);
+            pointLat[i] = fenceLat[i] + (random.nextDouble() - 0.5) * 0.02;
+            pointLon[i] = fenceLon[i] + (random.nextDouble() - 0.5) * 0.02;
+            fenceCos[i] = DistanceKernel.cosLatitude(fenceLat[i]);
+            radiusDegreesSq[i] = DistanceKernel.radiusDegreesSquared(radius[i]);
+            pointCos[i] = DistanceKernel.cosLatitude(pointLat[i]);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (PAIRS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean containsHaversine() {
+        int i = nextIndex();
+        return GeoMath.haversineDistance(pointLat[i], pointLon[i], fenceLat[i], fenceLon[i]) <= radius[i];
+    }
+
+    @Benchmark
+    public boolean containsEquirectangular() {
+        int i = nextIndex();
+        return GeoMath.equirectangularDistance(pointLat[i], pointLon[i], fenceLat[i], fenceLon[i]) <= radius[i];
+    }
+
+    // Per-fence terms precomputed, as in FenceStore; the point's cosine is shared across fences
+    @Benchmark
+    public boolean containsKernel() {
+        int i = nextIndex();
+        return DistanceKernel.contains(fenceLat[i], fenceLon[i], fenceCos[i], radiusDegreesSq[i], radius[i],
+                pointLat[i], pointLon[i], pointCos[i]);
+    }
+
+    @Benchmark
+    public boolean containsVincenty() {
+        int i = nextIndex();
+        return GeoMath.vincentyDistance(pointLat[i], pointLon[i], fenceLat[i], fenceLon[i]) <= radius[i];
+    }
+}
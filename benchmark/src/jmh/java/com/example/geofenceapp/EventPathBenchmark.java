@@ -0,0 +1,116 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The framework-independent part of handling one geofence broadcast in
+ * GeofenceEventPipeline: fence lookup, debouncing, journaling and building the
+ * alert text for each triggering fence. Notification, sound and vibration need
+ * a device; their cost shows up in the stage timings the pipeline logs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventPathBenchmark {
+    private static final int JOURNAL_CAPACITY = 1 << 16;
+
+    @Param({"1", "10", "100", "1000", "10000", "100000"})
+    public int fenceCount;
+
+    // Geofences reported in one broadcast
+    @Param({"1", "5"})
+    public int triggeringCount;
+
+    private List<Fence> fences;
+    private FenceRegistry registry;
+    private TransitionDebouncer debouncer;
+    private TransitionJournal journal;
+    private File journalDirectory;
+    private String[] triggeringIds;
+    private int next;
+    private long now;
+    private boolean entering;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fences = BenchmarkFences.generate(fenceCount, 42);
+        registry = new FenceRegistry();
+        for (Fence fence : fences) {
+            registry.add(fence);
+        }
+        // Fences are visited in a fixed pseudo-random order
+        triggeringIds = new String[1024];
+        for (int i = 0; i < triggeringIds.length; i++) {
+            triggeringIds[i] = fences.get((int) ((i * 2654435761L) % fenceCount)).getId();
+        }
+        debouncer = new TransitionDebouncer();
+        journalDirectory = Files.createTempDirectory("journal-bench").toFile();
+        journal = TransitionJournal.open(journalDirectory, JOURNAL_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        File[] files = journalDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        journalDirectory.delete();
+    }
+
+    @Benchmark
+    public int processEvent() throws IOException {
+        // Alternate ENTER and EXIT with fixes clearly past the boundary, so each
+        // transition is confirmed and journaled like a real crossing
+        entering = !entering;
+        int transition = entering ? TransitionDebouncer.TRANSITION_ENTER : TransitionDebouncer.TRANSITION_EXIT;
+        now += 1000;
+
+        int messageLength = 0;
+        int start = next;
+        for (int i = 0; i < triggeringCount; i++) {
+            String id = triggeringIds[(start + i) & (triggeringIds.length - 1)];
+            Fence fence = registry.get(id);
+            double fixLat = entering ? fence.getLatitude()
+                    : fence.getLatitude() + GeoMath.metersToLatitudeDegrees(fence.getRadius() * 2);
+            double fixLon = fence.getLongitude();
+
+            int decision = debouncer.onTransition(id, fence.getLatitude(), fence.getLongitude(), fence.getRadius(),
+                    transition, fixLat, fixLon, 10f, now);
+            if (decision != TransitionDebouncer.TRANSITION_NONE) {
+                journal.append(now, id, decision, fixLat, fixLon, 10f);
+                String action = decision == TransitionDebouncer.TRANSITION_EXIT ? "exited" : "entered";
+                String message = "You have " + action + " the geofence area " + id
+                        + " at location " + fixLat + ", " + fixLon;
+                messageLength += message.length();
+            }
+        }
+        if (!entering) {
+            next = (next + triggeringCount) & (triggeringIds.length - 1);
+        }
+        return messageLength;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One million fixes from ten thousand devices through FleetEvaluator, with
+ * the fixes of all devices interleaved as a backend would receive them.
+ * Time per batch should fall roughly in proportion to the thread count, up
+ * to the number of cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FleetEvaluatorBenchmark {
+    private static final int FENCE_COUNT = 10000;
+    private static final int DEVICE_COUNT = 10000;
+    private static final int FIXES_PER_DEVICE = 100;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private FleetEvaluator evaluator;
+    private FleetEvaluator.Fixes fixes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Fence> fences = BenchmarkFences.generate(FENCE_COUNT, 42);
+        final double[][] tracks = new double[DEVICE_COUNT][];
+        for (int device = 0; device < DEVICE_COUNT; device++) {
+            final double[] track = new double[FIXES_PER_DEVICE * 2];
+            final int[] next = {0};
+            TrackReplayEngine.synthesize(fences, FIXES_PER_DEVICE, device,
+                    (timeMillis, latitude, longitude, accuracy) -> {
+                        track[next[0]++] = latitude;
+                        track[next[0]++] = longitude;
+                    });
+            tracks[device] = track;
+        }
+        // Fix i of every device before fix i + 1 of any
+        fixes = new FleetEvaluator.Fixes(DEVICE_COUNT * FIXES_PER_DEVICE);
+        for (int i = 0; i < FIXES_PER_DEVICE; i++) {
+            for (int device = 0; device < DEVICE_COUNT; device++) {
+                fixes.add(device, tracks[device][2 * i], tracks[device][2 * i + 1], i * 1000L);
+            }
+        }
+        pool = new ForkJoinPool(threads);
+        evaluator = new FleetEvaluator(fences, TransitionTracker.DEFAULT_LOITERING_DELAY_MS, pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int evaluateBatch() {
+        // Each run replays the same time span, so start from fresh device state
+        evaluator.reset();
+        return evaluator.evaluate(fixes).size();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-polygon with the slab index against a plain crossing-number scan,
+ * for site outlines from a few to thousands of vertices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PolygonBenchmark {
+    private static final int QUERY_POINTS = 1024;
+
+    @Param({"8", "64", "512", "4096"})
+    public int vertexCount;
+
+    private double[] lat;
+    private double[] lon;
+    private PolygonFence polygon;
+    private double[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Irregular star-shaped outline about 400 m across
+        Random random = new Random(42);
+        lat = new double[vertexCount];
+        lon = new double[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            double angle = 2 * Math.PI * i / vertexCount;
+            double r = 0.002 * (0.6 + 0.4 * random.nextDouble());
+            lat[i] = BenchmarkFences.ORIGIN_LAT + r * Math.sin(angle);
+            lon[i] = BenchmarkFences.ORIGIN_LON + r * Math.cos(angle);
+        }
+        polygon = new PolygonFence("site", lat, lon, TransitionTracker.TRANSITION_ENTER);
+
+        points = new double[QUERY_POINTS * 2];
+        for (int i = 0; i < QUERY_POINTS; i++) {
+            points[2 * i] = BenchmarkFences.ORIGIN_LAT + (random.nextDouble() - 0.5) * 0.004;
+            points[2 * i + 1] = BenchmarkFences.ORIGIN_LON + (random.nextDouble() - 0.5) * 0.004;
+        }
+    }
+
+    private int nextPoint() {
+        next = (next + 2) & (QUERY_POINTS * 2 - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean slabIndex() {
+        int p = nextPoint();
+        return polygon.contains(points[p], points[p + 1]);
+    }
+
+    @Benchmark
+    public boolean crossingScan() {
+        int p = nextPoint();
+        double y = points[p];
+        double x = points[p + 1];
+        boolean inside = false;
+        for (int i = 0, j = vertexCount - 1; i < vertexCount; j = i++) {
+            if ((lat[i] <= y) != (lat[j] <= y)
+                    && lon[i] + (y - lat[i]) * (lon[j] - lon[i]) / (lat[j] - lat[i]) < x) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
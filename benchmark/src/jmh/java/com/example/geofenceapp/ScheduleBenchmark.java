@@ -0,0 +1,90 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work FenceScheduler does for scheduleCount fences with office-hours style
+ * schedules: indexing a week of active periods, and at each wakeup finding
+ * the fences flipped since the last one and the next edge.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScheduleBenchmark {
+    private static final long WEEK_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final TimeZone ZONE = TimeZone.getTimeZone("Europe/Berlin");
+
+    @Param({"100", "1000", "10000"})
+    public int scheduleCount;
+
+    private FenceSchedule[] schedules;
+    private IntervalIndex index;
+    private IntList changed;
+    private long start;
+    private long edge;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        schedules = new FenceSchedule[scheduleCount];
+        for (int i = 0; i < scheduleCount; i++) {
+            int open = 6 + random.nextInt(6);
+            int close = open + 4 + random.nextInt(8);
+            schedules[i] = FenceSchedule.parse(String.format("Mon-Fri %02d:%02d-%02d:00; Sat %02d:00-%02d:30",
+                    open, 15 * random.nextInt(4), close, open + 1, close - 2), ZONE);
+        }
+        start = 1791000000000L;
+        index = indexWeek();
+        changed = new IntList();
+        edge = start;
+    }
+
+    @Benchmark
+    public IntervalIndex indexWeek() {
+        IntervalIndex periods = new IntervalIndex();
+        long horizon = start + WEEK_MS;
+        for (int slot = 0; slot < schedules.length; slot++) {
+            FenceSchedule schedule = schedules[slot];
+            long from = schedule.isActive(start, ZONE) ? start : schedule.nextChange(start, ZONE);
+            while (from < horizon) {
+                long end = schedule.nextChange(from, ZONE);
+                periods.add(from, Math.min(end, horizon), slot);
+                from = schedule.nextChange(end, ZONE);
+            }
+        }
+        periods.nextEdge(start);
+        return periods;
+    }
+
+    @Benchmark
+    public int flipAtNextEdge() {
+        long next = index.nextEdge(edge);
+        if (next == Long.MAX_VALUE) {
+            next = index.nextEdge(start);
+            edge = start;
+        }
+        changed.clear();
+        index.startingIn(edge, next, changed);
+        index.endingIn(edge, next, changed);
+        edge = next;
+        return changed.size();
+    }
+}
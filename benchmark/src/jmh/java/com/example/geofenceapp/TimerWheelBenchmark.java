@@ -0,0 +1,85 @@
+package com.example.geofenceapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dwell timer churn as DwellMonitor sees it: with armedCount fences occupied,
+ * one fence is exited and another entered per operation, and the wheel is
+ * advanced a second at a time. Cost should not depend on armedCount.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimerWheelBenchmark {
+    private static final long TICK_MS = 1000;
+
+    @Param({"100", "10000", "100000"})
+    public int armedCount;
+
+    private TimerWheel wheel;
+    private IntList expired;
+    private int[] timers;
+    private long[] delays;
+    private int next;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        wheel = new TimerWheel(TICK_MS, 0);
+        expired = new IntList();
+        timers = new int[armedCount];
+        // Loitering delays from a minute to a day
+        delays = new long[1024];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = 60000 + (long) (random.nextDouble() * 86400000L);
+        }
+        for (int i = 0; i < armedCount; i++) {
+            timers[i] = wheel.schedule(delays[i & 1023], i);
+        }
+    }
+
+    @Benchmark
+    public int exitAndEnter() {
+        int fence = next;
+        next = next + 1 == armedCount ? 0 : next + 1;
+        wheel.cancel(timers[fence]);
+        timers[fence] = wheel.schedule(now + delays[fence & 1023], fence);
+        return timers[fence];
+    }
+
+    @Benchmark
+    public long nextDeadline() {
+        return wheel.nextDeadline();
+    }
+
+    @Benchmark
+    public int advanceOneTick() {
+        now += TICK_MS;
+        expired.clear();
+        int fired = wheel.advance(now, expired);
+        // Keep the population steady by re-arming whatever fired
+        for (int i = 0; i < expired.size(); i++) {
+            int fence = expired.get(i);
+            timers[fence] = wheel.schedule(now + delays[fence & 1023], fence);
+        }
+        return fired;
+    }
+}
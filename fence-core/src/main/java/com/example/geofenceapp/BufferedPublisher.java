@@ -0,0 +1,274 @@
+package com.example.geofenceapp;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Hot publisher for a source that cannot be slowed down, such as location
+ * updates or a stage that must keep evaluating. {@link #offer(Object)} never
+ * blocks: every subscriber has its own bounded buffer and executor, items are
+ * delivered as its demand allows, and when its buffer is full the
+ * subscription's {@link OverflowPolicy} decides what is lost. A slow
+ * subscriber therefore only ever loses its own items and never holds up the
+ * source or the other subscribers.
+ *
+ * Each subscriber is called on its executor, one signal at a time.
+ */
+public final class BufferedPublisher<T> implements ReactiveFlow.Publisher<T> {
+    /**
+     * What to do with an item offered to a full buffer
+     */
+    public enum OverflowPolicy {
+        // Discard the item offered
+        DROP_NEWEST,
+        // Discard the oldest buffered item to make room
+        DROP_OLDEST,
+        // Keep only the latest item; the buffer holds one
+        CONFLATE
+    }
+
+    private final Executor defaultExecutor;
+    private final int defaultCapacity;
+    private final OverflowPolicy defaultPolicy;
+    private final CopyOnWriteArrayList<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean terminated;
+
+    /**
+     * @param executor Runs deliveries for {@link #subscribe(ReactiveFlow.Subscriber)}
+     * @param capacity Buffer size for {@link #subscribe(ReactiveFlow.Subscriber)}
+     * @param policy   Overflow policy for {@link #subscribe(ReactiveFlow.Subscriber)}
+     */
+    public BufferedPublisher(Executor executor, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.defaultExecutor = executor;
+        this.defaultCapacity = capacity;
+        this.defaultPolicy = policy;
+    }
+
+    @Override
+    public void subscribe(ReactiveFlow.Subscriber<? super T> subscriber) {
+        subscribe(subscriber, defaultCapacity, defaultPolicy, defaultExecutor);
+    }
+
+    /**
+     * Subscribe with a buffer and executor of its own
+     *
+     * @param subscriber Subscriber
+     * @param capacity   Items buffered beyond its demand; CONFLATE always buffers one
+     * @param policy     What to do when the buffer is full
+     * @param executor   Runs the deliveries to this subscriber
+     */
+    public void subscribe(ReactiveFlow.Subscriber<? super T> subscriber, int capacity, OverflowPolicy policy,
+                          Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        BufferedSubscription subscription = new BufferedSubscription(subscriber,
+                policy == OverflowPolicy.CONFLATE ? 1 : capacity, policy, executor);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (terminated) {
+            subscription.terminate(null);
+        }
+    }
+
+    /**
+     * Hand an item to every subscriber; never blocks
+     */
+    public void offer(T item) {
+        if (item == null) {
+            throw new NullPointerException("Items must not be null");
+        }
+        for (BufferedSubscription subscription : subscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    /**
+     * Signal onComplete to every subscriber once it has taken its buffered items
+     */
+    public void complete() {
+        terminated = true;
+        for (BufferedSubscription subscription : subscriptions) {
+            subscription.terminate(null);
+        }
+    }
+
+    /**
+     * Signal onError to every subscriber, dropping what is still buffered
+     */
+    public void fail(Throwable error) {
+        terminated = true;
+        for (BufferedSubscription subscription : subscriptions) {
+            subscription.terminate(error);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Items lost to full buffers, over all subscribers
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (BufferedSubscription subscription : subscriptions) {
+            dropped += subscription.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    private final class BufferedSubscription implements ReactiveFlow.Subscription, Runnable {
+        private final ReactiveFlow.Subscriber<? super T> subscriber;
+        private final OverflowPolicy policy;
+        private final Executor executor;
+
+        // Ring buffer and state, guarded by this
+        private final Object[] items;
+        private int head;
+        private int count;
+        private long demand;
+        private long dropped;
+        private boolean scheduled;
+        private boolean cancelled;
+        private boolean completing;
+        private Throwable error;
+        private boolean done;
+
+        BufferedSubscription(ReactiveFlow.Subscriber<? super T> subscriber, int capacity, OverflowPolicy policy,
+                             Executor executor) {
+            this.subscriber = subscriber;
+            this.items = new Object[capacity];
+            this.policy = policy;
+            this.executor = executor;
+        }
+
+        synchronized void offer(T item) {
+            if (cancelled || completing || done) {
+                return;
+            }
+            if (count == items.length) {
+                dropped++;
+                if (policy == OverflowPolicy.DROP_NEWEST) {
+                    return;
+                }
+                // DROP_OLDEST and CONFLATE make room by discarding the head
+                items[head] = null;
+                head = (head + 1) % items.length;
+                count--;
+            }
+            items[(head + count) % items.length] = item;
+            count++;
+            schedule();
+        }
+
+        synchronized void terminate(Throwable failure) {
+            if (cancelled || completing || done) {
+                return;
+            }
+            if (failure != null) {
+                error = failure;
+                clear();
+            }
+            completing = true;
+            schedule();
+        }
+
+        synchronized long getDroppedCount() {
+            return dropped;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled || done) {
+                    return;
+                }
+                if (n <= 0) {
+                    // Rule 3.9 of the Reactive Streams specification
+                    error = new IllegalArgumentException("Request must be positive: " + n);
+                    clear();
+                    completing = true;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                schedule();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        // Called with the lock held; one drain runs at a time
+        private void schedule() {
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+        }
+
+        private void clear() {
+            for (int i = 0; i < count; i++) {
+                items[(head + i) % items.length] = null;
+            }
+            head = 0;
+            count = 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            while (true) {
+                T item = null;
+                Throwable failure = null;
+                boolean complete = false;
+                synchronized (this) {
+                    if (cancelled || done) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (count > 0 && demand > 0) {
+                        item = (T) items[head];
+                        items[head] = null;
+                        head = (head + 1) % items.length;
+                        count--;
+                        demand--;
+                    } else if (completing && count == 0) {
+                        done = true;
+                        failure = error;
+                        complete = true;
+                    } else {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (complete) {
+                    subscriptions.remove(this);
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(item);
+                } catch (RuntimeException e) {
+                    // Subscribers must not throw; one that does is cut off
+                    cancel();
+                    subscriber.onError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
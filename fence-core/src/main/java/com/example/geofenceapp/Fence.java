@@ -0,0 +1,111 @@
+package com.example.geofenceapp;
+
+/**
+ * Immutable description of a named circular fence. This is the app-side model;
+ * {@code GeofenceHelper} turns it into a Play Services {@code Geofence} when it
+ * needs to be registered.
+ */
+public final class Fence {
+    private final String id;
+    private final double latitude;
+    private final double longitude;
+    private final float radius;
+    private final int transitionTypes;
+    private final int loiteringDelayMillis;
+
+    public Fence(String id, double latitude, double longitude, float radius, int transitionTypes) {
+        this(id, latitude, longitude, radius, transitionTypes, 0);
+    }
+
+    /**
+     * @param id                   Unique fence ID, also used as the Play Services request ID
+     * @param latitude             Center latitude in degrees
+     * @param longitude            Center longitude in degrees
+     * @param radius               Radius in meters
+     * @param transitionTypes      Bit mask of Geofence.GEOFENCE_TRANSITION_* values
+     * @param loiteringDelayMillis Time inside the fence before DWELL, or 0 for the app default
+     */
+    public Fence(String id, double latitude, double longitude, float radius, int transitionTypes,
+                 int loiteringDelayMillis) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("Fence ID must not be empty");
+        }
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Invalid fence center: " + latitude + ", " + longitude);
+        }
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("Fence radius must be positive: " + radius);
+        }
+        if (loiteringDelayMillis < 0) {
+            throw new IllegalArgumentException("Loitering delay must not be negative: " + loiteringDelayMillis);
+        }
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.transitionTypes = transitionTypes;
+        this.loiteringDelayMillis = loiteringDelayMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public int getTransitionTypes() {
+        return transitionTypes;
+    }
+
+    /**
+     * Time inside the fence before DWELL is reported, or 0 if the fence uses
+     * the app default
+     */
+    public int getLoiteringDelayMillis() {
+        return loiteringDelayMillis;
+    }
+
+    /**
+     * Check whether a point lies inside this fence
+     *
+     * @param lat Latitude in degrees
+     * @param lon Longitude in degrees
+     * @return true if the point is within the radius
+     */
+    public boolean contains(double lat, double lon) {
+        return GeoMath.haversineDistance(latitude, longitude, lat, lon) <= radius;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Fence)) return false;
+        Fence other = (Fence) o;
+        return id.equals(other.id)
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && Float.compare(radius, other.radius) == 0
+                && transitionTypes == other.transitionTypes
+                && loiteringDelayMillis == other.loiteringDelayMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Fence{" + id + " @ " + latitude + ", " + longitude + " r=" + radius + "m}";
+    }
+}
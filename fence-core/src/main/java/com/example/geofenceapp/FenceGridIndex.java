@@ -0,0 +1,154 @@
+package com.example.geofenceapp;
+
+/**
+ * Uniform lat/lon grid over fence bounding boxes. Each fence slot is listed in
+ * every cell its bounding box touches, so a point lookup reads a single cell.
+ * Fences too large for the grid are kept in a separate list that every query
+ * also returns.
+ *
+ * Boxes may run past the antimeridian, as the box of a circle near it does;
+ * they are split there and the part beyond is indexed on the other side.
+ */
+public final class FenceGridIndex implements FenceSpatialIndex {
+    // 0.01 degrees is roughly 1.1 km of latitude, a good fit for 5-500 m fences
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    // Fences spanning more cells than this go to the oversized list instead
+    private static final int MAX_CELLS_PER_FENCE = 1024;
+
+    private final double cellSize;
+    private final LongIntMultimap cells = new LongIntMultimap(1024);
+    private final IntList oversized = new IntList();
+    // West and east edges of the parts of a box split at the antimeridian
+    private final double[] ranges = new double[4];
+
+    public FenceGridIndex() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    public FenceGridIndex(double cellSizeDegrees) {
+        if (!(cellSizeDegrees > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSizeDegrees);
+        }
+        this.cellSize = cellSizeDegrees;
+    }
+
+    /**
+     * Index a fence slot under its bounding box
+     */
+    public void insert(int slot, double minLat, double minLon, double maxLat, double maxLon) {
+        if (cellCount(minLat, minLon, maxLat, maxLon) > MAX_CELLS_PER_FENCE) {
+            oversized.add(slot);
+            return;
+        }
+        for (int part = 0, parts = GeoMath.splitLongitudes(minLon, maxLon, ranges); part < parts; part++) {
+            for (int r = row(minLat), maxRow = row(maxLat); r <= maxRow; r++) {
+                for (int c = col(ranges[2 * part]), maxCol = col(ranges[2 * part + 1]); c <= maxCol; c++) {
+                    cells.put(key(r, c), slot);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void insert(int slot, double lat, double lon, double radiusMeters) {
+        double dLat = GeoMath.metersToLatitudeDegrees(radiusMeters);
+        double dLon = GeoMath.metersToLongitudeDegrees(radiusMeters, lat);
+        insert(slot, lat - dLat, lon - dLon, lat + dLat, lon + dLon);
+    }
+
+    /**
+     * Remove a fence slot; the bounding box must match the one it was inserted with
+     */
+    public void remove(int slot, double minLat, double minLon, double maxLat, double maxLon) {
+        if (oversized.removeValue(slot)) {
+            return;
+        }
+        for (int part = 0, parts = GeoMath.splitLongitudes(minLon, maxLon, ranges); part < parts; part++) {
+            for (int r = row(minLat), maxRow = row(maxLat); r <= maxRow; r++) {
+                for (int c = col(ranges[2 * part]), maxCol = col(ranges[2 * part + 1]); c <= maxCol; c++) {
+                    cells.remove(key(r, c), slot);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(int slot, double lat, double lon, double radiusMeters) {
+        double dLat = GeoMath.metersToLatitudeDegrees(radiusMeters);
+        double dLon = GeoMath.metersToLongitudeDegrees(radiusMeters, lat);
+        remove(slot, lat - dLat, lon - dLon, lat + dLat, lon + dLon);
+    }
+
+    /**
+     * Collect candidate slots whose bounding box may contain a point.
+     * The result contains no duplicates.
+     *
+     * @param out Buffer the candidates are appended to
+     */
+    public void queryPoint(double lat, double lon, IntList out) {
+        IntList cell = cells.get(key(row(lat), col(lon)));
+        if (cell != null) {
+            for (int i = 0, n = cell.size(); i < n; i++) {
+                out.add(cell.get(i));
+            }
+        }
+        appendOversized(out);
+    }
+
+    // The grid only bounds fences, so every slot is a candidate
+    @Override
+    public void queryPoint(double lat, double lon, IntList candidates, IntList hits) {
+        queryPoint(lat, lon, candidates);
+    }
+
+    @Override
+    public void queryBox(double minLat, double minLon, double maxLat, double maxLon, IntList out) {
+        for (int part = 0, parts = GeoMath.splitLongitudes(minLon, maxLon, ranges); part < parts; part++) {
+            for (int r = row(minLat), maxRow = row(maxLat); r <= maxRow; r++) {
+                for (int c = col(ranges[2 * part]), maxCol = col(ranges[2 * part + 1]); c <= maxCol; c++) {
+                    IntList cell = cells.get(key(r, c));
+                    if (cell != null) {
+                        for (int i = 0, n = cell.size(); i < n; i++) {
+                            out.add(cell.get(i));
+                        }
+                    }
+                }
+            }
+        }
+        appendOversized(out);
+    }
+
+    @Override
+    public long cellCount(double minLat, double minLon, double maxLat, double maxLon) {
+        long cols = 0;
+        for (int part = 0, parts = GeoMath.splitLongitudes(minLon, maxLon, ranges); part < parts; part++) {
+            cols += col(ranges[2 * part + 1]) - col(ranges[2 * part]) + 1;
+        }
+        return (row(maxLat) - row(minLat) + 1) * cols;
+    }
+
+    @Override
+    public void clear() {
+        cells.clear();
+        oversized.clear();
+    }
+
+    private void appendOversized(IntList out) {
+        for (int i = 0, n = oversized.size(); i < n; i++) {
+            out.add(oversized.get(i));
+        }
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((GeoMath.clampLatitude(lat) + 90.0) / cellSize);
+    }
+
+    private int col(double lon) {
+        return (int) Math.floor((GeoMath.clampLongitude(lon) + 180.0) / cellSize);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+}
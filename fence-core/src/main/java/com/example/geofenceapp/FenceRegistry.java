@@ -0,0 +1,380 @@
+package com.example.geofenceapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory catalog of named fences with spatial queries. Fence data lives in a
+ * {@link FenceStore} and lookups go through a {@link FenceSpatialIndex}, a
+ * {@link FenceGridIndex} by default or a {@link GeohashCellIndex}, so only
+ * fences near the query point are tested instead of scanning the whole catalog.
+ * The grid is the default because it builds much faster and answers the
+ * window's nearest query faster; see {@link GeohashCellIndex}.
+ * A {@link PolygonFence} is stored as its enclosing circle and refined with the
+ * polygon in {@link #containing(double, double)}; the other queries use the circle.
+ * All methods are thread-safe.
+ */
+public class FenceRegistry {
+    // Radius of the first ring searched by nearest()
+    private static final double NEAREST_INITIAL_RADIUS_METERS = 1000;
+
+    // Half the Earth's circumference; a search this wide covers every fence
+    private static final double MAX_SEARCH_RADIUS_METERS = Math.PI * GeoMath.EARTH_RADIUS_METERS;
+
+    // Compact the store once removed slots outnumber live ones past this size
+    private static final int MIN_DEAD_SLOTS_FOR_COMPACTION = 256;
+
+    private static final FenceRegistry DEFAULT_INSTANCE = new FenceRegistry();
+
+    private final FenceSpatialIndex index;
+    private final FenceStore store = new FenceStore();
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final Map<String, PolygonFence> polygonsById = new HashMap<>();
+    private final IntList candidates = new IntList(64);
+    private final IntList rawCandidates = new IntList(64);
+    private final IntList hits = new IntList(16);
+
+    private int[] visitStamps = new int[64];
+    private int stamp;
+
+    public FenceRegistry() {
+        this(new FenceGridIndex());
+    }
+
+    public FenceRegistry(FenceSpatialIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the process-wide registry shared by the app components
+     */
+    public static FenceRegistry getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Add a fence, replacing any existing fence with the same ID
+     *
+     * @param fence Fence to add
+     */
+    public synchronized void add(Fence fence) {
+        remove(fence.getId());
+
+        int slot = store.add(fence);
+        if (slot >= visitStamps.length) {
+            visitStamps = Arrays.copyOf(visitStamps, visitStamps.length * 2);
+        }
+        slotsById.put(fence.getId(), slot);
+        indexSlot(slot, true);
+    }
+
+    /**
+     * Add a polygon fence, replacing any existing fence with the same ID
+     *
+     * @param polygon Polygon to add
+     */
+    public synchronized void add(PolygonFence polygon) {
+        add(polygon.toCircleFence());
+        int slot = slotsById.get(polygon.getId());
+        store.setFlags(slot, FenceStore.FLAG_POLYGON);
+        polygonsById.put(polygon.getId(), polygon);
+    }
+
+    /**
+     * Remove a fence by ID
+     *
+     * @param id Fence ID
+     * @return true if a fence was removed
+     */
+    public synchronized boolean remove(String id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        polygonsById.remove(id);
+        indexSlot(slot, false);
+        store.remove(slot);
+
+        if (store.deadCount() > MIN_DEAD_SLOTS_FOR_COMPACTION && store.deadCount() > store.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    public synchronized Fence get(String id) {
+        Integer slot = slotsById.get(id);
+        return slot == null ? null : store.toFence(slot);
+    }
+
+    /**
+     * Get the polygon of a polygon fence
+     *
+     * @param id Fence ID
+     * @return The polygon, or null if the fence does not exist or is a circle
+     */
+    public synchronized PolygonFence getPolygon(String id) {
+        return polygonsById.get(id);
+    }
+
+    public synchronized int size() {
+        return slotsById.size();
+    }
+
+    public synchronized List<Fence> getAll() {
+        List<Fence> result = new ArrayList<>(store.size());
+        for (int slot = 0, n = store.slotCount(); slot < n; slot++) {
+            if (store.isLive(slot)) {
+                result.add(store.toFence(slot));
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        slotsById.clear();
+        polygonsById.clear();
+        store.clear();
+    }
+
+    /**
+     * Find all fences that contain a point
+     *
+     * @param lat Latitude in degrees
+     * @param lon Longitude in degrees
+     * @return Fences whose circle or polygon contains the point; polygons are
+     *         returned as their enclosing circle
+     */
+    public synchronized List<Fence> containing(double lat, double lon) {
+        candidates.clear();
+        hits.clear();
+        index.queryPoint(lat, lon, candidates, hits);
+
+        List<Fence> result = new ArrayList<>();
+        for (int i = 0, n = hits.size(); i < n; i++) {
+            int slot = hits.get(i);
+            if (polygonContains(slot, lat, lon)) {
+                result.add(store.toFence(slot));
+            }
+        }
+        double cosLat = DistanceKernel.cosLatitude(lat);
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            int slot = candidates.get(i);
+            if (store.contains(slot, lat, lon, cosLat) && polygonContains(slot, lat, lon)) {
+                result.add(store.toFence(slot));
+            }
+        }
+        return result;
+    }
+
+    // Refine a slot whose circle contains the point; circles pass as they are
+    private boolean polygonContains(int slot, double lat, double lon) {
+        return (store.flags(slot) & FenceStore.FLAG_POLYGON) == 0
+                || polygonsById.get(store.id(slot)).contains(lat, lon);
+    }
+
+    /**
+     * Find all fences whose area comes within a distance of a point
+     *
+     * @param lat          Latitude in degrees
+     * @param lon          Longitude in degrees
+     * @param radiusMeters Search radius in meters
+     * @return Fences whose circle intersects the search circle
+     */
+    public synchronized List<Fence> withinRadius(double lat, double lon, double radiusMeters) {
+        return withinRadius(lat, lon, radiusMeters, Collections.<String>emptySet());
+    }
+
+    private List<Fence> withinRadius(double lat, double lon, double radiusMeters, Set<String> excluded) {
+        double dLat = GeoMath.metersToLatitudeDegrees(radiusMeters);
+        double dLon = GeoMath.metersToLongitudeDegrees(radiusMeters, lat);
+        collectCandidates(lat - dLat, lon - dLon, lat + dLat, lon + dLon);
+
+        double cosLat = DistanceKernel.cosLatitude(lat);
+        List<Fence> result = new ArrayList<>();
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            int slot = candidates.get(i);
+            if (DistanceKernel.isWithin(store.latitude(slot), store.longitude(slot), store.cosLatitude(slot),
+                    lat, lon, cosLat, radiusMeters + store.radius(slot))
+                    && (excluded.isEmpty() || !excluded.contains(store.id(slot)))) {
+                result.add(store.toFence(slot));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the fences whose boundary is closest to a point. The search starts
+     * with a small ring and widens it until enough fences have been found.
+     *
+     * @param lat   Latitude in degrees
+     * @param lon   Longitude in degrees
+     * @param count Maximum number of fences to return
+     * @return Up to count fences, nearest boundary first
+     */
+    public synchronized List<Fence> nearest(double lat, double lon, int count) {
+        return nearest(lat, lon, count, Collections.<String>emptySet());
+    }
+
+    /**
+     * Like {@link #nearest(double, double, int)}, passing over some fences
+     *
+     * @param excluded IDs of the fences to leave out
+     */
+    public synchronized List<Fence> nearest(final double lat, final double lon, int count, Set<String> excluded) {
+        if (count <= 0 || slotsById.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        double radius = NEAREST_INITIAL_RADIUS_METERS;
+        List<Fence> found = withinRadius(lat, lon, radius, excluded);
+        while (found.size() < count && found.size() + excluded.size() < slotsById.size()
+                && radius < MAX_SEARCH_RADIUS_METERS) {
+            radius *= 4;
+            found = withinRadius(lat, lon, radius, excluded);
+        }
+
+        Collections.sort(found, (a, b) -> Double.compare(
+                boundaryDistance(a, lat, lon), boundaryDistance(b, lat, lon)));
+        return found.size() > count ? new ArrayList<>(found.subList(0, count)) : found;
+    }
+
+    /**
+     * Distance from a point to the nearest fence boundary, whether the point is
+     * inside that fence or not. Polygons are measured to their edges. Like
+     * {@link #nearest(double, double, int)}, the search widens from a small ring.
+     *
+     * @param lat Latitude in degrees
+     * @param lon Longitude in degrees
+     * @return Distance in meters, or positive infinity if the registry is empty
+     */
+    public synchronized double nearestBoundaryDistance(double lat, double lon) {
+        if (slotsById.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        for (double radius = NEAREST_INITIAL_RADIUS_METERS; ; radius *= 4) {
+            double dLat = GeoMath.metersToLatitudeDegrees(radius);
+            double dLon = GeoMath.metersToLongitudeDegrees(radius, lat);
+            collectCandidates(lat - dLat, lon - dLon, lat + dLat, lon + dLon);
+
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0, n = candidates.size(); i < n; i++) {
+                int slot = candidates.get(i);
+                double distance = (store.flags(slot) & FenceStore.FLAG_POLYGON) != 0
+                        ? polygonsById.get(store.id(slot)).boundaryDistance(lat, lon)
+                        : Math.abs(GeoMath.haversineDistance(lat, lon, store.latitude(slot), store.longitude(slot))
+                                - store.radius(slot));
+                best = Math.min(best, distance);
+            }
+            // Every fence with a boundary inside the ring is among the candidates
+            if (best <= radius || radius >= MAX_SEARCH_RADIUS_METERS) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Distance from a point to a fence boundary; negative when the point is inside
+     *
+     * @param fence Fence to measure against
+     * @param lat   Latitude in degrees
+     * @param lon   Longitude in degrees
+     * @return Signed distance in meters
+     */
+    public static double boundaryDistance(Fence fence, double lat, double lon) {
+        return GeoMath.haversineDistance(lat, lon, fence.getLatitude(), fence.getLongitude()) - fence.getRadius();
+    }
+
+    /**
+     * Find all fences whose circle overlaps a bounding box. A box across the
+     * antimeridian has its western edge east of its eastern edge, as map
+     * bounds report it.
+     *
+     * @param minLat Southern edge in degrees
+     * @param minLon Western edge in degrees
+     * @param maxLat Northern edge in degrees
+     * @param maxLon Eastern edge in degrees
+     * @return Fences overlapping the box
+     */
+    public synchronized List<Fence> inBoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+        if (minLon > maxLon) {
+            maxLon += 360.0;
+        }
+        collectCandidates(minLat, minLon, maxLat, maxLon);
+
+        List<Fence> result = new ArrayList<>();
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            int slot = candidates.get(i);
+            double lat = store.latitude(slot);
+            double lon = store.longitude(slot);
+            double dLat = GeoMath.metersToLatitudeDegrees(store.radius(slot));
+            double dLon = GeoMath.metersToLongitudeDegrees(store.radius(slot), lat);
+            // Compare on the box's side of the antimeridian
+            if (lon + dLon < minLon) {
+                lon += 360.0;
+            } else if (lon - dLon > maxLon) {
+                lon -= 360.0;
+            }
+            if (lat + dLat >= minLat && lat - dLat <= maxLat && lon + dLon >= minLon && lon - dLon <= maxLon) {
+                result.add(store.toFence(slot));
+            }
+        }
+        return result;
+    }
+
+    // Fill the candidate buffer with the distinct slots from a box query
+    private void collectCandidates(double minLat, double minLon, double maxLat, double maxLon) {
+        candidates.clear();
+
+        // For very wide boxes walking the index costs more than testing every fence
+        if (index.cellCount(minLat, minLon, maxLat, maxLon) > store.slotCount()) {
+            for (int slot = 0, n = store.slotCount(); slot < n; slot++) {
+                if (store.isLive(slot)) {
+                    candidates.add(slot);
+                }
+            }
+            return;
+        }
+
+        IntList raw = rawCandidates;
+        raw.clear();
+        index.queryBox(minLat, minLon, maxLat, maxLon, raw);
+
+        if (++stamp == 0) {
+            Arrays.fill(visitStamps, 0);
+            stamp = 1;
+        }
+        for (int i = 0, n = raw.size(); i < n; i++) {
+            int slot = raw.get(i);
+            if (visitStamps[slot] != stamp) {
+                visitStamps[slot] = stamp;
+                candidates.add(slot);
+            }
+        }
+    }
+
+    // Reclaim removed slots, then rebuild the index and ID map for the new slot numbers
+    private void compact() {
+        int[] remap = store.compact();
+        for (Map.Entry<String, Integer> entry : slotsById.entrySet()) {
+            entry.setValue(remap[entry.getValue()]);
+        }
+        index.clear();
+        for (int slot = 0, n = store.slotCount(); slot < n; slot++) {
+            indexSlot(slot, true);
+        }
+    }
+
+    private void indexSlot(int slot, boolean insert) {
+        if (insert) {
+            index.insert(slot, store.latitude(slot), store.longitude(slot), store.radius(slot));
+        } else {
+            index.remove(slot, store.latitude(slot), store.longitude(slot), store.radius(slot));
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.geofenceapp;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * When a fence is armed: weekly windows of local time, optionally limited to
+ * a validity period. Schedules are written as clauses separated by
+ * semicolons, for example
+ * {@code "Mon-Fri 09:00-17:30; Sat 10:00-14:00; until 2026-12-31"}.
+ * A window clause is a day list ({@code Mon}, {@code Mon-Fri},
+ * {@code Sat,Sun} or {@code daily}) and a time range; a range ending at or
+ * before its start runs past midnight. {@code from} and {@code until} take a
+ * date or {@code yyyy-MM-ddTHH:mm}; {@code until} is exclusive. A schedule
+ * with no window clauses is armed all day within its validity period.
+ *
+ * Windows are kept as merged minute-of-week ranges, Monday 00:00 being
+ * minute 0, and evaluated in the time zone passed to each query, so they
+ * follow the wall clock across daylight saving changes. Queries work on the
+ * zone offset rather than a Calendar, as the scheduler runs thousands of them
+ * when it indexes. Immutable.
+ */
+public final class FenceSchedule {
+    static final int MINUTES_PER_DAY = 24 * 60;
+    static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    private static final long MILLIS_PER_MINUTE = 60000;
+    private static final int EPOCH_MINUTE_OF_WEEK = 3 * MINUTES_PER_DAY;
+
+    private static final String[] DAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    private final String spec;
+    // Sorted, non-overlapping [start, end) ranges in minutes of the week
+    private final int[] windowStarts;
+    private final int[] windowEnds;
+    private final long validFrom;
+    private final long validUntil;
+
+    private FenceSchedule(String spec, int[] windowStarts, int[] windowEnds, long validFrom, long validUntil) {
+        this.spec = spec;
+        this.windowStarts = windowStarts;
+        this.windowEnds = windowEnds;
+        this.validFrom = validFrom;
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * Parse a schedule
+     *
+     * @param spec     Schedule text, see the class description
+     * @param timeZone Zone the from and until dates are in
+     * @throws IllegalArgumentException If the text is not a valid schedule
+     */
+    public static FenceSchedule parse(String spec, TimeZone timeZone) {
+        boolean[] minutes = null;
+        long from = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        for (String rawClause : spec.split(";")) {
+            String clause = rawClause.trim();
+            if (clause.isEmpty()) {
+                continue;
+            }
+            String lower = clause.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("from ")) {
+                from = parseDate(clause.substring(5).trim(), timeZone);
+            } else if (lower.startsWith("until ")) {
+                until = parseDate(clause.substring(6).trim(), timeZone);
+            } else {
+                if (minutes == null) {
+                    minutes = new boolean[MINUTES_PER_WEEK];
+                }
+                parseWindow(lower, minutes);
+            }
+        }
+        if (from >= until) {
+            throw new IllegalArgumentException("Schedule ends before it starts: " + spec);
+        }
+
+        int[] starts = new int[0];
+        int[] ends = new int[0];
+        if (minutes != null) {
+            int count = 0;
+            starts = new int[MINUTES_PER_WEEK / 2];
+            ends = new int[MINUTES_PER_WEEK / 2];
+            for (int minute = 0; minute < MINUTES_PER_WEEK; minute++) {
+                if (minutes[minute] && (minute == 0 || !minutes[minute - 1])) {
+                    starts[count] = minute;
+                }
+                if (minutes[minute] && (minute == MINUTES_PER_WEEK - 1 || !minutes[minute + 1])) {
+                    ends[count++] = minute + 1;
+                }
+            }
+            if (count == 0) {
+                throw new IllegalArgumentException("Schedule windows are empty: " + spec);
+            }
+            starts = Arrays.copyOf(starts, count);
+            ends = Arrays.copyOf(ends, count);
+        }
+        return new FenceSchedule(spec.trim(), starts, ends, from, until);
+    }
+
+    /**
+     * Check whether the fence should be armed at a time
+     *
+     * @param timeMillis Wall-clock time
+     * @param timeZone   Zone the windows are in
+     */
+    public boolean isActive(long timeMillis, TimeZone timeZone) {
+        if (timeMillis < validFrom || timeMillis >= validUntil) {
+            return false;
+        }
+        if (windowStarts.length == 0) {
+            return true;
+        }
+        int minute = minuteOfWeek(timeMillis, timeZone);
+        int index = Arrays.binarySearch(windowStarts, minute);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index >= 0 && minute < windowEnds[index];
+    }
+
+    /**
+     * Time of the next change between armed and disarmed after a time
+     *
+     * @param timeMillis Wall-clock time
+     * @param timeZone   Zone the windows are in
+     * @return The first time after timeMillis with the other state, or Long.MAX_VALUE if it never changes
+     */
+    public long nextChange(long timeMillis, TimeZone timeZone) {
+        boolean active = isActive(timeMillis, timeZone);
+        long cursor = timeMillis;
+        // Window edges that merely touch, at week wrap or across a DST gap, are stepped over
+        for (int step = 0, maxSteps = 2 * windowStarts.length + 4; step < maxSteps; step++) {
+            long edge = nextEdge(cursor, timeZone);
+            if (edge == Long.MAX_VALUE || isActive(edge, timeZone) != active) {
+                return edge;
+            }
+            cursor = edge;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether the schedule can never arm the fence again after a time
+     */
+    public boolean isExpired(long timeMillis) {
+        return timeMillis >= validUntil;
+    }
+
+    public long getValidFrom() {
+        return validFrom;
+    }
+
+    public long getValidUntil() {
+        return validUntil;
+    }
+
+    // Next window boundary or validity limit after a time
+    private long nextEdge(long timeMillis, TimeZone timeZone) {
+        if (timeMillis < validFrom) {
+            return validFrom;
+        }
+        if (timeMillis >= validUntil) {
+            return Long.MAX_VALUE;
+        }
+        if (windowStarts.length == 0) {
+            return validUntil;
+        }
+
+        int offset = timeZone.getOffset(timeMillis);
+        long localMinute = floorDiv(timeMillis + offset, MILLIS_PER_MINUTE);
+        int minute = minuteOfWeek(localMinute);
+        int boundary = Integer.MAX_VALUE;
+        for (int i = 0; i < windowStarts.length; i++) {
+            boundary = Math.min(boundary, firstAfter(windowStarts[i], minute));
+            boundary = Math.min(boundary, firstAfter(windowEnds[i], minute));
+        }
+
+        // The boundary is wall-clock time; convert with the offset in force then, not now
+        long localEdge = (localMinute - minute + boundary) * MILLIS_PER_MINUTE;
+        long edge = localEdge - timeZone.getOffset(localEdge - offset);
+        edge = localEdge - timeZone.getOffset(edge);
+        if (edge <= timeMillis) {
+            // Wall-clock time skipped by a DST change; move on by the smallest step
+            edge = (floorDiv(timeMillis, MILLIS_PER_MINUTE) + 1) * MILLIS_PER_MINUTE;
+        }
+        // When clocks go back the wall clock repeats, and may run into a boundary again
+        // before the edge found with the old offset
+        if (timeZone.getOffset(edge) != offset) {
+            edge = offsetChange(timeMillis, edge, offset, timeZone);
+        }
+        return Math.min(edge, validUntil);
+    }
+
+    // First minute in (from, to] whose zone offset is no longer the given one;
+    // the offset must differ at to
+    private static long offsetChange(long from, long to, int offset, TimeZone timeZone) {
+        long low = floorDiv(from, MILLIS_PER_MINUTE);
+        long high = floorDiv(to - 1, MILLIS_PER_MINUTE) + 1;
+        while (high - low > 1) {
+            long middle = (low + high) >>> 1;
+            if (timeZone.getOffset(middle * MILLIS_PER_MINUTE) == offset) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return Math.min(to, high * MILLIS_PER_MINUTE);
+    }
+
+    // Minute of the week at or after a boundary that comes strictly after the current minute,
+    // unwrapped past the end of the week
+    private static int firstAfter(int boundary, int minute) {
+        return boundary > minute ? boundary : boundary + MINUTES_PER_WEEK;
+    }
+
+    private static int minuteOfWeek(long timeMillis, TimeZone timeZone) {
+        return minuteOfWeek(floorDiv(timeMillis + timeZone.getOffset(timeMillis), MILLIS_PER_MINUTE));
+    }
+
+    // Minute of the week of a count of local minutes since the epoch, which was a Thursday
+    private static int minuteOfWeek(long localMinute) {
+        long minute = (localMinute + EPOCH_MINUTE_OF_WEEK) % MINUTES_PER_WEEK;
+        return (int) (minute < 0 ? minute + MINUTES_PER_WEEK : minute);
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return quotient * divisor > value ? quotient - 1 : quotient;
+    }
+
+    private static void parseWindow(String clause, boolean[] minutes) {
+        int space = clause.lastIndexOf(' ');
+        if (space < 0) {
+            throw new IllegalArgumentException("Expected days and a time range: " + clause);
+        }
+        boolean[] days = parseDays(clause.substring(0, space).trim());
+        String range = clause.substring(space + 1);
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("Expected a time range like 09:00-17:00: " + range);
+        }
+        int start = parseTime(range.substring(0, dash));
+        int end = parseTime(range.substring(dash + 1));
+        int length = end > start ? end - start : end + MINUTES_PER_DAY - start;
+        for (int day = 0; day < 7; day++) {
+            if (!days[day]) {
+                continue;
+            }
+            int first = day * MINUTES_PER_DAY + start;
+            for (int i = 0; i < length; i++) {
+                minutes[(first + i) % MINUTES_PER_WEEK] = true;
+            }
+        }
+    }
+
+    private static boolean[] parseDays(String text) {
+        boolean[] days = new boolean[7];
+        if ("daily".equals(text)) {
+            Arrays.fill(days, true);
+            return days;
+        }
+        for (String part : text.split(",")) {
+            String item = part.trim();
+            int dash = item.indexOf('-');
+            if (dash < 0) {
+                days[parseDay(item)] = true;
+                continue;
+            }
+            int first = parseDay(item.substring(0, dash).trim());
+            int last = parseDay(item.substring(dash + 1).trim());
+            // Ranges like Fri-Mon wrap over the weekend
+            for (int day = first; ; day = (day + 1) % 7) {
+                days[day] = true;
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+
+    private static int parseDay(String name) {
+        for (int i = 0; i < DAY_NAMES.length; i++) {
+            // Full names are accepted too
+            if (name.startsWith(DAY_NAMES[i])) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown day: " + name);
+    }
+
+    // Minutes after midnight for HH:mm; 24:00 is accepted as the end of the day
+    private static int parseTime(String text) {
+        int colon = text.indexOf(':');
+        try {
+            int hours = Integer.parseInt(colon < 0 ? text : text.substring(0, colon));
+            int minutes = colon < 0 ? 0 : Integer.parseInt(text.substring(colon + 1));
+            if (hours >= 0 && minutes >= 0 && minutes < 60 && (hours < 24 || (hours == 24 && minutes == 0))) {
+                return (hours * 60 + minutes) % MINUTES_PER_DAY;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid time: " + text);
+    }
+
+    private static long parseDate(String text, TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat(text.length() > 10 ? "yyyy-MM-dd'T'HH:mm" : "yyyy-MM-dd",
+                Locale.ROOT);
+        format.setTimeZone(timeZone);
+        format.setLenient(false);
+        try {
+            return format.parse(text).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + text);
+        }
+    }
+
+    /**
+     * The schedule text, as given to {@link #parse(String, TimeZone)}
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.geofenceapp;
+
+/**
+ * Spatial index over fence slots in a {@link FenceStore}, used by
+ * {@link FenceRegistry} to narrow queries down to nearby fences.
+ * Implementations are not thread-safe.
+ */
+public interface FenceSpatialIndex {
+    /**
+     * Index a fence slot under its circle
+     */
+    void insert(int slot, double lat, double lon, double radiusMeters);
+
+    /**
+     * Remove a fence slot; the circle must match the one it was inserted with
+     */
+    void remove(int slot, double lat, double lon, double radiusMeters);
+
+    /**
+     * Collect the slots that may contain a point. Each slot is appended at most
+     * once, to one of the two buffers.
+     *
+     * @param candidates Buffer for slots that still need a containment test
+     * @param hits       Buffer for slots whose circle is known to contain the point
+     */
+    void queryPoint(double lat, double lon, IntList candidates, IntList hits);
+
+    /**
+     * Collect candidate slots whose circle may intersect a box. A slot can be
+     * appended more than once, so callers must de-duplicate.
+     *
+     * @param out Buffer the candidates are appended to
+     */
+    void queryBox(double minLat, double minLon, double maxLat, double maxLon, IntList out);
+
+    /**
+     * Number of index cells a box query would visit
+     */
+    long cellCount(double minLat, double minLon, double maxLat, double maxLon);
+
+    void clear();
+}
@@ -0,0 +1,252 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for fence geometry. Each fence occupies one slot
+ * across parallel primitive arrays, so iterating centers and radii walks
+ * contiguous memory and never touches a boxed object. Coordinates are kept as
+ * doubles; at 100k fences the primitive columns take under 5 MB. The
+ * {@link DistanceKernel} terms (cosine of the latitude and squared radius) are
+ * computed once when a fence is added, so containment tests need no trig.
+ *
+ * Removal only clears {@link #FLAG_LIVE}; slots are reclaimed by
+ * {@link #compact()}, which callers holding slot numbers must follow with a
+ * remap. This class is not thread-safe.
+ */
+public final class FenceStore {
+    public static final int FLAG_LIVE = 1;
+
+    // The circle only bounds a polygon; containment must be refined by the owner
+    public static final int FLAG_POLYGON = 2;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private String[] ids;
+    private double[] latitudes;
+    private double[] longitudes;
+    private float[] radii;
+    private double[] cosLatitudes;
+    private double[] radiiDegreesSquared;
+    private int[] transitionTypes;
+    private int[] loiteringDelays;
+    private int[] flags;
+
+    private int slotCount;
+    private int liveCount;
+
+    public FenceStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FenceStore(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    /**
+     * Append a fence
+     *
+     * @return Slot number of the new fence
+     */
+    public int add(String id, double latitude, double longitude, float radius, int transitions) {
+        return add(id, latitude, longitude, radius, transitions, 0);
+    }
+
+    /**
+     * Append a fence with its own loitering delay
+     *
+     * @return Slot number of the new fence
+     */
+    public int add(String id, double latitude, double longitude, float radius, int transitions,
+                   int loiteringDelayMillis) {
+        if (slotCount == latitudes.length) {
+            grow(slotCount * 2);
+        }
+        int slot = slotCount++;
+        ids[slot] = id;
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        radii[slot] = radius;
+        cosLatitudes[slot] = DistanceKernel.cosLatitude(latitude);
+        radiiDegreesSquared[slot] = DistanceKernel.radiusDegreesSquared(radius);
+        transitionTypes[slot] = transitions;
+        loiteringDelays[slot] = loiteringDelayMillis;
+        flags[slot] = FLAG_LIVE;
+        liveCount++;
+        return slot;
+    }
+
+    public int add(Fence fence) {
+        return add(fence.getId(), fence.getLatitude(), fence.getLongitude(), fence.getRadius(),
+                fence.getTransitionTypes(), fence.getLoiteringDelayMillis());
+    }
+
+    /**
+     * Mark a slot as removed; the space is reclaimed on the next compaction
+     */
+    public void remove(int slot) {
+        if (isLive(slot)) {
+            flags[slot] &= ~FLAG_LIVE;
+            ids[slot] = null;
+            liveCount--;
+        }
+    }
+
+    /**
+     * Move all live fences to the front of the arrays and trim the storage
+     *
+     * @return Map from old slot to new slot, with -1 for removed slots
+     */
+    public int[] compact() {
+        int[] remap = new int[slotCount];
+        int next = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if ((flags[slot] & FLAG_LIVE) == 0) {
+                remap[slot] = -1;
+                continue;
+            }
+            if (slot != next) {
+                ids[next] = ids[slot];
+                latitudes[next] = latitudes[slot];
+                longitudes[next] = longitudes[slot];
+                radii[next] = radii[slot];
+                cosLatitudes[next] = cosLatitudes[slot];
+                radiiDegreesSquared[next] = radiiDegreesSquared[slot];
+                transitionTypes[next] = transitionTypes[slot];
+                loiteringDelays[next] = loiteringDelays[slot];
+                flags[next] = flags[slot];
+            }
+            remap[slot] = next++;
+        }
+        Arrays.fill(ids, next, slotCount, null);
+        Arrays.fill(flags, next, slotCount, 0);
+        slotCount = next;
+        grow(Math.max(DEFAULT_CAPACITY, next));
+        return remap;
+    }
+
+    public void clear() {
+        Arrays.fill(ids, 0, slotCount, null);
+        Arrays.fill(flags, 0, slotCount, 0);
+        slotCount = 0;
+        liveCount = 0;
+    }
+
+    /**
+     * Number of live fences
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Number of slots in use, including removed ones awaiting compaction.
+     * Valid slot numbers are 0 to slotCount() - 1.
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Number of removed slots awaiting compaction
+     */
+    public int deadCount() {
+        return slotCount - liveCount;
+    }
+
+    public boolean isLive(int slot) {
+        return slot >= 0 && slot < slotCount && (flags[slot] & FLAG_LIVE) != 0;
+    }
+
+    public String id(int slot) {
+        return ids[slot];
+    }
+
+    public double latitude(int slot) {
+        return latitudes[slot];
+    }
+
+    public double longitude(int slot) {
+        return longitudes[slot];
+    }
+
+    public float radius(int slot) {
+        return radii[slot];
+    }
+
+    /**
+     * Precomputed {@link DistanceKernel#cosLatitude(double)} of the fence center
+     */
+    public double cosLatitude(int slot) {
+        return cosLatitudes[slot];
+    }
+
+    public int transitionTypes(int slot) {
+        return transitionTypes[slot];
+    }
+
+    /**
+     * Loitering delay of the fence in milliseconds, 0 for the default
+     */
+    public int loiteringDelay(int slot) {
+        return loiteringDelays[slot];
+    }
+
+    public int flags(int slot) {
+        return flags[slot];
+    }
+
+    public void setFlags(int slot, int value) {
+        flags[slot] = (value & ~FLAG_LIVE) | (flags[slot] & FLAG_LIVE);
+    }
+
+    /**
+     * Check whether a point lies inside the fence in a slot
+     */
+    public boolean contains(int slot, double lat, double lon) {
+        return contains(slot, lat, lon, DistanceKernel.cosLatitude(lat));
+    }
+
+    /**
+     * Check whether a point lies inside the fence in a slot, reusing the
+     * point's cosine term across fences
+     *
+     * @param cosLat {@link DistanceKernel#cosLatitude(double)} of the point
+     */
+    public boolean contains(int slot, double lat, double lon, double cosLat) {
+        return DistanceKernel.contains(latitudes[slot], longitudes[slot], cosLatitudes[slot],
+                radiiDegreesSquared[slot], radii[slot], lat, lon, cosLat);
+    }
+
+    /**
+     * Materialize the fence in a slot as an immutable object
+     */
+    public Fence toFence(int slot) {
+        return new Fence(ids[slot], latitudes[slot], longitudes[slot], radii[slot], transitionTypes[slot],
+                loiteringDelays[slot]);
+    }
+
+    private void allocate(int capacity) {
+        ids = new String[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        radii = new float[capacity];
+        cosLatitudes = new double[capacity];
+        radiiDegreesSquared = new double[capacity];
+        transitionTypes = new int[capacity];
+        loiteringDelays = new int[capacity];
+        flags = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        radii = Arrays.copyOf(radii, capacity);
+        cosLatitudes = Arrays.copyOf(cosLatitudes, capacity);
+        radiiDegreesSquared = Arrays.copyOf(radiiDegreesSquared, capacity);
+        transitionTypes = Arrays.copyOf(transitionTypes, capacity);
+        loiteringDelays = Arrays.copyOf(loiteringDelays, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.geofenceapp;
+
+/**
+ * A transition detected for a fence, with the fix that caused it. Immutable.
+ */
+public final class FenceTransition {
+    private final String fenceId;
+    private final int transition;
+    private final LocationFix fix;
+
+    /**
+     * @param fenceId    Fence ID
+     * @param transition One of the TRANSITION_* constants of {@link TransitionTracker}
+     * @param fix        The fix the transition was detected at
+     */
+    public FenceTransition(String fenceId, int transition, LocationFix fix) {
+        this.fenceId = fenceId;
+        this.transition = transition;
+        this.fix = fix;
+    }
+
+    public String getFenceId() {
+        return fenceId;
+    }
+
+    public int getTransition() {
+        return transition;
+    }
+
+    public LocationFix getFix() {
+        return fix;
+    }
+
+    @Override
+    public String toString() {
+        return "FenceTransition{" + fenceId + ", " + transition + ", " + fix + "}";
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.geofenceapp;
+
+/**
+ * Filter and smoothing stage for a stream of fixes from one device. Fixes
+ * less accurate than a limit, or older than the last one, are dropped; the
+ * rest go through a one-dimensional Kalman filter per axis whose measurement
+ * noise is the fix's accuracy and whose process noise grows with the time
+ * since the previous fix, so a precise fix moves the estimate almost all the
+ * way while a vague one nudges it. A single noisy fix near a boundary is then
+ * less likely to cause an ENTER and EXIT in a row.
+ * Not thread-safe.
+ */
+public final class FixSmoother {
+    public static final float DEFAULT_MAX_ACCURACY_METERS = 100f;
+
+    // How fast the true position may drift from the estimate, like a brisk walk
+    public static final float DEFAULT_PROCESS_NOISE_METERS_PER_SECOND = 3f;
+
+    // Assumed for fixes that report no accuracy
+    private static final float UNKNOWN_ACCURACY_METERS = 30f;
+
+    private final float maxAccuracyMeters;
+    private final float processNoise;
+
+    private boolean initialized;
+    private long lastTimeMillis;
+    private double latitude;
+    private double longitude;
+    // Variance of the estimate in square meters
+    private double variance;
+
+    public FixSmoother() {
+        this(DEFAULT_MAX_ACCURACY_METERS, DEFAULT_PROCESS_NOISE_METERS_PER_SECOND);
+    }
+
+    /**
+     * @param maxAccuracyMeters Fixes with a worse accuracy are dropped
+     * @param processNoise      Expected drift of the true position, in meters per second
+     */
+    public FixSmoother(float maxAccuracyMeters, float processNoise) {
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.processNoise = processNoise;
+    }
+
+    /**
+     * Filter and smooth one fix
+     *
+     * @return The smoothed fix, with the estimate's accuracy, or null if the fix was dropped
+     */
+    public LocationFix apply(LocationFix fix) {
+        float accuracy = fix.getAccuracy() > 0 ? fix.getAccuracy() : UNKNOWN_ACCURACY_METERS;
+        if (accuracy > maxAccuracyMeters || (initialized && fix.getTimeMillis() < lastTimeMillis)) {
+            return null;
+        }
+        double measurementVariance = (double) accuracy * accuracy;
+        if (!initialized) {
+            initialized = true;
+            latitude = fix.getLatitude();
+            longitude = fix.getLongitude();
+            variance = measurementVariance;
+        } else {
+            double seconds = (fix.getTimeMillis() - lastTimeMillis) / 1000.0;
+            variance += seconds * processNoise * processNoise;
+            double gain = variance / (variance + measurementVariance);
+            latitude += gain * (fix.getLatitude() - latitude);
+            longitude += gain * (fix.getLongitude() - longitude);
+            variance *= 1 - gain;
+        }
+        lastTimeMillis = fix.getTimeMillis();
+        return new LocationFix(fix.getTimeMillis(), latitude, longitude, (float) Math.sqrt(variance));
+    }
+
+    /**
+     * Forget the estimate, e.g. after a gap in tracking
+     */
+    public void reset() {
+        initialized = false;
+    }
+}
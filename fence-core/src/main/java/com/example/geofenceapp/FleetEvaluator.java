@@ -0,0 +1,688 @@
+package com.example.geofenceapp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates location fixes from a whole fleet of devices against one fence
+ * set, with the same ENTER/EXIT/DWELL semantics as {@link TransitionTracker}.
+ * Meant for a backend or a test box replaying millions of fixes rather than
+ * for the app.
+ *
+ * Devices are hashed into a fixed number of partitions, several per worker
+ * of the {@link ForkJoinPool}. A batch of fixes is first split by partition
+ * in parallel, then every partition is evaluated by its own fork-join task:
+ * it groups its fixes by device, puts each device's fixes in time order and
+ * runs them through the device's state. A device only ever lives in one
+ * partition, so the tasks share nothing but the read-only fence index and
+ * throughput grows with the number of cores.
+ *
+ * Device state is kept per partition in primitive arrays: a {@link LongIntMap}
+ * from device ID to state index, and the occupied fences of each device as a
+ * linked list in a pooled visit table. State carries over between batches,
+ * so a fleet can be fed in consecutive time slices; a fix older than one
+ * already evaluated for its device is counted as late and skipped.
+ *
+ * {@link #evaluate(Fixes)} runs one batch at a time. From the command line:
+ * <pre>
+ * java com.example.geofenceapp.FleetEvaluator fences.csv &lt;devices&gt; &lt;fixesPerDevice&gt; [--threads n]
+ * </pre>
+ */
+public final class FleetEvaluator {
+    private static final int NONE = -1;
+
+    // Fixes per task while splitting a batch into partitions
+    private static final int CHUNK_FIXES = 1 << 15;
+
+    // Partitions per worker, so uneven partitions still balance out
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    private final FenceStore store = new FenceStore();
+    private final FenceGridIndex index = new FenceGridIndex();
+    private final long loiteringDelayMs;
+    private final ForkJoinPool pool;
+    private final Partition[] partitions;
+    private final int partitionShift;
+
+    public FleetEvaluator(List<Fence> fences) {
+        this(fences, TransitionTracker.DEFAULT_LOITERING_DELAY_MS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param fences           Fences to evaluate against
+     * @param loiteringDelayMs Time inside a fence before DWELL is reported, for fences without their own
+     * @param pool             Pool the evaluation runs in; its parallelism sets the number of partitions
+     */
+    public FleetEvaluator(List<Fence> fences, long loiteringDelayMs, ForkJoinPool pool) {
+        this.loiteringDelayMs = loiteringDelayMs;
+        this.pool = pool;
+        for (Fence fence : fences) {
+            int slot = store.add(fence);
+            double dLat = GeoMath.metersToLatitudeDegrees(fence.getRadius());
+            double dLon = GeoMath.metersToLongitudeDegrees(fence.getRadius(), fence.getLatitude());
+            index.insert(slot, fence.getLatitude() - dLat, fence.getLongitude() - dLon,
+                    fence.getLatitude() + dLat, fence.getLongitude() + dLon);
+        }
+
+        int count = Integer.highestOneBit(Math.max(2, pool.getParallelism() * PARTITIONS_PER_WORKER) - 1) << 1;
+        partitionShift = 32 - Integer.numberOfTrailingZeros(count);
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(store.slotCount());
+        }
+    }
+
+    /**
+     * Evaluate a batch of fixes. Fixes of one device may come in any order;
+     * they are evaluated in time order, ties in the order given.
+     *
+     * @param fixes Fixes to evaluate; not modified
+     * @return The transitions, grouped by device and in time order per device
+     */
+    public synchronized Result evaluate(Fixes fixes) {
+        long start = System.nanoTime();
+        Batch batch = new Batch(fixes);
+        if (batch.chunkCount > 0) {
+            pool.invoke(batch.new Count(0, batch.chunkCount));
+            batch.computeOffsets();
+            pool.invoke(batch.new Scatter(0, batch.chunkCount));
+        }
+        pool.invoke(batch.new Evaluate(0, partitions.length));
+        return new Result(partitions, System.nanoTime() - start);
+    }
+
+    /**
+     * Forget every device, as if monitoring had just started
+     */
+    public synchronized void reset() {
+        for (Partition partition : partitions) {
+            partition.reset();
+        }
+    }
+
+    /**
+     * Number of devices seen since construction or the last {@link #reset()}
+     */
+    public synchronized int getDeviceCount() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.devices.size();
+        }
+        return count;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public int getFenceCount() {
+        return store.size();
+    }
+
+    private int partitionOf(long deviceId) {
+        return LongIntMap.mix(deviceId) >>> partitionShift;
+    }
+
+    /**
+     * Columns of location fixes; grows as fixes are added
+     */
+    public static final class Fixes {
+        long[] deviceIds;
+        long[] times;
+        double[] latitudes;
+        double[] longitudes;
+        int size;
+
+        public Fixes() {
+            this(1024);
+        }
+
+        public Fixes(int initialCapacity) {
+            int capacity = Math.max(initialCapacity, 1);
+            deviceIds = new long[capacity];
+            times = new long[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+
+        public void add(long deviceId, double latitude, double longitude, long timeMillis) {
+            if (size == deviceIds.length) {
+                int capacity = size * 2;
+                deviceIds = Arrays.copyOf(deviceIds, capacity);
+                times = Arrays.copyOf(times, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+            deviceIds[size] = deviceId;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            times[size] = timeMillis;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Transitions found in one batch, as columns
+     */
+    public static final class Result {
+        private final long[] deviceIds;
+        private final String[] fenceIds;
+        private final int[] transitions;
+        private final long[] times;
+        private final int size;
+        private final long enterCount;
+        private final long exitCount;
+        private final long dwellCount;
+        private final long lateCount;
+        private final long evaluationNanos;
+
+        private Result(Partition[] partitions, long evaluationNanos) {
+            int total = 0;
+            long enters = 0;
+            long exits = 0;
+            long dwells = 0;
+            long late = 0;
+            for (Partition partition : partitions) {
+                total += partition.outSize;
+                enters += partition.enterCount;
+                exits += partition.exitCount;
+                dwells += partition.dwellCount;
+                late += partition.lateCount;
+            }
+            deviceIds = new long[total];
+            fenceIds = new String[total];
+            transitions = new int[total];
+            times = new long[total];
+            int offset = 0;
+            for (Partition partition : partitions) {
+                int n = partition.outSize;
+                System.arraycopy(partition.outDevices, 0, deviceIds, offset, n);
+                System.arraycopy(partition.outFences, 0, fenceIds, offset, n);
+                System.arraycopy(partition.outTransitions, 0, transitions, offset, n);
+                System.arraycopy(partition.outTimes, 0, times, offset, n);
+                offset += n;
+            }
+            this.size = total;
+            this.enterCount = enters;
+            this.exitCount = exits;
+            this.dwellCount = dwells;
+            this.lateCount = late;
+            this.evaluationNanos = evaluationNanos;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getDeviceId(int i) {
+            return deviceIds[i];
+        }
+
+        public String getFenceId(int i) {
+            return fenceIds[i];
+        }
+
+        /**
+         * @return One of the TRANSITION_* constants of {@link TransitionTracker}
+         */
+        public int getTransition(int i) {
+            return transitions[i];
+        }
+
+        public long getTimeMillis(int i) {
+            return times[i];
+        }
+
+        public long getEnterCount() {
+            return enterCount;
+        }
+
+        public long getExitCount() {
+            return exitCount;
+        }
+
+        public long getDwellCount() {
+            return dwellCount;
+        }
+
+        /**
+         * Fixes skipped because their device already had a later one evaluated
+         */
+        public long getLateCount() {
+            return lateCount;
+        }
+
+        public long getEvaluationNanos() {
+            return evaluationNanos;
+        }
+    }
+
+    // Splits [from, to) in halves until each task has one unit: a chunk of fixes or a partition
+    private abstract static class RangeTask extends RecursiveAction {
+        final int from;
+        final int to;
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                run(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(split(from, middle), split(middle, to));
+        }
+
+        abstract RangeTask split(int from, int to);
+
+        abstract void run(int unit);
+    }
+
+    // One call of evaluate(): a parallel counting sort of the fixes by partition
+    private final class Batch {
+        final Fixes fixes;
+        final int chunkCount;
+        final int[] partitionOf;
+        final int[][] chunkOffsets;
+        final int[] partitionStarts = new int[partitions.length + 1];
+        final int[] order;
+
+        Batch(Fixes fixes) {
+            this.fixes = fixes;
+            this.chunkCount = (fixes.size + CHUNK_FIXES - 1) / CHUNK_FIXES;
+            this.partitionOf = new int[fixes.size];
+            this.chunkOffsets = new int[chunkCount][partitions.length];
+            this.order = new int[fixes.size];
+        }
+
+        // Turn per-chunk counts into each chunk's first position in every partition
+        void computeOffsets() {
+            int position = 0;
+            for (int p = 0; p < partitions.length; p++) {
+                partitionStarts[p] = position;
+                for (int chunk = 0; chunk < chunkCount; chunk++) {
+                    int count = chunkOffsets[chunk][p];
+                    chunkOffsets[chunk][p] = position;
+                    position += count;
+                }
+            }
+            partitionStarts[partitions.length] = position;
+        }
+
+        final class Count extends RangeTask {
+            Count(int from, int to) {
+                super(from, to);
+            }
+
+            @Override
+            RangeTask split(int from, int to) {
+                return new Count(from, to);
+            }
+
+            @Override
+            void run(int chunk) {
+                int[] counts = chunkOffsets[chunk];
+                for (int i = chunk * CHUNK_FIXES, end = Math.min(fixes.size, i + CHUNK_FIXES); i < end; i++) {
+                    int partition = partitionOf(fixes.deviceIds[i]);
+                    partitionOf[i] = partition;
+                    counts[partition]++;
+                }
+            }
+        }
+
+        final class Scatter extends RangeTask {
+            Scatter(int from, int to) {
+                super(from, to);
+            }
+
+            @Override
+            RangeTask split(int from, int to) {
+                return new Scatter(from, to);
+            }
+
+            @Override
+            void run(int chunk) {
+                int[] positions = chunkOffsets[chunk];
+                for (int i = chunk * CHUNK_FIXES, end = Math.min(fixes.size, i + CHUNK_FIXES); i < end; i++) {
+                    order[positions[partitionOf[i]]++] = i;
+                }
+            }
+        }
+
+        final class Evaluate extends RangeTask {
+            Evaluate(int from, int to) {
+                super(from, to);
+            }
+
+            @Override
+            RangeTask split(int from, int to) {
+                return new Evaluate(from, to);
+            }
+
+            @Override
+            void run(int partition) {
+                partitions[partition].evaluate(fixes, order, partitionStarts[partition],
+                        partitionStarts[partition + 1]);
+            }
+        }
+    }
+
+    // Devices of one partition and their occupied fences. Only one task touches it at a time.
+    private final class Partition {
+        final LongIntMap devices = new LongIntMap();
+        long[] deviceIds = new long[64];
+        int[] visitHeads = new int[64];
+        long[] lastTimes = new long[64];
+        int[] batchCounts = new int[64];
+
+        // Pooled visits, linked per device; visitNext also links the free list
+        int[] visitSlots = new int[64];
+        long[] visitEntered = new long[64];
+        boolean[] visitDwelled = new boolean[64];
+        int[] visitNext = new int[64];
+        int visitCount;
+        int freeVisit = NONE;
+
+        final IntList candidates = new IntList(64);
+        final IntList touched = new IntList();
+        final int[] seenStamps;
+        final int[] occupiedStamps;
+        int stamp;
+
+        // Output of the current batch
+        long[] outDevices = new long[64];
+        String[] outFences = new String[64];
+        int[] outTransitions = new int[64];
+        long[] outTimes = new long[64];
+        int outSize;
+        long enterCount;
+        long exitCount;
+        long dwellCount;
+        long lateCount;
+
+        Partition(int slotCount) {
+            seenStamps = new int[slotCount];
+            occupiedStamps = new int[slotCount];
+        }
+
+        void evaluate(Fixes fixes, int[] order, int from, int to) {
+            outSize = 0;
+            enterCount = 0;
+            exitCount = 0;
+            dwellCount = 0;
+            lateCount = 0;
+            if (from == to) {
+                return;
+            }
+
+            // Group the fixes by device, devices in order of first appearance
+            int[] deviceOf = new int[to - from];
+            touched.clear();
+            for (int i = from; i < to; i++) {
+                int device = device(fixes.deviceIds[order[i]]);
+                deviceOf[i - from] = device;
+                if (batchCounts[device]++ == 0) {
+                    touched.add(device);
+                }
+            }
+            int position = 0;
+            for (int t = 0, n = touched.size(); t < n; t++) {
+                int device = touched.get(t);
+                int count = batchCounts[device];
+                batchCounts[device] = position;
+                position += count;
+            }
+            int[] grouped = new int[to - from];
+            for (int i = from; i < to; i++) {
+                grouped[batchCounts[deviceOf[i - from]]++] = order[i];
+            }
+
+            int[] scratch = null;
+            int runStart = 0;
+            for (int t = 0, n = touched.size(); t < n; t++) {
+                int device = touched.get(t);
+                int runEnd = batchCounts[device];
+                batchCounts[device] = 0;
+                if (!isSorted(grouped, runStart, runEnd, fixes.times)) {
+                    if (scratch == null) {
+                        scratch = new int[grouped.length];
+                    }
+                    mergeSort(grouped, scratch, runStart, runEnd, fixes.times);
+                }
+                for (int i = runStart; i < runEnd; i++) {
+                    int fix = grouped[i];
+                    onFix(device, fixes.times[fix], fixes.latitudes[fix], fixes.longitudes[fix]);
+                }
+                runStart = runEnd;
+            }
+        }
+
+        private void onFix(int device, long timeMillis, double latitude, double longitude) {
+            if (timeMillis < lastTimes[device]) {
+                lateCount++;
+                return;
+            }
+            lastTimes[device] = timeMillis;
+            if (++stamp == 0) {
+                Arrays.fill(seenStamps, 0);
+                Arrays.fill(occupiedStamps, 0);
+                stamp = 1;
+            }
+            for (int visit = visitHeads[device]; visit != NONE; visit = visitNext[visit]) {
+                occupiedStamps[visitSlots[visit]] = stamp;
+            }
+
+            candidates.clear();
+            index.queryPoint(latitude, longitude, candidates);
+            double cosLat = DistanceKernel.cosLatitude(latitude);
+            for (int i = 0, n = candidates.size(); i < n; i++) {
+                int slot = candidates.get(i);
+                if (!store.contains(slot, latitude, longitude, cosLat)) {
+                    continue;
+                }
+                seenStamps[slot] = stamp;
+                if (occupiedStamps[slot] != stamp) {
+                    occupiedStamps[slot] = stamp;
+                    int visit = allocateVisit();
+                    visitSlots[visit] = slot;
+                    visitEntered[visit] = timeMillis;
+                    visitDwelled[visit] = false;
+                    visitNext[visit] = visitHeads[device];
+                    visitHeads[device] = visit;
+                    report(device, slot, TransitionTracker.TRANSITION_ENTER, timeMillis);
+                }
+            }
+
+            // Fences occupied before this fix that no longer contain it are exited
+            int previous = NONE;
+            for (int visit = visitHeads[device]; visit != NONE; ) {
+                int following = visitNext[visit];
+                int slot = visitSlots[visit];
+                if (seenStamps[slot] != stamp) {
+                    if (previous == NONE) {
+                        visitHeads[device] = following;
+                    } else {
+                        visitNext[previous] = following;
+                    }
+                    visitNext[visit] = freeVisit;
+                    freeVisit = visit;
+                    report(device, slot, TransitionTracker.TRANSITION_EXIT, timeMillis);
+                } else {
+                    if (!visitDwelled[visit] && timeMillis - visitEntered[visit] >= loiteringDelay(slot)) {
+                        visitDwelled[visit] = true;
+                        report(device, slot, TransitionTracker.TRANSITION_DWELL, timeMillis);
+                    }
+                    previous = visit;
+                }
+                visit = following;
+            }
+        }
+
+        private long loiteringDelay(int slot) {
+            int delay = store.loiteringDelay(slot);
+            return delay > 0 ? delay : loiteringDelayMs;
+        }
+
+        private int device(long deviceId) {
+            int device = devices.get(deviceId);
+            if (device != LongIntMap.NO_VALUE) {
+                return device;
+            }
+            device = devices.size();
+            if (device == deviceIds.length) {
+                int capacity = device * 2;
+                deviceIds = Arrays.copyOf(deviceIds, capacity);
+                visitHeads = Arrays.copyOf(visitHeads, capacity);
+                lastTimes = Arrays.copyOf(lastTimes, capacity);
+                batchCounts = Arrays.copyOf(batchCounts, capacity);
+            }
+            deviceIds[device] = deviceId;
+            visitHeads[device] = NONE;
+            lastTimes[device] = Long.MIN_VALUE;
+            devices.put(deviceId, device);
+            return device;
+        }
+
+        private int allocateVisit() {
+            if (freeVisit != NONE) {
+                int visit = freeVisit;
+                freeVisit = visitNext[visit];
+                return visit;
+            }
+            if (visitCount == visitSlots.length) {
+                int capacity = visitCount * 2;
+                visitSlots = Arrays.copyOf(visitSlots, capacity);
+                visitEntered = Arrays.copyOf(visitEntered, capacity);
+                visitDwelled = Arrays.copyOf(visitDwelled, capacity);
+                visitNext = Arrays.copyOf(visitNext, capacity);
+            }
+            return visitCount++;
+        }
+
+        private void report(int device, int slot, int transition, long timeMillis) {
+            if ((store.transitionTypes(slot) & transition) == 0) {
+                return;
+            }
+            if (transition == TransitionTracker.TRANSITION_ENTER) {
+                enterCount++;
+            } else if (transition == TransitionTracker.TRANSITION_EXIT) {
+                exitCount++;
+            } else {
+                dwellCount++;
+            }
+            if (outSize == outDevices.length) {
+                int capacity = outSize * 2;
+                outDevices = Arrays.copyOf(outDevices, capacity);
+                outFences = Arrays.copyOf(outFences, capacity);
+                outTransitions = Arrays.copyOf(outTransitions, capacity);
+                outTimes = Arrays.copyOf(outTimes, capacity);
+            }
+            outDevices[outSize] = deviceIds[device];
+            outFences[outSize] = store.id(slot);
+            outTransitions[outSize] = transition;
+            outTimes[outSize] = timeMillis;
+            outSize++;
+        }
+
+        void reset() {
+            devices.clear();
+            visitCount = 0;
+            freeVisit = NONE;
+        }
+    }
+
+    private static boolean isSorted(int[] fixes, int from, int to, long[] times) {
+        for (int i = from + 1; i < to; i++) {
+            if (times[fixes[i]] < times[fixes[i - 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Stable, so fixes with equal times keep their input order
+    private static void mergeSort(int[] fixes, int[] scratch, int from, int to, long[] times) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(fixes, scratch, from, middle, times);
+        mergeSort(fixes, scratch, middle, to, times);
+        if (times[fixes[middle - 1]] <= times[fixes[middle]]) {
+            return;
+        }
+        System.arraycopy(fixes, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && times[scratch[left]] <= times[scratch[right]])) {
+                fixes[i] = scratch[left++];
+            } else {
+                fixes[i] = scratch[right++];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: FleetEvaluator <fences.csv> <devices> <fixesPerDevice> [--threads n]");
+            System.exit(2);
+        }
+        int devices = Integer.parseInt(args[1]);
+        int fixesPerDevice = Integer.parseInt(args[2]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        List<Fence> fences;
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8")) {
+            fences = TrackReader.readFences(reader);
+        }
+        if (fences.isEmpty()) {
+            System.err.println("No fences in " + args[0]);
+            System.exit(1);
+        }
+
+        final Fixes fixes = new Fixes(devices * fixesPerDevice);
+        for (int device = 0; device < devices; device++) {
+            final long deviceId = device;
+            TrackReplayEngine.synthesize(fences, fixesPerDevice, device,
+                    (timeMillis, latitude, longitude, accuracy) -> fixes.add(deviceId, latitude, longitude, timeMillis));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        FleetEvaluator evaluator = new FleetEvaluator(fences, TransitionTracker.DEFAULT_LOITERING_DELAY_MS, pool);
+        Result result = evaluator.evaluate(fixes);
+        pool.shutdown();
+
+        System.out.println("fences:       " + evaluator.getFenceCount());
+        System.out.println("devices:      " + evaluator.getDeviceCount() + " in " + evaluator.getPartitionCount()
+                + " partitions, " + threads + " threads");
+        System.out.println("fixes:        " + fixes.size());
+        System.out.println("transitions:  " + result.getEnterCount() + " enter, " + result.getExitCount() + " exit, "
+                + result.getDwellCount() + " dwell");
+        System.out.println("evaluation:   " + result.getEvaluationNanos() / 1000000 + " ms, "
+                + (long) (fixes.size() * 1e9 / Math.max(1, result.getEvaluationNanos())) + " fixes/s");
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.geofenceapp;
+
+/**
+ * Plain-Java geodesic helpers shared by the fence index and local evaluation.
+ * Nothing here depends on the Android framework so it can run on the JVM.
+ */
+public final class GeoMath {
+    // Mean Earth radius in meters (IUGG)
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    // Length of one degree of latitude on the mean sphere
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180.0;
+
+    // WGS84 ellipsoid, as used by Location.distanceBetween
+    private static final double WGS84_SEMI_MAJOR_AXIS = 6378137.0;
+    private static final double WGS84_FLATTENING = 1.0 / 298.257223563;
+    private static final double WGS84_SEMI_MINOR_AXIS = WGS84_SEMI_MAJOR_AXIS * (1.0 - WGS84_FLATTENING);
+    private static final int VINCENTY_MAX_ITERATIONS = 20;
+    private static final double VINCENTY_TOLERANCE = 1.0e-12;
+
+    // Beyond this latitude a longitude degree is too short to be useful for bounding boxes
+    private static final double MAX_BOUNDING_LATITUDE = 89.0;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Great-circle distance between two points using the haversine formula
+     *
+     * @param lat1 Latitude of the first point in degrees
+     * @param lon1 Longitude of the first point in degrees
+     * @param lat2 Latitude of the second point in degrees
+     * @param lon2 Longitude of the second point in degrees
+     * @return Distance in meters
+     */
+    public static double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dPhi = phi2 - phi1;
+        double dLambda = Math.toRadians(lon2 - lon1);
+
+        double sinDPhi = Math.sin(dPhi * 0.5);
+        double sinDLambda = Math.sin(dLambda * 0.5);
+        double a = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Distance between two points on an equirectangular projection centered on
+     * their mean latitude. Much cheaper than haversine; the error stays below
+     * about 0.1% for points a few kilometers apart away from the poles, but
+     * grows with separation.
+     *
+     * @param lat1 Latitude of the first point in degrees
+     * @param lon1 Longitude of the first point in degrees
+     * @param lat2 Latitude of the second point in degrees
+     * @param lon2 Longitude of the second point in degrees
+     * @return Approximate distance in meters
+     */
+    public static double equirectangularDistance(double lat1, double lon1, double lat2, double lon2) {
+        double dLon = lon2 - lon1;
+        if (dLon > 180.0) {
+            dLon -= 360.0;
+        } else if (dLon < -180.0) {
+            dLon += 360.0;
+        }
+        double x = dLon * Math.cos(Math.toRadians((lat1 + lat2) * 0.5));
+        double y = lat2 - lat1;
+        return METERS_PER_DEGREE * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Distance between two points on the WGS84 ellipsoid using Vincenty's
+     * inverse formula, the same method as {@code Location.distanceBetween}.
+     * Nearly antipodal points may not converge; the last iterate is returned.
+     *
+     * @param lat1 Latitude of the first point in degrees
+     * @param lon1 Longitude of the first point in degrees
+     * @param lat2 Latitude of the second point in degrees
+     * @param lon2 Longitude of the second point in degrees
+     * @return Distance in meters
+     */
+    public static double vincentyDistance(double lat1, double lon1, double lat2, double lon2) {
+        double a = WGS84_SEMI_MAJOR_AXIS;
+        double b = WGS84_SEMI_MINOR_AXIS;
+        double f = WGS84_FLATTENING;
+
+        double l = Math.toRadians(lon2 - lon1);
+        double u1 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1);
+        double cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma = 0;
+        double cosSigma = 0;
+        double sigma = 0;
+        double cosSqAlpha = 0;
+        double cos2SigmaM = 0;
+        for (int i = 0; i < VINCENTY_MAX_ITERATIONS; i++) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0) {
+                return 0; // coincident points
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            // Both points on the equator
+            cos2SigmaM = cosSqAlpha == 0 ? 0 : cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha;
+
+            double c = f / 16.0 * cosSqAlpha * (4.0 + f * (4.0 - 3.0 * cosSqAlpha));
+            double previous = lambda;
+            lambda = l + (1.0 - c) * f * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previous) < VINCENTY_TOLERANCE) {
+                break;
+            }
+        }
+
+        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+        double bigA = 1.0 + uSq / 16384.0 * (4096.0 + uSq * (-768.0 + uSq * (320.0 - 175.0 * uSq)));
+        double bigB = uSq / 1024.0 * (256.0 + uSq * (-128.0 + uSq * (74.0 - 47.0 * uSq)));
+        double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4.0
+                * (cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)
+                - bigB / 6.0 * cos2SigmaM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+        return b * bigA * (sigma - deltaSigma);
+    }
+
+    /**
+     * Convert a north-south distance to degrees of latitude
+     *
+     * @param meters Distance in meters
+     * @return Span in degrees of latitude
+     */
+    public static double metersToLatitudeDegrees(double meters) {
+        return meters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Convert an east-west distance to degrees of longitude at a given latitude
+     *
+     * @param meters   Distance in meters
+     * @param latitude Latitude in degrees where the span is measured
+     * @return Span in degrees of longitude, capped at 180
+     */
+    public static double metersToLongitudeDegrees(double meters, double latitude) {
+        double clamped = Math.min(Math.abs(latitude), MAX_BOUNDING_LATITUDE);
+        double degrees = meters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(clamped)));
+        return Math.min(degrees, 180.0);
+    }
+
+    /**
+     * Clamp a latitude into the valid [-90, 90] range
+     */
+    public static double clampLatitude(double latitude) {
+        return Math.max(-90.0, Math.min(90.0, latitude));
+    }
+
+    /**
+     * Split a longitude range that may run past the antimeridian, as the
+     * bounding box of a circle near it does, into ranges within [-180, 180]
+     *
+     * @param minLon Western edge in degrees, at least -360
+     * @param maxLon Eastern edge in degrees, at most 360
+     * @param out    Receives the west and east edge of each range; room for two ranges
+     * @return Number of ranges, 1 or 2
+     */
+    public static int splitLongitudes(double minLon, double maxLon, double[] out) {
+        if (maxLon - minLon >= 360.0) {
+            out[0] = -180.0;
+            out[1] = 180.0;
+            return 1;
+        }
+        if (minLon < -180.0) {
+            out[0] = minLon + 360.0;
+            out[1] = 180.0;
+            out[2] = -180.0;
+            out[3] = maxLon;
+            return 2;
+        }
+        if (maxLon > 180.0) {
+            out[0] = minLon;
+            out[1] = 180.0;
+            out[2] = -180.0;
+            out[3] = maxLon - 360.0;
+            return 2;
+        }
+        out[0] = minLon;
+        out[1] = maxLon;
+        return 1;
+    }
+
+    /**
+     * Clamp a longitude into the valid [-180, 180] range
+     */
+    public static double clampLongitude(double longitude) {
+        return Math.max(-180.0, Math.min(180.0, longitude));
+    }
+}
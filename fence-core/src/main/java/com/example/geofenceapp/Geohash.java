@@ -0,0 +1,208 @@
+package com.example.geofenceapp;
+
+/**
+ * Geohash cells packed into a long. The top bits hold the interleaved geohash
+ * bits (longitude first, 5 per character) and the low 4 bits hold the
+ * precision, so keys of different precisions never collide and a key is as
+ * compact to persist as a number. {@link #toString(long)} gives the standard
+ * base-32 form.
+ */
+public final class Geohash {
+    public static final int MAX_PRECISION = 12;
+
+    private static final int PRECISION_BITS = 4;
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    /**
+     * Cell containing a point
+     *
+     * @param lat       Latitude in degrees
+     * @param lon       Longitude in degrees
+     * @param precision Number of geohash characters, 1 to {@link #MAX_PRECISION}
+     */
+    public static long encode(double lat, double lon, int precision) {
+        checkPrecision(precision);
+        int bits = precision * 5;
+        int latBits = bits / 2;
+        int lonBits = bits - latBits;
+        return key(index(lat + 90.0, 180.0, latBits), index(lon + 180.0, 360.0, lonBits), precision);
+    }
+
+    /**
+     * Key of the cell at a latitude and longitude row/column
+     *
+     * @param latIndex  Row, counted from the south pole
+     * @param lonIndex  Column, counted from the antimeridian going east
+     * @param precision Number of geohash characters
+     */
+    public static long key(long latIndex, long lonIndex, int precision) {
+        // Longitude takes the first bit, so with an odd bit count it also takes the last
+        int odd = (precision * 5) & 1;
+        long hash = (spread(lonIndex) << (odd ^ 1)) | (spread(latIndex) << odd);
+        return (hash << PRECISION_BITS) | precision;
+    }
+
+    public static int precision(long key) {
+        return (int) (key & ((1 << PRECISION_BITS) - 1));
+    }
+
+    /**
+     * The enclosing cell at a coarser precision
+     */
+    public static long truncate(long key, int precision) {
+        int current = precision(key);
+        if (precision >= current) {
+            return key;
+        }
+        long hash = (key >>> PRECISION_BITS) >>> (5 * (current - precision));
+        return (hash << PRECISION_BITS) | precision;
+    }
+
+    /**
+     * Row of a cell, counted from the south pole
+     */
+    public static long latIndex(long key) {
+        return deinterleave(key, 1);
+    }
+
+    /**
+     * Column of a cell, counted from the antimeridian going east
+     */
+    public static long lonIndex(long key) {
+        return deinterleave(key, 0);
+    }
+
+    /**
+     * Number of rows at a precision
+     */
+    public static long rows(int precision) {
+        return 1L << (precision * 5 / 2);
+    }
+
+    /**
+     * Number of columns at a precision
+     */
+    public static long columns(int precision) {
+        return 1L << (precision * 5 - precision * 5 / 2);
+    }
+
+    public static double cellHeightDegrees(int precision) {
+        return 180.0 / rows(precision);
+    }
+
+    public static double cellWidthDegrees(int precision) {
+        return 360.0 / columns(precision);
+    }
+
+    /**
+     * Row containing a latitude at a precision
+     */
+    public static long latIndex(double lat, int precision) {
+        return index(lat + 90.0, 180.0, precision * 5 / 2);
+    }
+
+    /**
+     * Column containing a longitude at a precision
+     */
+    public static long lonIndex(double lon, int precision) {
+        return index(lon + 180.0, 360.0, precision * 5 - precision * 5 / 2);
+    }
+
+    /**
+     * Bounds of a cell
+     *
+     * @param out Receives south, west, north and east edges in degrees
+     */
+    public static void bounds(long key, double[] out) {
+        int precision = precision(key);
+        double height = cellHeightDegrees(precision);
+        double width = cellWidthDegrees(precision);
+        out[0] = latIndex(key) * height - 90.0;
+        out[1] = lonIndex(key) * width - 180.0;
+        out[2] = out[0] + height;
+        out[3] = out[1] + width;
+    }
+
+    /**
+     * Standard base-32 geohash string of a cell
+     */
+    public static String toString(long key) {
+        int precision = precision(key);
+        long hash = key >>> PRECISION_BITS;
+        char[] chars = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (hash & 31)];
+            hash >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse a base-32 geohash string
+     *
+     * @throws IllegalArgumentException if the string is not a valid geohash
+     */
+    public static long parse(String geohash) {
+        checkPrecision(geohash.length());
+        long hash = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            int value = decodeChar(geohash.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            }
+            hash = (hash << 5) | value;
+        }
+        return (hash << PRECISION_BITS) | geohash.length();
+    }
+
+    // parity 0 extracts the longitude bits, 1 the latitude bits
+    private static long deinterleave(long key, int parity) {
+        int odd = (precision(key) * 5) & 1;
+        return compact((key >>> PRECISION_BITS) >>> (odd ^ parity ^ 1));
+    }
+
+    // Move the low 32 bits of a value to the even bit positions
+    private static long spread(long value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        return (x | (x << 1)) & 0x5555555555555555L;
+    }
+
+    // Inverse of spread: gather the even bit positions into the low 32 bits
+    private static long compact(long value) {
+        long x = value & 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        return (x | (x >>> 16)) & 0xFFFFFFFFL;
+    }
+
+    private static long index(double offset, double span, int bits) {
+        long cells = 1L << bits;
+        long index = (long) Math.floor(offset / span * cells);
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    private static int decodeChar(char c) {
+        char lower = Character.toLowerCase(c);
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == lower) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Geohash precision must be 1 to " + MAX_PRECISION + ": " + precision);
+        }
+    }
+}
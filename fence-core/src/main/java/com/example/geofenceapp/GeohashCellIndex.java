@@ -0,0 +1,150 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from {@link Geohash} cells to fence slots. Every fence is
+ * decomposed by a {@link GeohashCoverer} and its slot is listed under each of
+ * its cells, tagged with whether the cell lies wholly inside the circle. A point
+ * lookup hashes the fix once and reads one cell per precision in use, so its
+ * cost depends on how many fences overlap the point, not on the catalog size.
+ * Fences inside their cell are returned as hits and skip the distance test.
+ *
+ * Cell keys are plain longs, so a covering can be stored or shipped as is and
+ * printed with {@link Geohash#toString(long)}.
+ *
+ * {@link FenceRegistry} uses {@link FenceGridIndex} by default. At 100k fences
+ * in ContainmentBenchmark, point lookups are about as fast with either index.
+ * Building the geohash index takes about 30 times longer, and the nearest
+ * query behind the geofence window is about 5 times slower here, since it
+ * walks boxes rather than cells. This index is for callers that want
+ * portable cell keys, such as a backend that precomputes coverings.
+ */
+public final class GeohashCellIndex implements FenceSpatialIndex {
+    private final GeohashCoverer coverer;
+    private final GeohashCoverer.Covering covering = new GeohashCoverer.Covering();
+    private final LongIntMultimap cells = new LongIntMultimap(1024);
+
+    // Number of fences covered at each precision; lookups skip unused ones
+    private final int[] fencesPerPrecision = new int[Geohash.MAX_PRECISION + 1];
+    // West and east edges of the parts of a box split at the antimeridian
+    private final double[] ranges = new double[4];
+
+    public GeohashCellIndex() {
+        this(new GeohashCoverer());
+    }
+
+    public GeohashCellIndex(GeohashCoverer coverer) {
+        this.coverer = coverer;
+    }
+
+    @Override
+    public void insert(int slot, double lat, double lon, double radiusMeters) {
+        coverer.cover(lat, lon, radiusMeters, covering);
+        for (int i = 0, n = covering.size(); i < n; i++) {
+            cells.put(covering.getCell(i), entry(slot, covering.isInterior(i)));
+        }
+        fencesPerPrecision[covering.getPrecision()]++;
+    }
+
+    @Override
+    public void remove(int slot, double lat, double lon, double radiusMeters) {
+        coverer.cover(lat, lon, radiusMeters, covering);
+        boolean removed = false;
+        for (int i = 0, n = covering.size(); i < n; i++) {
+            removed |= cells.remove(covering.getCell(i), entry(slot, covering.isInterior(i)));
+        }
+        if (removed) {
+            fencesPerPrecision[covering.getPrecision()]--;
+        }
+    }
+
+    @Override
+    public void queryPoint(double lat, double lon, IntList candidates, IntList hits) {
+        int finest = finestPrecision();
+        if (finest == 0) {
+            return;
+        }
+        long cell = Geohash.encode(GeoMath.clampLatitude(lat), GeoMath.clampLongitude(lon), finest);
+        for (int p = 1; p <= finest; p++) {
+            if (fencesPerPrecision[p] == 0) {
+                continue;
+            }
+            IntList entries = cells.get(Geohash.truncate(cell, p));
+            if (entries == null) {
+                continue;
+            }
+            for (int i = 0, n = entries.size(); i < n; i++) {
+                int entry = entries.get(i);
+                ((entry & 1) != 0 ? hits : candidates).add(entry >>> 1);
+            }
+        }
+    }
+
+    @Override
+    public void queryBox(double minLat, double minLon, double maxLat, double maxLon, IntList out) {
+        int parts = GeoMath.splitLongitudes(minLon, maxLon, ranges);
+        for (int p = 1; p <= Geohash.MAX_PRECISION; p++) {
+            if (fencesPerPrecision[p] == 0) {
+                continue;
+            }
+            long maxRow = Geohash.latIndex(GeoMath.clampLatitude(maxLat), p);
+            for (int part = 0; part < parts; part++) {
+                long maxCol = Geohash.lonIndex(ranges[2 * part + 1], p);
+                for (long r = Geohash.latIndex(GeoMath.clampLatitude(minLat), p); r <= maxRow; r++) {
+                    for (long c = Geohash.lonIndex(ranges[2 * part], p); c <= maxCol; c++) {
+                        IntList entries = cells.get(Geohash.key(r, c, p));
+                        if (entries != null) {
+                            for (int i = 0, n = entries.size(); i < n; i++) {
+                                out.add(entries.get(i) >>> 1);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public long cellCount(double minLat, double minLon, double maxLat, double maxLon) {
+        long count = 0;
+        int parts = GeoMath.splitLongitudes(minLon, maxLon, ranges);
+        for (int p = 1; p <= Geohash.MAX_PRECISION; p++) {
+            if (fencesPerPrecision[p] != 0) {
+                long rows = Geohash.latIndex(GeoMath.clampLatitude(maxLat), p)
+                        - Geohash.latIndex(GeoMath.clampLatitude(minLat), p) + 1;
+                for (int part = 0; part < parts; part++) {
+                    long cols = Geohash.lonIndex(ranges[2 * part + 1], p) - Geohash.lonIndex(ranges[2 * part], p) + 1;
+                    count += rows * cols;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of distinct cells ever used, including ones emptied by removals
+     */
+    public int keyCount() {
+        return cells.keyCount();
+    }
+
+    @Override
+    public void clear() {
+        cells.clear();
+        Arrays.fill(fencesPerPrecision, 0);
+    }
+
+    private int finestPrecision() {
+        for (int p = Geohash.MAX_PRECISION; p > 0; p--) {
+            if (fencesPerPrecision[p] != 0) {
+                return p;
+            }
+        }
+        return 0;
+    }
+
+    private static int entry(int slot, boolean interior) {
+        return (slot << 1) | (interior ? 1 : 0);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Decomposes a fence circle into {@link Geohash} cells. Each fence is covered at
+ * the finest precision where its bounding box spans no more than a cell budget,
+ * and only cells that actually reach the circle are kept. Cells lying wholly
+ * inside the circle are marked interior, so a point found in one needs no
+ * distance test at all.
+ *
+ * Both checks are exact on the sphere: along a parallel the distance to the
+ * center grows with the longitude difference, and along a meridian it has a
+ * single minimum, so a cell is inside the circle when its four corners are, and
+ * its nearest point to the center can be found in closed form.
+ *
+ * A circle near the antimeridian is also covered with the cells on the other
+ * side of it.
+ */
+public final class GeohashCoverer {
+    public static final int DEFAULT_MAX_CELLS = 64;
+
+    // Precision 9 cells are about 5 m across, finer than a GPS fix
+    public static final int DEFAULT_MAX_PRECISION = 9;
+
+    // Keeps rounding in the cell tests on the safe side of DistanceKernel
+    private static final double RELATIVE_MARGIN = 1e-9;
+
+    private static final double RADIANS_PER_DEGREE = Math.PI / 180.0;
+
+    private final int maxCells;
+    private final int maxPrecision;
+    private final double[] bounds = new double[4];
+    private final double[] ranges = new double[4];
+
+    public GeohashCoverer() {
+        this(DEFAULT_MAX_CELLS, DEFAULT_MAX_PRECISION);
+    }
+
+    /**
+     * @param maxCells     Largest number of cells a fence's bounding box may span
+     * @param maxPrecision Finest precision used, 1 to {@link Geohash#MAX_PRECISION}
+     */
+    public GeohashCoverer(int maxCells, int maxPrecision) {
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("Cell budget must be positive: " + maxCells);
+        }
+        if (maxPrecision < 1 || maxPrecision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be 1 to " + Geohash.MAX_PRECISION + ": " + maxPrecision);
+        }
+        this.maxCells = maxCells;
+        this.maxPrecision = maxPrecision;
+    }
+
+    /**
+     * Cover a circle with cells
+     *
+     * @param lat          Center latitude in degrees
+     * @param lon          Center longitude in degrees
+     * @param radiusMeters Radius in meters
+     */
+    public Covering cover(double lat, double lon, double radiusMeters) {
+        Covering covering = new Covering();
+        cover(lat, lon, radiusMeters, covering);
+        return covering;
+    }
+
+    /**
+     * Cover a circle with cells, reusing a result buffer
+     *
+     * @param out Buffer that is cleared and filled with the covering
+     */
+    public void cover(double lat, double lon, double radiusMeters, Covering out) {
+        out.clear();
+        double dLat = GeoMath.metersToLatitudeDegrees(radiusMeters);
+        double dLon = GeoMath.metersToLongitudeDegrees(radiusMeters, lat);
+        double minLat = GeoMath.clampLatitude(lat - dLat);
+        double maxLat = GeoMath.clampLatitude(lat + dLat);
+        int parts = GeoMath.splitLongitudes(lon - dLon, lon + dLon, ranges);
+
+        int precision = 1;
+        for (int p = 2; p <= maxPrecision; p++) {
+            long rows = Geohash.latIndex(maxLat, p) - Geohash.latIndex(minLat, p) + 1;
+            long cols = 0;
+            for (int part = 0; part < parts; part++) {
+                cols += Geohash.lonIndex(ranges[2 * part + 1], p) - Geohash.lonIndex(ranges[2 * part], p) + 1;
+            }
+            if (rows * cols > maxCells) {
+                break;
+            }
+            precision = p;
+        }
+        out.precision = precision;
+
+        double reach = radiusMeters * (1.0 + RELATIVE_MARGIN);
+        double interiorReach = radiusMeters * (1.0 - RELATIVE_MARGIN);
+        for (int part = 0; part < parts; part++) {
+            // Cells across the antimeridian are measured on the circle's side of it
+            double shift = ranges[2 * part] - lon > 180.0 ? -360.0 : ranges[2 * part + 1] - lon < -180.0 ? 360.0 : 0.0;
+            long maxRow = Geohash.latIndex(maxLat, precision);
+            long maxCol = Geohash.lonIndex(ranges[2 * part + 1], precision);
+            for (long r = Geohash.latIndex(minLat, precision); r <= maxRow; r++) {
+                for (long c = Geohash.lonIndex(ranges[2 * part], precision); c <= maxCol; c++) {
+                    long cell = Geohash.key(r, c, precision);
+                    Geohash.bounds(cell, bounds);
+                    bounds[1] += shift;
+                    bounds[3] += shift;
+                    if (nearestDistance(lat, lon, bounds) > reach) {
+                        continue;
+                    }
+                    out.add(cell, farthestCornerDistance(lat, lon, bounds) <= interiorReach);
+                }
+            }
+        }
+    }
+
+    // Exact distance from a point to the nearest point of a lat/lon rectangle
+    private static double nearestDistance(double lat, double lon, double[] cell) {
+        double nearestLon = Math.max(cell[1], Math.min(cell[3], lon));
+        double cosDLon = Math.cos((lon - nearestLon) * RADIANS_PER_DEGREE);
+        double latRad = lat * RADIANS_PER_DEGREE;
+        double closestLat = Math.atan2(Math.sin(latRad), Math.cos(latRad) * cosDLon) / RADIANS_PER_DEGREE;
+        double nearestLat = Math.max(cell[0], Math.min(cell[2], closestLat));
+        return GeoMath.haversineDistance(lat, lon, nearestLat, nearestLon);
+    }
+
+    private static double farthestCornerDistance(double lat, double lon, double[] cell) {
+        double d = GeoMath.haversineDistance(lat, lon, cell[0], cell[1]);
+        d = Math.max(d, GeoMath.haversineDistance(lat, lon, cell[0], cell[3]));
+        d = Math.max(d, GeoMath.haversineDistance(lat, lon, cell[2], cell[1]));
+        return Math.max(d, GeoMath.haversineDistance(lat, lon, cell[2], cell[3]));
+    }
+
+    /**
+     * Cells covering one fence, all at the same precision
+     */
+    public static final class Covering {
+        private long[] cells = new long[DEFAULT_MAX_CELLS];
+        private boolean[] interior = new boolean[DEFAULT_MAX_CELLS];
+        private int size;
+        private int precision;
+
+        public int size() {
+            return size;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        /**
+         * Cell key as produced by {@link Geohash}
+         */
+        public long getCell(int index) {
+            return cells[index];
+        }
+
+        /**
+         * Whether the cell lies wholly inside the circle
+         */
+        public boolean isInterior(int index) {
+            return interior[index];
+        }
+
+        void add(long cell, boolean inside) {
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+                interior = Arrays.copyOf(interior, size * 2);
+            }
+            cells[size] = cell;
+            interior[size] = inside;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+            precision = 0;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Static index over half-open time intervals {@code [start, end)}, each
+ * tagged with an int payload. Intervals are appended with
+ * {@link #add(long, long, int)}; the first query after a change sorts them
+ * once, after which
+ * <ul>
+ * <li>{@link #stab(long, IntList)} lists the intervals containing a time in
+ * O(log n + k), walking a max-end tree laid over the start order,</li>
+ * <li>{@link #nextEdge(long)} finds the next start or end in O(log n), and</li>
+ * <li>{@link #startingIn(long, long, IntList)} and
+ * {@link #endingIn(long, long, IntList)} list the edges in a time range.</li>
+ * </ul>
+ * Not thread-safe.
+ */
+public final class IntervalIndex {
+    private long[] starts = new long[64];
+    private long[] ends = new long[64];
+    private int[] payloads = new int[64];
+    private int size;
+
+    // Built lazily: interval numbers by start and by end, the sorted keys, and
+    // maxEnd[node] over the start order as an implicit segment tree
+    private boolean dirty;
+    private int[] byStart;
+    private long[] sortedStarts;
+    private int[] byEnd;
+    private long[] sortedEnds;
+    private long[] maxEnd;
+    private int leaves;
+
+    /**
+     * Add an interval; empty intervals are ignored
+     *
+     * @param start   First instant inside the interval
+     * @param end     First instant after the interval
+     * @param payload Value reported by the queries
+     */
+    public void add(long start, long end, int payload) {
+        if (end <= start) {
+            return;
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        payloads[size] = payload;
+        size++;
+        dirty = true;
+    }
+
+    public void clear() {
+        size = 0;
+        dirty = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Collect the payloads of the intervals containing a time
+     *
+     * @param time Instant to look up
+     * @param out  Receives the payloads, in no particular order
+     */
+    public void stab(long time, IntList out) {
+        build();
+        // Only intervals starting at or before the time can contain it
+        int limit = upperBound(sortedStarts, size, time);
+        if (limit > 0) {
+            stab(1, 0, leaves, limit, time, out);
+        }
+    }
+
+    /**
+     * Earliest interval start or end strictly after a time
+     *
+     * @return The instant, or Long.MAX_VALUE if there is none
+     */
+    public long nextEdge(long time) {
+        build();
+        long next = Long.MAX_VALUE;
+        int start = upperBound(sortedStarts, size, time);
+        if (start < size) {
+            next = sortedStarts[start];
+        }
+        int end = upperBound(sortedEnds, size, time);
+        if (end < size) {
+            next = Math.min(next, sortedEnds[end]);
+        }
+        return next;
+    }
+
+    /**
+     * Collect the payloads of the intervals starting in {@code (from, to]}
+     */
+    public void startingIn(long from, long to, IntList out) {
+        build();
+        for (int i = upperBound(sortedStarts, size, from); i < size && sortedStarts[i] <= to; i++) {
+            out.add(payloads[byStart[i]]);
+        }
+    }
+
+    /**
+     * Collect the payloads of the intervals ending in {@code (from, to]}
+     */
+    public void endingIn(long from, long to, IntList out) {
+        build();
+        for (int i = upperBound(sortedEnds, size, from); i < size && sortedEnds[i] <= to; i++) {
+            out.add(payloads[byEnd[i]]);
+        }
+    }
+
+    private void stab(int node, int low, int high, int limit, long time, IntList out) {
+        if (low >= limit || maxEnd[node] <= time) {
+            return;
+        }
+        if (high - low == 1) {
+            out.add(payloads[byStart[low]]);
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        stab(2 * node, low, middle, limit, time, out);
+        stab(2 * node + 1, middle, high, limit, time, out);
+    }
+
+    private void build() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        byStart = sortedOrder(starts);
+        sortedStarts = new long[size];
+        for (int i = 0; i < size; i++) {
+            sortedStarts[i] = starts[byStart[i]];
+        }
+        byEnd = sortedOrder(ends);
+        sortedEnds = new long[size];
+        for (int i = 0; i < size; i++) {
+            sortedEnds[i] = ends[byEnd[i]];
+        }
+
+        leaves = Math.max(1, size);
+        maxEnd = new long[4 * leaves];
+        Arrays.fill(maxEnd, Long.MIN_VALUE);
+        if (size > 0) {
+            fill(1, 0, leaves);
+        }
+    }
+
+    private long fill(int node, int low, int high) {
+        if (high - low == 1) {
+            maxEnd[node] = ends[byStart[low]];
+        } else {
+            int middle = (low + high) >>> 1;
+            maxEnd[node] = Math.max(fill(2 * node, low, middle), fill(2 * node + 1, middle, high));
+        }
+        return maxEnd[node];
+    }
+
+    // Interval numbers sorted by key; sorting packed (key rank, index) pairs avoids boxing
+    private int[] sortedOrder(long[] keys) {
+        long[] packed = new long[size];
+        long[] sortedKeys = Arrays.copyOf(keys, size);
+        Arrays.sort(sortedKeys);
+        for (int i = 0; i < size; i++) {
+            int rank = lowerBound(sortedKeys, size, keys[i]);
+            packed[i] = ((long) rank << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+
+    // First index whose value is greater than the key
+    private static int upperBound(long[] values, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First index whose value is not less than the key
+    private static int lowerBound(long[] values, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.geofenceapp;
+
+/**
+ * One position of the device. Immutable.
+ */
+public final class LocationFix {
+    private final long timeMillis;
+    private final double latitude;
+    private final double longitude;
+    private final float accuracy;
+
+    /**
+     * @param timeMillis Time of the fix on a monotonic clock, e.g. elapsedRealtime()
+     * @param latitude   Latitude in degrees
+     * @param longitude  Longitude in degrees
+     * @param accuracy   Horizontal accuracy in meters, or 0 if unknown
+     */
+    public LocationFix(long timeMillis, double latitude, double longitude, float accuracy) {
+        this.timeMillis = timeMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationFix{" + timeMillis + ", " + latitude + ", " + longitude + ", " + accuracy + " m}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive int values,
+ * for lookups such as device ID to state index that must not box. There is
+ * no removal; call {@link #clear()} to reset the map.
+ */
+public final class LongIntMap {
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongIntMap() {
+        this(64);
+    }
+
+    public LongIntMap(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedKeys / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Store a value, replacing any previous value of the key
+     */
+    public void put(long key, int value) {
+        int index = findSlot(key);
+        if (!used[index]) {
+            used[index] = true;
+            keys[index] = key;
+            if (++size > resizeThreshold) {
+                rehash(keys.length << 1);
+                index = findSlot(key);
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * @return The value stored under the key, or {@link #NO_VALUE}
+     */
+    public int get(long key) {
+        int index = findSlot(key);
+        return used[index] ? values[index] : NO_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int findSlot(long key) {
+        int index = mix(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = findSlot(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to lists of primitive ints.
+ * Keys are never boxed, which keeps spatial index lookups allocation-free.
+ * Emptied keys are kept with an empty list rather than tombstoned, so the map
+ * only grows; call {@link #clear()} to reset it.
+ */
+public final class LongIntMultimap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private IntList[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongIntMultimap() {
+        this(64);
+    }
+
+    public LongIntMultimap(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedKeys / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Append a value to the list stored under a key
+     */
+    public void put(long key, int value) {
+        int index = findSlot(key);
+        if (!used[index]) {
+            used[index] = true;
+            keys[index] = key;
+            values[index] = new IntList(4);
+            if (++size > resizeThreshold) {
+                rehash(keys.length << 1);
+                index = findSlot(key);
+            }
+        }
+        values[index].add(value);
+    }
+
+    /**
+     * Remove one occurrence of a value from the list stored under a key
+     *
+     * @return true if the value was present
+     */
+    public boolean remove(long key, int value) {
+        int index = findSlot(key);
+        return used[index] && values[index].removeValue(value);
+    }
+
+    /**
+     * Get the values stored under a key
+     *
+     * @return The live value list, or null if the key was never used
+     */
+    public IntList get(long key) {
+        int index = findSlot(key);
+        return used[index] ? values[index] : null;
+    }
+
+    public int keyCount() {
+        return size;
+    }
+
+    /**
+     * Visit every key that currently holds at least one value
+     *
+     * @param visitor Callback receiving each key and its live value list
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i] && !values[i].isEmpty()) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private int findSlot(long key) {
+        int index = mix(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        IntList[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = findSlot(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new IntList[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public interface EntryVisitor {
+        void visit(long key, IntList values);
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.geofenceapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Immutable polygon fence evaluated locally. Play Services only monitors
+ * circles, so the polygon is registered as its smallest enclosing circle
+ * ({@link #toCircleFence()}) and that geofence acts as a coarse wake-up; the
+ * polygon decides whether the device is really inside.
+ *
+ * Containment is an even-odd crossing test on latitude/longitude treated as
+ * planar, which is accurate for site-sized polygons. Polygons must not cross
+ * the antimeridian. The vertex latitudes cut the polygon into horizontal slabs;
+ * inside a slab no two edges cross, so its edges are kept sorted left to right.
+ * A query then takes two binary searches: one for the slab and one for the
+ * number of edges to the left of the point. Shapes where the slabs would use
+ * too much memory fall back to fixed-height buckets scanned linearly.
+ */
+public final class PolygonFence {
+    // Slab entries allowed per edge before switching to buckets
+    private static final int MAX_SLAB_ENTRIES_PER_EDGE = 32;
+    private static final int MIN_SLAB_ENTRY_BUDGET = 1 << 16;
+
+    private final String id;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int transitionTypes;
+    private final int loiteringDelayMillis;
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    // Edge i runs from vertex i to vertex i + 1; x = lon, y = lat
+    private final double[] edgeY0;
+    private final double[] edgeX0;
+    private final double[] edgeSlope;
+    private final double[] edgeMinY;
+    private final double[] edgeMaxY;
+
+    // Slab mode: slabBounds[k] <= lat < slabBounds[k + 1] uses slabEdges[k]
+    private final double[] slabBounds;
+    private final int[][] slabEdges;
+
+    // Bucket mode: used when slabBounds is null
+    private final double bucketHeight;
+    private final int[][] bucketEdges;
+
+    private final double centerLat;
+    private final double centerLon;
+    private final float radius;
+
+    /**
+     * @param id              Unique fence ID, also used as the Play Services request ID
+     * @param latitudes       Vertex latitudes in degrees, in order around the polygon
+     * @param longitudes      Vertex longitudes in degrees
+     * @param transitionTypes Bit mask of Geofence.GEOFENCE_TRANSITION_* values
+     */
+    public PolygonFence(String id, double[] latitudes, double[] longitudes, int transitionTypes) {
+        this(id, latitudes, longitudes, transitionTypes, 0);
+    }
+
+    /**
+     * @param id                   Unique fence ID, also used as the Play Services request ID
+     * @param latitudes            Vertex latitudes in degrees, in order around the polygon
+     * @param longitudes           Vertex longitudes in degrees
+     * @param transitionTypes      Bit mask of Geofence.GEOFENCE_TRANSITION_* values
+     * @param loiteringDelayMillis Time inside the polygon before DWELL, or 0 for the app default
+     */
+    public PolygonFence(String id, double[] latitudes, double[] longitudes, int transitionTypes,
+                        int loiteringDelayMillis) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("Fence ID must not be empty");
+        }
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Latitude and longitude counts differ");
+        }
+        int n = latitudes.length;
+        // A closing vertex equal to the first one is implied
+        if (n > 1 && latitudes[0] == latitudes[n - 1] && longitudes[0] == longitudes[n - 1]) {
+            n--;
+        }
+        if (n < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices: " + id);
+        }
+        if (loiteringDelayMillis < 0) {
+            throw new IllegalArgumentException("Loitering delay must not be negative: " + loiteringDelayMillis);
+        }
+        this.id = id;
+        this.latitudes = Arrays.copyOf(latitudes, n);
+        this.longitudes = Arrays.copyOf(longitudes, n);
+        this.transitionTypes = transitionTypes;
+        this.loiteringDelayMillis = loiteringDelayMillis;
+
+        double south = 90;
+        double north = -90;
+        double west = 180;
+        double east = -180;
+        for (int i = 0; i < n; i++) {
+            if (this.latitudes[i] < -90 || this.latitudes[i] > 90
+                    || this.longitudes[i] < -180 || this.longitudes[i] > 180) {
+                throw new IllegalArgumentException("Invalid vertex: " + this.latitudes[i] + ", " + this.longitudes[i]);
+            }
+            south = Math.min(south, this.latitudes[i]);
+            north = Math.max(north, this.latitudes[i]);
+            west = Math.min(west, this.longitudes[i]);
+            east = Math.max(east, this.longitudes[i]);
+        }
+        if (east - west > 180) {
+            throw new IllegalArgumentException("Polygons crossing the antimeridian are not supported: " + id);
+        }
+        minLat = south;
+        maxLat = north;
+        minLon = west;
+        maxLon = east;
+
+        edgeY0 = new double[n];
+        edgeX0 = new double[n];
+        edgeSlope = new double[n];
+        edgeMinY = new double[n];
+        edgeMaxY = new double[n];
+        for (int i = 0; i < n; i++) {
+            int j = i + 1 == n ? 0 : i + 1;
+            double y0 = this.latitudes[i];
+            double x0 = this.longitudes[i];
+            double y1 = this.latitudes[j];
+            double x1 = this.longitudes[j];
+            edgeY0[i] = y0;
+            edgeX0[i] = x0;
+            // Horizontal edges never count as crossings; the slope is unused
+            edgeSlope[i] = y1 == y0 ? 0 : (x1 - x0) / (y1 - y0);
+            edgeMinY[i] = Math.min(y0, y1);
+            edgeMaxY[i] = Math.max(y0, y1);
+        }
+
+        double[] bounds = distinctSorted(this.latitudes);
+        if (slabEntryCount(bounds) <= Math.max(MIN_SLAB_ENTRY_BUDGET, (long) n * MAX_SLAB_ENTRIES_PER_EDGE)) {
+            slabBounds = bounds;
+            slabEdges = buildSlabs(bounds);
+            bucketHeight = 0;
+            bucketEdges = null;
+        } else {
+            slabBounds = null;
+            slabEdges = null;
+            int buckets = Math.max(1, Math.min(n, 4096));
+            bucketHeight = Math.max((maxLat - minLat) / buckets, Double.MIN_NORMAL);
+            bucketEdges = buildBuckets(buckets);
+        }
+
+        double[] circle = enclosingCircle();
+        centerLat = circle[0];
+        centerLon = circle[1];
+        radius = (float) circle[2];
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getVertexCount() {
+        return latitudes.length;
+    }
+
+    public double getLatitude(int vertex) {
+        return latitudes[vertex];
+    }
+
+    public double getLongitude(int vertex) {
+        return longitudes[vertex];
+    }
+
+    public int getTransitionTypes() {
+        return transitionTypes;
+    }
+
+    public int getLoiteringDelayMillis() {
+        return loiteringDelayMillis;
+    }
+
+    public double getMinLatitude() {
+        return minLat;
+    }
+
+    public double getMaxLatitude() {
+        return maxLat;
+    }
+
+    public double getMinLongitude() {
+        return minLon;
+    }
+
+    public double getMaxLongitude() {
+        return maxLon;
+    }
+
+    /**
+     * Center and radius of the smallest circle around the polygon, as the
+     * circular fence registered with Play Services
+     */
+    public Fence toCircleFence() {
+        return new Fence(id, centerLat, centerLon, radius, transitionTypes, loiteringDelayMillis);
+    }
+
+    /**
+     * Check whether a point lies inside the polygon
+     *
+     * @param lat Latitude in degrees
+     * @param lon Longitude in degrees
+     */
+    public boolean contains(double lat, double lon) {
+        if (lat < minLat || lat >= maxLat || lon < minLon || lon > maxLon) {
+            return false;
+        }
+        if (slabBounds != null) {
+            int slab = upperBound(slabBounds, lat) - 1;
+            if (slab < 0 || slab >= slabEdges.length) {
+                return false;
+            }
+            return (countEdgesLeftOf(slabEdges[slab], lat, lon) & 1) == 1;
+        }
+
+        int bucket = Math.min((int) ((lat - minLat) / bucketHeight), bucketEdges.length - 1);
+        boolean inside = false;
+        for (int edge : bucketEdges[bucket]) {
+            if (edgeMinY[edge] <= lat && lat < edgeMaxY[edge] && edgeX(edge, lat) < lon) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Distance from a point to the nearest edge, measured in a local
+     * equirectangular projection around the point
+     *
+     * @param lat Latitude in degrees
+     * @param lon Longitude in degrees
+     * @return Distance in meters, whether the point is inside or outside
+     */
+    public double boundaryDistance(double lat, double lon) {
+        double xScale = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        double yScale = GeoMath.METERS_PER_DEGREE;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            double x1 = (longitudes[j] - lon) * xScale;
+            double y1 = (latitudes[j] - lat) * yScale;
+            double dx = (longitudes[i] - lon) * xScale - x1;
+            double dy = (latitudes[i] - lat) * yScale - y1;
+            double lengthSq = dx * dx + dy * dy;
+            double t = lengthSq > 0 ? Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / lengthSq)) : 0;
+            double x = x1 + t * dx;
+            double y = y1 + t * dy;
+            best = Math.min(best, x * x + y * y);
+        }
+        return Math.sqrt(best);
+    }
+
+    // Edges in a slab are ordered by x, so the ones left of the point form a prefix
+    private int countEdgesLeftOf(int[] edges, double lat, double lon) {
+        int low = 0;
+        int high = edges.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (edgeX(edges[mid], lat) < lon) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private double edgeX(int edge, double lat) {
+        return edgeX0[edge] + (lat - edgeY0[edge]) * edgeSlope[edge];
+    }
+
+    private long slabEntryCount(double[] bounds) {
+        long total = 0;
+        for (int edge = 0; edge < edgeY0.length; edge++) {
+            if (edgeMinY[edge] != edgeMaxY[edge]) {
+                total += Arrays.binarySearch(bounds, edgeMaxY[edge]) - Arrays.binarySearch(bounds, edgeMinY[edge]);
+            }
+        }
+        return total;
+    }
+
+    private int[][] buildSlabs(double[] bounds) {
+        int slabCount = bounds.length - 1;
+        int[] counts = new int[slabCount];
+        for (int edge = 0; edge < edgeY0.length; edge++) {
+            if (edgeMinY[edge] == edgeMaxY[edge]) {
+                continue;
+            }
+            for (int s = Arrays.binarySearch(bounds, edgeMinY[edge]), end = Arrays.binarySearch(bounds, edgeMaxY[edge]);
+                 s < end; s++) {
+                counts[s]++;
+            }
+        }
+
+        int[][] slabs = new int[slabCount][];
+        for (int s = 0; s < slabCount; s++) {
+            slabs[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int edge = 0; edge < edgeY0.length; edge++) {
+            if (edgeMinY[edge] == edgeMaxY[edge]) {
+                continue;
+            }
+            for (int s = Arrays.binarySearch(bounds, edgeMinY[edge]), end = Arrays.binarySearch(bounds, edgeMaxY[edge]);
+                 s < end; s++) {
+                slabs[s][counts[s]++] = edge;
+            }
+        }
+
+        // Sort each slab by x at its middle, where no edges touch
+        Integer[] boxed = new Integer[0];
+        for (int s = 0; s < slabCount; s++) {
+            final double midLat = (bounds[s] + bounds[s + 1]) * 0.5;
+            int[] edges = slabs[s];
+            if (boxed.length < edges.length) {
+                boxed = new Integer[edges.length];
+            }
+            for (int i = 0; i < edges.length; i++) {
+                boxed[i] = edges[i];
+            }
+            Arrays.sort(boxed, 0, edges.length, (a, b) -> Double.compare(edgeX(a, midLat), edgeX(b, midLat)));
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = boxed[i];
+            }
+        }
+        return slabs;
+    }
+
+    private int[][] buildBuckets(int bucketCount) {
+        List<IntList> buckets = new ArrayList<>(bucketCount);
+        for (int b = 0; b < bucketCount; b++) {
+            buckets.add(new IntList(4));
+        }
+        for (int edge = 0; edge < edgeY0.length; edge++) {
+            if (edgeMinY[edge] == edgeMaxY[edge]) {
+                continue;
+            }
+            int first = Math.min((int) ((edgeMinY[edge] - minLat) / bucketHeight), bucketCount - 1);
+            int last = Math.min((int) ((edgeMaxY[edge] - minLat) / bucketHeight), bucketCount - 1);
+            for (int b = first; b <= last; b++) {
+                buckets.get(b).add(edge);
+            }
+        }
+        int[][] result = new int[bucketCount][];
+        for (int b = 0; b < bucketCount; b++) {
+            result[b] = buckets.get(b).toArray();
+        }
+        return result;
+    }
+
+    // Smallest enclosing circle (Welzl, iterative) in a local metric projection.
+    // The radius is then measured with haversine so every vertex is covered.
+    private double[] enclosingCircle() {
+        int n = latitudes.length;
+        double originLat = (minLat + maxLat) * 0.5;
+        double originLon = (minLon + maxLon) * 0.5;
+        double metersPerLon = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(originLat));
+
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        // Fixed seed keeps the registered circle stable across runs
+        Collections.shuffle(order, new Random(n));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            int v = order.get(i);
+            x[i] = (longitudes[v] - originLon) * metersPerLon;
+            y[i] = (latitudes[v] - originLat) * GeoMath.METERS_PER_DEGREE;
+        }
+
+        double[] c = {x[0], y[0], 0};
+        for (int i = 1; i < n; i++) {
+            if (inCircle(c, x[i], y[i])) {
+                continue;
+            }
+            c = new double[]{x[i], y[i], 0};
+            for (int j = 0; j < i; j++) {
+                if (inCircle(c, x[j], y[j])) {
+                    continue;
+                }
+                c = circleFrom(x[i], y[i], x[j], y[j]);
+                for (int k = 0; k < j; k++) {
+                    if (!inCircle(c, x[k], y[k])) {
+                        c = circleFrom(x[i], y[i], x[j], y[j], x[k], y[k]);
+                    }
+                }
+            }
+        }
+
+        double lat = originLat + c[1] / GeoMath.METERS_PER_DEGREE;
+        double lon = originLon + c[0] / metersPerLon;
+        double r = 0;
+        for (int i = 0; i < n; i++) {
+            r = Math.max(r, GeoMath.haversineDistance(lat, lon, latitudes[i], longitudes[i]));
+        }
+        // Play Services rejects a zero radius, and float rounding must not cut off a vertex
+        return new double[]{lat, lon, Math.max(1.0, r) * (1 + 1e-6)};
+    }
+
+    private static boolean inCircle(double[] c, double x, double y) {
+        double dx = x - c[0];
+        double dy = y - c[1];
+        return dx * dx + dy * dy <= c[2] * c[2] * (1 + 1e-9) + 1e-9;
+    }
+
+    private static double[] circleFrom(double x1, double y1, double x2, double y2) {
+        double cx = (x1 + x2) * 0.5;
+        double cy = (y1 + y2) * 0.5;
+        return new double[]{cx, cy, Math.hypot(x1 - cx, y1 - cy)};
+    }
+
+    private static double[] circleFrom(double x1, double y1, double x2, double y2, double x3, double y3) {
+        double bx = x2 - x1;
+        double by = y2 - y1;
+        double cx = x3 - x1;
+        double cy = y3 - y1;
+        double d = 2 * (bx * cy - by * cx);
+        if (d == 0) {
+            // Collinear: the farthest pair spans the circle
+            double[] a = circleFrom(x1, y1, x2, y2);
+            double[] b = circleFrom(x1, y1, x3, y3);
+            double[] e = circleFrom(x2, y2, x3, y3);
+            double[] widest = a[2] >= b[2] ? a : b;
+            return widest[2] >= e[2] ? widest : e;
+        }
+        double b2 = bx * bx + by * by;
+        double c2 = cx * cx + cy * cy;
+        double ux = (cy * b2 - by * c2) / d;
+        double uy = (bx * c2 - cx * b2) / d;
+        return new double[]{x1 + ux, y1 + uy, Math.hypot(ux, uy)};
+    }
+
+    private static double[] distinctSorted(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    // Index of the first value greater than the key
+    private static int upperBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "PolygonFence{" + id + ", " + latitudes.length + " vertices}";
+    }
+}
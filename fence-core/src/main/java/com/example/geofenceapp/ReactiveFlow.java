@@ -0,0 +1,42 @@
+package com.example.geofenceapp;
+
+/**
+ * Reactive Streams interfaces with the same shape as
+ * {@code java.util.concurrent.Flow}, which Android only has from API 30 and
+ * Java from 9. Publishers deliver no more items than their subscriber has
+ * requested, so demand flows upstream; what a hot source does with items
+ * nobody has asked for yet is up to it, see {@link BufferedPublisher}.
+ */
+public final class ReactiveFlow {
+    private ReactiveFlow() {
+    }
+
+    public interface Publisher<T> {
+        /**
+         * Start delivering to a subscriber; its onSubscribe is called first
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * Allow up to n more items to be delivered
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel: {@link #LEVELS} wheels of {@link #SLOTS} slots,
+ * each level's slot spanning a full turn of the level below. A timer is
+ * linked into the slot its deadline falls in, so scheduling and cancelling
+ * are O(1) however many timers are armed. {@link #advance(long, IntList)}
+ * walks the ticks that have passed and, when a higher-level slot comes due,
+ * redistributes its timers into the finer levels; runs of ticks on levels
+ * holding no timers are skipped, so catching up after a long sleep costs
+ * little more than the timers it fires.
+ *
+ * Timers live in parallel primitive arrays and are linked by index, so the
+ * wheel allocates only when it grows. A timer is identified by the handle
+ * {@link #schedule(long, int)} returns until it fires or is cancelled; after
+ * that the handle may be reused. Deadlines are rounded up to whole ticks.
+ * Not thread-safe.
+ */
+public final class TimerWheel {
+    public static final int NO_TIMER = -1;
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 4;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // Deadlines further out than this many ticks are parked in the last level and re-sorted on each turn
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final long tickMillis;
+    private long currentTick;
+
+    // Head timer of each slot, level by level, and the number of timers on each level
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private final int[] levelSizes = new int[LEVELS];
+
+    // Per-timer state; next also links the free list
+    private long[] deadlines;
+    private int[] payloads;
+    private int[] next;
+    private int[] prev;
+    private int[] slots;
+    private int freeHead = NO_TIMER;
+    private int used;
+    private int size;
+
+    /**
+     * @param tickMillis Resolution of the wheel
+     * @param nowMillis  Current time on the clock deadlines are given in
+     */
+    public TimerWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        Arrays.fill(heads, NO_TIMER);
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Arm a timer. Deadlines that have already passed fire on the next tick.
+     *
+     * @param deadlineMillis Time the timer fires at
+     * @param payload        Value reported by {@link #advance(long, IntList)} when it fires
+     * @return Handle for {@link #cancel(int)}
+     */
+    public int schedule(long deadlineMillis, int payload) {
+        int timer = freeHead;
+        if (timer != NO_TIMER) {
+            freeHead = next[timer];
+        } else {
+            if (used == deadlines.length) {
+                grow(used * 2);
+            }
+            timer = used++;
+        }
+        long tick = Math.max(currentTick + 1, ceilDiv(deadlineMillis, tickMillis));
+        deadlines[timer] = tick;
+        payloads[timer] = payload;
+        link(timer, tick);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Disarm a timer
+     *
+     * @param timer Handle from {@link #schedule(long, int)}
+     * @return false if the timer already fired or was cancelled
+     */
+    public boolean cancel(int timer) {
+        if (timer < 0 || timer >= used || slots[timer] < 0) {
+            return false;
+        }
+        unlink(timer);
+        release(timer);
+        return true;
+    }
+
+    /**
+     * Move the wheel forward, firing every timer due by then
+     *
+     * @param nowMillis Current time
+     * @param expired   Receives the payloads of the timers that fired, in deadline order
+     * @return Number of timers that fired
+     */
+    public int advance(long nowMillis, IntList expired) {
+        long target = nowMillis / tickMillis;
+        int fired = 0;
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                break;
+            }
+            // Nothing fires or cascades before the next boundary of the lowest occupied level
+            int occupied = 0;
+            while (levelSizes[occupied] == 0) {
+                occupied++;
+            }
+            if (occupied > 0) {
+                long boundary = ((currentTick >>> (SLOT_BITS * occupied)) + 1) << (SLOT_BITS * occupied);
+                if (boundary - 1 > currentTick) {
+                    currentTick = Math.min(target, boundary - 1);
+                    continue;
+                }
+            }
+            currentTick++;
+            // Higher levels first, so timers cascading down land before the finer slots are read
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                }
+            }
+            int slot = (int) currentTick & SLOT_MASK;
+            int timer = heads[slot];
+            heads[slot] = NO_TIMER;
+            while (timer != NO_TIMER) {
+                int following = next[timer];
+                levelSizes[0]--;
+                expired.add(payloads[timer]);
+                release(timer);
+                fired++;
+                timer = following;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Earliest deadline among the armed timers, rounded to the tick, so a
+     * single wakeup can be set for the whole wheel. Timers further out than
+     * the wheel spans may make this earlier than any deadline; advancing to
+     * it then fires nothing.
+     *
+     * @return Time in milliseconds, or Long.MAX_VALUE if no timer is armed
+     */
+    public long nextDeadline() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            int current = (int) (currentTick >>> shift) & SLOT_MASK;
+            // Slots after the current one hold increasing deadlines; the current one the latest
+            for (int i = 1; i <= SLOTS; i++) {
+                int timer = heads[level * SLOTS + ((current + i) & SLOT_MASK)];
+                if (timer == NO_TIMER) {
+                    continue;
+                }
+                // Parked timers lie beyond their slot; the wheel must still wake up to re-sort them
+                long slotEnd = (((currentTick >>> shift) + i) << shift) + (1L << shift) - 1;
+                long slotEarliest = slotEnd;
+                for (; timer != NO_TIMER; timer = next[timer]) {
+                    slotEarliest = Math.min(slotEarliest, deadlines[timer]);
+                }
+                earliest = Math.min(earliest, slotEarliest);
+                break;
+            }
+        }
+        return earliest * tickMillis;
+    }
+
+    /**
+     * Number of armed timers
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void cascade(int level, int index) {
+        int slot = level * SLOTS + index;
+        int timer = heads[slot];
+        heads[slot] = NO_TIMER;
+        while (timer != NO_TIMER) {
+            int following = next[timer];
+            levelSizes[level]--;
+            link(timer, deadlines[timer]);
+            timer = following;
+        }
+    }
+
+    private void link(int timer, long tick) {
+        long delta = tick - currentTick;
+        int level = 0;
+        if (delta >= MAX_SPAN) {
+            // Parked in the farthest slot; re-sorted when that slot comes due
+            tick = currentTick + MAX_SPAN - 1;
+            delta = MAX_SPAN - 1;
+        }
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int head = heads[slot];
+        next[timer] = head;
+        prev[timer] = NO_TIMER;
+        if (head != NO_TIMER) {
+            prev[head] = timer;
+        }
+        heads[slot] = timer;
+        slots[timer] = slot;
+        levelSizes[level]++;
+    }
+
+    private void unlink(int timer) {
+        int slot = slots[timer];
+        if (prev[timer] != NO_TIMER) {
+            next[prev[timer]] = next[timer];
+        } else {
+            heads[slot] = next[timer];
+        }
+        if (next[timer] != NO_TIMER) {
+            prev[next[timer]] = prev[timer];
+        }
+        levelSizes[slot / SLOTS]--;
+    }
+
+    private void release(int timer) {
+        slots[timer] = -1;
+        next[timer] = freeHead;
+        freeHead = timer;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        deadlines = new long[capacity];
+        payloads = new int[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+    }
+
+    private void grow(int capacity) {
+        int old = deadlines.length;
+        deadlines = Arrays.copyOf(deadlines, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        Arrays.fill(slots, old, capacity, -1);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return quotient * divisor < value ? quotient + 1 : quotient;
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.geofenceapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming readers for recorded tracks and fence lists. Tracks are read one
+ * fix at a time and handed to a {@link FixConsumer}, so files with millions of
+ * points never have to fit in memory. The parsers are hand-rolled and depend
+ * only on java.io; GPX parsing handles the subset of XML that GPS loggers write.
+ *
+ * Track CSV columns: time,latitude,longitude[,accuracy]. Time is epoch
+ * milliseconds or ISO 8601. A header row is skipped.
+ *
+ * Fence CSV columns: id,latitude,longitude,radius[,transitionTypes]. Without a
+ * transition mask the fence reports ENTER and EXIT.
+ */
+public final class TrackReader {
+    // Used for fixes that carry no accuracy
+    public static final float DEFAULT_ACCURACY_METERS = 10f;
+
+    // GPX points without a <time> are spaced this far apart
+    private static final long DEFAULT_FIX_INTERVAL_MS = 1000;
+
+    // Rough conversion from GPX horizontal dilution of precision to meters
+    private static final float METERS_PER_HDOP = 5f;
+
+    /**
+     * Receives fixes in file order
+     */
+    public interface FixConsumer {
+        void onFix(long timeMillis, double latitude, double longitude, float accuracy);
+    }
+
+    private TrackReader() {
+    }
+
+    /**
+     * Read a track, choosing the format from the file name
+     *
+     * @param fileName Name used to pick the format; ".gpx" is GPX, anything else CSV
+     * @param reader   Track contents
+     * @param consumer Receives every fix
+     * @return Number of fixes read
+     */
+    public static long readTrack(String fileName, Reader reader, FixConsumer consumer) throws IOException {
+        return fileName.toLowerCase().endsWith(".gpx") ? readGpx(reader, consumer) : readCsv(reader, consumer);
+    }
+
+    /**
+     * Read a CSV track
+     *
+     * @return Number of fixes read
+     */
+    public static long readCsv(Reader reader, FixConsumer consumer) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        long count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            if (lineNumber == 1 && Character.isLetter(line.charAt(0))) {
+                continue; // header
+            }
+
+            int c1 = line.indexOf(',');
+            int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+            if (c2 < 0) {
+                throw new IOException("Line " + lineNumber + ": expected time,latitude,longitude");
+            }
+            int c3 = line.indexOf(',', c2 + 1);
+            try {
+                long time = parseTime(line, 0, c1);
+                double lat = Double.parseDouble(line.substring(c1 + 1, c2).trim());
+                double lon = Double.parseDouble(line.substring(c2 + 1, c3 < 0 ? line.length() : c3).trim());
+                float accuracy = DEFAULT_ACCURACY_METERS;
+                if (c3 >= 0) {
+                    int end = line.indexOf(',', c3 + 1);
+                    accuracy = Float.parseFloat(line.substring(c3 + 1, end < 0 ? line.length() : end).trim());
+                }
+                consumer.onFix(time, lat, lon, accuracy);
+                count++;
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the track points, route points and waypoints of a GPX file
+     *
+     * @return Number of fixes read
+     */
+    public static long readGpx(Reader reader, FixConsumer consumer) throws IOException {
+        Reader in = reader instanceof BufferedReader ? reader : new BufferedReader(reader, 64 * 1024);
+        StringBuilder tag = new StringBuilder(128);
+        StringBuilder text = new StringBuilder(64);
+
+        long count = 0;
+        boolean inPoint = false;
+        double lat = 0;
+        double lon = 0;
+        long time = Long.MIN_VALUE;
+        float accuracy = DEFAULT_ACCURACY_METERS;
+        long lastTime = -DEFAULT_FIX_INTERVAL_MS;
+
+        int ch;
+        while ((ch = in.read()) != -1) {
+            if (ch != '<') {
+                continue;
+            }
+            tag.setLength(0);
+            while ((ch = in.read()) != -1 && ch != '>') {
+                tag.append((char) ch);
+            }
+            if (tag.length() >= 3 && tag.charAt(0) == '!' && tag.charAt(1) == '-' && tag.charAt(2) == '-') {
+                skipComment(in, tag);
+                continue;
+            }
+
+            String name = tagName(tag);
+            if (isPointTag(name)) {
+                inPoint = true;
+                lat = parseAttribute(tag, "lat");
+                lon = parseAttribute(tag, "lon");
+                time = Long.MIN_VALUE;
+                accuracy = DEFAULT_ACCURACY_METERS;
+                if (tag.charAt(tag.length() - 1) != '/') {
+                    continue;
+                }
+            } else if (inPoint && name.equals("time")) {
+                time = parseIsoTime(readText(in, text), 0, text.length());
+                continue;
+            } else if (inPoint && name.equals("hdop")) {
+                accuracy = Float.parseFloat(readText(in, text).toString().trim()) * METERS_PER_HDOP;
+                continue;
+            } else if (!(inPoint && name.length() > 1 && name.charAt(0) == '/' && isPointTag(name.substring(1)))) {
+                continue;
+            }
+
+            // End of a point
+            inPoint = false;
+            if (time == Long.MIN_VALUE) {
+                time = lastTime + DEFAULT_FIX_INTERVAL_MS;
+            }
+            lastTime = time;
+            consumer.onFix(time, lat, lon, accuracy);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Read a fence list
+     *
+     * @param reader Fence CSV contents
+     * @return The fences in file order
+     */
+    public static List<Fence> readFences(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<Fence> fences = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 4) {
+                throw new IOException("Line " + lineNumber + ": expected id,latitude,longitude,radius");
+            }
+            try {
+                double lat = Double.parseDouble(fields[1].trim());
+                double lon = Double.parseDouble(fields[2].trim());
+                float radius = Float.parseFloat(fields[3].trim());
+                int transitions = fields.length > 4 ? Integer.parseInt(fields[4].trim())
+                        : TransitionTracker.TRANSITION_ENTER | TransitionTracker.TRANSITION_EXIT;
+                fences.add(new Fence(fields[0].trim(), lat, lon, radius, transitions));
+            } catch (NumberFormatException e) {
+                if (lineNumber == 1) {
+                    continue; // header
+                }
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return fences;
+    }
+
+    private static long parseTime(String line, int start, int end) {
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return parseIsoTime(line, start, end);
+            }
+        }
+        return Long.parseLong(line.substring(start, end));
+    }
+
+    /**
+     * Parse an ISO 8601 timestamp such as 2024-05-01T12:30:05.250Z or
+     * 2024-05-01T14:30:05+02:00 into epoch milliseconds
+     */
+    static long parseIsoTime(CharSequence s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        if (end - start < 19) {
+            throw new NumberFormatException("Invalid timestamp: " + s.subSequence(start, end));
+        }
+        int year = digits(s, start, 4);
+        int month = digits(s, start + 5, 2);
+        int day = digits(s, start + 8, 2);
+        int hour = digits(s, start + 11, 2);
+        int minute = digits(s, start + 14, 2);
+        int second = digits(s, start + 17, 2);
+
+        int i = start + 19;
+        int millis = 0;
+        if (i < end && s.charAt(i) == '.') {
+            int scale = 100;
+            for (i++; i < end && Character.isDigit(s.charAt(i)); i++) {
+                millis += (s.charAt(i) - '0') * scale;
+                scale /= 10;
+            }
+        }
+
+        int offsetMinutes = 0;
+        if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            int sign = s.charAt(i) == '-' ? -1 : 1;
+            int offsetHours = digits(s, i + 1, 2);
+            int minutesAt = s.charAt(i + 3) == ':' ? i + 4 : i + 3;
+            offsetMinutes = sign * (offsetHours * 60 + (minutesAt + 2 <= end ? digits(s, minutesAt, 2) : 0));
+        }
+
+        long days = daysFromCivil(year, month, day);
+        long seconds = days * 86400L + hour * 3600L + minute * 60L + second - offsetMinutes * 60L;
+        return seconds * 1000L + millis;
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid timestamp: " + s);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isPointTag(String name) {
+        return name.equals("trkpt") || name.equals("rtept") || name.equals("wpt");
+    }
+
+    private static String tagName(StringBuilder tag) {
+        int end = 0;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end))
+                && !(tag.charAt(end) == '/' && end > 0)) {
+            end++;
+        }
+        String name = tag.substring(0, end);
+        // Drop a namespace prefix such as gpx:trkpt
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            name = (name.charAt(0) == '/' ? "/" : "") + name.substring(colon + 1);
+        }
+        return name;
+    }
+
+    private static double parseAttribute(StringBuilder tag, String name) throws IOException {
+        int from = 0;
+        while (true) {
+            int at = tag.indexOf(name, from);
+            if (at < 0) {
+                throw new IOException("Missing attribute " + name + " in <" + tag + ">");
+            }
+            int eq = at + name.length();
+            boolean startsWord = at > 0 && Character.isWhitespace(tag.charAt(at - 1));
+            if (startsWord && eq < tag.length() && tag.charAt(eq) == '=') {
+                char quote = tag.charAt(eq + 1);
+                int close = tag.indexOf(String.valueOf(quote), eq + 2);
+                return Double.parseDouble(tag.substring(eq + 2, close));
+            }
+            from = at + 1;
+        }
+    }
+
+    private static StringBuilder readText(Reader in, StringBuilder text) throws IOException {
+        text.setLength(0);
+        int ch;
+        while ((ch = in.read()) != -1 && ch != '<') {
+            text.append((char) ch);
+        }
+        // Consume the closing tag
+        while (ch != -1 && ch != '>') {
+            ch = in.read();
+        }
+        return text;
+    }
+
+    private static void skipComment(Reader in, StringBuilder tag) throws IOException {
+        // The tag reader stopped at the first '>', which may be inside the comment
+        int length = tag.length();
+        if (length >= 5 && tag.charAt(length - 1) == '-' && tag.charAt(length - 2) == '-') {
+            return;
+        }
+        int previous = 0;
+        int beforePrevious = 0;
+        int ch;
+        while ((ch = in.read()) != -1) {
+            if (ch == '>' && previous == '-' && beforePrevious == '-') {
+                return;
+            }
+            beforePrevious = previous;
+            previous = ch;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.geofenceapp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays recorded or synthetic tracks against a fence set without Play
+ * Services, so transition behaviour can be reproduced, regression-tested and
+ * load-tested on a desktop JVM. Fixes go through a {@link TransitionTracker};
+ * optionally the resulting ENTER/EXIT transitions are also passed through the
+ * app's {@link TransitionDebouncer} so the output matches what would alert.
+ *
+ * It lives in the plain-Java fence-core module, so it runs from the command
+ * line with just that module on the classpath:
+ * <pre>
+ * java com.example.geofenceapp.TrackReplayEngine fences.csv track.gpx [--debounce] [--quiet]
+ * java com.example.geofenceapp.TrackReplayEngine fences.csv --synthetic 1000000 [--seed 42] [--quiet]
+ * </pre>
+ */
+public final class TrackReplayEngine implements TrackReader.FixConsumer {
+    private final TransitionTracker tracker;
+    private final TransitionDebouncer debouncer;
+    private final TransitionTracker.Listener listener;
+    private final List<TransitionDebouncer.Confirmation> confirmations = new ArrayList<>();
+    private final TransitionTracker.Listener trackerListener;
+    private final Map<String, Fence> fencesById = new HashMap<>();
+
+    private long fixCount;
+    private long emittedCount;
+    private long evaluationNanos;
+    private double lastLat;
+    private double lastLon;
+    private float lastAccuracy;
+
+    /**
+     * @param fences   Fences to replay against, as registered through GeofenceHelper
+     * @param debounce Whether ENTER/EXIT go through a TransitionDebouncer before being emitted
+     * @param listener Receives emitted transitions; may be null when only statistics are needed
+     */
+    public TrackReplayEngine(List<Fence> fences, boolean debounce, TransitionTracker.Listener listener) {
+        this.tracker = new TransitionTracker(fences);
+        this.debouncer = debounce ? new TransitionDebouncer() : null;
+        this.listener = listener;
+        this.trackerListener = debounce ? this::debounce : this::emit;
+        for (Fence fence : fences) {
+            fencesById.put(fence.getId(), fence);
+        }
+    }
+
+    @Override
+    public void onFix(long timeMillis, double latitude, double longitude, float accuracy) {
+        long start = System.nanoTime();
+        lastLat = latitude;
+        lastLon = longitude;
+        lastAccuracy = accuracy;
+        if (debouncer != null && debouncer.nextDeadline() <= timeMillis) {
+            flushDebouncer(timeMillis);
+        }
+        tracker.onFix(timeMillis, latitude, longitude, trackerListener);
+        fixCount++;
+        evaluationNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Emit debounced transitions still pending at the end of a track
+     *
+     * @param endTimeMillis Time the track is considered to end
+     */
+    public void finish(long endTimeMillis) {
+        if (debouncer != null) {
+            flushDebouncer(endTimeMillis);
+        }
+    }
+
+    public TransitionTracker getTracker() {
+        return tracker;
+    }
+
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    public long getEmittedCount() {
+        return emittedCount;
+    }
+
+    /**
+     * Time spent evaluating fixes, excluding parsing
+     */
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+
+    /**
+     * Generate a synthetic track that travels between random fences of a set,
+     * with GPS noise, and feed it to a consumer
+     *
+     * @param fences   Fences to visit; must not be empty
+     * @param fixCount Number of fixes to generate, one per second
+     * @param seed     Random seed, so runs are reproducible
+     * @param consumer Receives the fixes
+     */
+    public static void synthesize(List<Fence> fences, long fixCount, long seed, TrackReader.FixConsumer consumer) {
+        final double speedMetersPerSecond = 12;
+        final double noiseMeters = 8;
+        Random random = new Random(seed);
+
+        Fence target = fences.get(random.nextInt(fences.size()));
+        double lat = target.getLatitude();
+        double lon = target.getLongitude();
+        long time = 0;
+        for (long i = 0; i < fixCount; i++) {
+            double distance = GeoMath.haversineDistance(lat, lon, target.getLatitude(), target.getLongitude());
+            if (distance < speedMetersPerSecond) {
+                target = fences.get(random.nextInt(fences.size()));
+            } else {
+                double step = speedMetersPerSecond / distance;
+                lat += (target.getLatitude() - lat) * step;
+                lon += (target.getLongitude() - lon) * step;
+            }
+            double noisyLat = lat + GeoMath.metersToLatitudeDegrees(random.nextGaussian() * noiseMeters);
+            double noisyLon = lon + GeoMath.metersToLongitudeDegrees(random.nextGaussian() * noiseMeters, lat);
+            consumer.onFix(time, noisyLat, noisyLon, (float) (noiseMeters * (1 + random.nextDouble())));
+            time += 1000;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean synthetic = args.length >= 2 && args[1].equals("--synthetic");
+        // The fix count follows --synthetic
+        if (args.length < 2 || synthetic && (args.length < 3 || args[2].startsWith("--"))) {
+            printUsage();
+            System.exit(2);
+        }
+
+        boolean debounce = false;
+        boolean quiet = false;
+        long syntheticFixes = -1;
+        long seed = 1;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--debounce")) {
+                debounce = true;
+            } else if (args[i].equals("--quiet")) {
+                quiet = true;
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            }
+        }
+        if (synthetic) {
+            syntheticFixes = Long.parseLong(args[2]);
+        }
+
+        List<Fence> fences;
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8")) {
+            fences = TrackReader.readFences(reader);
+        }
+        if (fences.isEmpty()) {
+            System.err.println("No fences in " + args[0]);
+            System.exit(1);
+        }
+
+        final PrintStream out = System.out;
+        TransitionTracker.Listener printer = quiet ? null : (fenceId, transition, timeMillis, latitude, longitude) ->
+                out.println(timeMillis + "\t" + transitionName(transition) + "\t" + fenceId
+                        + "\t" + latitude + "," + longitude);
+        TrackReplayEngine engine = new TrackReplayEngine(fences, debounce, printer);
+
+        long start = System.nanoTime();
+        long lastTime;
+        if (syntheticFixes >= 0) {
+            synthesize(fences, syntheticFixes, seed, engine);
+            lastTime = syntheticFixes * 1000;
+        } else {
+            final long[] last = {0};
+            try (Reader reader = new InputStreamReader(new FileInputStream(args[1]), "UTF-8")) {
+                TrackReader.readTrack(args[1], reader, (timeMillis, latitude, longitude, accuracy) -> {
+                    last[0] = timeMillis;
+                    engine.onFix(timeMillis, latitude, longitude, accuracy);
+                });
+            }
+            lastTime = last[0] + TransitionDebouncer.DEFAULT_EXIT_DWELL_MS * 4;
+        }
+        engine.finish(lastTime);
+        long totalNanos = System.nanoTime() - start;
+
+        TransitionTracker tracker = engine.getTracker();
+        out.println("fences:       " + tracker.getFenceCount());
+        out.println("fixes:        " + engine.getFixCount());
+        out.println("raw:          " + tracker.getEnterCount() + " enter, " + tracker.getExitCount() + " exit, "
+                + tracker.getDwellCount() + " dwell");
+        out.println("emitted:      " + engine.getEmittedCount() + (debounce ? " (debounced)" : ""));
+        out.println("evaluation:   " + nanosPerFix(engine.getEvaluationNanos(), engine.getFixCount()) + " ns/fix, "
+                + fixesPerSecond(engine.getEvaluationNanos(), engine.getFixCount()) + " fixes/s");
+        out.println("end to end:   " + nanosPerFix(totalNanos, engine.getFixCount()) + " ns/fix, "
+                + fixesPerSecond(totalNanos, engine.getFixCount()) + " fixes/s");
+    }
+
+    static String transitionName(int transition) {
+        switch (transition) {
+            case TransitionTracker.TRANSITION_ENTER:
+                return "ENTER";
+            case TransitionTracker.TRANSITION_EXIT:
+                return "EXIT";
+            case TransitionTracker.TRANSITION_DWELL:
+                return "DWELL";
+            default:
+                return "UNKNOWN_" + transition;
+        }
+    }
+
+    private void emit(String fenceId, int transition, long timeMillis, double latitude, double longitude) {
+        emittedCount++;
+        if (listener != null) {
+            listener.onTransition(fenceId, transition, timeMillis, latitude, longitude);
+        }
+    }
+
+    // Tracker transitions arrive here when debouncing; DWELL is not debounced
+    private void debounce(String fenceId, int transition, long timeMillis, double latitude, double longitude) {
+        if (transition == TransitionTracker.TRANSITION_DWELL) {
+            emit(fenceId, transition, timeMillis, latitude, longitude);
+            return;
+        }
+        // Same hysteresis the pipeline applies to Play Services transitions
+        Fence fence = fencesById.get(fenceId);
+        int decision = debouncer.onTransition(fenceId, fence.getLatitude(), fence.getLongitude(), fence.getRadius(),
+                transition, latitude, longitude, lastAccuracy, timeMillis);
+        if (decision != TransitionDebouncer.TRANSITION_NONE) {
+            emit(fenceId, decision, timeMillis, latitude, longitude);
+        }
+    }
+
+    private void flushDebouncer(long nowMillis) {
+        confirmations.clear();
+        debouncer.poll(nowMillis, confirmations);
+        for (int i = 0; i < confirmations.size(); i++) {
+            TransitionDebouncer.Confirmation confirmation = confirmations.get(i);
+            emit(confirmation.getFenceId(), confirmation.getTransition(), nowMillis, lastLat, lastLon);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: TrackReplayEngine <fences.csv> <track.gpx|track.csv> [--debounce] [--quiet]");
+        System.err.println("       TrackReplayEngine <fences.csv> --synthetic <fixes> [--seed n] [--debounce] [--quiet]");
+    }
+
+    private static long nanosPerFix(long nanos, long fixes) {
+        return fixes == 0 ? 0 : nanos / fixes;
+    }
+
+    private static long fixesPerSecond(long nanos, long fixes) {
+        return nanos == 0 ? 0 : fixes * 1_000_000_000L / nanos;
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.geofenceapp;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-fence state machine that filters boundary flapping out of reported
+ * ENTER/EXIT transitions before they raise alerts.
+ *
+ * A transition is confirmed at once only when the fix is clearly past the
+ * boundary: inside an inner radius for ENTER, outside an outer radius for
+ * EXIT. The hysteresis margin grows with the fix's accuracy. Otherwise the
+ * transition stays pending for a minimum dwell time, also scaled by accuracy,
+ * and is dropped if the opposite transition arrives first. Pending transitions
+ * are confirmed by {@link #poll(long, List)}. The state can be exported and
+ * imported, so pending transitions survive the process being killed.
+ *
+ * Transition values are the Geofence.GEOFENCE_TRANSITION_* constants.
+ */
+public final class TransitionDebouncer {
+    public static final int TRANSITION_NONE = 0;
+    public static final int TRANSITION_ENTER = 1;
+    public static final int TRANSITION_EXIT = 2;
+
+    public static final float DEFAULT_MIN_MARGIN_METERS = 10f;
+    public static final long DEFAULT_ENTER_DWELL_MS = 3000;
+    public static final long DEFAULT_EXIT_DWELL_MS = 5000;
+
+    // Accuracy at which the base dwell time applies; worse fixes wait proportionally longer
+    private static final float REFERENCE_ACCURACY_METERS = 20f;
+    private static final float MAX_DWELL_SCALE = 4f;
+
+    // The inner radius never shrinks below this fraction of the fence radius
+    private static final float MIN_INNER_FRACTION = 0.5f;
+
+    private static final int STATE_UNKNOWN = 0;
+    private static final int STATE_INSIDE = 1;
+    private static final int STATE_OUTSIDE = 2;
+    private static final int STATE_PENDING_ENTER = 3;
+    private static final int STATE_PENDING_EXIT = 4;
+
+    private final float minMarginMeters;
+    private final long enterDwellMs;
+    private final long exitDwellMs;
+    private final Map<String, FenceState> states = new HashMap<>();
+
+    public TransitionDebouncer() {
+        this(DEFAULT_MIN_MARGIN_METERS, DEFAULT_ENTER_DWELL_MS, DEFAULT_EXIT_DWELL_MS);
+    }
+
+    /**
+     * @param minMarginMeters Smallest hysteresis margin, used for very accurate fixes
+     * @param enterDwellMs    Base time an ambiguous ENTER must persist before it is confirmed
+     * @param exitDwellMs     Base time an ambiguous EXIT must persist before it is confirmed
+     */
+    public TransitionDebouncer(float minMarginMeters, long enterDwellMs, long exitDwellMs) {
+        this.minMarginMeters = minMarginMeters;
+        this.enterDwellMs = enterDwellMs;
+        this.exitDwellMs = exitDwellMs;
+    }
+
+    /**
+     * Feed a reported transition for a fence
+     *
+     * @param fenceId    Fence ID
+     * @param centerLat  Fence center latitude
+     * @param centerLon  Fence center longitude
+     * @param radius     Fence radius in meters
+     * @param transition Reported TRANSITION_ENTER or TRANSITION_EXIT
+     * @param fixLat     Latitude of the triggering fix
+     * @param fixLon     Longitude of the triggering fix
+     * @param accuracy   Horizontal accuracy of the fix in meters
+     * @param timeMillis Time of the fix
+     * @return The transition to alert on now, or TRANSITION_NONE if it was suppressed or deferred
+     */
+    public synchronized int onTransition(String fenceId, double centerLat, double centerLon, float radius,
+                                         int transition, double fixLat, double fixLon, float accuracy,
+                                         long timeMillis) {
+        double distance = GeoMath.haversineDistance(centerLat, centerLon, fixLat, fixLon);
+        float margin = Math.max(minMarginMeters, accuracy);
+        boolean clearlyInside = distance <= Math.max(radius - margin, radius * MIN_INNER_FRACTION);
+        boolean clearlyOutside = distance >= radius + margin;
+        return apply(getState(fenceId), transition, clearlyInside, clearlyOutside, accuracy, timeMillis);
+    }
+
+    /**
+     * Feed a reported transition when the fence geometry or fix is unknown.
+     * Only duplicate and reversed transitions are filtered.
+     */
+    public synchronized int onTransition(String fenceId, int transition, long timeMillis) {
+        return apply(getState(fenceId), transition, false, false, REFERENCE_ACCURACY_METERS, timeMillis);
+    }
+
+    /**
+     * Confirm pending transitions whose dwell time has passed
+     *
+     * @param nowMillis Current time
+     * @param out       Receives the confirmed transitions
+     */
+    public synchronized void poll(long nowMillis, List<Confirmation> out) {
+        for (Map.Entry<String, FenceState> entry : states.entrySet()) {
+            FenceState state = entry.getValue();
+            if (state.deadline > nowMillis) {
+                continue;
+            }
+            if (state.state == STATE_PENDING_ENTER) {
+                state.settle(STATE_INSIDE);
+                out.add(new Confirmation(entry.getKey(), TRANSITION_ENTER));
+            } else if (state.state == STATE_PENDING_EXIT) {
+                state.settle(STATE_OUTSIDE);
+                out.add(new Confirmation(entry.getKey(), TRANSITION_EXIT));
+            }
+        }
+    }
+
+    /**
+     * Earliest time a pending transition can be confirmed
+     *
+     * @return Time in milliseconds, or Long.MAX_VALUE if nothing is pending
+     */
+    public synchronized long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (FenceState state : states.values()) {
+            next = Math.min(next, state.deadline);
+        }
+        return next;
+    }
+
+    /**
+     * Forget the state of fences that are no longer monitored
+     *
+     * @param fenceId Fence ID
+     */
+    public synchronized void forget(String fenceId) {
+        states.remove(fenceId);
+    }
+
+    /**
+     * Collect the fences whose last confirmed transition was ENTER, including
+     * those with an EXIT still pending
+     *
+     * @param out Receives the fence IDs
+     */
+    public synchronized void insideFences(Collection<String> out) {
+        for (Map.Entry<String, FenceState> entry : states.entrySet()) {
+            int state = entry.getValue().state;
+            if (state == STATE_INSIDE || state == STATE_PENDING_EXIT) {
+                out.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Record a transition confirmed by another detector, so the same
+     * transition reported later is filtered as a duplicate. Anything pending
+     * for the fence is dropped.
+     *
+     * @param fenceId    Fence ID
+     * @param transition TRANSITION_ENTER or TRANSITION_EXIT
+     */
+    public synchronized void confirm(String fenceId, int transition) {
+        if (transition == TRANSITION_ENTER) {
+            getState(fenceId).settle(STATE_INSIDE);
+        } else if (transition == TRANSITION_EXIT) {
+            getState(fenceId).settle(STATE_OUTSIDE);
+        }
+    }
+
+    /**
+     * Export the state of every fence, as "state:deadline:fenceId" entries
+     *
+     * @return Entries for {@link #importStates(Collection)}
+     */
+    public synchronized Set<String> exportStates() {
+        Set<String> entries = new HashSet<>(states.size() * 2);
+        for (Map.Entry<String, FenceState> entry : states.entrySet()) {
+            FenceState state = entry.getValue();
+            entries.add(state.state + ":" + state.deadline + ":" + entry.getKey());
+        }
+        return entries;
+    }
+
+    /**
+     * Restore states from {@link #exportStates()}. Deadlines are only
+     * meaningful on the same clock, so don't import states from before a
+     * reboot. Fences that already have a state keep it.
+     *
+     * @param entries Exported entries
+     * @return Number of entries restored; malformed ones are skipped
+     */
+    public synchronized int importStates(Collection<String> entries) {
+        int restored = 0;
+        for (String entry : entries) {
+            // IDs may contain colons, states and deadlines don't
+            int first = entry.indexOf(':');
+            int second = first < 0 ? -1 : entry.indexOf(':', first + 1);
+            if (second < 0) {
+                continue;
+            }
+            int state;
+            long deadline;
+            try {
+                state = Integer.parseInt(entry.substring(0, first));
+                deadline = Long.parseLong(entry.substring(first + 1, second));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            String fenceId = entry.substring(second + 1);
+            if (state < STATE_UNKNOWN || state > STATE_PENDING_EXIT || states.containsKey(fenceId)) {
+                continue;
+            }
+            FenceState fenceState = new FenceState();
+            fenceState.state = state;
+            fenceState.deadline = deadline;
+            states.put(fenceId, fenceState);
+            restored++;
+        }
+        return restored;
+    }
+
+    private int apply(FenceState state, int transition, boolean clearlyInside, boolean clearlyOutside,
+                      float accuracy, long timeMillis) {
+        if (transition == TRANSITION_ENTER) {
+            if (state.state == STATE_INSIDE || state.state == STATE_PENDING_ENTER) {
+                return TRANSITION_NONE;
+            }
+            if (state.state == STATE_PENDING_EXIT) {
+                // Came back before the exit was confirmed: the exit was boundary noise
+                state.settle(STATE_INSIDE);
+                return TRANSITION_NONE;
+            }
+            if (clearlyInside) {
+                state.settle(STATE_INSIDE);
+                return TRANSITION_ENTER;
+            }
+            state.pend(STATE_PENDING_ENTER, timeMillis + scaledDwell(enterDwellMs, accuracy));
+            return TRANSITION_NONE;
+        }
+
+        if (transition == TRANSITION_EXIT) {
+            if (state.state == STATE_OUTSIDE || state.state == STATE_PENDING_EXIT) {
+                return TRANSITION_NONE;
+            }
+            if (state.state == STATE_PENDING_ENTER) {
+                state.settle(STATE_OUTSIDE);
+                return TRANSITION_NONE;
+            }
+            if (clearlyOutside) {
+                state.settle(STATE_OUTSIDE);
+                return TRANSITION_EXIT;
+            }
+            state.pend(STATE_PENDING_EXIT, timeMillis + scaledDwell(exitDwellMs, accuracy));
+            return TRANSITION_NONE;
+        }
+        return TRANSITION_NONE;
+    }
+
+    private static long scaledDwell(long baseDwellMs, float accuracy) {
+        float scale = Math.max(1f, Math.min(MAX_DWELL_SCALE, accuracy / REFERENCE_ACCURACY_METERS));
+        return (long) (baseDwellMs * scale);
+    }
+
+    private FenceState getState(String fenceId) {
+        FenceState state = states.get(fenceId);
+        if (state == null) {
+            state = new FenceState();
+            states.put(fenceId, state);
+        }
+        return state;
+    }
+
+    private static final class FenceState {
+        int state = STATE_UNKNOWN;
+        long deadline = Long.MAX_VALUE;
+
+        void settle(int newState) {
+            state = newState;
+            deadline = Long.MAX_VALUE;
+        }
+
+        void pend(int pendingState, long confirmAt) {
+            state = pendingState;
+            deadline = confirmAt;
+        }
+    }
+
+    /**
+     * A transition confirmed after its dwell time
+     */
+    public static final class Confirmation {
+        private final String fenceId;
+        private final int transition;
+
+        public Confirmation(String fenceId, int transition) {
+            this.fenceId = fenceId;
+            this.transition = transition;
+        }
+
+        public String getFenceId() {
+            return fenceId;
+        }
+
+        public int getTransition() {
+            return transition;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.geofenceapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transition detection stage for one device: given the fences containing
+ * each fix, reports ENTER for fences newly containing it, EXIT for fences
+ * that no longer do, and DWELL once a visit has lasted the fence's loitering
+ * delay, with the same semantics as {@link TransitionTracker}. Unlike the
+ * tracker it keeps no fence set of its own, so it follows a catalog that
+ * changes while tracking. Not thread-safe.
+ */
+public final class TransitionDetector {
+    private final long loiteringDelayMs;
+
+    // Fences the device is in, by ID
+    private final Map<String, Visit> visits = new HashMap<>();
+    private final List<String> exited = new ArrayList<>();
+
+    public TransitionDetector() {
+        this(TransitionTracker.DEFAULT_LOITERING_DELAY_MS);
+    }
+
+    /**
+     * @param loiteringDelayMs Time inside a fence before DWELL is reported, for fences without their own
+     */
+    public TransitionDetector(long loiteringDelayMs) {
+        this.loiteringDelayMs = loiteringDelayMs;
+    }
+
+    /**
+     * Evaluate one fix. Fixes must be fed in time order.
+     *
+     * @param fix        The fix
+     * @param containing Fences containing the fix
+     * @param out        Receives the transitions, ENTER and DWELL before EXIT
+     */
+    public void onFix(LocationFix fix, List<Fence> containing, List<FenceTransition> out) {
+        long time = fix.getTimeMillis();
+        for (Visit visit : visits.values()) {
+            visit.seen = false;
+        }
+        for (Fence fence : containing) {
+            Visit visit = visits.get(fence.getId());
+            if (visit == null) {
+                visit = new Visit(fence, time);
+                visits.put(fence.getId(), visit);
+                report(fence, TransitionTracker.TRANSITION_ENTER, fix, out);
+            }
+            visit.seen = true;
+        }
+
+        exited.clear();
+        for (Iterator<Visit> it = visits.values().iterator(); it.hasNext(); ) {
+            Visit visit = it.next();
+            if (!visit.seen) {
+                it.remove();
+                exited.add(visit.fence.getId());
+                report(visit.fence, TransitionTracker.TRANSITION_EXIT, fix, out);
+            } else if (!visit.dwellReported && time - visit.enteredAt >= loiteringDelay(visit.fence)) {
+                visit.dwellReported = true;
+                report(visit.fence, TransitionTracker.TRANSITION_DWELL, fix, out);
+            }
+        }
+    }
+
+    /**
+     * Mark a fence as occupied without reporting ENTER, for visits another
+     * detector has already reported
+     *
+     * @param fence         The fence
+     * @param enteredAt     Time of the ENTER, on the clock of the fixes
+     * @param dwellReported Whether DWELL has already been reported or should not be
+     */
+    public void markOccupied(Fence fence, long enteredAt, boolean dwellReported) {
+        Visit visit = new Visit(fence, enteredAt);
+        visit.dwellReported = dwellReported;
+        visits.put(fence.getId(), visit);
+    }
+
+    /**
+     * Forget which fences are occupied, as if tracking had just started
+     */
+    public void reset() {
+        visits.clear();
+    }
+
+    public int getOccupiedCount() {
+        return visits.size();
+    }
+
+    private long loiteringDelay(Fence fence) {
+        int delay = fence.getLoiteringDelayMillis();
+        return delay > 0 ? delay : loiteringDelayMs;
+    }
+
+    private static void report(Fence fence, int transition, LocationFix fix, List<FenceTransition> out) {
+        if ((fence.getTransitionTypes() & transition) != 0) {
+            out.add(new FenceTransition(fence.getId(), transition, fix));
+        }
+    }
+
+    private static final class Visit {
+        final Fence fence;
+        final long enteredAt;
+        boolean seen;
+        boolean dwellReported;
+
+        Visit(Fence fence, long enteredAt) {
+            this.fence = fence;
+            this.enteredAt = enteredAt;
+        }
+    }
+}
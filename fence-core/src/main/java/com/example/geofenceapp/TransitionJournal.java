@@ -0,0 +1,513 @@
+package com.example.geofenceapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable history of geofence transitions, stored as fixed-size binary records
+ * in a memory-mapped ring file. Appending writes a 48-byte record into the
+ * mapping and then bumps the sequence in the header, so an append costs a few
+ * microseconds and never touches the heap beyond the first sighting of a fence.
+ *
+ * Each record carries its own sequence number and checksum. If the process dies
+ * between writing a record and updating the header, the record is recovered on
+ * the next open, and a torn record is ignored. The ring is evicted a whole block
+ * at a time. Every block keeps a 64-bit fence filter, so queries for one fence
+ * skip blocks that cannot contain it. The filters are kept in the mapping next
+ * to the header, so opening the journal reads only the newest blocks rather
+ * than every record.
+ *
+ * Fence IDs are stored once in a side file, one per line with line breaks and
+ * backslashes escaped, and referenced by index from records.
+ */
+public final class TransitionJournal implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 21; // ~96 MB of records
+
+    private static final String JOURNAL_FILE = "transitions.journal";
+    private static final String FENCE_FILE = "transitions.fences";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x47464A32; // "GFJ2"
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_RECORD_SIZE = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_NEXT_SEQ = 16;
+
+    static final int RECORD_SIZE = 48;
+    private static final int REC_SEQ = 0;
+    private static final int REC_TIME = 8;
+    private static final int REC_LAT = 16;
+    private static final int REC_LON = 24;
+    private static final int REC_FENCE = 32;
+    private static final int REC_ACCURACY = 36;
+    private static final int REC_TRANSITION = 40;
+    private static final int REC_CHECKSUM = 44;
+
+    // Records per eviction block; the capacity is rounded to a multiple of this
+    static final int BLOCK_SIZE = 256;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Block filters follow the header; records follow the filters
+    private final int recordsOffset;
+    private final File fenceFile;
+    private final List<String> fenceIds = new ArrayList<>();
+    private final Map<String, Integer> fenceIndexes = new HashMap<>();
+    private Writer fenceWriter;
+
+    private long nextSeq;
+    private long lastTimeMillis = Long.MIN_VALUE;
+
+    /**
+     * Open or create a journal in a directory
+     *
+     * @param directory Directory holding the journal files
+     * @param capacity  Number of records kept before the oldest are overwritten;
+     *                  ignored if the journal already exists
+     */
+    public static TransitionJournal open(File directory, int capacity) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        return new TransitionJournal(directory, capacity);
+    }
+
+    private TransitionJournal(File directory, int requestedCapacity) throws IOException {
+        File journalFile = new File(directory, JOURNAL_FILE);
+        boolean exists = journalFile.length() >= HEADER_SIZE;
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+
+        int cap;
+        if (exists) {
+            file.seek(HEADER_MAGIC);
+            if (file.readInt() != MAGIC || readIntAt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("Not a transition journal: " + journalFile);
+            }
+            cap = readIntAt(HEADER_CAPACITY);
+        } else {
+            cap = Math.max(BLOCK_SIZE, (requestedCapacity + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        }
+        capacity = cap;
+        recordsOffset = HEADER_SIZE + capacity / BLOCK_SIZE * 8;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsOffset + (long) capacity * RECORD_SIZE);
+
+        if (!exists) {
+            buffer.putInt(HEADER_MAGIC, MAGIC);
+            buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+            buffer.putInt(HEADER_CAPACITY, capacity);
+            buffer.putLong(HEADER_NEXT_SEQ, 0);
+        }
+
+        nextSeq = buffer.getLong(HEADER_NEXT_SEQ);
+        recoverUnpublishedRecords();
+        if (nextSeq > 0) {
+            lastTimeMillis = buffer.getLong(position(nextSeq - 1) + REC_TIME);
+        }
+
+        // Only the newest block and the one being evicted can disagree with their filters
+        // after a crash in the middle of an append
+        if (nextSeq > 0) {
+            rebuildFilter((nextSeq - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        }
+        if (nextSeq % BLOCK_SIZE == 0 && nextSeq >= capacity) {
+            rebuildFilter(nextSeq - capacity);
+        }
+
+        fenceFile = new File(directory, FENCE_FILE);
+        loadFenceIds();
+    }
+
+    /**
+     * Append a transition
+     *
+     * @param timeMillis Wall-clock time of the transition
+     * @param fenceId    Fence ID
+     * @param transition Geofence.GEOFENCE_TRANSITION_* value
+     * @param latitude   Latitude of the triggering fix, or NaN if unknown
+     * @param longitude  Longitude of the triggering fix, or NaN if unknown
+     * @param accuracy   Accuracy of the fix in meters, or NaN if unknown
+     * @return Sequence number of the record
+     */
+    public synchronized long append(long timeMillis, String fenceId, int transition,
+                                    double latitude, double longitude, float accuracy) throws IOException {
+        int fence = fenceIndex(fenceId);
+        long seq = nextSeq;
+        // Keep times ordered even if the wall clock steps back, so range queries can binary search
+        timeMillis = Math.max(timeMillis, lastTimeMillis);
+        lastTimeMillis = timeMillis;
+        int position = position(seq);
+
+        // Starting a block evicts the whole block, so its filter starts clean
+        if (seq % BLOCK_SIZE == 0) {
+            setFilter(seq, 0);
+        }
+
+        buffer.putLong(position + REC_SEQ, seq);
+        buffer.putLong(position + REC_TIME, timeMillis);
+        buffer.putDouble(position + REC_LAT, latitude);
+        buffer.putDouble(position + REC_LON, longitude);
+        buffer.putInt(position + REC_FENCE, fence);
+        buffer.putFloat(position + REC_ACCURACY, accuracy);
+        buffer.putInt(position + REC_TRANSITION, transition);
+        buffer.putInt(position + REC_CHECKSUM, checksum(position));
+        setFilter(seq, getFilter(seq) | fenceBit(fence));
+
+        // Publish only after the record is complete
+        nextSeq = seq + 1;
+        buffer.putLong(HEADER_NEXT_SEQ, nextSeq);
+        return seq;
+    }
+
+    /**
+     * Read records in a time range, oldest first
+     *
+     * @param fromTimeMillis Inclusive start of the range
+     * @param toTimeMillis   Exclusive end of the range
+     * @param fenceId        Only return this fence, or null for all fences
+     * @param cursor         Sequence to resume from, from {@link Page#getNextCursor()}, or -1 to start
+     * @param limit          Maximum number of records to return
+     * @return A page of records and the cursor for the next page
+     */
+    public synchronized Page query(long fromTimeMillis, long toTimeMillis, String fenceId, long cursor, int limit) {
+        int fence = -1;
+        if (fenceId != null) {
+            Integer index = fenceIndexes.get(fenceId);
+            if (index == null) {
+                return new Page(new ArrayList<Record>(), -1);
+            }
+            fence = index;
+        }
+
+        long seq = cursor >= 0 ? Math.max(cursor, getOldestSeq()) : firstSeqAtOrAfter(fromTimeMillis);
+        List<Record> records = new ArrayList<>(Math.min(limit, 256));
+        while (seq < nextSeq && records.size() < limit) {
+            if (fence >= 0 && seq % BLOCK_SIZE == 0 && (getFilter(seq) & fenceBit(fence)) == 0) {
+                seq += BLOCK_SIZE;
+                continue;
+            }
+            int position = position(seq);
+            if (buffer.getLong(position + REC_SEQ) == seq) {
+                long time = buffer.getLong(position + REC_TIME);
+                if (time >= toTimeMillis) {
+                    return new Page(records, -1);
+                }
+                if (time >= fromTimeMillis && (fence < 0 || buffer.getInt(position + REC_FENCE) == fence)) {
+                    records.add(readRecord(seq, position));
+                }
+            }
+            seq++;
+        }
+        return new Page(records, seq < nextSeq ? seq : -1);
+    }
+
+    /**
+     * Number of records currently held
+     */
+    public synchronized long size() {
+        return nextSeq - getOldestSeq();
+    }
+
+    /**
+     * Sequence number of the oldest record still held
+     */
+    public synchronized long getOldestSeq() {
+        if (nextSeq <= capacity) {
+            return 0;
+        }
+        long currentBlockStart = (nextSeq - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        return currentBlockStart + BLOCK_SIZE - capacity;
+    }
+
+    public synchronized long getNextSeq() {
+        return nextSeq;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Force written records to storage. Appends already survive a process
+     * crash; this also protects them against power loss.
+     */
+    public synchronized void flush() throws IOException {
+        buffer.force();
+        if (fenceWriter != null) {
+            fenceWriter.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (fenceWriter != null) {
+            fenceWriter.close();
+        }
+        channel.close();
+        file.close();
+    }
+
+    // Binary search for the first record with a time at or after the given time.
+    // Times are appended in order, so the live range is sorted by time.
+    private long firstSeqAtOrAfter(long timeMillis) {
+        long low = getOldestSeq();
+        long high = nextSeq;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (buffer.getLong(position(mid) + REC_TIME) < timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Record readRecord(long seq, int position) {
+        int fence = buffer.getInt(position + REC_FENCE);
+        return new Record(seq,
+                buffer.getLong(position + REC_TIME),
+                fence >= 0 && fence < fenceIds.size() ? fenceIds.get(fence) : null,
+                buffer.getInt(position + REC_TRANSITION),
+                buffer.getDouble(position + REC_LAT),
+                buffer.getDouble(position + REC_LON),
+                buffer.getFloat(position + REC_ACCURACY));
+    }
+
+    // Pick up records that were written but not yet published in the header
+    private void recoverUnpublishedRecords() {
+        while (true) {
+            int position = position(nextSeq);
+            if (buffer.getLong(position + REC_SEQ) != nextSeq
+                    || buffer.getInt(position + REC_CHECKSUM) != checksum(position)) {
+                break;
+            }
+            nextSeq++;
+        }
+        buffer.putLong(HEADER_NEXT_SEQ, nextSeq);
+    }
+
+    private int checksum(int position) {
+        long h = buffer.getLong(position + REC_SEQ) * 0x9E3779B97F4A7C15L;
+        h = (h ^ buffer.getLong(position + REC_TIME)) * 0x9E3779B97F4A7C15L;
+        h = (h ^ buffer.getLong(position + REC_LAT)) * 0x9E3779B97F4A7C15L;
+        h = (h ^ buffer.getLong(position + REC_LON)) * 0x9E3779B97F4A7C15L;
+        h = (h ^ buffer.getLong(position + REC_FENCE)) * 0x9E3779B97F4A7C15L;
+        h = (h ^ buffer.getInt(position + REC_TRANSITION)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) | 1; // never 0, so zeroed space never validates
+    }
+
+    // Recompute the filter of the block starting at a sequence from its live records
+    private void rebuildFilter(long blockStart) {
+        long filter = 0;
+        long end = Math.min(blockStart + BLOCK_SIZE, nextSeq);
+        for (long seq = Math.max(blockStart, getOldestSeq()); seq < end; seq++) {
+            int position = position(seq);
+            if (buffer.getLong(position + REC_SEQ) == seq) {
+                filter |= fenceBit(buffer.getInt(position + REC_FENCE));
+            }
+        }
+        setFilter(blockStart, filter);
+    }
+
+    private long getFilter(long seq) {
+        return buffer.getLong(HEADER_SIZE + blockOf(seq) * 8);
+    }
+
+    private void setFilter(long seq, long filter) {
+        buffer.putLong(HEADER_SIZE + blockOf(seq) * 8, filter);
+    }
+
+    private int position(long seq) {
+        return recordsOffset + (int) (seq % capacity) * RECORD_SIZE;
+    }
+
+    private int blockOf(long seq) {
+        return (int) (seq % capacity) / BLOCK_SIZE;
+    }
+
+    private static long fenceBit(int fence) {
+        return 1L << (fence & 63);
+    }
+
+    private int readIntAt(long offset) throws IOException {
+        file.seek(offset);
+        return file.readInt();
+    }
+
+    private int fenceIndex(String fenceId) throws IOException {
+        Integer index = fenceIndexes.get(fenceId);
+        if (index != null) {
+            return index;
+        }
+        if (fenceWriter == null) {
+            fenceWriter = new OutputStreamWriter(new FileOutputStream(fenceFile, true), UTF_8);
+        }
+        fenceWriter.write(escapeLine(fenceId));
+        fenceWriter.write('\n');
+        fenceWriter.flush();
+
+        int newIndex = fenceIds.size();
+        fenceIds.add(fenceId);
+        fenceIndexes.put(fenceId, newIndex);
+        return newIndex;
+    }
+
+    private void loadFenceIds() throws IOException {
+        if (!fenceFile.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fenceFile), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String fenceId = unescapeLine(line);
+                fenceIndexes.put(fenceId, fenceIds.size());
+                fenceIds.add(fenceId);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    // One ID per line in the side file; readLine() splits on '\r' as well as '\n'
+    private static String escapeLine(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescapeLine(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        StringBuilder value = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                value.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * One journaled transition
+     */
+    public static final class Record {
+        private final long seq;
+        private final long timeMillis;
+        private final String fenceId;
+        private final int transition;
+        private final double latitude;
+        private final double longitude;
+        private final float accuracy;
+
+        Record(long seq, long timeMillis, String fenceId, int transition,
+               double latitude, double longitude, float accuracy) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.fenceId = fenceId;
+            this.transition = transition;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getFenceId() {
+            return fenceId;
+        }
+
+        public int getTransition() {
+            return transition;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public float getAccuracy() {
+            return accuracy;
+        }
+    }
+
+    /**
+     * A page of query results
+     */
+    public static final class Page {
+        private final List<Record> records;
+        private final long nextCursor;
+
+        Page(List<Record> records, long nextCursor) {
+            this.records = records;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        /**
+         * Cursor to pass to the next query, or -1 if there are no more records
+         */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasMore() {
+            return nextCursor >= 0;
+        }
+    }
+}
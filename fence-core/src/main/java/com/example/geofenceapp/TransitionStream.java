@@ -0,0 +1,136 @@
+package com.example.geofenceapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The evaluation stages of the location stream: fixes are filtered and
+ * smoothed by a {@link FixSmoother}, looked up in a {@link FenceRegistry} for
+ * the fences containing them, and turned into transitions by a
+ * {@link TransitionDetector}. Transitions go out through a
+ * {@link BufferedPublisher}, so every alert sink gets its own bounded buffer
+ * and thread and a slow one loses its own transitions rather than stalling
+ * evaluation.
+ *
+ * Fixes are requested one at a time, so an upstream {@link BufferedPublisher}
+ * applies its overflow policy while a fix is being evaluated.
+ */
+public final class TransitionStream implements ReactiveFlow.Processor<LocationFix, FenceTransition> {
+    public static final int DEFAULT_SINK_CAPACITY = 64;
+
+    private final FenceRegistry registry;
+    private final FixSmoother smoother;
+    private final TransitionDetector detector;
+    private final BufferedPublisher<FenceTransition> output;
+
+    // Reused by onNext, which is never called concurrently
+    private final List<FenceTransition> transitions = new ArrayList<>();
+
+    private ReactiveFlow.Subscription upstream;
+    private volatile long fixCount;
+    private volatile long filteredCount;
+    private volatile long transitionCount;
+
+    /**
+     * @param registry     Fences to evaluate against
+     * @param smoother     Filter and smoothing stage
+     * @param detector     Transition detection stage
+     * @param sinkExecutor Runs deliveries to sinks subscribed without an executor of their own
+     */
+    public TransitionStream(FenceRegistry registry, FixSmoother smoother, TransitionDetector detector,
+                            Executor sinkExecutor) {
+        this.registry = registry;
+        this.smoother = smoother;
+        this.detector = detector;
+        this.output = new BufferedPublisher<>(sinkExecutor, DEFAULT_SINK_CAPACITY,
+                BufferedPublisher.OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Override
+    public void subscribe(ReactiveFlow.Subscriber<? super FenceTransition> subscriber) {
+        output.subscribe(subscriber);
+    }
+
+    /**
+     * Subscribe an alert sink with a buffer and executor of its own
+     *
+     * @see BufferedPublisher#subscribe(ReactiveFlow.Subscriber, int, BufferedPublisher.OverflowPolicy, Executor)
+     */
+    public void subscribe(ReactiveFlow.Subscriber<? super FenceTransition> subscriber, int capacity,
+                          BufferedPublisher.OverflowPolicy policy, Executor executor) {
+        output.subscribe(subscriber, capacity, policy, executor);
+    }
+
+    @Override
+    public void onSubscribe(ReactiveFlow.Subscription subscription) {
+        if (upstream != null) {
+            // Rule 2.5 of the Reactive Streams specification
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(LocationFix fix) {
+        fixCount++;
+        LocationFix smoothed = smoother.apply(fix);
+        if (smoothed == null) {
+            filteredCount++;
+        } else {
+            List<Fence> containing = registry.containing(smoothed.getLatitude(), smoothed.getLongitude());
+            transitions.clear();
+            detector.onFix(smoothed, containing, transitions);
+            for (int i = 0; i < transitions.size(); i++) {
+                output.offer(transitions.get(i));
+            }
+            transitionCount += transitions.size();
+        }
+        upstream.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        output.fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        output.complete();
+    }
+
+    /**
+     * Stop taking fixes and complete the sinks
+     */
+    public void cancel() {
+        ReactiveFlow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        output.complete();
+    }
+
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Fixes dropped by the smoother as too inaccurate or out of order
+     */
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /**
+     * Transitions lost to full sink buffers
+     */
+    public long getDroppedCount() {
+        return output.getDroppedCount();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.geofenceapp;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline evaluation of geofence transitions for a stream of location fixes,
+ * following the semantics Play Services applies to the geofences
+ * {@code GeofenceHelper} registers: ENTER when a fix first lands inside a
+ * fence, EXIT when a later fix is outside it, and DWELL once a visit has lasted
+ * the loitering delay. A transition is only reported if the fence's
+ * transition mask includes it.
+ *
+ * The fence set is fixed at construction. Per-fix work is a grid lookup plus
+ * a pass over the fences currently occupied, with no allocation.
+ * Not thread-safe.
+ */
+public final class TransitionTracker {
+    // Same as GEOFENCE_TRANSITION_* in Play Services
+    public static final int TRANSITION_ENTER = 1;
+    public static final int TRANSITION_EXIT = 2;
+    public static final int TRANSITION_DWELL = 4;
+
+    // Loitering delay of fences that don't set their own
+    public static final int DEFAULT_LOITERING_DELAY_MS = 5000;
+
+    /**
+     * Receives transitions as they are detected
+     */
+    public interface Listener {
+        void onTransition(String fenceId, int transition, long timeMillis, double latitude, double longitude);
+    }
+
+    private final FenceStore store = new FenceStore();
+    private final FenceGridIndex index = new FenceGridIndex();
+    private final long loiteringDelayMs;
+    private final IntList candidates = new IntList(64);
+
+    // Slots currently occupied, and per-slot visit state
+    private final IntList insideSlots = new IntList();
+    private final boolean[] inside;
+    private final boolean[] dwellReported;
+    private final long[] enteredAt;
+    private final int[] seenStamps;
+    private int stamp;
+
+    private long enterCount;
+    private long exitCount;
+    private long dwellCount;
+
+    public TransitionTracker(List<Fence> fences) {
+        this(fences, DEFAULT_LOITERING_DELAY_MS);
+    }
+
+    /**
+     * @param fences           Fences to evaluate against
+     * @param loiteringDelayMs Time inside a fence before DWELL is reported, for fences without their own
+     */
+    public TransitionTracker(List<Fence> fences, long loiteringDelayMs) {
+        this.loiteringDelayMs = loiteringDelayMs;
+        for (Fence fence : fences) {
+            int slot = store.add(fence);
+            double dLat = GeoMath.metersToLatitudeDegrees(fence.getRadius());
+            double dLon = GeoMath.metersToLongitudeDegrees(fence.getRadius(), fence.getLatitude());
+            index.insert(slot, fence.getLatitude() - dLat, fence.getLongitude() - dLon,
+                    fence.getLatitude() + dLat, fence.getLongitude() + dLon);
+        }
+        int slots = store.slotCount();
+        inside = new boolean[slots];
+        dwellReported = new boolean[slots];
+        enteredAt = new long[slots];
+        seenStamps = new int[slots];
+    }
+
+    /**
+     * Evaluate one fix. Fixes must be fed in time order.
+     *
+     * @param timeMillis Time of the fix
+     * @param latitude   Latitude in degrees
+     * @param longitude  Longitude in degrees
+     * @param listener   Receives the transitions caused by this fix
+     */
+    public void onFix(long timeMillis, double latitude, double longitude, Listener listener) {
+        if (++stamp == 0) {
+            Arrays.fill(seenStamps, 0);
+            stamp = 1;
+        }
+
+        candidates.clear();
+        index.queryPoint(latitude, longitude, candidates);
+        double cosLat = DistanceKernel.cosLatitude(latitude);
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            int slot = candidates.get(i);
+            if (!store.contains(slot, latitude, longitude, cosLat)) {
+                continue;
+            }
+            seenStamps[slot] = stamp;
+            if (!inside[slot]) {
+                inside[slot] = true;
+                dwellReported[slot] = false;
+                enteredAt[slot] = timeMillis;
+                insideSlots.add(slot);
+                report(slot, TRANSITION_ENTER, timeMillis, latitude, longitude, listener);
+            }
+        }
+
+        // Fences occupied before this fix that no longer contain it are exited
+        for (int i = insideSlots.size() - 1; i >= 0; i--) {
+            int slot = insideSlots.get(i);
+            if (seenStamps[slot] != stamp) {
+                inside[slot] = false;
+                insideSlots.removeValue(slot);
+                report(slot, TRANSITION_EXIT, timeMillis, latitude, longitude, listener);
+            } else if (!dwellReported[slot] && timeMillis - enteredAt[slot] >= loiteringDelay(slot)) {
+                dwellReported[slot] = true;
+                report(slot, TRANSITION_DWELL, timeMillis, latitude, longitude, listener);
+            }
+        }
+    }
+
+    private long loiteringDelay(int slot) {
+        int delay = store.loiteringDelay(slot);
+        return delay > 0 ? delay : loiteringDelayMs;
+    }
+
+    /**
+     * Forget which fences are occupied, as if monitoring had just started
+     */
+    public void reset() {
+        for (int i = 0, n = insideSlots.size(); i < n; i++) {
+            inside[insideSlots.get(i)] = false;
+        }
+        insideSlots.clear();
+    }
+
+    public int getFenceCount() {
+        return store.size();
+    }
+
+    public int getOccupiedCount() {
+        return insideSlots.size();
+    }
+
+    public long getEnterCount() {
+        return enterCount;
+    }
+
+    public long getExitCount() {
+        return exitCount;
+    }
+
+    public long getDwellCount() {
+        return dwellCount;
+    }
+
+    private void report(int slot, int transition, long timeMillis, double latitude, double longitude,
+                        Listener listener) {
+        if ((store.transitionTypes(slot) & transition) == 0) {
+            return;
+        }
+        if (transition == TRANSITION_ENTER) {
+            enterCount++;
+        } else if (transition == TRANSITION_EXIT) {
+            exitCount++;
+        } else {
+            dwellCount++;
+        }
+        if (listener != null) {
+            listener.onTransition(store.id(slot), transition, timeMillis, latitude, longitude);
+        }
+    }
+}
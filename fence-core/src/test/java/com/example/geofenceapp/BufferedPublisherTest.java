@@ -0,0 +1,201 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferedPublisherTest {
+    @Test
+    public void dropNewestKeepsTheFirstItems() {
+        assertEquals(Arrays.asList(1, 2), deliveredAfterBurst(BufferedPublisher.OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    public void dropOldestKeepsTheLastItems() {
+        assertEquals(Arrays.asList(4, 5), deliveredAfterBurst(BufferedPublisher.OverflowPolicy.DROP_OLDEST));
+    }
+
+    @Test
+    public void conflateKeepsOnlyTheLatest() {
+        assertEquals(Arrays.asList(5), deliveredAfterBurst(BufferedPublisher.OverflowPolicy.CONFLATE));
+    }
+
+    @Test
+    public void completesAfterBufferedItems() {
+        ManualExecutor executor = new ManualExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 4, BufferedPublisher.OverflowPolicy.DROP_NEWEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.offer(1);
+        publisher.offer(2);
+        publisher.complete();
+        publisher.offer(3);
+        executor.runAll();
+        assertEquals(0, subscriber.items.size());
+
+        subscriber.subscription.request(10);
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2), subscriber.items);
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void failureDropsBufferedItems() {
+        ManualExecutor executor = new ManualExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 4, BufferedPublisher.OverflowPolicy.DROP_NEWEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.offer(1);
+        IllegalStateException error = new IllegalStateException("source failed");
+        publisher.fail(error);
+        executor.runAll();
+
+        assertEquals(0, subscriber.items.size());
+        assertEquals(error, subscriber.error);
+    }
+
+    @Test
+    public void nonPositiveRequestIsAnError() {
+        ManualExecutor executor = new ManualExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 4, BufferedPublisher.OverflowPolicy.DROP_NEWEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        executor.runAll();
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void slowSubscriberOnlyLosesItsOwnItems() {
+        ManualExecutor executor = new ManualExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 2, BufferedPublisher.OverflowPolicy.DROP_NEWEST);
+        RecordingSubscriber fast = new RecordingSubscriber();
+        RecordingSubscriber slow = new RecordingSubscriber();
+        publisher.subscribe(fast);
+        publisher.subscribe(slow);
+        fast.subscription.request(Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            publisher.offer(i);
+            executor.runAll();
+        }
+
+        assertEquals(100, fast.items.size());
+        assertEquals(0, slow.items.size());
+        assertEquals(98, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void matchesQueueModelUnderRandomOffersAndRequests() {
+        Random random = new Random(13);
+        for (BufferedPublisher.OverflowPolicy policy : BufferedPublisher.OverflowPolicy.values()) {
+            for (int run = 0; run < 50; run++) {
+                int capacity = policy == BufferedPublisher.OverflowPolicy.CONFLATE ? 1 : 1 + random.nextInt(8);
+                ManualExecutor executor = new ManualExecutor();
+                BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, capacity, policy);
+                RecordingSubscriber subscriber = new RecordingSubscriber();
+                publisher.subscribe(subscriber);
+
+                ArrayDeque<Integer> buffer = new ArrayDeque<>();
+                List<Integer> expected = new ArrayList<>();
+                long demand = 0;
+                long dropped = 0;
+                for (int step = 0, item = 0; step < 500; step++) {
+                    int op = random.nextInt(3);
+                    if (op == 0) {
+                        if (buffer.size() == capacity) {
+                            dropped++;
+                            if (policy != BufferedPublisher.OverflowPolicy.DROP_NEWEST) {
+                                buffer.pollFirst();
+                                buffer.addLast(item);
+                            }
+                        } else {
+                            buffer.addLast(item);
+                        }
+                        publisher.offer(item++);
+                    } else if (op == 1) {
+                        long n = 1 + random.nextInt(3);
+                        demand += n;
+                        subscriber.subscription.request(n);
+                    } else {
+                        executor.runAll();
+                        while (demand > 0 && !buffer.isEmpty()) {
+                            expected.add(buffer.pollFirst());
+                            demand--;
+                        }
+                        assertEquals(policy + " capacity " + capacity, expected, subscriber.items);
+                    }
+                }
+                assertEquals(dropped, publisher.getDroppedCount());
+            }
+        }
+    }
+
+    // Burst of 1..5 into a buffer of two, then demand for all of it
+    private static List<Integer> deliveredAfterBurst(BufferedPublisher.OverflowPolicy policy) {
+        ManualExecutor executor = new ManualExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 2, policy);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        for (int i = 1; i <= 5; i++) {
+            publisher.offer(i);
+        }
+        executor.runAll();
+        subscriber.subscription.request(10);
+        executor.runAll();
+        return subscriber.items;
+    }
+
+    // Runs deliveries only when told to, so a test controls the interleaving
+    private static final class ManualExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class RecordingSubscriber implements ReactiveFlow.Subscriber<Integer> {
+        final List<Integer> items = new ArrayList<>();
+        ReactiveFlow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(ReactiveFlow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
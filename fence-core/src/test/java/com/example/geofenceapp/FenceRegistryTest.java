@@ -0,0 +1,140 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FenceRegistryTest {
+    @Test
+    public void gridFindsFencesAcrossTheAntimeridian() {
+        checkAgainstBruteForce(new FenceRegistry(new FenceGridIndex()), new Random(41), true);
+    }
+
+    @Test
+    public void geohashFindsFencesAcrossTheAntimeridian() {
+        // Cells only cover the circle, so a box near a corner of its bounding box may miss it
+        checkAgainstBruteForce(new FenceRegistry(new GeohashCellIndex()), new Random(43), false);
+    }
+
+    @Test
+    public void mapBoundsAcrossTheAntimeridian() {
+        FenceRegistry registry = new FenceRegistry();
+        registry.add(new Fence("east", 0, 179.9995, 200, TransitionTracker.TRANSITION_ENTER));
+        registry.add(new Fence("west", 1, -179.9995, 200, TransitionTracker.TRANSITION_ENTER));
+        registry.add(new Fence("far", 0, 0, 200, TransitionTracker.TRANSITION_ENTER));
+
+        // South-west corner east of the north-east corner, as map bounds report it
+        assertEquals(Arrays.asList("east", "west"), ids(registry.inBoundingBox(-1, 179, 2, -179)));
+        assertEquals(Collections.singletonList("west"), ids(registry.inBoundingBox(0.5, 179, 2, -179.9999)));
+        // Each circle reaches about 100 m onto the other side
+        assertEquals(Collections.singletonList("east"), ids(registry.containing(0, -179.9995)));
+        assertEquals(Collections.singletonList("west"), ids(registry.containing(1, 179.9995)));
+    }
+
+    private static void checkAgainstBruteForce(FenceRegistry registry, Random random, boolean exactBoxes) {
+        List<Fence> fences = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Fence fence = new Fence("fence-" + i, randomLatitude(random), randomLongitude(random),
+                    10 + random.nextInt(5000), TransitionTracker.TRANSITION_ENTER);
+            fences.add(fence);
+            registry.add(fence);
+        }
+        // Removal must find every cell the fence was split into
+        for (int i = 0; i < 200; i++) {
+            Fence fence = fences.remove(random.nextInt(fences.size()));
+            registry.remove(fence.getId());
+        }
+
+        for (int query = 0; query < 3000; query++) {
+            double lat = randomLatitude(random);
+            double lon = randomLongitude(random);
+            List<String> containing = new ArrayList<>();
+            List<String> within = new ArrayList<>();
+            double radius = random.nextInt(3000);
+            for (Fence fence : fences) {
+                double distance = GeoMath.haversineDistance(lat, lon, fence.getLatitude(), fence.getLongitude());
+                if (distance <= fence.getRadius()) {
+                    containing.add(fence.getId());
+                }
+                if (distance <= fence.getRadius() + radius) {
+                    within.add(fence.getId());
+                }
+            }
+            Collections.sort(containing);
+            Collections.sort(within);
+            String where = lat + ", " + lon;
+            assertEquals(where, containing, ids(registry.containing(lat, lon)));
+            assertEquals(where, within, ids(registry.withinRadius(lat, lon, radius)));
+        }
+
+        for (int query = 0; query < 300; query++) {
+            double minLat = randomLatitude(random);
+            double maxLat = minLat + random.nextDouble() * 0.05;
+            double minLon = randomLongitude(random);
+            double maxLon = minLon + random.nextDouble() * 0.1;
+            List<String> overlapping = new ArrayList<>();
+            List<String> centered = new ArrayList<>();
+            for (Fence fence : fences) {
+                if (boxesOverlap(fence, 1, minLat, minLon, maxLat, maxLon)) {
+                    overlapping.add(fence.getId());
+                }
+                if (boxesOverlap(fence, 0, minLat, minLon, maxLat, maxLon)) {
+                    centered.add(fence.getId());
+                }
+            }
+            Collections.sort(overlapping);
+            // Past 180 the box wraps; map bounds give the eastern edge on the other side
+            double eastEdge = maxLon > 180.0 ? maxLon - 360.0 : maxLon;
+            List<String> found = ids(registry.inBoundingBox(minLat, minLon, maxLat, eastEdge));
+            if (exactBoxes) {
+                assertEquals(overlapping, found);
+            } else {
+                assertTrue(overlapping.containsAll(found));
+                assertTrue(found.containsAll(centered));
+            }
+        }
+    }
+
+    // Whether the fence's bounding box, scaled about its center, overlaps the box
+    private static boolean boxesOverlap(Fence fence, double scale, double minLat, double minLon, double maxLat, double maxLon) {
+        double dLat = scale * GeoMath.metersToLatitudeDegrees(fence.getRadius());
+        double dLon = scale * GeoMath.metersToLongitudeDegrees(fence.getRadius(), fence.getLatitude());
+        if (fence.getLatitude() + dLat < minLat || fence.getLatitude() - dLat > maxLat) {
+            return false;
+        }
+        for (int turn = -1; turn <= 1; turn++) {
+            double lon = fence.getLongitude() + 360.0 * turn;
+            if (lon + dLon >= minLon && lon - dLon <= maxLon) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> ids(List<Fence> fences) {
+        List<String> ids = new ArrayList<>();
+        for (Fence fence : fences) {
+            ids.add(fence.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    // Equator and high latitude, where a longitude degree is short
+    private static double randomLatitude(Random random) {
+        return (random.nextBoolean() ? 0 : 65) + (random.nextDouble() - 0.5) * 0.2;
+    }
+
+    // Within a tenth of a degree of the antimeridian, on either side
+    private static double randomLongitude(Random random) {
+        double offset = random.nextDouble() * 0.1;
+        return random.nextBoolean() ? 180.0 - offset : -180.0 + offset;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FenceScheduleTest {
+    private static final long MINUTE = 60000;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final TimeZone LORD_HOWE = TimeZone.getTimeZone("Australia/Lord_Howe");
+    private static final TimeZone KATHMANDU = TimeZone.getTimeZone("Asia/Kathmandu");
+
+    @Test
+    public void windowRunsPastMidnightIntoTheNextWeek() {
+        FenceSchedule schedule = FenceSchedule.parse("Sun 22:00-02:00", BERLIN);
+
+        assertFalse(schedule.isActive(local(BERLIN, 2026, Calendar.JANUARY, 11, 21, 59), BERLIN));
+        assertTrue(schedule.isActive(local(BERLIN, 2026, Calendar.JANUARY, 11, 22, 0), BERLIN));
+        assertTrue(schedule.isActive(local(BERLIN, 2026, Calendar.JANUARY, 12, 1, 59), BERLIN));
+        assertFalse(schedule.isActive(local(BERLIN, 2026, Calendar.JANUARY, 12, 2, 0), BERLIN));
+        assertEquals(local(BERLIN, 2026, Calendar.JANUARY, 12, 2, 0),
+                schedule.nextChange(local(BERLIN, 2026, Calendar.JANUARY, 11, 23, 30), BERLIN));
+        assertEquals(local(BERLIN, 2026, Calendar.JANUARY, 18, 22, 0),
+                schedule.nextChange(local(BERLIN, 2026, Calendar.JANUARY, 12, 2, 0), BERLIN));
+    }
+
+    @Test
+    public void windowsTouchingAcrossTheWeekWrapAreOneWindow() {
+        FenceSchedule schedule = FenceSchedule.parse("Sun 12:00-24:00; Mon 00:00-12:00", NEW_YORK);
+
+        assertEquals(local(NEW_YORK, 2026, Calendar.MARCH, 2, 12, 0),
+                schedule.nextChange(local(NEW_YORK, 2026, Calendar.MARCH, 1, 13, 0), NEW_YORK));
+    }
+
+    @Test
+    public void alwaysArmedScheduleNeverChanges() {
+        FenceSchedule schedule = FenceSchedule.parse("daily 00:00-24:00", BERLIN);
+
+        long time = local(BERLIN, 2026, Calendar.MARCH, 29, 2, 30);
+        assertTrue(schedule.isActive(time, BERLIN));
+        assertEquals(Long.MAX_VALUE, schedule.nextChange(time, BERLIN));
+    }
+
+    @Test
+    public void windowInsideTheSpringForwardGapIsSkippedThatDay() {
+        FenceSchedule schedule = FenceSchedule.parse("daily 02:00-02:30", NEW_YORK);
+
+        // Clocks go from 01:59 to 03:00 on 8 March 2026
+        long beforeGap = local(NEW_YORK, 2026, Calendar.MARCH, 8, 1, 0);
+        assertEquals(local(NEW_YORK, 2026, Calendar.MARCH, 9, 2, 0), schedule.nextChange(beforeGap, NEW_YORK));
+    }
+
+    @Test
+    public void windowInTheFallBackHourIsArmedTwice() {
+        FenceSchedule schedule = FenceSchedule.parse("daily 01:00-01:30", NEW_YORK);
+
+        // 01:00 EDT is 05:00 UTC; clocks go back at 06:00 UTC on 1 November 2026
+        long firstPass = utc(2026, Calendar.NOVEMBER, 1, 5, 0);
+        long secondPass = utc(2026, Calendar.NOVEMBER, 1, 6, 0);
+        assertTrue(schedule.isActive(firstPass, NEW_YORK));
+        assertEquals(firstPass + 30 * MINUTE, schedule.nextChange(firstPass, NEW_YORK));
+        assertEquals(secondPass, schedule.nextChange(firstPass + 30 * MINUTE, NEW_YORK));
+        assertEquals(secondPass + 30 * MINUTE, schedule.nextChange(secondPass, NEW_YORK));
+    }
+
+    @Test
+    public void validityPeriodBoundsTheWindows() {
+        FenceSchedule schedule = FenceSchedule.parse("Mon 08:00-12:00; from 2026-03-01; until 2026-03-16T10:00", BERLIN);
+
+        assertFalse(schedule.isActive(local(BERLIN, 2026, Calendar.FEBRUARY, 23, 9, 0), BERLIN));
+        assertTrue(schedule.isActive(local(BERLIN, 2026, Calendar.MARCH, 2, 9, 0), BERLIN));
+        assertEquals(local(BERLIN, 2026, Calendar.MARCH, 16, 10, 0),
+                schedule.nextChange(local(BERLIN, 2026, Calendar.MARCH, 16, 9, 0), BERLIN));
+        assertEquals(Long.MAX_VALUE, schedule.nextChange(local(BERLIN, 2026, Calendar.MARCH, 16, 10, 0), BERLIN));
+        assertTrue(schedule.isExpired(local(BERLIN, 2026, Calendar.MARCH, 16, 10, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownDay() {
+        FenceSchedule.parse("Funday 09:00-10:00", BERLIN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEndBeforeStart() {
+        FenceSchedule.parse("from 2026-05-01; until 2026-04-01", BERLIN);
+    }
+
+    @Test
+    public void matchesCalendarAcrossDaylightSavingChanges() {
+        String[] specs = {
+                "Mon-Fri 09:00-17:30; Sat 10:00-14:00",
+                "Sun 22:00-02:00",
+                "daily 01:30-02:30",
+                "Fri-Mon 23:45-00:15; Wed 02:00-03:00",
+        };
+        TimeZone[] zones = {NEW_YORK, BERLIN, LORD_HOWE, KATHMANDU};
+        Random random = new Random(11);
+        long yearStart = utc(2026, Calendar.JANUARY, 1, 0, 0);
+
+        for (String spec : specs) {
+            Window[] windows = Window.parseAll(spec);
+            for (TimeZone zone : zones) {
+                FenceSchedule schedule = FenceSchedule.parse(spec, zone);
+                Calendar calendar = Calendar.getInstance(zone);
+                long[] transitions = offsetTransitions(zone, yearStart, yearStart + 365 * DAY);
+                for (int i = 0; i < 400; i++) {
+                    // Half of the times within two days of a clock change
+                    long time = yearStart + (long) (random.nextDouble() * 365 * DAY);
+                    if (transitions.length > 0 && random.nextBoolean()) {
+                        time = transitions[random.nextInt(transitions.length)]
+                                + (long) ((random.nextDouble() - 0.5) * 4 * DAY);
+                    }
+                    calendar.setTimeInMillis(time);
+                    String where = spec + " in " + zone.getID() + " at " + calendar.getTime();
+                    assertEquals(where, Window.anyContains(windows, calendar), schedule.isActive(time, zone));
+                    assertEquals(where, expectedNextChange(schedule, zone, time), schedule.nextChange(time, zone));
+                }
+            }
+        }
+    }
+
+    // First minute after a time where isActive flips; zone offsets are whole minutes
+    private static long expectedNextChange(FenceSchedule schedule, TimeZone zone, long time) {
+        boolean active = schedule.isActive(time, zone);
+        for (long minute = (time / MINUTE + 1) * MINUTE; minute < time + 9 * DAY; minute += MINUTE) {
+            if (schedule.isActive(minute, zone) != active) {
+                return minute;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // Instants where the zone's offset changes, to the minute
+    private static long[] offsetTransitions(TimeZone zone, long from, long to) {
+        long[] transitions = new long[0];
+        for (long hour = from; hour < to; hour += 60 * MINUTE) {
+            if (zone.getOffset(hour) == zone.getOffset(hour + 60 * MINUTE)) {
+                continue;
+            }
+            long minute = hour;
+            while (zone.getOffset(minute) == zone.getOffset(hour)) {
+                minute += MINUTE;
+            }
+            transitions = Arrays.copyOf(transitions, transitions.length + 1);
+            transitions[transitions.length - 1] = minute;
+        }
+        return transitions;
+    }
+
+    private static long local(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        return local(TimeZone.getTimeZone("UTC"), year, month, day, hour, minute);
+    }
+
+    // Reference reading of one window clause, evaluated on Calendar fields
+    private static final class Window {
+        private static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+
+        final boolean[] days = new boolean[7];
+        final int start;
+        final int end;
+
+        Window(String clause) {
+            String[] parts = clause.trim().split(" ");
+            if ("daily".equals(parts[0])) {
+                Arrays.fill(days, true);
+            } else {
+                for (String range : parts[0].split(",")) {
+                    String[] ends = range.split("-");
+                    int first = dayIndex(ends[0]);
+                    int last = dayIndex(ends[ends.length - 1]);
+                    for (int day = first; ; day = (day + 1) % 7) {
+                        days[day] = true;
+                        if (day == last) {
+                            break;
+                        }
+                    }
+                }
+            }
+            String[] times = parts[1].split("-");
+            start = minutes(times[0]);
+            end = minutes(times[1]);
+        }
+
+        static Window[] parseAll(String spec) {
+            String[] clauses = spec.split(";");
+            Window[] windows = new Window[clauses.length];
+            for (int i = 0; i < clauses.length; i++) {
+                windows[i] = new Window(clauses[i]);
+            }
+            return windows;
+        }
+
+        static boolean anyContains(Window[] windows, Calendar calendar) {
+            int day = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+            for (Window window : windows) {
+                if (window.contains(day, minute)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean contains(int day, int minute) {
+            if (start < end) {
+                return days[day] && start <= minute && minute < end;
+            }
+            // Runs past midnight into the next day, and from Sunday into Monday
+            return days[day] && minute >= start || days[(day + 6) % 7] && minute < end;
+        }
+
+        private static int dayIndex(String name) {
+            for (int i = 0; i < DAYS.length; i++) {
+                if (DAYS[i].equals(name)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException(name);
+        }
+
+        private static int minutes(String time) {
+            String[] fields = time.split(":");
+            return Integer.parseInt(fields[0]) * 60 + Integer.parseInt(fields[1]);
+        }
+    }
+}
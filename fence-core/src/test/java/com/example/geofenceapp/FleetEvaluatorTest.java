@@ -0,0 +1,153 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FleetEvaluatorTest {
+    private static final long LOITERING_DELAY_MS = 60000;
+
+    @Test
+    public void matchesOneTrackerPerDevice() {
+        Random random = new Random(31);
+        List<Fence> fences = randomFences(random, 300);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        FleetEvaluator fleet = new FleetEvaluator(fences, LOITERING_DELAY_MS, pool);
+
+        int devices = 200;
+        Map<Long, TransitionTracker> trackers = new HashMap<>();
+        double[][] positions = new double[devices][];
+        long[] clocks = new long[devices];
+        for (int device = 0; device < devices; device++) {
+            trackers.put(deviceId(device), new TransitionTracker(fences, LOITERING_DELAY_MS));
+            positions[device] = new double[]{randomLatitude(random), randomLongitude(random)};
+            clocks[device] = random.nextInt(10000);
+        }
+
+        long enters = 0;
+        for (int batch = 0; batch < 20; batch++) {
+            // Each device walks for a while; the batch is handed over shuffled
+            List<Object[]> fixes = new ArrayList<>();
+            for (int device = 0; device < devices; device++) {
+                for (int i = random.nextInt(40); i > 0; i--) {
+                    positions[device][0] += (random.nextDouble() - 0.5) * 0.002;
+                    positions[device][1] += (random.nextDouble() - 0.5) * 0.002;
+                    clocks[device] += 1 + random.nextInt(20000);
+                    fixes.add(new Object[]{deviceId(device), positions[device][0], positions[device][1], clocks[device]});
+                }
+            }
+            Collections.shuffle(fixes, random);
+            FleetEvaluator.Fixes columns = new FleetEvaluator.Fixes(16);
+            for (Object[] fix : fixes) {
+                columns.add((Long) fix[0], (Double) fix[1], (Double) fix[2], (Long) fix[3]);
+            }
+            FleetEvaluator.Result result = fleet.evaluate(columns);
+
+            Map<Long, List<String>> expected = new HashMap<>();
+            Collections.sort(fixes, (a, b) -> Long.compare((Long) a[3], (Long) b[3]));
+            for (Object[] fix : fixes) {
+                final long device = (Long) fix[0];
+                trackers.get(device).onFix((Long) fix[3], (Double) fix[1], (Double) fix[2],
+                        (fenceId, transition, timeMillis, latitude, longitude) ->
+                                transitionsOf(expected, device).add(describe(timeMillis, fenceId, transition)));
+            }
+            Map<Long, List<String>> actual = new HashMap<>();
+            long previousTime = Long.MIN_VALUE;
+            for (int i = 0; i < result.size(); i++) {
+                long device = result.getDeviceId(i);
+                List<String> transitions = transitionsOf(actual, device);
+                if (transitions.isEmpty()) {
+                    previousTime = Long.MIN_VALUE;
+                }
+                assertTrue("time order of device " + device, result.getTimeMillis(i) >= previousTime);
+                previousTime = result.getTimeMillis(i);
+                transitions.add(describe(result.getTimeMillis(i), result.getFenceId(i), result.getTransition(i)));
+            }
+            // A fix may cause several transitions; their order within the fix is not specified
+            for (List<String> transitions : expected.values()) {
+                Collections.sort(transitions);
+            }
+            for (List<String> transitions : actual.values()) {
+                Collections.sort(transitions);
+            }
+            assertEquals("batch " + batch, expected, actual);
+            assertEquals(0, result.getLateCount());
+            enters += result.getEnterCount();
+        }
+
+        long trackerEnters = 0;
+        for (TransitionTracker tracker : trackers.values()) {
+            trackerEnters += tracker.getEnterCount();
+        }
+        assertEquals(trackerEnters, enters);
+        assertTrue("walks should cross fences", enters > 1000);
+        assertEquals(devices, fleet.getDeviceCount());
+        pool.shutdown();
+    }
+
+    @Test
+    public void skipsFixesOlderThanTheLastBatch() {
+        List<Fence> fences = Collections.singletonList(new Fence("f", 10, 20, 100, TransitionTracker.TRANSITION_ENTER));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        FleetEvaluator fleet = new FleetEvaluator(fences, LOITERING_DELAY_MS, pool);
+
+        FleetEvaluator.Fixes fixes = new FleetEvaluator.Fixes();
+        fixes.add(1, 0, 0, 5000);
+        assertEquals(0, fleet.evaluate(fixes).size());
+
+        fixes.clear();
+        fixes.add(1, 10, 20, 4000);
+        fixes.add(1, 10, 20, 6000);
+        FleetEvaluator.Result result = fleet.evaluate(fixes);
+        assertEquals(1, result.getLateCount());
+        assertEquals(1, result.size());
+        assertEquals(6000, result.getTimeMillis(0));
+        pool.shutdown();
+    }
+
+    private static List<String> transitionsOf(Map<Long, List<String>> transitions, long device) {
+        List<String> list = transitions.get(device);
+        if (list == null) {
+            list = new ArrayList<>();
+            transitions.put(device, list);
+        }
+        return list;
+    }
+
+    private static String describe(long timeMillis, String fenceId, int transition) {
+        return String.format("%012d %s %d", timeMillis, fenceId, transition);
+    }
+
+    // Spread device IDs over the long range, as real ones are
+    private static long deviceId(int device) {
+        return device * 0x9E3779B97F4A7C15L;
+    }
+
+    // Dense cluster so walks cross many fences, some with their own loitering delay
+    private static List<Fence> randomFences(Random random, int count) {
+        List<Fence> fences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int delay = random.nextBoolean() ? 0 : 1000 * (1 + random.nextInt(120));
+            fences.add(new Fence("fence-" + i, randomLatitude(random), randomLongitude(random),
+                    20 + random.nextInt(800), 1 + random.nextInt(7), delay));
+        }
+        return fences;
+    }
+
+    private static double randomLatitude(Random random) {
+        return 48.1 + random.nextDouble() * 0.05;
+    }
+
+    private static double randomLongitude(Random random) {
+        return 11.5 + random.nextDouble() * 0.05;
+    }
+}
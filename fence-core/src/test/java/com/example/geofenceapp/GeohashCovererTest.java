@@ -0,0 +1,66 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeohashCovererTest {
+    @Test
+    public void smallCircleIsCoveredAtMaxPrecision() {
+        GeohashCoverer.Covering covering = new GeohashCoverer().cover(52.52, 13.405, 5);
+
+        assertEquals(GeohashCoverer.DEFAULT_MAX_PRECISION, covering.getPrecision());
+        assertTrue(covering.size() >= 1);
+    }
+
+    @Test
+    public void coveringIsCompleteAndInteriorCellsAreInside() {
+        Random random = new Random(23);
+        GeohashCoverer coverer = new GeohashCoverer();
+        GeohashCoverer.Covering covering = new GeohashCoverer.Covering();
+        double[] bounds = new double[4];
+
+        for (int circle = 0; circle < 2000; circle++) {
+            double lat = -80 + random.nextDouble() * 160;
+            double lon = -170 + random.nextDouble() * 340;
+            double radius = Math.pow(10, random.nextDouble() * 4.7);
+            coverer.cover(lat, lon, radius, covering);
+            assertTrue(covering.size() <= GeohashCoverer.DEFAULT_MAX_CELLS || covering.getPrecision() == 1);
+
+            Map<Long, Boolean> cells = new HashMap<>();
+            for (int i = 0; i < covering.size(); i++) {
+                assertEquals(covering.getPrecision(), Geohash.precision(covering.getCell(i)));
+                cells.put(covering.getCell(i), covering.isInterior(i));
+            }
+
+            double dLat = GeoMath.metersToLatitudeDegrees(radius) * 1.2;
+            double dLon = GeoMath.metersToLongitudeDegrees(radius, lat) * 1.2;
+            for (int i = 0; i < 200; i++) {
+                double pointLat = lat - dLat + random.nextDouble() * 2 * dLat;
+                double pointLon = lon - dLon + random.nextDouble() * 2 * dLon;
+                double distance = GeoMath.haversineDistance(lat, lon, pointLat, pointLon);
+                Boolean interior = cells.get(Geohash.encode(pointLat, pointLon, covering.getPrecision()));
+                if (distance <= radius) {
+                    assertTrue("point " + distance + " m inside a " + radius + " m circle has no cell", interior != null);
+                }
+                if (interior != null && interior) {
+                    assertTrue("point in an interior cell is " + distance + " m out", distance <= radius);
+                }
+            }
+
+            // Corners of interior cells bound the whole cell
+            for (int i = 0; i < covering.size(); i++) {
+                if (covering.isInterior(i)) {
+                    Geohash.bounds(covering.getCell(i), bounds);
+                    assertTrue(GeoMath.haversineDistance(lat, lon, bounds[0], bounds[1]) <= radius);
+                    assertTrue(GeoMath.haversineDistance(lat, lon, bounds[2], bounds[3]) <= radius);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IntervalIndexTest {
+    @Test
+    public void intervalsAreHalfOpen() {
+        IntervalIndex index = new IntervalIndex();
+        index.add(10, 20, 1);
+        index.add(20, 30, 2);
+        index.add(5, 5, 3);
+
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[0], stab(index, 9));
+        assertArrayEquals(new int[]{1}, stab(index, 10));
+        assertArrayEquals(new int[]{2}, stab(index, 20));
+        assertArrayEquals(new int[0], stab(index, 30));
+        assertEquals(10, index.nextEdge(5));
+        assertEquals(20, index.nextEdge(10));
+        assertEquals(Long.MAX_VALUE, index.nextEdge(30));
+    }
+
+    @Test
+    public void matchesLinearScanOnRandomIntervals() {
+        Random random = new Random(7);
+        IntervalIndex index = new IntervalIndex();
+        List<long[]> intervals = new ArrayList<>();
+
+        for (int round = 0; round < 40; round++) {
+            // Small coordinates so that starts, ends and queries often coincide
+            for (int i = random.nextInt(50); i > 0; i--) {
+                long start = random.nextInt(1000);
+                long end = start + random.nextInt(random.nextBoolean() ? 10 : 300);
+                index.add(start, end, intervals.size());
+                intervals.add(new long[]{start, end});
+            }
+            for (int query = 0; query < 200; query++) {
+                long time = random.nextInt(1400) - 100;
+                long to = time + random.nextInt(100);
+                assertArrayEquals("stab " + time, expectedStab(intervals, time), stab(index, time));
+                assertEquals("next edge " + time, expectedNextEdge(intervals, time), index.nextEdge(time));
+                assertArrayEquals("starting in " + time, expectedEdgesIn(intervals, 0, time, to),
+                        edgesIn(index, true, time, to));
+                assertArrayEquals("ending in " + time, expectedEdgesIn(intervals, 1, time, to),
+                        edgesIn(index, false, time, to));
+            }
+            if (random.nextInt(8) == 0) {
+                index.clear();
+                intervals.clear();
+            }
+        }
+    }
+
+    private static int[] stab(IntervalIndex index, long time) {
+        IntList out = new IntList();
+        index.stab(time, out);
+        return sorted(out);
+    }
+
+    private static int[] edgesIn(IntervalIndex index, boolean starts, long from, long to) {
+        IntList out = new IntList();
+        if (starts) {
+            index.startingIn(from, to, out);
+        } else {
+            index.endingIn(from, to, out);
+        }
+        return sorted(out);
+    }
+
+    private static int[] expectedStab(List<long[]> intervals, long time) {
+        IntList out = new IntList();
+        for (int i = 0; i < intervals.size(); i++) {
+            long[] interval = intervals.get(i);
+            if (interval[1] > interval[0] && interval[0] <= time && time < interval[1]) {
+                out.add(i);
+            }
+        }
+        return sorted(out);
+    }
+
+    private static long expectedNextEdge(List<long[]> intervals, long time) {
+        long next = Long.MAX_VALUE;
+        for (long[] interval : intervals) {
+            if (interval[1] <= interval[0]) {
+                continue;
+            }
+            for (long edge : interval) {
+                if (edge > time) {
+                    next = Math.min(next, edge);
+                }
+            }
+        }
+        return next;
+    }
+
+    private static int[] expectedEdgesIn(List<long[]> intervals, int edge, long from, long to) {
+        IntList out = new IntList();
+        for (int i = 0; i < intervals.size(); i++) {
+            long[] interval = intervals.get(i);
+            if (interval[1] > interval[0] && interval[edge] > from && interval[edge] <= to) {
+                out.add(i);
+            }
+        }
+        return sorted(out);
+    }
+
+    private static int[] sorted(IntList list) {
+        int[] values = list.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PolygonFenceTest {
+    @Test
+    public void concaveSquareWithNotch() {
+        // 0..2 square with the top-right quarter cut out
+        PolygonFence fence = new PolygonFence("l",
+                new double[]{0, 0, 1, 1, 2, 2, 0},
+                new double[]{0, 2, 2, 1, 1, 0, 0}, TransitionTracker.TRANSITION_ENTER);
+
+        assertEquals(6, fence.getVertexCount());
+        assertTrue(fence.contains(0.5, 0.5));
+        assertTrue(fence.contains(0.5, 1.5));
+        assertTrue(fence.contains(1.5, 0.5));
+        assertFalse(fence.contains(1.5, 1.5));
+        assertFalse(fence.contains(-0.5, 0.5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPolygonsAcrossTheAntimeridian() {
+        new PolygonFence("a", new double[]{0, 1, 1}, new double[]{179, 179, -179}, TransitionTracker.TRANSITION_ENTER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooFewVertices() {
+        new PolygonFence("t", new double[]{0, 1, 0}, new double[]{0, 1, 0}, TransitionTracker.TRANSITION_ENTER);
+    }
+
+    @Test
+    public void slabLookupMatchesCrossingTestOnSmallPolygons() {
+        Random random = new Random(3);
+        for (int polygon = 0; polygon < 300; polygon++) {
+            checkAgainstCrossingTest(randomStar(random, 3 + random.nextInt(40)), random, 500);
+        }
+    }
+
+    @Test
+    public void bucketLookupMatchesCrossingTestOnLargePolygons() {
+        // Spiky stars with thousands of vertices exceed the slab budget
+        Random random = new Random(5);
+        for (int polygon = 0; polygon < 5; polygon++) {
+            checkAgainstCrossingTest(randomStar(random, 3000 + random.nextInt(3000)), random, 5000);
+        }
+    }
+
+    @Test
+    public void enclosingCircleHoldsEveryVertex() {
+        Random random = new Random(9);
+        for (int polygon = 0; polygon < 200; polygon++) {
+            PolygonFence fence = randomStar(random, 3 + random.nextInt(60));
+            Fence circle = fence.toCircleFence();
+            for (int i = 0; i < fence.getVertexCount(); i++) {
+                double distance = GeoMath.haversineDistance(circle.getLatitude(), circle.getLongitude(),
+                        fence.getLatitude(i), fence.getLongitude(i));
+                assertTrue(fence + " vertex " + i, distance <= circle.getRadius() * 1.0001 + 0.01);
+            }
+        }
+    }
+
+    private static void checkAgainstCrossingTest(PolygonFence fence, Random random, int points) {
+        double[] lats = new double[fence.getVertexCount()];
+        double[] lons = new double[fence.getVertexCount()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = fence.getLatitude(i);
+            lons[i] = fence.getLongitude(i);
+        }
+        double height = fence.getMaxLatitude() - fence.getMinLatitude();
+        double width = fence.getMaxLongitude() - fence.getMinLongitude();
+        for (int i = 0; i < points; i++) {
+            double lat = fence.getMinLatitude() - 0.1 * height + random.nextDouble() * 1.2 * height;
+            double lon = fence.getMinLongitude() - 0.1 * width + random.nextDouble() * 1.2 * width;
+            assertEquals(fence + " at " + lat + ", " + lon, crossingTest(lats, lons, lat, lon), fence.contains(lat, lon));
+        }
+        for (int i = 0; i < lats.length; i++) {
+            // Exactly on a vertex latitude, where slabs meet
+            double lon = fence.getMinLongitude() + random.nextDouble() * width;
+            assertEquals(fence + " at " + lats[i] + ", " + lon, crossingTest(lats, lons, lats[i], lon),
+                    fence.contains(lats[i], lon));
+        }
+    }
+
+    // Plain even-odd test: count the edges that cross the point's parallel to its west
+    private static boolean crossingTest(double[] lats, double[] lons, double lat, double lon) {
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)) {
+                double crossing = lons[i] + (lat - lats[i]) * (lons[j] - lons[i]) / (lats[j] - lats[i]);
+                if (crossing < lon) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    // Star-shaped around a random center with angular gaps under half a turn,
+    // so the polygon never intersects itself
+    private static PolygonFence randomStar(Random random, int vertices) {
+        double centerLat = -60 + random.nextDouble() * 120;
+        double centerLon = -170 + random.nextDouble() * 340;
+        double size = random.nextBoolean() ? 0.001 : 0.05;
+        double[] lats = new double[vertices];
+        double[] lons = new double[vertices];
+        for (int i = 0; i < vertices; i++) {
+            double angle = (i + 0.4 * random.nextDouble()) * 2 * Math.PI / vertices;
+            double radius = size * (0.05 + random.nextDouble());
+            lats[i] = centerLat + radius * Math.sin(angle);
+            lons[i] = centerLon + radius * Math.cos(angle);
+        }
+        return new PolygonFence("p" + vertices, lats, lons, TransitionTracker.TRANSITION_ENTER);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+    private static final long TICK = 10;
+    private static final long SPAN_TICKS = 1L << 24;
+
+    @Test
+    public void firesOnTheTickTheDeadlineRoundsUpTo() {
+        TimerWheel wheel = new TimerWheel(TICK, 1000);
+        wheel.schedule(1031, 7);
+        IntList expired = new IntList();
+
+        assertEquals(0, wheel.advance(1039, expired));
+        assertEquals(1040, wheel.nextDeadline());
+        assertEquals(1, wheel.advance(1040, expired));
+        assertEquals(7, expired.get(0));
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+    }
+
+    @Test
+    public void pastDeadlinesFireOnTheNextTick() {
+        TimerWheel wheel = new TimerWheel(TICK, 1000);
+        wheel.schedule(0, 1);
+        IntList expired = new IntList();
+
+        assertEquals(0, wheel.advance(1009, expired));
+        assertEquals(1, wheel.advance(1010, expired));
+    }
+
+    @Test
+    public void cancelledTimersDoNotFire() {
+        TimerWheel wheel = new TimerWheel(TICK, 0);
+        int first = wheel.schedule(500, 1);
+        wheel.schedule(600, 2);
+
+        assertTrue(wheel.cancel(first));
+        assertFalse(wheel.cancel(first));
+        assertFalse(wheel.cancel(TimerWheel.NO_TIMER));
+
+        IntList expired = new IntList();
+        wheel.advance(1000, expired);
+        assertEquals(1, expired.size());
+        assertEquals(2, expired.get(0));
+    }
+
+    @Test
+    public void matchesSortedReferenceUnderRandomScheduleCancelAndAdvance() {
+        Random random = new Random(42);
+        long now = 123456789;
+        TimerWheel wheel = new TimerWheel(TICK, now);
+        // Live timers by handle: {deadline tick, payload, 1 if parked beyond the span when scheduled}
+        Map<Integer, long[]> live = new HashMap<>();
+        IntList expired = new IntList();
+        int nextPayload = 0;
+
+        for (int round = 0; round < 20000; round++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                long deadline = now + randomDelay(random);
+                long tick = Math.max(now / TICK + 1, (deadline + TICK - 1) / TICK);
+                int payload = nextPayload++;
+                int handle = wheel.schedule(deadline, payload);
+                assertFalse("handle reused while live", live.containsKey(handle));
+                live.put(handle, new long[]{tick, payload, tick - now / TICK >= SPAN_TICKS ? 1 : 0});
+            } else if (op < 7 && !live.isEmpty()) {
+                List<Integer> handles = new ArrayList<>(live.keySet());
+                int handle = handles.get(random.nextInt(handles.size()));
+                assertTrue(wheel.cancel(handle));
+                live.remove(handle);
+            } else {
+                now += randomDelay(random) / 4;
+                long target = now / TICK;
+                List<long[]> due = new ArrayList<>();
+                for (Map.Entry<Integer, long[]> entry : new ArrayList<>(live.entrySet())) {
+                    if (entry.getValue()[0] <= target) {
+                        due.add(entry.getValue());
+                        live.remove(entry.getKey());
+                    }
+                }
+                expired.clear();
+                assertEquals(due.size(), wheel.advance(now, expired));
+                assertFiredInDeadlineOrder(due, expired);
+            }
+            assertEquals(live.size(), wheel.size());
+            assertNextDeadline(wheel, live);
+        }
+    }
+
+    @Test
+    public void catchesUpAfterALongSleep() {
+        TimerWheel wheel = new TimerWheel(TICK, 0);
+        long far = TICK << 30;
+        wheel.schedule(far, 1);
+        wheel.schedule(far + TICK, 2);
+        IntList expired = new IntList();
+
+        assertEquals(0, wheel.advance(far - TICK, expired));
+        assertEquals(1, wheel.advance(far, expired));
+        assertEquals(1, wheel.advance(far + 5 * TICK, expired));
+        assertEquals(2, expired.get(1));
+    }
+
+    // Mostly short delays, with some beyond what the wheel spans
+    private static long randomDelay(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(1000);
+            case 1:
+                return random.nextInt(100000);
+            case 2:
+                return (long) random.nextInt((int) SPAN_TICKS) * TICK;
+            default:
+                return (long) random.nextInt(1 << 28) * TICK;
+        }
+    }
+
+    private static void assertFiredInDeadlineOrder(List<long[]> due, IntList expired) {
+        Map<Integer, Long> ticks = new HashMap<>();
+        for (long[] timer : due) {
+            ticks.put((int) timer[1], timer[0]);
+        }
+        int[] fired = new int[expired.size()];
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < expired.size(); i++) {
+            fired[i] = expired.get(i);
+            long tick = ticks.get(fired[i]);
+            assertTrue("fired out of order", tick >= previous);
+            previous = tick;
+        }
+        int[] expected = new int[due.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (int) due.get(i)[1];
+        }
+        Arrays.sort(expected);
+        Arrays.sort(fired);
+        assertEquals(Arrays.toString(expected), Arrays.toString(fired));
+    }
+
+    // Exact unless a timer was parked beyond the wheel's span, and never late
+    private static void assertNextDeadline(TimerWheel wheel, Map<Integer, long[]> live) {
+        long earliest = Long.MAX_VALUE;
+        boolean parked = false;
+        for (long[] timer : live.values()) {
+            earliest = Math.min(earliest, timer[0] * TICK);
+            parked |= timer[2] != 0;
+        }
+        long next = wheel.nextDeadline();
+        if (parked) {
+            assertTrue("next deadline " + next + " after " + earliest, next <= earliest);
+        } else {
+            assertEquals(earliest, next);
+        }
+    }
+}
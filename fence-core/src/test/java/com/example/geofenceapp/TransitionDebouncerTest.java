@@ -0,0 +1,184 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionDebouncerTest {
+    private static final double LAT = 48.0;
+    private static final double LON = 11.0;
+    private static final float RADIUS = 100f;
+
+    private static final int NONE = TransitionDebouncer.TRANSITION_NONE;
+    private static final int ENTER = TransitionDebouncer.TRANSITION_ENTER;
+    private static final int EXIT = TransitionDebouncer.TRANSITION_EXIT;
+
+    private final TransitionDebouncer debouncer = new TransitionDebouncer();
+
+    @Test
+    public void confirmsClearTransitionsAtOnceAndFiltersDuplicates() {
+        assertEquals(ENTER, report("home", ENTER, 50, 5, 0));
+        assertEquals(NONE, report("home", ENTER, 40, 5, 100));
+        assertEquals(EXIT, report("home", EXIT, 150, 5, 200));
+        assertEquals(NONE, report("home", EXIT, 160, 5, 300));
+        assertEquals(Long.MAX_VALUE, debouncer.nextDeadline());
+    }
+
+    @Test
+    public void hysteresisMarginGrowsWithAccuracy() {
+        // A 5 m fix uses the 10 m minimum margin: inside below 90 m, outside from 110 m
+        assertEquals(ENTER, report("a", ENTER, 89, 5, 0));
+        assertEquals(NONE, report("b", ENTER, 91, 5, 0));
+        assertEquals(EXIT, report("a", EXIT, 111, 5, 0));
+        assertEquals(NONE, report("c", EXIT, 109, 5, 0));
+
+        // A 30 m fix needs 70 m inside or 130 m outside
+        assertEquals(NONE, report("d", ENTER, 80, 30, 0));
+        assertEquals(ENTER, report("e", ENTER, 69, 30, 0));
+        assertEquals(NONE, report("e", EXIT, 125, 30, 0));
+        assertEquals(EXIT, report("f", EXIT, 131, 30, 0));
+
+        // The inner radius never shrinks below half the fence
+        assertEquals(ENTER, report("g", ENTER, 49, 80, 0));
+        assertEquals(NONE, report("h", ENTER, 51, 80, 0));
+    }
+
+    @Test
+    public void dwellScalesWithAccuracy() {
+        long enter = TransitionDebouncer.DEFAULT_ENTER_DWELL_MS;
+        long exit = TransitionDebouncer.DEFAULT_EXIT_DWELL_MS;
+        // Fixes better than 20 m wait the base time, worse ones proportionally longer, at most four times
+        assertPendsFor(ENTER, 95, 5, enter);
+        assertPendsFor(ENTER, 95, 20, enter);
+        assertPendsFor(ENTER, 95, 30, enter * 3 / 2);
+        assertPendsFor(ENTER, 95, 40, enter * 2);
+        assertPendsFor(ENTER, 95, 500, enter * 4);
+        assertPendsFor(EXIT, 105, 5, exit);
+        assertPendsFor(EXIT, 105, 60, exit * 3);
+    }
+
+    @Test
+    public void oppositeTransitionCancelsPendingOne() {
+        assertEquals(NONE, report("home", ENTER, 95, 5, 1000));
+        assertEquals(NONE, report("home", EXIT, 105, 5, 2000));
+        assertEquals(Collections.emptyList(), poll(Long.MAX_VALUE - 1));
+        // The cancelled ENTER leaves the fence outside, so a later EXIT is a duplicate
+        assertEquals(NONE, report("home", EXIT, 200, 5, 3000));
+
+        assertEquals(ENTER, report("home", ENTER, 10, 5, 4000));
+        assertEquals(NONE, report("home", EXIT, 105, 5, 5000));
+        assertEquals(NONE, report("home", ENTER, 95, 5, 6000));
+        assertEquals(Collections.emptyList(), poll(Long.MAX_VALUE - 1));
+        assertEquals(Collections.singleton("home"), inside());
+    }
+
+    @Test
+    public void pollConfirmsOnlyDueTransitions() {
+        assertEquals(NONE, report("a", ENTER, 95, 5, 1000));
+        assertEquals(NONE, report("b", EXIT, 105, 5, 1500));
+        // Without geometry nothing is clear, so the reference dwell applies
+        assertEquals(NONE, debouncer.onTransition("c", ENTER, 2500));
+        assertEquals(4000, debouncer.nextDeadline());
+
+        assertEquals(Collections.emptyList(), poll(3999));
+        assertEquals(Collections.singletonList("a 1"), poll(4000));
+        assertEquals(5500, debouncer.nextDeadline());
+        assertEquals(Arrays.asList("b 2", "c 1"), poll(6500));
+        assertEquals(Long.MAX_VALUE, debouncer.nextDeadline());
+        assertEquals(Collections.emptyList(), poll(Long.MAX_VALUE - 1));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), inside());
+    }
+
+    @Test
+    public void confirmByAnotherDetectorDropsPendingState() {
+        assertEquals(NONE, report("home", ENTER, 95, 5, 1000));
+        debouncer.confirm("home", EXIT);
+        assertEquals(Long.MAX_VALUE, debouncer.nextDeadline());
+        assertEquals(NONE, report("home", EXIT, 200, 5, 2000));
+        assertEquals(ENTER, report("home", ENTER, 10, 5, 3000));
+
+        debouncer.forget("home");
+        assertEquals(Collections.emptySet(), inside());
+    }
+
+    @Test
+    public void exportedStatesSurviveImport() {
+        assertEquals(NONE, report("pending:enter", ENTER, 95, 5, 1000));
+        assertEquals(ENTER, report("::", ENTER, 10, 5, 1000));
+        assertEquals(NONE, report("::", EXIT, 105, 40, 2000));
+        assertEquals(ENTER, report("inside", ENTER, 10, 5, 1000));
+        assertEquals(EXIT, report("out:side:", EXIT, 500, 5, 1000));
+        Set<String> exported = debouncer.exportStates();
+
+        TransitionDebouncer restored = new TransitionDebouncer();
+        assertEquals(4, restored.importStates(exported));
+        assertEquals(exported, restored.exportStates());
+        assertEquals(debouncer.nextDeadline(), restored.nextDeadline());
+
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>();
+        restored.poll(Long.MAX_VALUE - 1, confirmed);
+        assertEquals(Arrays.asList(":: 2", "pending:enter 1"), sorted(confirmed));
+        // Settled states keep filtering duplicates
+        assertEquals(NONE, restored.onTransition("inside", ENTER, 5000));
+        assertEquals(NONE, restored.onTransition("out:side:", EXIT, 5000));
+    }
+
+    @Test
+    public void importSkipsMalformedAndKnownEntries() {
+        assertEquals(ENTER, report("home", ENTER, 10, 5, 0));
+        List<String> entries = Arrays.asList("1:", "x:1:a", "1:y:b", "9:1:c", "2:" + Long.MAX_VALUE + ":home",
+                "2:" + Long.MAX_VALUE + ":work");
+        assertEquals(1, debouncer.importStates(entries));
+        assertEquals(Collections.singleton("home"), inside());
+        assertTrue(debouncer.exportStates().contains("2:" + Long.MAX_VALUE + ":work"));
+    }
+
+    private void assertPendsFor(int transition, double distance, float accuracy, long dwellMs) {
+        TransitionDebouncer fresh = new TransitionDebouncer();
+        if (transition == EXIT) {
+            fresh.confirm("fence", ENTER);
+        }
+        assertEquals(NONE, fresh.onTransition("fence", LAT, LON, RADIUS, transition, north(distance), LON,
+                accuracy, 10000));
+        assertEquals("accuracy " + accuracy, 10000 + dwellMs, fresh.nextDeadline());
+    }
+
+    private int report(String fenceId, int transition, double distance, float accuracy, long timeMillis) {
+        return debouncer.onTransition(fenceId, LAT, LON, RADIUS, transition, north(distance), LON, accuracy,
+                timeMillis);
+    }
+
+    private List<String> poll(long nowMillis) {
+        List<TransitionDebouncer.Confirmation> confirmed = new ArrayList<>();
+        debouncer.poll(nowMillis, confirmed);
+        return sorted(confirmed);
+    }
+
+    private Set<String> inside() {
+        Set<String> inside = new HashSet<>();
+        debouncer.insideFences(inside);
+        return inside;
+    }
+
+    private static List<String> sorted(List<TransitionDebouncer.Confirmation> confirmed) {
+        List<String> names = new ArrayList<>();
+        for (TransitionDebouncer.Confirmation confirmation : confirmed) {
+            names.add(confirmation.getFenceId() + " " + confirmation.getTransition());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    // Latitude the given distance north of the fence center
+    private static double north(double meters) {
+        return LAT + GeoMath.metersToLatitudeDegrees(meters);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.geofenceapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionJournalTest {
+    // Layout the journal writes: 64-byte header with the next sequence at 16, then 8 bytes per block
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_NEXT_SEQ = 16;
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void recordsSurviveReopen() throws IOException {
+        TransitionJournal journal = TransitionJournal.open(directory, 1000);
+        assertEquals(1024, journal.getCapacity());
+        journal.append(100, "home", TransitionTracker.TRANSITION_ENTER, 1.5, 2.5, 10f);
+        journal.append(200, "home", TransitionTracker.TRANSITION_EXIT, 1.6, 2.6, 12f);
+        journal.close();
+
+        journal = TransitionJournal.open(directory, 1);
+        assertEquals(1024, journal.getCapacity());
+        List<TransitionJournal.Record> records = journal.query(0, Long.MAX_VALUE, "home", -1, 10).getRecords();
+        assertEquals(2, records.size());
+        TransitionJournal.Record exit = records.get(1);
+        assertEquals(1, exit.getSeq());
+        assertEquals(200, exit.getTimeMillis());
+        assertEquals("home", exit.getFenceId());
+        assertEquals(TransitionTracker.TRANSITION_EXIT, exit.getTransition());
+        assertEquals(1.6, exit.getLatitude(), 0);
+        assertEquals(2.6, exit.getLongitude(), 0);
+        assertEquals(12f, exit.getAccuracy(), 0);
+        journal.close();
+    }
+
+    @Test
+    public void fenceIdsWithLineBreaksSurviveReopen() throws IOException {
+        String[] ids = {"a\rb", "c", "d\ne", "f\r\n", "back\\slash\\n", "g"};
+        TransitionJournal journal = TransitionJournal.open(directory, 1000);
+        for (int i = 0; i < ids.length; i++) {
+            journal.append(i, ids[i], TransitionTracker.TRANSITION_ENTER, 0, 0, 5f);
+        }
+        journal.close();
+
+        journal = TransitionJournal.open(directory, 1000);
+        List<TransitionJournal.Record> records = journal.query(0, Long.MAX_VALUE, null, -1, 10).getRecords();
+        assertEquals(ids.length, records.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], records.get(i).getFenceId());
+            List<TransitionJournal.Record> own = journal.query(0, Long.MAX_VALUE, ids[i], -1, 10).getRecords();
+            assertEquals(1, own.size());
+            assertEquals(i, own.get(0).getSeq());
+        }
+        // Appending after the reopen must reuse the loaded indexes
+        journal.append(10, "c", TransitionTracker.TRANSITION_EXIT, 0, 0, 5f);
+        assertEquals(2, journal.query(0, Long.MAX_VALUE, "c", -1, 10).getRecords().size());
+        journal.close();
+    }
+
+    @Test
+    public void timesNeverGoBackwards() throws IOException {
+        TransitionJournal journal = TransitionJournal.open(directory, 256);
+        journal.append(500, "a", TransitionTracker.TRANSITION_ENTER, 0, 0, 0);
+        journal.append(400, "a", TransitionTracker.TRANSITION_EXIT, 0, 0, 0);
+
+        assertEquals(500, journal.query(0, Long.MAX_VALUE, null, -1, 10).getRecords().get(1).getTimeMillis());
+        journal.close();
+    }
+
+    @Test
+    public void recoversRecordsWrittenButNotPublished() throws IOException {
+        TransitionJournal journal = TransitionJournal.open(directory, 512);
+        for (int i = 0; i < 300; i++) {
+            journal.append(i, "f" + i % 3, TransitionTracker.TRANSITION_ENTER, 0, 0, 0);
+        }
+        journal.close();
+        // As if the process died before the header was bumped for the last ten appends
+        writeNextSeq(290);
+
+        journal = TransitionJournal.open(directory, 512);
+        assertEquals(300, journal.getNextSeq());
+        assertEquals(100, journal.query(0, Long.MAX_VALUE, "f2", -1, 1000).getRecords().size());
+        journal.close();
+    }
+
+    @Test
+    public void dropsTornRecord() throws IOException {
+        TransitionJournal journal = TransitionJournal.open(directory, 512);
+        for (int i = 0; i < 300; i++) {
+            journal.append(i, "f", TransitionTracker.TRANSITION_ENTER, 0, 0, 0);
+        }
+        journal.close();
+        writeNextSeq(290);
+        // Half-written time field of record 295
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "transitions.journal"), "rw")) {
+            file.seek(recordOffset(512, 295) + 8);
+            file.writeInt(-1);
+        }
+
+        journal = TransitionJournal.open(directory, 512);
+        assertEquals(295, journal.getNextSeq());
+        journal.append(1000, "f", TransitionTracker.TRANSITION_EXIT, 0, 0, 0);
+        List<TransitionJournal.Record> records = journal.query(999, Long.MAX_VALUE, null, -1, 10).getRecords();
+        assertEquals(1, records.size());
+        assertEquals(295, records.get(0).getSeq());
+        journal.close();
+    }
+
+    @Test
+    public void matchesBruteForceAcrossWrapsAndReopens() throws IOException {
+        Random random = new Random(17);
+        int capacity = 4 * TransitionJournal.BLOCK_SIZE;
+        TransitionJournal journal = TransitionJournal.open(directory, capacity);
+        // More fences than filter bits, so blocks share bits
+        String[] fences = new String[80];
+        for (int i = 0; i < fences.length; i++) {
+            fences[i] = "fence-" + i;
+        }
+        List<Object[]> appended = new ArrayList<>();
+        long time = 1000;
+
+        for (int round = 0; round < 60; round++) {
+            for (int i = random.nextInt(300); i > 0; i--) {
+                time += random.nextInt(10) == 0 ? -random.nextInt(50) : random.nextInt(100);
+                // Few fences are busy, most are rare, so the filters skip blocks
+                String fence = random.nextBoolean() ? fences[random.nextInt(4)] : fences[random.nextInt(fences.length)];
+                long seq = journal.append(time, fence, 1 + random.nextInt(3), 0, 0, 0);
+                long stored = appended.isEmpty() ? time : Math.max(time, (Long) appended.get(appended.size() - 1)[1]);
+                assertEquals(appended.size(), seq);
+                appended.add(new Object[]{seq, stored, fence});
+            }
+            if (random.nextInt(4) == 0) {
+                journal.close();
+                journal = TransitionJournal.open(directory, capacity);
+            }
+
+            long oldest = journal.getOldestSeq();
+            assertTrue(oldest >= appended.size() - capacity);
+            assertTrue(oldest <= Math.max(0, appended.size() - capacity + TransitionJournal.BLOCK_SIZE));
+            assertEquals(appended.size() - oldest, journal.size());
+            for (int query = 0; query < 20; query++) {
+                long from = time - random.nextInt(40000);
+                long to = from + random.nextInt(20000);
+                String fence = random.nextInt(4) == 0 ? null : fences[random.nextInt(fences.length)];
+                List<Long> expected = new ArrayList<>();
+                for (Object[] record : appended) {
+                    if ((Long) record[0] >= oldest && (Long) record[1] >= from && (Long) record[1] < to
+                            && (fence == null || fence.equals(record[2]))) {
+                        expected.add((Long) record[0]);
+                    }
+                }
+                assertEquals(expected, queryAll(journal, from, to, fence, 1 + random.nextInt(50)));
+            }
+        }
+        journal.close();
+    }
+
+    // Follows the cursor page by page
+    private static List<Long> queryAll(TransitionJournal journal, long from, long to, String fence, int limit) {
+        List<Long> seqs = new ArrayList<>();
+        long cursor = -1;
+        do {
+            TransitionJournal.Page page = journal.query(from, to, fence, cursor, limit);
+            assertTrue(page.getRecords().size() <= limit);
+            for (TransitionJournal.Record record : page.getRecords()) {
+                assertTrue(fence == null || fence.equals(record.getFenceId()));
+                seqs.add(record.getSeq());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor >= 0);
+        return seqs;
+    }
+
+    private void writeNextSeq(long nextSeq) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "transitions.journal"), "rw")) {
+            file.seek(HEADER_NEXT_SEQ);
+            file.writeLong(nextSeq);
+        }
+    }
+
+    private static long recordOffset(int capacity, long seq) {
+        return HEADER_SIZE + capacity / TransitionJournal.BLOCK_SIZE * 8 + seq % capacity * TransitionJournal.RECORD_SIZE;
+    }
+}
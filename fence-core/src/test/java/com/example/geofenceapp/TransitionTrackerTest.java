@@ -0,0 +1,114 @@
+package com.example.geofenceapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionTrackerTest {
+    private static final long LOITERING_DELAY_MS = 30000;
+
+    @Test
+    public void reportsEnterDwellAndExit() {
+        Fence fence = new Fence("home", 48.0, 11.0, 100, TransitionTracker.TRANSITION_ENTER
+                | TransitionTracker.TRANSITION_EXIT | TransitionTracker.TRANSITION_DWELL);
+        TransitionTracker tracker = new TransitionTracker(Collections.singletonList(fence), LOITERING_DELAY_MS);
+        List<String> transitions = new ArrayList<>();
+
+        tracker.onFix(0, 48.0, 11.0, collect(transitions));
+        tracker.onFix(LOITERING_DELAY_MS - 1, 48.0, 11.0, collect(transitions));
+        tracker.onFix(LOITERING_DELAY_MS, 48.0, 11.0, collect(transitions));
+        tracker.onFix(LOITERING_DELAY_MS + 1, 48.01, 11.0, collect(transitions));
+
+        assertEquals(Arrays.asList("0 home 1", "30000 home 4", "30001 home 2"), transitions);
+        assertEquals(0, tracker.getOccupiedCount());
+    }
+
+    @Test
+    public void onlyReportsTransitionsInTheMask() {
+        Fence fence = new Fence("exit-only", 48.0, 11.0, 100, TransitionTracker.TRANSITION_EXIT);
+        TransitionTracker tracker = new TransitionTracker(Collections.singletonList(fence), LOITERING_DELAY_MS);
+        List<String> transitions = new ArrayList<>();
+
+        tracker.onFix(0, 48.0, 11.0, collect(transitions));
+        tracker.onFix(1000, 48.01, 11.0, collect(transitions));
+
+        assertEquals(Collections.singletonList("1000 exit-only 2"), transitions);
+        assertEquals(0, tracker.getEnterCount());
+        assertEquals(1, tracker.getExitCount());
+    }
+
+    @Test
+    public void matchesScanOfEveryFence() {
+        Random random = new Random(37);
+        List<Fence> fences = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            int delay = random.nextBoolean() ? 0 : 1000 * (1 + random.nextInt(90));
+            fences.add(new Fence("fence-" + i, 35.6 + random.nextDouble() * 0.05, 139.7 + random.nextDouble() * 0.05,
+                    10 + random.nextInt(600), 1 + random.nextInt(7), delay));
+        }
+        TransitionTracker tracker = new TransitionTracker(fences, LOITERING_DELAY_MS);
+
+        // Reference state per fence
+        boolean[] inside = new boolean[fences.size()];
+        boolean[] dwellReported = new boolean[fences.size()];
+        long[] enteredAt = new long[fences.size()];
+        double lat = 35.625;
+        double lon = 139.725;
+        long time = 0;
+        List<String> actual = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+
+        for (int fix = 0; fix < 20000; fix++) {
+            lat += (random.nextDouble() - 0.5) * 0.001;
+            lon += (random.nextDouble() - 0.5) * 0.001;
+            time += 1 + random.nextInt(10000);
+            if (random.nextInt(500) == 0) {
+                tracker.reset();
+                Arrays.fill(inside, false);
+            }
+
+            actual.clear();
+            tracker.onFix(time, lat, lon, collect(actual));
+            expected.clear();
+            for (int i = 0; i < fences.size(); i++) {
+                Fence fence = fences.get(i);
+                long delay = fence.getLoiteringDelayMillis() > 0 ? fence.getLoiteringDelayMillis() : LOITERING_DELAY_MS;
+                int transition = 0;
+                if (fence.contains(lat, lon)) {
+                    if (!inside[i]) {
+                        inside[i] = true;
+                        dwellReported[i] = false;
+                        enteredAt[i] = time;
+                        transition = TransitionTracker.TRANSITION_ENTER;
+                    } else if (!dwellReported[i] && time - enteredAt[i] >= delay) {
+                        dwellReported[i] = true;
+                        transition = TransitionTracker.TRANSITION_DWELL;
+                    }
+                } else if (inside[i]) {
+                    inside[i] = false;
+                    transition = TransitionTracker.TRANSITION_EXIT;
+                }
+                if ((fence.getTransitionTypes() & transition) != 0) {
+                    expected.add(time + " " + fence.getId() + " " + transition);
+                }
+            }
+            // Transitions of one fix come in no particular order
+            Collections.sort(actual);
+            Collections.sort(expected);
+            assertEquals("fix " + fix, expected, actual);
+        }
+        assertTrue("walk should cross fences", tracker.getEnterCount() > 100);
+    }
+
+    private static TransitionTracker.Listener collect(final List<String> transitions) {
+        return (fenceId, transition, timeMillis, latitude, longitude) ->
+                transitions.add(timeMillis + " " + fenceId + " " + transition);
+    }
+}